@@ -1,11 +1,11 @@
 package org.cru.redegg.boot;
 
+import org.cru.redegg.recording.LoggerNameRules;
+import org.cru.redegg.recording.RecordingConfig;
 import org.cru.redegg.recording.api.LoggingRecorder;
 import org.cru.redegg.recording.api.RecorderFactory;
 import org.cru.redegg.recording.jul.JulRecorder;
 
-import java.util.Set;
-
 /**
  * @author Matt Drees
  */
@@ -13,8 +13,9 @@ public class JulLogging
 {
     public static LoggingRecorder addJulHandler(
         RecorderFactory recorderFactory,
-        Set<String> ignoredLoggers)
+        LoggerNameRules ignoredLoggers,
+        RecordingConfig config)
     {
-        return JulRecorder.add(recorderFactory, ignoredLoggers);
+        return JulRecorder.add(recorderFactory, ignoredLoggers, config);
     }
 }
@@ -1,8 +1,14 @@
 package org.cru.redegg.boot;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.recording.LoggerNameRules;
+import org.cru.redegg.recording.RecordingConfig;
 import org.cru.redegg.recording.api.LoggingRecorder;
 import org.cru.redegg.recording.api.RecorderFactory;
+import org.cru.redegg.recording.api.WebErrorRecorder;
+import org.cru.redegg.recording.impl.RecorderBinding;
 import org.cru.redegg.reporting.LoggingReporter;
 import org.cru.redegg.util.ErrorLog;
 import org.cru.redegg.util.ProxyConstructor;
@@ -19,29 +25,28 @@ import java.util.Set;
 public class Lifecycle
 {
     private final RecorderFactory recorderFactory;
+    private final RecordingConfig recordingConfig;
 
     /**
-     * The logger names for which 'error()' calls should *not* trigger a notification.
+     * The logger names (or patterns; see {@link LoggerNameRules}) for which 'error()' calls
+     * should *not* trigger a notification.
      * If they did, we could get into an infinite loop.
      */
-    private final Set<String> ignoredLoggers = ImmutableSet.of(
+    private static final Set<String> RED_EGG_LOGGERS = ImmutableSet.of(
         ErrorLog.name(),
         LoggingReporter.name(),
 
         // TODO: It'd be be more architecturally clean for this to be added
         // by some rollbar-specific code, but it'll do for now.
-        "com.rollbar.notifier.Rollbar",
-        "com.rollbar.notifier.sender.SyncSender",
-        "com.rollbar.notifier.sender.BufferedSender",
-        "com.rollbar.notifier.sender.queue.DiskQueue",
-        "com.rollbar.notifier.util.ObjectsUtils",
+        "com.rollbar.notifier.*",
         "ConfigProviderHelper" // used in com.rollbar.notifier.config.ConfigProviderHelper
     );
 
     @Inject
-    public Lifecycle(RecorderFactory recorderFactory)
+    public Lifecycle(RecorderFactory recorderFactory, @Selected RecordingConfig recordingConfig)
     {
         this.recorderFactory = recorderFactory;
+        this.recordingConfig = recordingConfig;
     }
 
     @ProxyConstructor
@@ -49,6 +54,7 @@ public class Lifecycle
     Lifecycle()
     {
         recorderFactory = null;
+        recordingConfig = null;
     }
 
     private LoggingRecorder recorder;
@@ -58,21 +64,24 @@ public class Lifecycle
         // load this eagerly since its xpath usage can get thrown off by TCCL changes
         RedEggVersion.get();
 
+        LoggerNameRules ignoredLoggers = LoggerNameRules.compile(
+            Sets.union(RED_EGG_LOGGERS, recordingConfig.getIgnoredLoggers()));
+
         if (Log4j2Logging.isAvailable())
         {
-            recorder = Log4j2Logging.addLog4j2Appender(recorderFactory, ignoredLoggers);
+            recorder = Log4j2Logging.addLog4j2Appender(recorderFactory, ignoredLoggers, recordingConfig);
         }
         else if (LogbackLogging.isAvailable())
         {
-            recorder = LogbackLogging.addLogbackAppender(recorderFactory, ignoredLoggers);
+            recorder = LogbackLogging.addLogbackAppender(recorderFactory, ignoredLoggers, recordingConfig);
         }
         else if (Log4jLogging.isAvailable())
         {
-            recorder = Log4jLogging.addLog4jAppender(recorderFactory, ignoredLoggers);
+            recorder = Log4jLogging.addLog4jAppender(recorderFactory, ignoredLoggers, recordingConfig);
         }
         else // J.U.L. is always available
         {
-            recorder = JulLogging.addJulHandler(recorderFactory, ignoredLoggers);
+            recorder = JulLogging.addJulHandler(recorderFactory, ignoredLoggers, recordingConfig);
         }
     }
 
@@ -93,4 +102,31 @@ public class Lifecycle
     {
     }
 
+    /**
+     * Binds the request's recorder to the current thread; see {@link RecorderBinding}.
+     */
+    public RecorderBinding bindRequest(WebErrorRecorder webErrorRecorder)
+    {
+        RecorderBinding binding = new RecorderBinding(webErrorRecorder, recordingConfig.getLogRecordCapacity());
+        resumeRequest(binding);
+        return binding;
+    }
+
+    /**
+     * Binds a request's recorder to the current thread again, when async processing is dispatched to it.
+     */
+    public void resumeRequest(RecorderBinding binding)
+    {
+        binding.bind();
+        if (recorder != null && recordingConfig.isPropagateRequestToken())
+            recorder.requestBound(binding.getToken());
+    }
+
+    public void unbindRequest()
+    {
+        RecorderBinding.unbind();
+        if (recorder != null && recordingConfig.isPropagateRequestToken())
+            recorder.requestUnbound();
+    }
+
 }
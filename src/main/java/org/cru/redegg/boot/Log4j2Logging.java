@@ -1,10 +1,11 @@
 package org.cru.redegg.boot;
 
+import org.cru.redegg.recording.LoggerNameRules;
+import org.cru.redegg.recording.RecordingConfig;
 import org.cru.redegg.recording.api.LoggingRecorder;
 import org.cru.redegg.recording.api.RecorderFactory;
 import org.cru.redegg.recording.log4j2.Log4j2Recorder;
 
-import java.util.Set;
 
 public class Log4j2Logging
 {
@@ -23,8 +24,9 @@ public class Log4j2Logging
 
     public static LoggingRecorder addLog4j2Appender(
         RecorderFactory recorderFactory,
-        Set<String> ignoredLoggers)
+        LoggerNameRules ignoredLoggers,
+        RecordingConfig config)
     {
-        return Log4j2Recorder.add(recorderFactory, ignoredLoggers);
+        return Log4j2Recorder.add(recorderFactory, ignoredLoggers, config);
     }
 }
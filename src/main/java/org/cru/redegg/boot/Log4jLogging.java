@@ -1,10 +1,11 @@
 package org.cru.redegg.boot;
 
+import org.cru.redegg.recording.LoggerNameRules;
+import org.cru.redegg.recording.RecordingConfig;
 import org.cru.redegg.recording.api.LoggingRecorder;
 import org.cru.redegg.recording.api.RecorderFactory;
 import org.cru.redegg.recording.log4j.Log4jRecorder;
 
-import java.util.Set;
 
 public class Log4jLogging
 {
@@ -23,8 +24,9 @@ public class Log4jLogging
 
     public static LoggingRecorder addLog4jAppender(
         RecorderFactory recorderFactory,
-        Set<String> ignoredLoggers)
+        LoggerNameRules ignoredLoggers,
+        RecordingConfig config)
     {
-        return Log4jRecorder.add(recorderFactory, ignoredLoggers);
+        return Log4jRecorder.add(recorderFactory, ignoredLoggers, config);
     }
 }
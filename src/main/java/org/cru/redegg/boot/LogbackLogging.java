@@ -1,12 +1,12 @@
 package org.cru.redegg.boot;
 
 
+import org.cru.redegg.recording.LoggerNameRules;
+import org.cru.redegg.recording.RecordingConfig;
 import org.cru.redegg.recording.api.LoggingRecorder;
 import org.cru.redegg.recording.api.RecorderFactory;
 import org.cru.redegg.recording.logback.LogbackRecorder;
 
-import java.util.Set;
-
 /**
  * @author Matt Drees
  */
@@ -27,8 +27,9 @@ public class LogbackLogging
 
     public static LoggingRecorder addLogbackAppender(
         RecorderFactory recorderFactory,
-        Set<String> ignoredLoggers)
+        LoggerNameRules ignoredLoggers,
+        RecordingConfig config)
     {
-        return LogbackRecorder.add(recorderFactory, ignoredLoggers);
+        return LogbackRecorder.add(recorderFactory, ignoredLoggers, config);
     }
 }
@@ -1,27 +1,35 @@
 package org.cru.redegg.jaxrs;
 
 import com.google.common.base.Charsets;
-import com.google.common.io.ByteStreams;
 import org.cru.redegg.boot.Initializer;
-import org.cru.redegg.manual.ManualRecorderFactory;
+import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.recording.RecordingConfig;
 import org.cru.redegg.recording.api.RecorderFactory;
 import org.cru.redegg.recording.api.WebErrorRecorder;
+import org.cru.redegg.recording.entity.CapturedBytes;
+import org.cru.redegg.recording.entity.TeeInputStream;
 import org.cru.redegg.util.ErrorLog;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.servlet.ServletContext;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ResourceInfo;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.ext.Provider;
 import javax.ws.rs.ext.ReaderInterceptor;
 import javax.ws.rs.ext.ReaderInterceptorContext;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.nio.charset.Charset;
 
 /**
+ * Captures the first part of each request entity as its MessageBodyReader reads it,
+ * without buffering the entity up front.
+ * The capture is only decoded (and sanitized) if a report is sent.
+ * Resource methods annotated with {@link SkipEntityCapture} are left alone.
+ *
  * @author Matt Drees
  */
 @Provider
@@ -34,9 +42,16 @@ public class RecordingReaderInterceptor implements ReaderInterceptor
     @Inject
     ErrorLog errorLog;
 
+    @Inject
+    @Selected
+    RecordingConfig recordingConfig;
+
     @Context
     ServletContext servletContext;
 
+    @Context
+    ResourceInfo resourceInfo;
+
 
 
     @PostConstruct
@@ -48,25 +63,30 @@ public class RecordingReaderInterceptor implements ReaderInterceptor
     @Override
     public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException, WebApplicationException
     {
-        //for now, we buffer all request entities.
-        //FUTURE: enable a way to opt-out of this, if requests are too massive to be buffered in memory
-        //TODO: add a note in the docs about this
-
-        byte[] content = ByteStreams.toByteArray(context.getInputStream());
-        recordContentIfPossible(context, content);
-        context.setInputStream(new ByteArrayInputStream(content));
+        teeContentIfPossible(context);
         return context.proceed();
     }
 
-    private void recordContentIfPossible(ReaderInterceptorContext context, byte[] content)
+    private boolean isSkipped()
+    {
+        if (resourceInfo == null)
+            return false;
+        Method resourceMethod = resourceInfo.getResourceMethod();
+        Class<?> resourceClass = resourceInfo.getResourceClass();
+        return (resourceMethod != null && resourceMethod.isAnnotationPresent(SkipEntityCapture.class)) ||
+            (resourceClass != null && resourceClass.isAnnotationPresent(SkipEntityCapture.class));
+    }
+
+    private void teeContentIfPossible(ReaderInterceptorContext context)
     {
         try
         {
-            Charset charsetGuess = guessCharset(context);
-            String representation = new String(content, charsetGuess);
-
+            if (recordingConfig.getEntityCaptureLimit() == 0 || isSkipped())
+                return;
+            CapturedBytes capture = CapturedBytes.create(recordingConfig, guessCharset(context));
             WebErrorRecorder recorder = recorderFactory.getWebRecorder();
-            recorder.recordEntityRepresentation(representation);
+            recorder.recordEntity(capture);
+            context.setInputStream(new TeeInputStream(context.getInputStream(), capture));
         }
         catch (Throwable throwable)
         {
@@ -92,4 +112,9 @@ public class RecordingReaderInterceptor implements ReaderInterceptor
     {
         this.recorderFactory = recorderFactory;
     }
+
+    public void setRecordingConfig(RecordingConfig recordingConfig)
+    {
+        this.recordingConfig = recordingConfig;
+    }
 }
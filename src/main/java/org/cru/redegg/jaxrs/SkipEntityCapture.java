@@ -0,0 +1,21 @@
+package org.cru.redegg.jaxrs;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a resource method (or every method of a resource class) whose request entities
+ * {@link RecordingReaderInterceptor} should leave alone,
+ * such as streaming uploads that shouldn't pay for a copy of their content.
+ *
+ * @author Matt Drees
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SkipEntityCapture
+{
+}
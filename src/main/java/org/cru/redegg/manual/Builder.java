@@ -3,6 +3,7 @@ package org.cru.redegg.manual;
 import java.time.Clock;
 import org.cru.redegg.boot.Lifecycle;
 import org.cru.redegg.jaxrs.RecordingReaderInterceptor;
+import org.cru.redegg.recording.RecordingConfig;
 import org.cru.redegg.recording.StuckThreadMonitorConfig;
 import org.cru.redegg.recording.api.EntitySanitizer;
 import org.cru.redegg.recording.api.ParameterSanitizer;
@@ -10,19 +11,41 @@ import org.cru.redegg.recording.api.RecorderFactory;
 import org.cru.redegg.recording.api.RequestMatcher;
 import org.cru.redegg.recording.api.RequestMatchers;
 import org.cru.redegg.recording.api.Serializer;
+import org.cru.redegg.recording.api.UnitsOfWork;
 import org.cru.redegg.recording.api.WebErrorRecorder;
+import org.cru.redegg.recording.concurrent.RecorderPropagator;
 import org.cru.redegg.recording.gson.GsonSerializer;
 import org.cru.redegg.recording.impl.DefaultErrorRecorder;
 import org.cru.redegg.recording.impl.DefaultStuckThreadMonitor;
+import org.cru.redegg.recording.impl.DefaultUnitsOfWork;
 import org.cru.redegg.recording.impl.DefaultWebErrorRecorder;
 import org.cru.redegg.recording.impl.HyperConservativeEntitySanitizer;
 import org.cru.redegg.recording.impl.HyperConservativeParameterSanitizer;
+import org.cru.redegg.recording.impl.LogEventBufferPool;
 import org.cru.redegg.reporting.DatadogEnricher;
+import org.cru.redegg.reporting.DeliveryCounters;
+import org.cru.redegg.reporting.ErrorQueueConfig;
 import org.cru.redegg.reporting.InMemoryErrorQueue;
 import org.cru.redegg.reporting.LoggingReporter;
+import org.cru.redegg.reporting.ManagedErrorQueue;
+import org.cru.redegg.reporting.QueueType;
+import org.cru.redegg.reporting.ReportDelivery;
 import org.cru.redegg.reporting.api.ErrorReporter;
+import org.cru.redegg.reporting.breaker.CircuitBreaker;
+import org.cru.redegg.reporting.breaker.CircuitBreakerConfig;
+import org.cru.redegg.reporting.breaker.CircuitBreakingReporter;
+import org.cru.redegg.reporting.common.HttpTransport;
+import org.cru.redegg.reporting.common.HttpTransportConfig;
+import org.cru.redegg.reporting.common.HttpTransports;
+import org.cru.redegg.reporting.dedup.DeduplicatingReporter;
+import org.cru.redegg.reporting.dedup.DeduplicationConfig;
+import org.cru.redegg.reporting.dedup.ErrorFingerprint;
+import org.cru.redegg.reporting.durable.DurableErrorQueue;
 import org.cru.redegg.reporting.errbit.ErrbitConfig;
 import org.cru.redegg.reporting.errbit.NativeErrbitReporter;
+import org.cru.redegg.reporting.ratelimit.RateLimitConfig;
+import org.cru.redegg.reporting.ratelimit.ReportRateLimiter;
+import org.cru.redegg.reporting.ring.RingBufferErrorQueue;
 import org.cru.redegg.reporting.rollbar.RollbarConfig;
 import org.cru.redegg.reporting.rollbar.RollbarReporter;
 import org.cru.redegg.servlet.ParameterCategorizer;
@@ -39,6 +62,11 @@ public class Builder
 {
     private final static Builder INSTANCE = new Builder();
 
+    /**
+     * Idle log event buffers kept for reuse by later requests; in-flight requests beyond this allocate their own.
+     */
+    private final static int MAX_IDLE_LOG_EVENT_BUFFERS = 64;
+
     public static Builder getInstance()
     {
         return INSTANCE;
@@ -66,11 +94,26 @@ public class Builder
     private final ReplaceableRequestMatcher streamPreservationMatcher = new ReplaceableRequestMatcher(
         RequestMatchers.none());
 
+    private final ReplaceableRequestMatcher nonBlockingEntityReadsMatcher = new ReplaceableRequestMatcher(
+        RequestMatchers.none());
+
 
     private volatile ErrbitConfig errbitConfig;
     private volatile RollbarConfig rollbarConfig;
+    private volatile ErrorQueueConfig errorQueueConfig = new ErrorQueueConfig();
     private volatile DefaultStuckThreadMonitor stuckThreadMonitor;
-    private volatile InMemoryErrorQueue queue;
+    private volatile DeduplicationConfig deduplicationConfig = new DeduplicationConfig();
+    private volatile RateLimitConfig rateLimitConfig = new RateLimitConfig();
+    private volatile CircuitBreakerConfig circuitBreakerConfig = new CircuitBreakerConfig();
+    private volatile HttpTransport httpTransport;
+    /** the transport built for the current queue's reporter, if the app didn't provide one */
+    private volatile HttpTransport builtHttpTransport;
+    private volatile HttpTransportConfig httpTransportConfig = new HttpTransportConfig();
+    private volatile RecordingConfig recordingConfig = new RecordingConfig();
+    private volatile LogEventBufferPool logEventBufferPool;
+    private volatile DefaultUnitsOfWork unitsOfWork;
+    private volatile ManagedErrorQueue queue;
+    private volatile DeduplicatingReporter deduplicatingReporter;
 
     public void init(RedEggServletListener listener)
     {
@@ -79,6 +122,7 @@ public class Builder
         listener.setLifecycle(buildLifecycle());
         listener.setRecorderFactory(buildRecorderFactory());
         listener.setSanitizer(parameterSanitizer);
+        listener.setRecordingConfig(recordingConfig);
     }
 
     private Clock getClock()
@@ -100,6 +144,8 @@ public class Builder
     {
         filter.setErrorLog(buildErrorLog());
         filter.setFactory(buildRecorderFactory());
+        filter.setRecordingConfig(recordingConfig);
+        filter.setNonBlockingEntityReadsMatcher(nonBlockingEntityReadsMatcher);
     }
 
     ManualRecorderFactory buildRecorderFactory()
@@ -120,7 +166,33 @@ public class Builder
 
     DefaultErrorRecorder buildDefaultErrorRecorder()
     {
-        return new DefaultErrorRecorder(buildQueue(), buildSerializer());
+        return new DefaultErrorRecorder(buildQueue(), buildSerializer(), recordingConfig, buildLogEventBufferPool());
+    }
+
+    synchronized LogEventBufferPool buildLogEventBufferPool()
+    {
+        if (logEventBufferPool == null)
+            logEventBufferPool = new LogEventBufferPool(recordingConfig, MAX_IDLE_LOG_EVENT_BUFFERS);
+        return logEventBufferPool;
+    }
+
+    /**
+     * Units of work pool their recorders, so they are shared.
+     * The recorders hold on to the queue, so this is rebuilt whenever the queue is.
+     */
+    synchronized DefaultUnitsOfWork buildUnitsOfWork()
+    {
+        if (unitsOfWork == null)
+        {
+            unitsOfWork = new DefaultUnitsOfWork(
+                buildQueue(),
+                buildSerializer(),
+                recordingConfig,
+                buildLogEventBufferPool(),
+                buildStuckThreadMonitor(),
+                getClock());
+        }
+        return unitsOfWork;
     }
 
     Serializer buildSerializer()
@@ -142,29 +214,92 @@ public class Builder
         return stuckThreadMonitor;
     }
 
-    synchronized InMemoryErrorQueue buildQueue()
+    synchronized ManagedErrorQueue buildQueue()
     {
         if (queue == null)
-            queue = new InMemoryErrorQueue(
-                buildPrimaryErrorReporter(),
-                buildFallbackErrorReporter(),
-                buildErrorLog(),
-                new DatadogEnricher());
+        {
+            if (errorQueueConfig.getQueueType() == QueueType.RING_BUFFER)
+                queue = new RingBufferErrorQueue(buildReportDelivery(errorQueueConfig), errorQueueConfig);
+            else if (errorQueueConfig.getQueueType() == QueueType.DURABLE)
+                queue = new DurableErrorQueue(buildReportDelivery(null), errorQueueConfig);
+            else
+                queue = new InMemoryErrorQueue(
+                    buildDeliveringReporter(),
+                    buildFallbackErrorReporter(),
+                    buildErrorLog(),
+                    new DatadogEnricher(),
+                    errorQueueConfig,
+                    buildRateLimiter());
+        }
         return queue;
     }
 
+    /**
+     * @param retryConfig the retry settings, or null for queues that retry reports themselves
+     */
+    private ReportDelivery buildReportDelivery(ErrorQueueConfig retryConfig)
+    {
+        return new ReportDelivery(
+            buildDeliveringReporter(),
+            buildFallbackErrorReporter(),
+            buildErrorLog(),
+            new DatadogEnricher(),
+            new DeliveryCounters(),
+            buildRateLimiter(),
+            retryConfig);
+    }
+
+    private ReportRateLimiter buildRateLimiter()
+    {
+        return new ReportRateLimiter(
+            rateLimitConfig,
+            ErrorFingerprint.create(deduplicationConfig, errbitConfig));
+    }
+
     private ErrorLog buildErrorLog()
     {
         return new ErrorLog();
     }
 
+    /**
+     * Returns the primary reporter, wrapped with the stages that run before it on the delivery thread.
+     */
+    private ErrorReporter buildDeliveringReporter()
+    {
+        ErrorReporter reporter = buildPrimaryErrorReporter();
+        CircuitBreaker breaker = circuitBreakerConfig.isEnabled()
+            ? new CircuitBreaker(circuitBreakerConfig, buildErrorLog())
+            : null;
+        if (deduplicationConfig.isEnabled())
+        {
+            ErrorReporter flushReporter = breaker != null ? new CircuitBreakingReporter(reporter, breaker) : reporter;
+            deduplicatingReporter = new DeduplicatingReporter(
+                reporter,
+                deduplicationConfig,
+                ErrorFingerprint.create(deduplicationConfig, errbitConfig),
+                new ReportDelivery(
+                    flushReporter,
+                    buildFallbackErrorReporter(),
+                    buildErrorLog(),
+                    new DatadogEnricher(),
+                    new DeliveryCounters(),
+                    ReportRateLimiter.UNLIMITED,
+                    errorQueueConfig),
+                getClock());
+            reporter = deduplicatingReporter;
+        }
+        if (breaker != null)
+            reporter = new CircuitBreakingReporter(reporter, breaker);
+        return reporter;
+    }
+
     ErrorReporter buildPrimaryErrorReporter()
     {
         if (errbitConfig != null)
-            return new NativeErrbitReporter(errbitConfig);
+            return new NativeErrbitReporter(errbitConfig, getHttpTransport());
         else if (rollbarConfig != null)
         {
-            return new RollbarReporter(rollbarConfig);
+            return new RollbarReporter(rollbarConfig, getHttpTransport());
         }
         else
             return buildFallbackErrorReporter();
@@ -208,13 +343,90 @@ public class Builder
         this.rollbarConfig = rollbarConfig;
     }
 
+    public void setErrorQueueConfig(ErrorQueueConfig errorQueueConfig)
+    {
+        /* see note in setErrbitConfig() */
+        shutdownQueue();
+        this.errorQueueConfig = errorQueueConfig;
+    }
+
+    public void setDeduplicationConfig(DeduplicationConfig deduplicationConfig)
+    {
+        /* see note in setErrbitConfig() */
+        shutdownQueue();
+        this.deduplicationConfig = deduplicationConfig;
+    }
+
+    public void setRateLimitConfig(RateLimitConfig rateLimitConfig)
+    {
+        /* see note in setErrbitConfig() */
+        shutdownQueue();
+        this.rateLimitConfig = rateLimitConfig;
+    }
+
+    public void setCircuitBreakerConfig(CircuitBreakerConfig circuitBreakerConfig)
+    {
+        /* see note in setErrbitConfig() */
+        shutdownQueue();
+        this.circuitBreakerConfig = circuitBreakerConfig;
+    }
+
+    public void setHttpTransport(HttpTransport httpTransport)
+    {
+        /* see note in setErrbitConfig() */
+        shutdownQueue();
+        this.httpTransport = httpTransport;
+    }
+
+    public void setHttpTransportConfig(HttpTransportConfig httpTransportConfig)
+    {
+        /* see note in setErrbitConfig() */
+        shutdownQueue();
+        this.httpTransportConfig = httpTransportConfig;
+    }
+
+    /**
+     * The recording config is read when the application starts, so this must be called before then.
+     */
+    public void setRecordingConfig(RecordingConfig recordingConfig)
+    {
+        this.recordingConfig = recordingConfig;
+        this.logEventBufferPool = null;
+        this.unitsOfWork = null;
+    }
+
+    RecordingConfig getRecordingConfig()
+    {
+        return recordingConfig;
+    }
+
+    private HttpTransport getHttpTransport()
+    {
+        if (httpTransport != null)
+            return httpTransport;
+        if (builtHttpTransport == null)
+            builtHttpTransport = HttpTransports.create(httpTransportConfig);
+        return builtHttpTransport;
+    }
+
     private void shutdownQueue()
     {
+        unitsOfWork = null;
         if (queue != null)
         {
             queue.shutdown();
             queue = null;
         }
+        if (deduplicatingReporter != null)
+        {
+            deduplicatingReporter.shutdown();
+            deduplicatingReporter = null;
+        }
+        if (builtHttpTransport != null)
+        {
+            builtHttpTransport.shutdown();
+            builtHttpTransport = null;
+        }
     }
 
     private void shutdownStuckThreadMonitor()
@@ -231,13 +443,30 @@ public class Builder
         return buildRecorderFactory();
     }
 
+    public UnitsOfWork getUnitsOfWork()
+    {
+        return buildUnitsOfWork();
+    }
+
+    public RecorderPropagator getRecorderPropagator()
+    {
+        /* RecorderPropagator is stateless; multiple instances are fine */
+        return new RecorderPropagator(buildRecorderFactory());
+    }
+
     public void init(RecordingReaderInterceptor interceptor)
     {
         interceptor.setFactory(buildRecorderFactory());
+        interceptor.setRecordingConfig(recordingConfig);
     }
 
     public void setEntityStreamPreservationMatcher(RequestMatcher matcher)
     {
         streamPreservationMatcher.replace(matcher);
     }
+
+    public void setNonBlockingEntityReadsMatcher(RequestMatcher matcher)
+    {
+        nonBlockingEntityReadsMatcher.replace(matcher);
+    }
 }
@@ -12,7 +12,7 @@ public class ManualLifecycle extends Lifecycle
 
     public ManualLifecycle(RecorderFactory recorderFactory, Builder builder)
     {
-        super(recorderFactory);
+        super(recorderFactory, builder.getRecordingConfig());
         this.builder = builder;
     }
 
@@ -3,6 +3,7 @@ package org.cru.redegg.manual;
 import org.cru.redegg.recording.api.ErrorRecorder;
 import org.cru.redegg.recording.api.RecorderFactory;
 import org.cru.redegg.recording.api.WebErrorRecorder;
+import org.cru.redegg.recording.impl.RecorderBinding;
 
 /**
  * @author Matt Drees
@@ -20,15 +21,27 @@ public class ManualRecorderFactory implements RecorderFactory
     @Override
     public ErrorRecorder getRecorder()
     {
+        RecorderBinding binding = RecorderBinding.current();
+        if (binding != null)
+            return binding.getRecorder();
         if (WebRequest.isActive())
             return getWebRecorder();
         else
             return builder.buildDefaultErrorRecorder();
     }
 
+    @Override
+    public boolean isRecorderActive()
+    {
+        return RecorderBinding.current() != null || WebRequest.isActive();
+    }
+
     @Override
     public WebErrorRecorder getWebRecorder()
     {
+        WebErrorRecorder bound = RecorderBinding.get();
+        if (bound != null)
+            return bound;
         return WebRequest.get().getRecorder();
     }
 }
@@ -2,6 +2,10 @@ package org.cru.redegg.manual;
 
 import org.cru.redegg.recording.api.EntitySanitizer;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
 /**
  * @author Matt Drees
  */
@@ -26,4 +30,10 @@ public class ReplaceableEntitySanitizer implements EntitySanitizer
         return delegate.sanitizeEntity(entityRepresentation);
     }
 
+    @Override
+    public void sanitizeEntity(Reader entity, Writer out) throws IOException
+    {
+        delegate.sanitizeEntity(entity, out);
+    }
+
 }
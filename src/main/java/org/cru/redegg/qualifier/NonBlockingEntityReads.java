@@ -0,0 +1,19 @@
+package org.cru.redegg.qualifier;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Identifies the {@link org.cru.redegg.recording.api.RequestMatcher}
+ * for requests whose entities the application may read with a Servlet 3.1 {@code ReadListener}.
+ *
+ * @author Matt Drees
+ */
+@Qualifier
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface NonBlockingEntityReads
+{
+}
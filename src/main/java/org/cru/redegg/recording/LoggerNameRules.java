@@ -0,0 +1,186 @@
+package org.cru.redegg.recording;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A set of logger name patterns, compiled into a trie of name segments.
+ *
+ * <p>
+ * Patterns are matched against the dot-separated segments of a logger name:
+ * <ul>
+ *     <li>{@code org.example.Service} matches only that logger</li>
+ *     <li>{@code org.example.*} matches {@code org.example} and every logger beneath it</li>
+ *     <li>a {@code *} segment elsewhere matches any one segment,
+ *     so {@code org.*.sender.Sender} matches {@code org.example.sender.Sender}</li>
+ * </ul>
+ *
+ * <p>
+ * Results are cached per logger name, so checking a logger seen before is a single map lookup.
+ * Rules compiled from the same patterns are shared, so their cache is too.
+ *
+ * @author Matt Drees
+ */
+public final class LoggerNameRules
+{
+    private static final int MAX_CACHED_NAMES = 8192;
+    private static final int MAX_SHARED_RULES = 64;
+
+    private static final Splitter SEGMENTS = Splitter.on('.');
+    private static final LoggerNameRules NONE = new LoggerNameRules(ImmutableSet.<String>of(), new Node());
+    private static final ConcurrentMap<Set<String>, LoggerNameRules> sharedRules = new ConcurrentHashMap<>();
+
+    private final Set<String> patterns;
+    private final Node root;
+    private final ConcurrentMap<String, Boolean> cache = new ConcurrentHashMap<>();
+
+    private LoggerNameRules(Set<String> patterns, Node root)
+    {
+        this.patterns = patterns;
+        this.root = root;
+    }
+
+    /**
+     * Returns rules that match no logger.
+     */
+    public static LoggerNameRules none()
+    {
+        return NONE;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a pattern is empty, has an empty segment,
+     * or uses {@code *} as part of a segment
+     */
+    public static LoggerNameRules compile(Collection<String> patterns)
+    {
+        if (patterns.isEmpty())
+            return NONE;
+        Set<String> key = ImmutableSet.copyOf(patterns);
+        LoggerNameRules rules = sharedRules.get(key);
+        if (rules != null)
+            return rules;
+
+        Node root = new Node();
+        for (String pattern : key)
+        {
+            root.add(pattern);
+        }
+        rules = new LoggerNameRules(key, root);
+        if (sharedRules.size() < MAX_SHARED_RULES)
+        {
+            LoggerNameRules existing = sharedRules.putIfAbsent(key, rules);
+            if (existing != null)
+                rules = existing;
+        }
+        return rules;
+    }
+
+    public Set<String> getPatterns()
+    {
+        return patterns;
+    }
+
+    public boolean isEmpty()
+    {
+        return patterns.isEmpty();
+    }
+
+    public boolean matches(String loggerName)
+    {
+        if (loggerName == null || patterns.isEmpty())
+            return false;
+        Boolean matched = cache.get(loggerName);
+        if (matched == null)
+        {
+            matched = root.matches(loggerName, 0);
+            if (cache.size() < MAX_CACHED_NAMES)
+                cache.put(loggerName, matched);
+        }
+        return matched;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LoggerNameRules" + patterns;
+    }
+
+    private static class Node
+    {
+        private final Map<String, Node> children = new HashMap<>();
+        private Node anySegment;
+
+        /** the name ending at this node matches */
+        private boolean terminal;
+
+        /** the name ending at this node, and every name beneath it, matches */
+        private boolean subtree;
+
+        void add(String pattern)
+        {
+            if (pattern == null || pattern.isEmpty())
+                throw new IllegalArgumentException("logger pattern must not be empty");
+            Node node = this;
+            Node parent = null;
+            for (String segment : SEGMENTS.split(pattern))
+            {
+                if (segment.isEmpty())
+                    throw new IllegalArgumentException("logger pattern '" + pattern + "' has an empty segment");
+                if (segment.contains("*") && !segment.equals("*"))
+                    throw new IllegalArgumentException("'*' must be a whole segment of logger pattern '" + pattern + "'");
+                parent = node;
+                node = node.child(segment);
+            }
+
+            if (node == parent.anySegment)
+            {
+                // a trailing '*' covers the parent and everything beneath it
+                parent.subtree = true;
+                if (node.children.isEmpty() && node.anySegment == null && !node.terminal && !node.subtree)
+                    parent.anySegment = null;
+            }
+            else
+            {
+                node.terminal = true;
+            }
+        }
+
+        private Node child(String segment)
+        {
+            if (segment.equals("*"))
+            {
+                if (anySegment == null)
+                    anySegment = new Node();
+                return anySegment;
+            }
+            return children.computeIfAbsent(segment, s -> new Node());
+        }
+
+        boolean matches(String name, int start)
+        {
+            if (subtree)
+                return true;
+            int end = name.indexOf('.', start);
+            String segment = end < 0 ? name.substring(start) : name.substring(start, end);
+            Node child = children.get(segment);
+            if (child != null && child.matchesRest(name, end))
+                return true;
+            return anySegment != null && anySegment.matchesRest(name, end);
+        }
+
+        private boolean matchesRest(String name, int end)
+        {
+            if (end < 0)
+                return terminal || subtree;
+            return matches(name, end + 1);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.cru.redegg.recording;
+
+import com.google.common.collect.ImmutableSet;
+import org.cru.redegg.qualifier.Fallback;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Configures how red-egg's logging appenders capture log events.
+ *
+ * @author Matt Drees
+ */
+@Fallback
+public class RecordingConfig
+{
+
+    private static final int DEFAULT_LOG_RECORD_CAPACITY = 100;
+    private static final int DEFAULT_ENTITY_CAPTURE_LIMIT = 64 * 1024;
+
+    private boolean includeCallerData = false;
+    private int logRecordCapacity = DEFAULT_LOG_RECORD_CAPACITY;
+    private int pinnedLogRecords = 0;
+    private boolean propagateRequestToken = false;
+    private boolean deferRequestSnapshot = false;
+    private int entityCaptureLimit = DEFAULT_ENTITY_CAPTURE_LIMIT;
+    private long entitySpillLimit = 0;
+    private Path entitySpillDirectory;
+    private Set<String> ignoredLoggers = ImmutableSet.of();
+    private Set<String> loggersWithIgnoredErrors = ImmutableSet.of();
+
+    public boolean isIncludeCallerData()
+    {
+        return includeCallerData;
+    }
+
+    /**
+     * Sets whether the class and method that logged each event are recorded, and shown in reports.
+     * Finding them requires walking the logging thread's stack for every captured event,
+     * so this is off by default.
+     */
+    public void setIncludeCallerData(boolean includeCallerData)
+    {
+        this.includeCallerData = includeCallerData;
+    }
+
+    public int getLogRecordCapacity()
+    {
+        return logRecordCapacity;
+    }
+
+    /**
+     * Sets how many log records are kept for each request (or other unit of work). Defaults to 100.
+     * Once this many have been recorded, the oldest unpinned records are dropped,
+     * and the report notes how many were dropped.
+     */
+    public void setLogRecordCapacity(int logRecordCapacity)
+    {
+        this.logRecordCapacity = logRecordCapacity;
+    }
+
+    public int getPinnedLogRecords()
+    {
+        return pinnedLogRecords;
+    }
+
+    /**
+     * Sets how many of the first log records in a request are always kept, out of the log record capacity.
+     * Defaults to 0, so that only the most recent records are kept.
+     */
+    public void setPinnedLogRecords(int pinnedLogRecords)
+    {
+        this.pinnedLogRecords = pinnedLogRecords;
+    }
+
+    public boolean isPropagateRequestToken()
+    {
+        return propagateRequestToken;
+    }
+
+    /**
+     * Sets whether a token identifying the current request is put into the logging framework's context,
+     * so that events handled on another thread, such as by log4j2's async loggers,
+     * are still recorded with the request that logged them.
+     * Currently only the log4j2 appender uses this. Defaults to false.
+     */
+    public void setPropagateRequestToken(boolean propagateRequestToken)
+    {
+        this.propagateRequestToken = propagateRequestToken;
+    }
+
+    public boolean isDeferRequestSnapshot()
+    {
+        return deferRequestSnapshot;
+    }
+
+    /**
+     * Sets whether a request's headers and parameters are captured (and sanitized) only if they are needed for a report:
+     * when the request first records a warning or error, or when it completes, if a report will be sent.
+     * Otherwise, they are captured when each request starts. Defaults to false.
+     *
+     * When this is set, reports for stuck requests don't include headers or parameters,
+     * and form parameters are missing if the application read the request body itself before the capture.
+     */
+    public void setDeferRequestSnapshot(boolean deferRequestSnapshot)
+    {
+        this.deferRequestSnapshot = deferRequestSnapshot;
+    }
+
+    public int getEntityCaptureLimit()
+    {
+        return entityCaptureLimit;
+    }
+
+    /**
+     * Sets how much of each request entity is kept for reports, in bytes (or characters, if the app reads it as text).
+     * Entities are passed through to the application as it reads them, and only this much is copied.
+     * Defaults to 64 KiB; 0 disables capturing entities.
+     */
+    public void setEntityCaptureLimit(int entityCaptureLimit)
+    {
+        this.entityCaptureLimit = entityCaptureLimit;
+    }
+
+    public long getEntitySpillLimit()
+    {
+        return entitySpillLimit;
+    }
+
+    /**
+     * Lets large request entities be captured beyond the {@linkplain #setEntityCaptureLimit(int) capture limit}
+     * by writing the rest to a temp file, up to this many bytes in all.
+     * The file is deleted when the request completes, unless a report needs it;
+     * then it is deleted once the report has been delivered.
+     * Entities that the application reads as text are not spilled.
+     * Defaults to 0, which disables spilling.
+     */
+    public void setEntitySpillLimit(long entitySpillLimit)
+    {
+        this.entitySpillLimit = entitySpillLimit;
+    }
+
+    public Path getEntitySpillDirectory()
+    {
+        return entitySpillDirectory;
+    }
+
+    /**
+     * Sets where spilled entities are written. Defaults to the system's temp directory.
+     */
+    public void setEntitySpillDirectory(Path entitySpillDirectory)
+    {
+        this.entitySpillDirectory = entitySpillDirectory;
+    }
+
+    public Set<String> getIgnoredLoggers()
+    {
+        return ignoredLoggers;
+    }
+
+    /**
+     * Sets the loggers whose events are never recorded, in addition to red-egg's own.
+     * Each is either a logger name, or a pattern as described in {@link LoggerNameRules}
+     * (so {@code org.hibernate.*} ignores hibernate's loggers).
+     */
+    public void setIgnoredLoggers(Collection<String> ignoredLoggers)
+    {
+        this.ignoredLoggers = ImmutableSet.copyOf(ignoredLoggers);
+    }
+
+    public Set<String> getLoggersWithIgnoredErrors()
+    {
+        return loggersWithIgnoredErrors;
+    }
+
+    /**
+     * Sets the loggers whose warnings and errors are recorded, but don't trigger a notification.
+     * Like {@link #setIgnoredLoggers(Collection)}, these may be names or patterns.
+     */
+    public void setLoggersWithIgnoredErrors(Collection<String> loggersWithIgnoredErrors)
+    {
+        this.loggersWithIgnoredErrors = ImmutableSet.copyOf(loggersWithIgnoredErrors);
+    }
+
+    public void validate()
+    {
+        if (logRecordCapacity < 1)
+            throw new IllegalArgumentException("log record capacity must be at least 1");
+        if (pinnedLogRecords < 0 || pinnedLogRecords >= logRecordCapacity)
+            throw new IllegalArgumentException("pinned log records must be at least 0 and less than the log record capacity");
+        if (entityCaptureLimit < 0)
+            throw new IllegalArgumentException("entity capture limit must not be negative");
+        if (entitySpillLimit != 0 && entitySpillLimit <= entityCaptureLimit)
+            throw new IllegalArgumentException("entity spill limit must be 0 or greater than the entity capture limit");
+        LoggerNameRules.compile(ignoredLoggers);
+        LoggerNameRules.compile(loggersWithIgnoredErrors);
+    }
+}
@@ -4,6 +4,9 @@ import org.cru.redegg.reporting.ErrorReport;
 import org.cru.redegg.reporting.WebContext;
 import org.cru.redegg.reporting.api.ErrorQueue;
 
+import java.time.Duration;
+import java.time.Instant;
+
 /**
  * A tool for monitoring active requests, and notifying if any request seems 'stuck'
  * (i.e. it takes too long to complete).
@@ -40,4 +43,18 @@ public interface StuckThreadMonitor
      * @param webContext
      */
     void finishMonitoringRequest(WebContext webContext);
+
+    /**
+     * Begin monitoring a {@linkplain org.cru.redegg.recording.api.UnitOfWork unit of work}
+     * that is being processed on the current thread.
+     * As with requests, if it is not finished in time,
+     * an {@link ErrorReport} with a stack trace of its thread is enqueued.
+     *
+     * @param unit identifies the unit of work; the same object must be passed to {@link #finishMonitoringUnitOfWork(Object)}
+     * @param name the unit of work's name, which is included in the report
+     * @param timeLimit how long the unit of work may take, or null to use the same threshold as requests
+     */
+    void startMonitoringUnitOfWork(Object unit, String name, Instant start, Duration timeLimit);
+
+    void finishMonitoringUnitOfWork(Object unit);
 }
@@ -0,0 +1,45 @@
+package org.cru.redegg.recording.api;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * A request entity (or the first part of one) that is captured as the application reads it.
+ * It is only decoded if it is needed for a report.
+ *
+ * @author Matt Drees
+ */
+public interface CapturedEntity
+{
+    /**
+     * Returns what has been captured so far, as text.
+     * If the entity was longer than what could be captured, the text ends with "...".
+     */
+    String decode();
+
+    /**
+     * Returns true if part of this capture was written to disk rather than kept in memory.
+     * Such captures may be large, so they should be read with {@link #openReader()} instead of being decoded.
+     */
+    default boolean isSpilled()
+    {
+        return false;
+    }
+
+    /**
+     * Opens a reader over the same text that {@link #decode()} returns, without holding all of it in memory at once.
+     */
+    default Reader openReader() throws IOException
+    {
+        return new StringReader(decode());
+    }
+
+    /**
+     * Releases the capture's buffers. The entity may not be decoded afterwards.
+     * Anything written to the capture afterwards is ignored,
+     * since the stream it tees may still be read.
+     * This may be called more than once.
+     */
+    void release();
+}
@@ -0,0 +1,167 @@
+package org.cru.redegg.recording.api;
+
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * A log event captured by one of red-egg's appenders.
+ *
+ * Capturing an event only keeps references to its essential fields.
+ * The message is formatted, and the event is converted to a {@link LogRecord},
+ * only if a report that includes the event is actually built.
+ * (So, as with an asynchronous appender, message arguments are formatted as they are at that point.)
+ * That may be on the thread that delivers the report, rather than the one that logged the event.
+ *
+ * @author Matt Drees
+ */
+public final class CapturedLogEvent
+{
+    private static final SimpleFormatter SIMPLE_FORMATTER = new SimpleFormatter();
+
+    private final Level level;
+    private final String loggerName;
+    private final long millis;
+    private final Throwable thrown;
+    private final String messagePattern;
+    private final MessageWriter message;
+    private final StackTraceElement caller;
+
+    /**
+     * @param message formats the event's message; it is called only if a report is built
+     * @param caller the logging class and method, or null if caller data is not included
+     */
+    public CapturedLogEvent(
+        Level level,
+        String loggerName,
+        long millis,
+        Throwable thrown,
+        Supplier<String> message,
+        StackTraceElement caller)
+    {
+        this(level, loggerName, millis, thrown, buffer -> buffer.append(message.get()), caller);
+    }
+
+    /**
+     * @param message writes the event's message; it is called only if a report is built
+     * @param caller the logging class and method, or null if caller data is not included
+     */
+    public CapturedLogEvent(
+        Level level,
+        String loggerName,
+        long millis,
+        Throwable thrown,
+        MessageWriter message,
+        StackTraceElement caller)
+    {
+        this(level, loggerName, millis, thrown, null, message, caller);
+    }
+
+    /**
+     * @param messagePattern the message before its arguments are filled in, or null if it isn't available
+     * @param message writes the event's message; it is called only if a report is built
+     * @param caller the logging class and method, or null if caller data is not included
+     */
+    public CapturedLogEvent(
+        Level level,
+        String loggerName,
+        long millis,
+        Throwable thrown,
+        String messagePattern,
+        MessageWriter message,
+        StackTraceElement caller)
+    {
+        this.level = level;
+        this.loggerName = loggerName;
+        this.millis = millis;
+        this.thrown = thrown;
+        this.messagePattern = messagePattern;
+        this.message = message;
+        this.caller = caller;
+    }
+
+    /**
+     * Captures a j.u.l. log record, without its caller data.
+     */
+    public static CapturedLogEvent from(LogRecord record)
+    {
+        return from(record, null);
+    }
+
+    public static CapturedLogEvent from(LogRecord record, StackTraceElement caller)
+    {
+        return new CapturedLogEvent(
+            record.getLevel(),
+            record.getLoggerName(),
+            record.getMillis(),
+            record.getThrown(),
+            record.getMessage(),
+            buffer -> buffer.append(SIMPLE_FORMATTER.formatMessage(record)),
+            caller);
+    }
+
+    public Level getLevel()
+    {
+        return level;
+    }
+
+    public String getLoggerName()
+    {
+        return loggerName;
+    }
+
+    public long getMillis()
+    {
+        return millis;
+    }
+
+    public Throwable getThrown()
+    {
+        return thrown;
+    }
+
+    /**
+     * Returns the message as it was passed to the logger, before its arguments were filled in,
+     * or null if the logging framework doesn't provide it.
+     * Unlike the formatted message, this is available without any formatting work.
+     */
+    public String getMessagePattern()
+    {
+        return messagePattern;
+    }
+
+    public String getFormattedMessage()
+    {
+        MessageBuffer buffer = new MessageBuffer(Integer.MAX_VALUE);
+        writeMessageTo(buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * Formats the message into the given buffer, stopping once it is full if the message's format allows.
+     */
+    public void writeMessageTo(MessageBuffer buffer)
+    {
+        message.writeTo(buffer);
+    }
+
+    public StackTraceElement getCaller()
+    {
+        return caller;
+    }
+
+    public LogRecord toLogRecord()
+    {
+        LogRecord record = new LogRecord(level, getFormattedMessage());
+        record.setThrown(thrown);
+        record.setMillis(millis);
+        record.setLoggerName(loggerName);
+        if (caller != null)
+        {
+            record.setSourceClassName(caller.getClassName());
+            record.setSourceMethodName(caller.getMethodName());
+        }
+        return record;
+    }
+}
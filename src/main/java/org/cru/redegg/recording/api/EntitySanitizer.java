@@ -1,9 +1,27 @@
 package org.cru.redegg.recording.api;
 
+import com.google.common.io.CharStreams;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
 /**
  * @author Matt Drees
  */
 public interface EntitySanitizer
 {
     public String sanitizeEntity(String entityRepresentation);
+
+    /**
+     * Sanitizes an entity that may be too large to hold in memory, as it is written to a report.
+     * By default, the entity is read into a String and passed to {@link #sanitizeEntity(String)};
+     * sanitizers that can work on a stream should override this.
+     */
+    public default void sanitizeEntity(Reader entity, Writer out) throws IOException
+    {
+        String sanitized = sanitizeEntity(CharStreams.toString(entity));
+        if (sanitized != null)
+            out.write(sanitized);
+    }
 }
@@ -18,6 +18,18 @@ public interface ErrorRecorder {
 
     ErrorRecorder recordContext(String key, Object object);
 
+    /**
+     * Records each entry of a logging framework's context map (MDC) as context.
+     * The map must not be modified afterwards, since implementations may keep it.
+     * Implementations should take advantage of the fact that consecutive log events
+     * usually share the same context map, or at least an equal one.
+     */
+    default ErrorRecorder recordContextSnapshot(Map<String, String> snapshot)
+    {
+        snapshot.forEach(this::recordContext);
+        return this;
+    }
+
     ErrorRecorder recordUser(Object user);
 
     ErrorRecorder recordSystemProperties(Properties properties);
@@ -29,6 +41,9 @@ public interface ErrorRecorder {
     /**
      * Indicates that no messages from the given logger should be recorded.
      * (Perhaps they are too big, are not useful, or contain sensitive info)
+     *
+     * The name may also be a pattern, such as {@code org.example.*};
+     * see {@link org.cru.redegg.recording.LoggerNameRules}.
      */
     ErrorRecorder ignoreLogger(String loggerName);
 
@@ -37,6 +52,8 @@ public interface ErrorRecorder {
      * even if the level is WARN or ERROR.
      *
      * (Perhaps the messages are faulty for some reason, and should be suppressed.)
+     *
+     * As with {@link #ignoreLogger(String)}, the name may also be a pattern.
      */
     ErrorRecorder ignoreErrorsFromLogger(String loggerName);
 
@@ -65,6 +82,15 @@ public interface ErrorRecorder {
 
     ErrorRecorder recordLogRecord(LogRecord record);
 
+    /**
+     * Records a log event captured by one of red-egg's appenders.
+     * Implementations should avoid formatting the event unless a report is built.
+     */
+    default ErrorRecorder recordLogEvent(CapturedLogEvent event)
+    {
+        return recordLogRecord(event.toLogRecord());
+    }
+
 
 
     /**
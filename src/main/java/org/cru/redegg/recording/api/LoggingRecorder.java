@@ -9,4 +9,20 @@ public interface LoggingRecorder
      * Removes the recording logging appender/handler from the logging hierarchy.
      */
     void remove();
+
+    /**
+     * Called on a request's thread when the request starts or resumes,
+     * if {@link org.cru.redegg.recording.RecordingConfig#isPropagateRequestToken()} is set.
+     * Implementations may attach the token to log events, so they can be routed to the request from other threads.
+     */
+    default void requestBound(String requestToken)
+    {
+    }
+
+    /**
+     * Called on a request's thread when the thread stops processing the request.
+     */
+    default void requestUnbound()
+    {
+    }
 }
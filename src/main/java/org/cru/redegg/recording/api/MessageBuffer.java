@@ -0,0 +1,94 @@
+package org.cru.redegg.recording.api;
+
+/**
+ * A reusable buffer that log messages are formatted into.
+ * It holds at most a fixed number of characters;
+ * once that is exceeded, further appends are ignored,
+ * and the message ends with "..." to show that it was cut off.
+ *
+ * <p>
+ * Formatters can check {@link #isFull()} to stop formatting early.
+ *
+ * @author Matt Drees
+ */
+public final class MessageBuffer
+{
+    private static final String TRUNCATION_INDICATOR = "...";
+
+    private final StringBuilder builder;
+    private final int limit;
+    private boolean truncated;
+
+    public MessageBuffer(int limit)
+    {
+        if (limit < TRUNCATION_INDICATOR.length())
+            throw new IllegalArgumentException("limit must be at least " + TRUNCATION_INDICATOR.length());
+        this.limit = limit;
+        this.builder = new StringBuilder(Math.min(limit, 256));
+    }
+
+    public MessageBuffer append(CharSequence chars)
+    {
+        if (chars == null)
+            chars = "null";
+        return append(chars, 0, chars.length());
+    }
+
+    public MessageBuffer append(CharSequence chars, int start, int end)
+    {
+        if (truncated)
+            return this;
+        int remaining = limit - builder.length();
+        if (end - start > remaining)
+        {
+            builder.append(chars, start, start + remaining);
+            truncated = true;
+        }
+        else
+        {
+            builder.append(chars, start, end);
+        }
+        return this;
+    }
+
+    public MessageBuffer append(char c)
+    {
+        if (truncated)
+            return this;
+        if (builder.length() < limit)
+            builder.append(c);
+        else
+            truncated = true;
+        return this;
+    }
+
+    public MessageBuffer append(Object object)
+    {
+        if (truncated)
+            return this;
+        return append(String.valueOf(object));
+    }
+
+    /**
+     * Returns true once more has been appended than this buffer can hold.
+     */
+    public boolean isFull()
+    {
+        return truncated;
+    }
+
+    public void clear()
+    {
+        builder.setLength(0);
+        truncated = false;
+    }
+
+    @Override
+    public String toString()
+    {
+        if (truncated)
+            return builder.substring(0, limit - TRUNCATION_INDICATOR.length()) + TRUNCATION_INDICATOR;
+        else
+            return builder.toString();
+    }
+}
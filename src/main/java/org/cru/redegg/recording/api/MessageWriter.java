@@ -0,0 +1,16 @@
+package org.cru.redegg.recording.api;
+
+/**
+ * Formats a captured log event's message.
+ *
+ * @author Matt Drees
+ */
+@FunctionalInterface
+public interface MessageWriter
+{
+    /**
+     * Appends the formatted message to the buffer.
+     * Implementations may stop early once the buffer {@linkplain MessageBuffer#isFull() is full}.
+     */
+    void writeTo(MessageBuffer buffer);
+}
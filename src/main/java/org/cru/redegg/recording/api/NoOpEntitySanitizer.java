@@ -1,6 +1,11 @@
 package org.cru.redegg.recording.api;
 
+import com.google.common.io.CharStreams;
+
 import javax.enterprise.inject.Alternative;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 
 /**
  * Performs no sanitizing at all.  Entity is returned as-is.
@@ -15,4 +20,10 @@ public class NoOpEntitySanitizer implements EntitySanitizer
     {
         return entityRepresentation;
     }
+
+    @Override
+    public void sanitizeEntity(Reader entity, Writer out) throws IOException
+    {
+        CharStreams.copy(entity, out);
+    }
 }
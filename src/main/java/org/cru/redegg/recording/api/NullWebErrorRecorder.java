@@ -11,6 +11,7 @@ import java.net.URL;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.function.Consumer;
 import java.util.logging.LogRecord;
 
 /**
@@ -21,6 +22,19 @@ class NullWebErrorRecorder implements WebErrorRecorder
     //not a CDI bean
     NullWebErrorRecorder(Object ignored){}
 
+    @Override
+    public WebErrorRecorder recordEntity(CapturedEntity entity)
+    {
+        entity.release();
+        return this;
+    }
+
+    @Override
+    public WebErrorRecorder recordRequestSnapshot(Consumer<? super WebErrorRecorder> snapshot)
+    {
+        return this;
+    }
+
     @Override
     public WebErrorRecorder recordRequestUrl(String url)
     {
@@ -120,6 +134,12 @@ class NullWebErrorRecorder implements WebErrorRecorder
         return this;
     }
 
+    @Override
+    public ErrorRecorder recordContextSnapshot(Map<String, String> snapshot)
+    {
+        return this;
+    }
+
     @Override
     public ErrorRecorder recordUser(Object user)
     {
@@ -180,6 +200,12 @@ class NullWebErrorRecorder implements WebErrorRecorder
         return this;
     }
 
+    @Override
+    public ErrorRecorder recordLogEvent(CapturedLogEvent event)
+    {
+        return this;
+    }
+
     @Override
     public void error()
     {
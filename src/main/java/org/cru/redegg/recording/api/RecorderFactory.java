@@ -7,4 +7,14 @@ public interface RecorderFactory {
 
     public ErrorRecorder getRecorder() ;
     public WebErrorRecorder getWebRecorder() ;
+
+    /**
+     * Returns whether a recorder is already collecting events on this thread, such as during a web request.
+     * If not, {@link #getRecorder()} returns a new recorder for each call,
+     * so an event that cannot trigger a report on its own does not need to be recorded at all.
+     */
+    public default boolean isRecorderActive()
+    {
+        return true;
+    }
 }
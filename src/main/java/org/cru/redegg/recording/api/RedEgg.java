@@ -1,7 +1,16 @@
 package org.cru.redegg.recording.api;
 
 import org.cru.redegg.manual.Builder;
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.concurrent.RecorderPropagator;
+import org.cru.redegg.reporting.ErrorQueueConfig;
+import org.cru.redegg.reporting.breaker.CircuitBreakerConfig;
+import org.cru.redegg.reporting.common.HttpTransport;
+import org.cru.redegg.reporting.common.HttpTransportConfig;
+import org.cru.redegg.reporting.common.HttpTransports;
+import org.cru.redegg.reporting.dedup.DeduplicationConfig;
 import org.cru.redegg.reporting.errbit.ErrbitConfig;
+import org.cru.redegg.reporting.ratelimit.RateLimitConfig;
 import org.cru.redegg.reporting.rollbar.RollbarConfig;
 
 import javax.servlet.ServletRequest;
@@ -23,6 +32,23 @@ public class RedEgg
     }
 
 
+    /**
+     * Returns the {@link UnitsOfWork} used to record errors for work done outside of web requests.
+     */
+    public static UnitsOfWork getUnitsOfWork()
+    {
+        return Builder.getInstance().getUnitsOfWork();
+    }
+
+    /**
+     * Returns the {@link RecorderPropagator} used to carry a request's recorder over to other threads.
+     * (It is threadsafe and can be cached.)
+     */
+    public static RecorderPropagator getRecorderPropagator()
+    {
+        return Builder.getInstance().getRecorderPropagator();
+    }
+
     public static RedEgg configure()
     {
         return new RedEgg();
@@ -54,6 +80,92 @@ public class RedEgg
         return this;
     }
 
+    /**
+     * Configures how error reports are queued for delivery:
+     * the number of delivery workers, the queue capacity, and what happens when the queue is full.
+     *
+     * If this method is not called, the {@link ErrorQueueConfig} defaults are used.
+     */
+    public RedEgg setErrorQueueConfig(ErrorQueueConfig config)
+    {
+        config.validate();
+        builder.setErrorQueueConfig(config);
+        return this;
+    }
+
+    /**
+     * Configures how repeated reports of the same error are combined.
+     *
+     * If this method is not called, the {@link DeduplicationConfig} defaults are used.
+     */
+    public RedEgg setDeduplicationConfig(DeduplicationConfig config)
+    {
+        config.validate();
+        builder.setDeduplicationConfig(config);
+        return this;
+    }
+
+    /**
+     * Configures how many reports are accepted for delivery.
+     *
+     * If this method is not called, the {@link RateLimitConfig} defaults are used.
+     */
+    public RedEgg setRateLimitConfig(RateLimitConfig config)
+    {
+        config.validate();
+        builder.setRateLimitConfig(config);
+        return this;
+    }
+
+    /**
+     * Configures when delivery to Errbit or Rollbar is suspended after repeated failures.
+     *
+     * If this method is not called, the {@link CircuitBreakerConfig} defaults are used.
+     */
+    public RedEgg setCircuitBreakerConfig(CircuitBreakerConfig config)
+    {
+        config.validate();
+        builder.setCircuitBreakerConfig(config);
+        return this;
+    }
+
+    /**
+     * Configures concurrency and compression for the default transport used to send reports to Errbit or Rollbar.
+     *
+     * If this method is not called, the {@link HttpTransportConfig} defaults are used.
+     */
+    public RedEgg setHttpTransportConfig(HttpTransportConfig config)
+    {
+        config.validate();
+        builder.setHttpTransportConfig(config);
+        return this;
+    }
+
+    /**
+     * Configures how log events are captured, such as whether caller data is included
+     * and how many log records are kept per request.
+     * This must be called before the application starts.
+     *
+     * If this method is not called, the {@link RecordingConfig} defaults are used.
+     */
+    public RedEgg setRecordingConfig(RecordingConfig config)
+    {
+        config.validate();
+        builder.setRecordingConfig(config);
+        return this;
+    }
+
+    /**
+     * Configures a custom transport used to send reports to Errbit or Rollbar.
+     *
+     * If this method is not called, the transport is created by {@link HttpTransports#create(HttpTransportConfig)}.
+     */
+    public RedEgg setHttpTransport(HttpTransport transport)
+    {
+        builder.setHttpTransport(transport);
+        return this;
+    }
+
     /**
      * Configures a custom parameter sanitizer.
      *
@@ -85,4 +197,15 @@ public class RedEgg
         builder.setEntityStreamPreservationMatcher(matcher);
         return this;
     }
+
+    /**
+     * Configures a matcher that identifies which requests may read their entity with a Servlet 3.1 {@code ReadListener},
+     * which entity capture doesn't support, so that their entities are not captured.
+     * By default, entities are captured unless the request has started async processing.
+     */
+    public RedEgg setNonBlockingEntityReadsMatcher(RequestMatcher matcher)
+    {
+        builder.setNonBlockingEntityReadsMatcher(matcher);
+        return this;
+    }
 }
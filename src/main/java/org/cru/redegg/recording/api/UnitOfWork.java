@@ -0,0 +1,45 @@
+package org.cru.redegg.recording.api;
+
+/**
+ * Records errors for a piece of work done outside of a web request,
+ * such as a batch job, a scheduled task, or the handling of a single message.
+ *
+ * <pre>{@code
+ * try (UnitOfWork unit = unitsOfWork.begin("process order " + orderId))
+ * {
+ *     unit.recordContext("order", order);
+ *     ...
+ * }
+ * }</pre>
+ *
+ * While it is open, the unit of work is the recorder that {@link RecorderFactory#getRecorder()}
+ * returns on the thread that began it, so logged errors, context and log history are collected into it.
+ * Everything recorded is sent as a single error report when the unit of work is closed,
+ * and only if an error was recorded.
+ *
+ * <p>
+ * A unit of work must be closed on the thread that began it, and may not be used after it is closed.
+ *
+ * @author Matt Drees
+ */
+public interface UnitOfWork extends ErrorRecorder, AutoCloseable
+{
+    /**
+     * Marks the unit of work as failed. Unlike other recorders, this does not send a report right away;
+     * the report is sent when the unit of work is closed.
+     */
+    @Override
+    void error();
+
+    /**
+     * Does nothing; the report (if any) is sent when the unit of work is closed.
+     */
+    @Override
+    void sendReportIfNecessary();
+
+    /**
+     * Finishes the unit of work, and sends its error report, if one is needed.
+     */
+    @Override
+    void close();
+}
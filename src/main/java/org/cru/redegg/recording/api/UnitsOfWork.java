@@ -0,0 +1,26 @@
+package org.cru.redegg.recording.api;
+
+import java.time.Duration;
+
+/**
+ * Begins {@link UnitOfWork}s.
+ * With CDI, inject this; otherwise, use {@link RedEgg#getUnitsOfWork()}.
+ *
+ * @author Matt Drees
+ */
+public interface UnitsOfWork
+{
+    /**
+     * Begins a unit of work on the current thread.
+     * It is reported as stuck if it takes longer than the stuck thread threshold.
+     *
+     * @param name describes the work; it is included in the unit of work's error report
+     */
+    UnitOfWork begin(String name);
+
+    /**
+     * Begins a unit of work on the current thread,
+     * which is reported as stuck if it takes longer than the given time limit.
+     */
+    UnitOfWork begin(String name, Duration timeLimit);
+}
@@ -6,6 +6,7 @@ import java.time.Instant;
 import java.lang.reflect.Method;
 import java.net.URI;
 import java.net.URL;
+import java.util.function.Consumer;
 
 /**
  * @author Matt Drees
@@ -46,10 +47,35 @@ public interface WebErrorRecorder extends ErrorRecorder {
 
     WebErrorRecorder recordEntityRepresentation(String entityRepresentation);
 
+    /**
+     * Records an entity that is captured as the application reads it.
+     * It is decoded and sanitized when the request completes, and only if a report will be sent.
+     * Either way, it is released then,
+     * unless it was {@linkplain CapturedEntity#isSpilled() spilled} to disk and a report is sent;
+     * then the report streams it, and releases it once it has been delivered.
+     * If an entity is recorded more than once, the last one is used.
+     */
+    WebErrorRecorder recordEntity(CapturedEntity entity);
+
     WebErrorRecorder recordResponseStatus(int responseStatus);
 
     WebErrorRecorder recordRequestRemoteIpAddress(String remoteIpAddress);
 
+    /**
+     * Records request details (such as headers and parameters) that are only worth capturing if a report is sent.
+     * The snapshot is given this recorder to record them on,
+     * either when the request first records a warning or error,
+     * or when the request completes, if a report will be sent.
+     * It is always called before the request completes, if at all, and is released afterwards.
+     *
+     * Implementations that can't defer it may call it right away, as this default does.
+     */
+    default WebErrorRecorder recordRequestSnapshot(Consumer<? super WebErrorRecorder> snapshot)
+    {
+        snapshot.accept(this);
+        return this;
+    }
+
     /**
      * Begin monitoring the request for 'timeliness'.
      * After this point, if the request gets stuck, an a report will be sent.
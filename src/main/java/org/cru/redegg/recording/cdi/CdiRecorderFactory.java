@@ -1,10 +1,13 @@
 package org.cru.redegg.recording.cdi;
 
+import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.recording.RecordingConfig;
 import org.cru.redegg.recording.api.ErrorRecorder;
 import org.cru.redegg.recording.api.RecorderFactory;
 import org.cru.redegg.recording.api.Serializer;
 import org.cru.redegg.recording.api.WebErrorRecorder;
 import org.cru.redegg.recording.impl.DefaultErrorRecorder;
+import org.cru.redegg.recording.impl.RecorderBinding;
 import org.cru.redegg.reporting.api.ErrorQueue;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -30,19 +33,39 @@ public class CdiRecorderFactory implements RecorderFactory {
     @Inject
     Serializer serializer;
 
+    @Inject @Selected
+    RecordingConfig recordingConfig;
+
     @Override
     public ErrorRecorder getRecorder() {
-        if (beanManager.getContext(RequestScoped.class).isActive())
+        RecorderBinding binding = RecorderBinding.current();
+        if (binding != null)
+            return binding.getRecorder();
+        if (isRequestContextActive())
             return webErrorRecorder;
         else
-            return new DefaultErrorRecorder(errorQueue, serializer);
+            return new DefaultErrorRecorder(errorQueue, serializer, recordingConfig);
     }
 
     @Override
     public WebErrorRecorder getWebRecorder()
     {
-        if (!beanManager.getContext(RequestScoped.class).isActive())
+        WebErrorRecorder bound = RecorderBinding.get();
+        if (bound != null)
+            return bound;
+        if (!isRequestContextActive())
             throw new IllegalStateException("there is no web request being processed on this thread");
         return webErrorRecorder;
     }
+
+    @Override
+    public boolean isRecorderActive()
+    {
+        return RecorderBinding.current() != null || isRequestContextActive();
+    }
+
+    private boolean isRequestContextActive()
+    {
+        return beanManager.getContext(RequestScoped.class).isActive();
+    }
 }
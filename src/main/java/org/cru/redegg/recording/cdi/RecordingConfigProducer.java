@@ -0,0 +1,26 @@
+package org.cru.redegg.recording.cdi;
+
+import org.cru.redegg.qualifier.Fallback;
+import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.recording.RecordingConfig;
+
+import javax.enterprise.inject.Default;
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.Produces;
+
+public class RecordingConfigProducer
+{
+
+    @Produces
+    @Selected
+    public RecordingConfig selectRecordingConfig(
+        @Default Instance<RecordingConfig> defaultConfig,
+        @Fallback RecordingConfig fallbackConfig)
+    {
+        if (!defaultConfig.isUnsatisfied())
+            return defaultConfig.get();
+        else
+            return fallbackConfig;
+    }
+
+}
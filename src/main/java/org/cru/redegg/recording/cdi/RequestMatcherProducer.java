@@ -2,8 +2,10 @@ package org.cru.redegg.recording.cdi;
 
 import org.cru.redegg.qualifier.EntityStreamPreservation;
 import org.cru.redegg.qualifier.Fallback;
+import org.cru.redegg.qualifier.NonBlockingEntityReads;
 import org.cru.redegg.qualifier.Selected;
 import org.cru.redegg.recording.api.RequestMatcher;
+import org.cru.redegg.recording.api.RequestMatchers;
 
 import javax.enterprise.inject.Default;
 import javax.enterprise.inject.Instance;
@@ -28,4 +30,30 @@ public class RequestMatcherProducer
             return fallbackMatcher;
     }
 
+    public
+    @Produces
+    @Selected
+    @NonBlockingEntityReads
+    RequestMatcher selectNonBlockingEntityReadsRequestMatcher(
+        @Default @NonBlockingEntityReads Instance<RequestMatcher> defaultMatcher,
+        @Fallback @NonBlockingEntityReads RequestMatcher fallbackMatcher)
+    {
+        if (!defaultMatcher.isUnsatisfied())
+            return defaultMatcher.get();
+        else
+            return fallbackMatcher;
+    }
+
+    /**
+     * By default, every request's entity may be captured, unless async processing has started.
+     */
+    public
+    @Produces
+    @Fallback
+    @NonBlockingEntityReads
+    RequestMatcher noNonBlockingEntityReads()
+    {
+        return RequestMatchers.none();
+    }
+
 }
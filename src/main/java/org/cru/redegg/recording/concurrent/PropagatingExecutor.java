@@ -0,0 +1,24 @@
+package org.cru.redegg.recording.concurrent;
+
+import java.util.concurrent.Executor;
+
+/**
+ * @author Matt Drees
+ */
+class PropagatingExecutor implements Executor
+{
+    private final Executor delegate;
+    private final RecorderPropagator propagator;
+
+    PropagatingExecutor(Executor delegate, RecorderPropagator propagator)
+    {
+        this.delegate = delegate;
+        this.propagator = propagator;
+    }
+
+    @Override
+    public void execute(Runnable command)
+    {
+        delegate.execute(propagator.runnable(command));
+    }
+}
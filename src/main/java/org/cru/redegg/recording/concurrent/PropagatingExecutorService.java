@@ -0,0 +1,118 @@
+package org.cru.redegg.recording.concurrent;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * @author Matt Drees
+ */
+class PropagatingExecutorService implements ExecutorService
+{
+    private final ExecutorService delegate;
+    final RecorderPropagator propagator;
+
+    PropagatingExecutorService(ExecutorService delegate, RecorderPropagator propagator)
+    {
+        this.delegate = delegate;
+        this.propagator = propagator;
+    }
+
+    @Override
+    public void execute(Runnable command)
+    {
+        delegate.execute(propagator.runnable(command));
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task)
+    {
+        return delegate.submit(propagator.callable(task));
+    }
+
+    @Override
+    public <T> Future<T> submit(Runnable task, T result)
+    {
+        return delegate.submit(propagator.runnable(task), result);
+    }
+
+    @Override
+    public Future<?> submit(Runnable task)
+    {
+        return delegate.submit(propagator.runnable(task));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException
+    {
+        return delegate.invokeAll(wrap(tasks));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(
+        Collection<? extends Callable<T>> tasks,
+        long timeout,
+        TimeUnit unit) throws InterruptedException
+    {
+        return delegate.invokeAll(wrap(tasks), timeout, unit);
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks)
+        throws InterruptedException, ExecutionException
+    {
+        return delegate.invokeAny(wrap(tasks));
+    }
+
+    @Override
+    public <T> T invokeAny(
+        Collection<? extends Callable<T>> tasks,
+        long timeout,
+        TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+    {
+        return delegate.invokeAny(wrap(tasks), timeout, unit);
+    }
+
+    private <T> List<Callable<T>> wrap(Collection<? extends Callable<T>> tasks)
+    {
+        return tasks.stream()
+            .map(propagator::callable)
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public void shutdown()
+    {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown()
+    {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated()
+    {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
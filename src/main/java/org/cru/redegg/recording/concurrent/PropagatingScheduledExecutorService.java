@@ -0,0 +1,44 @@
+package org.cru.redegg.recording.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Matt Drees
+ */
+class PropagatingScheduledExecutorService extends PropagatingExecutorService implements ScheduledExecutorService
+{
+    private final ScheduledExecutorService delegate;
+
+    PropagatingScheduledExecutorService(ScheduledExecutorService delegate, RecorderPropagator propagator)
+    {
+        super(delegate, propagator);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit)
+    {
+        return delegate.schedule(propagator.runnable(command), delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit)
+    {
+        return delegate.schedule(propagator.callable(callable), delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit)
+    {
+        return delegate.scheduleAtFixedRate(propagator.runnable(command), initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit)
+    {
+        return delegate.scheduleWithFixedDelay(propagator.runnable(command), initialDelay, delay, unit);
+    }
+}
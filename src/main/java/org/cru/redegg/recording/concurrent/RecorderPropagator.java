@@ -0,0 +1,214 @@
+package org.cru.redegg.recording.concurrent;
+
+import org.cru.redegg.recording.api.ErrorRecorder;
+import org.cru.redegg.recording.api.RecorderFactory;
+import org.cru.redegg.recording.impl.RecorderBinding;
+import org.cru.redegg.util.ProxyConstructor;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Carries the current request's (or unit of work's) recorder over to work that is handed off to other threads,
+ * so that errors, log messages and context recorded there end up in the request's report.
+ *
+ * <p>
+ * Wrap the executors the request submits work to, or wrap individual tasks and {@code CompletableFuture} stages:
+ *
+ * <pre>{@code
+ * ExecutorService pool = propagator.wrap(Executors.newFixedThreadPool(4));
+ * CompletableFuture.supplyAsync(this::loadAccount, pool)
+ *     .thenAcceptBoth(loadOrders(), propagator.biConsumer(this::reconcile));
+ * }</pre>
+ *
+ * Tasks capture the recorder when they are wrapped (or submitted, for wrapped executors),
+ * and bind it while they run. Nothing is captured if no recorder is bound, and the task is returned as is.
+ * The recorder's recordings are applied to the request when it completes;
+ * work that is still running after that is reported on its own, as unwrapped work is.
+ *
+ * <p>
+ * With CDI, inject this; otherwise, use {@link org.cru.redegg.recording.api.RedEgg#getRecorderPropagator()}.
+ *
+ * @author Matt Drees
+ */
+@ApplicationScoped
+public class RecorderPropagator
+{
+    private final Supplier<ErrorRecorder> fallback;
+
+    @Inject
+    public RecorderPropagator(RecorderFactory factory)
+    {
+        this.fallback = () -> {
+            // the branch is bound to this thread, so unbind it to get a recorder of its own
+            RecorderBinding.unbind();
+            return factory.getRecorder();
+        };
+    }
+
+    @ProxyConstructor
+    public RecorderPropagator()
+    {
+        this.fallback = null;
+    }
+
+    public Executor wrap(Executor executor)
+    {
+        return new PropagatingExecutor(executor, this);
+    }
+
+    public ExecutorService wrap(ExecutorService executorService)
+    {
+        return new PropagatingExecutorService(executorService, this);
+    }
+
+    public ScheduledExecutorService wrap(ScheduledExecutorService executorService)
+    {
+        return new PropagatingScheduledExecutorService(executorService, this);
+    }
+
+    public Runnable runnable(Runnable task)
+    {
+        RecorderBinding branch = captureBranch();
+        if (branch == null)
+            return task;
+        return () -> {
+            RecorderBinding previous = branch.bindInPlace();
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                RecorderBinding.restore(previous);
+            }
+        };
+    }
+
+    public <T> Callable<T> callable(Callable<T> task)
+    {
+        RecorderBinding branch = captureBranch();
+        if (branch == null)
+            return task;
+        return () -> {
+            RecorderBinding previous = branch.bindInPlace();
+            try
+            {
+                return task.call();
+            }
+            finally
+            {
+                RecorderBinding.restore(previous);
+            }
+        };
+    }
+
+    public <T> Supplier<T> supplier(Supplier<T> supplier)
+    {
+        RecorderBinding branch = captureBranch();
+        if (branch == null)
+            return supplier;
+        return () -> {
+            RecorderBinding previous = branch.bindInPlace();
+            try
+            {
+                return supplier.get();
+            }
+            finally
+            {
+                RecorderBinding.restore(previous);
+            }
+        };
+    }
+
+    public <T, R> Function<T, R> function(Function<T, R> function)
+    {
+        RecorderBinding branch = captureBranch();
+        if (branch == null)
+            return function;
+        return argument -> {
+            RecorderBinding previous = branch.bindInPlace();
+            try
+            {
+                return function.apply(argument);
+            }
+            finally
+            {
+                RecorderBinding.restore(previous);
+            }
+        };
+    }
+
+    public <T> Consumer<T> consumer(Consumer<T> consumer)
+    {
+        RecorderBinding branch = captureBranch();
+        if (branch == null)
+            return consumer;
+        return argument -> {
+            RecorderBinding previous = branch.bindInPlace();
+            try
+            {
+                consumer.accept(argument);
+            }
+            finally
+            {
+                RecorderBinding.restore(previous);
+            }
+        };
+    }
+
+    public <T, U, R> BiFunction<T, U, R> biFunction(BiFunction<T, U, R> function)
+    {
+        RecorderBinding branch = captureBranch();
+        if (branch == null)
+            return function;
+        return (first, second) -> {
+            RecorderBinding previous = branch.bindInPlace();
+            try
+            {
+                return function.apply(first, second);
+            }
+            finally
+            {
+                RecorderBinding.restore(previous);
+            }
+        };
+    }
+
+    public <T, U> BiConsumer<T, U> biConsumer(BiConsumer<T, U> consumer)
+    {
+        RecorderBinding branch = captureBranch();
+        if (branch == null)
+            return consumer;
+        return (first, second) -> {
+            RecorderBinding previous = branch.bindInPlace();
+            try
+            {
+                consumer.accept(first, second);
+            }
+            finally
+            {
+                RecorderBinding.restore(previous);
+            }
+        };
+    }
+
+    /**
+     * Returns the branch of the current thread's binding, or null if there is none.
+     * The branch is created once per request, so this does not allocate.
+     */
+    private RecorderBinding captureBranch()
+    {
+        RecorderBinding binding = RecorderBinding.current();
+        return binding == null ? null : binding.branch(fallback);
+    }
+}
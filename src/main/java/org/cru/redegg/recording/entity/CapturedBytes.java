@@ -0,0 +1,172 @@
+package org.cru.redegg.recording.entity;
+
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.api.CapturedEntity;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Holds up to a fixed number of bytes of an entity, copied as the application reads it.
+ * Bytes are kept in fixed-size chunks that are shared between requests through a small pool,
+ * so small entities only use one chunk, and capturing doesn't allocate once the pool is warm.
+ * Bytes beyond the limit are counted, but not kept.
+ *
+ * <p>
+ * This is not thread-safe; a request's entity is read by one thread at a time.
+ *
+ * @author Matt Drees
+ */
+public class CapturedBytes implements CapturedEntity
+{
+    static final int CHUNK_SIZE = 4096;
+
+    /** up to 1 MiB of idle chunks are kept for reuse */
+    private static final BlockingQueue<byte[]> idleChunks = new ArrayBlockingQueue<>(256);
+
+    static final String TRUNCATION_INDICATOR = "...";
+
+    private final int limit;
+    final Charset charset;
+    private final List<byte[]> chunks = new ArrayList<>(4);
+    private int size;
+    private long total;
+    private boolean released;
+
+    /**
+     * @param limit the most bytes to keep
+     * @param charset used to decode the bytes if the entity is needed for a report
+     */
+    public CapturedBytes(int limit, Charset charset)
+    {
+        this.limit = limit;
+        this.charset = charset;
+    }
+
+    /**
+     * Creates a capture with the config's limits, which spills to disk if the config allows it.
+     */
+    public static CapturedBytes create(RecordingConfig config, Charset charset)
+    {
+        if (config.getEntitySpillLimit() > config.getEntityCaptureLimit())
+        {
+            return new SpillingCapturedBytes(
+                config.getEntityCaptureLimit(),
+                config.getEntitySpillLimit(),
+                charset,
+                config.getEntitySpillDirectory());
+        }
+        else
+        {
+            return new CapturedBytes(config.getEntityCaptureLimit(), charset);
+        }
+    }
+
+    public void write(int b)
+    {
+        if (released)
+            return;
+        total++;
+        if (size >= limit)
+        {
+            overflow(new byte[] {(byte) b}, 0, 1);
+            return;
+        }
+        int offset = size % CHUNK_SIZE;
+        if (offset == 0)
+            chunks.add(acquireChunk());
+        chunks.get(chunks.size() - 1)[offset] = (byte) b;
+        size++;
+    }
+
+    public void write(byte[] bytes, int off, int len)
+    {
+        if (released)
+            return;
+        total += len;
+        int kept = Math.max(0, Math.min(len, limit - size));
+        if (kept < len)
+            overflow(bytes, off + kept, len - kept);
+        int remaining = kept;
+        while (remaining > 0)
+        {
+            int offset = size % CHUNK_SIZE;
+            if (offset == 0)
+                chunks.add(acquireChunk());
+            int count = Math.min(remaining, CHUNK_SIZE - offset);
+            System.arraycopy(bytes, off, chunks.get(chunks.size() - 1), offset, count);
+            off += count;
+            size += count;
+            remaining -= count;
+        }
+    }
+
+    /**
+     * Called with bytes beyond the limit. They are dropped, unless a subclass keeps them elsewhere.
+     */
+    void overflow(byte[] bytes, int off, int len)
+    {
+    }
+
+    private static byte[] acquireChunk()
+    {
+        byte[] chunk = idleChunks.poll();
+        return chunk != null ? chunk : new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * Returns how many bytes are kept.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns how many bytes have been written, including those beyond the limit.
+     */
+    public long getTotal()
+    {
+        return total;
+    }
+
+    public boolean isTruncated()
+    {
+        return total > size;
+    }
+
+    @Override
+    public String decode()
+    {
+        String decoded = new String(keptBytes(), charset);
+        return isTruncated() ? decoded + TRUNCATION_INDICATOR : decoded;
+    }
+
+    byte[] keptBytes()
+    {
+        byte[] content = new byte[size];
+        int copied = 0;
+        for (byte[] chunk : chunks)
+        {
+            int count = Math.min(CHUNK_SIZE, size - copied);
+            System.arraycopy(chunk, 0, content, copied, count);
+            copied += count;
+        }
+        return content;
+    }
+
+    @Override
+    public void release()
+    {
+        for (byte[] chunk : chunks)
+        {
+            idleChunks.offer(chunk);
+        }
+        chunks.clear();
+        size = 0;
+        released = true;
+    }
+}
@@ -0,0 +1,47 @@
+package org.cru.redegg.recording.entity;
+
+import org.cru.redegg.recording.api.CapturedEntity;
+import org.cru.redegg.recording.api.MessageBuffer;
+
+import java.nio.CharBuffer;
+
+/**
+ * Holds up to a fixed number of characters of an entity that the application reads as text.
+ *
+ * @author Matt Drees
+ */
+public class CapturedChars implements CapturedEntity
+{
+    private final MessageBuffer buffer;
+    private boolean released;
+
+    public CapturedChars(int limit)
+    {
+        this.buffer = new MessageBuffer(Math.max(limit, 3));
+    }
+
+    public void write(int c)
+    {
+        if (!released)
+            buffer.append((char) c);
+    }
+
+    public void write(char[] chars, int off, int len)
+    {
+        if (!released && !buffer.isFull())
+            buffer.append(CharBuffer.wrap(chars), off, off + len);
+    }
+
+    @Override
+    public String decode()
+    {
+        return buffer.toString();
+    }
+
+    @Override
+    public void release()
+    {
+        buffer.clear();
+        released = true;
+    }
+}
@@ -0,0 +1,211 @@
+package org.cru.redegg.recording.entity;
+
+import com.google.common.io.CharStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Keeps the first part of an entity in memory, like {@link CapturedBytes},
+ * and writes the rest to a temp file, up to a larger limit.
+ * The file is only created once the in-memory part is full,
+ * and it is deleted when this is {@linkplain #release() released}
+ * (or, if it never is, when the JVM exits).
+ * On most Unix systems, the file is unlinked as soon as it is opened, so it never outlives the process.
+ *
+ * <p>
+ * Spilled captures are meant to be read back with {@link #openReader()},
+ * so large entities don't have to be held in memory as one String.
+ *
+ * @author Matt Drees
+ */
+public class SpillingCapturedBytes extends CapturedBytes
+{
+    private final long diskLimit;
+    private final Path directory;
+
+    private final ByteBuffer pending = ByteBuffer.allocate(CHUNK_SIZE);
+    private FileChannel file;
+    private long spilled;
+    private boolean spillFailed;
+
+    /**
+     * @param memoryLimit the most bytes to keep in memory
+     * @param spillLimit the most bytes to keep in all, including those written to disk
+     * @param directory where to create the temp file, or null for the default temp directory
+     */
+    public SpillingCapturedBytes(int memoryLimit, long spillLimit, Charset charset, Path directory)
+    {
+        super(memoryLimit, charset);
+        this.diskLimit = spillLimit - memoryLimit;
+        this.directory = directory;
+    }
+
+    @Override
+    void overflow(byte[] bytes, int off, int len)
+    {
+        int count = (int) Math.min(len, diskLimit - spilled);
+        if (count <= 0 || spillFailed)
+            return;
+        try
+        {
+            if (file == null)
+                file = openFile();
+            while (count > 0)
+            {
+                int chunk = Math.min(count, pending.remaining());
+                pending.put(bytes, off, chunk);
+                off += chunk;
+                count -= chunk;
+                spilled += chunk;
+                if (!pending.hasRemaining())
+                    flush();
+            }
+        }
+        catch (IOException e)
+        {
+            // keep what made it to disk; the rest is treated as if it were beyond the limit
+            spillFailed = true;
+        }
+    }
+
+    private FileChannel openFile() throws IOException
+    {
+        Path path = directory == null
+            ? Files.createTempFile("red-egg-entity-", ".tmp")
+            : Files.createTempFile(directory, "red-egg-entity-", ".tmp");
+        return FileChannel.open(path, READ, WRITE, DELETE_ON_CLOSE);
+    }
+
+    private void flush() throws IOException
+    {
+        pending.flip();
+        while (pending.hasRemaining())
+        {
+            file.write(pending);
+        }
+        pending.clear();
+    }
+
+    @Override
+    public boolean isTruncated()
+    {
+        return getTotal() > size() + spilled;
+    }
+
+    /**
+     * Returns how many bytes were written to disk.
+     */
+    public long getSpilled()
+    {
+        return spilled;
+    }
+
+    @Override
+    public boolean isSpilled()
+    {
+        return spilled > 0;
+    }
+
+    @Override
+    public String decode()
+    {
+        if (!isSpilled())
+            return super.decode();
+        try (Reader reader = openReader())
+        {
+            return CharStreams.toString(reader);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("unable to read spilled entity", e);
+        }
+    }
+
+    @Override
+    public Reader openReader() throws IOException
+    {
+        if (!isSpilled())
+            return super.openReader();
+        if (pending.position() > 0)
+            flush();
+        List<InputStream> parts = Arrays.asList(
+            new ByteArrayInputStream(keptBytes()),
+            new FileRegionInputStream(file, file.size()),
+            new ByteArrayInputStream(isTruncated() ? TRUNCATION_INDICATOR.getBytes(charset) : new byte[0]));
+        return new InputStreamReader(new SequenceInputStream(Collections.enumeration(parts)), charset);
+    }
+
+    @Override
+    public void release()
+    {
+        super.release();
+        pending.clear();
+        spilled = 0;
+        if (file != null)
+        {
+            try
+            {
+                file.close();
+            }
+            catch (IOException ignored)
+            {
+                // the file is deleted on exit regardless
+            }
+            file = null;
+        }
+    }
+
+    /**
+     * Reads the file with positional reads,
+     * so that reading it doesn't disturb the channel's position, and it can be read more than once.
+     */
+    private static class FileRegionInputStream extends InputStream
+    {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        FileRegionInputStream(FileChannel channel, long end)
+        {
+            this.channel = channel;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) throws IOException
+        {
+            if (position >= end)
+                return -1;
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, off, (int) Math.min(len, end - position));
+            int count = channel.read(buffer, position);
+            if (count > 0)
+                position += count;
+            return count;
+        }
+    }
+}
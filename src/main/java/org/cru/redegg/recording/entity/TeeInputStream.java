@@ -0,0 +1,67 @@
+package org.cru.redegg.recording.entity;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Passes bytes through from the application's stream, and copies them into a {@link CapturedBytes}.
+ * Mark and reset aren't supported, so that bytes aren't captured twice.
+ *
+ * @author Matt Drees
+ */
+public class TeeInputStream extends FilterInputStream
+{
+    private final CapturedBytes capture;
+
+    public TeeInputStream(InputStream delegate, CapturedBytes capture)
+    {
+        super(delegate);
+        this.capture = capture;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        int b = in.read();
+        if (b != -1)
+            capture.write(b);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException
+    {
+        int count = in.read(bytes, off, len);
+        if (count > 0)
+            capture.write(bytes, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        if (n <= 0)
+            return 0;
+        byte[] skipped = new byte[(int) Math.min(n, 4096)];
+        int count = read(skipped, 0, skipped.length);
+        return Math.max(count, 0);
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit)
+    {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException
+    {
+        throw new IOException("mark/reset not supported");
+    }
+}
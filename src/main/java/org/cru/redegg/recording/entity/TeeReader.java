@@ -0,0 +1,51 @@
+package org.cru.redegg.recording.entity;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Passes characters through from the application's reader, and copies them into a {@link CapturedChars}.
+ *
+ * @author Matt Drees
+ */
+public class TeeReader extends Reader
+{
+    private final Reader delegate;
+    private final CapturedChars capture;
+
+    public TeeReader(Reader delegate, CapturedChars capture)
+    {
+        this.delegate = delegate;
+        this.capture = capture;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        int c = delegate.read();
+        if (c != -1)
+            capture.write(c);
+        return c;
+    }
+
+    @Override
+    public int read(char[] chars, int off, int len) throws IOException
+    {
+        int count = delegate.read(chars, off, len);
+        if (count > 0)
+            capture.write(chars, off, count);
+        return count;
+    }
+
+    @Override
+    public boolean ready() throws IOException
+    {
+        return delegate.ready();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        delegate.close();
+    }
+}
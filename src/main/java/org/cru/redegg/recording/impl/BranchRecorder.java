@@ -0,0 +1,156 @@
+package org.cru.redegg.recording.impl;
+
+import org.cru.redegg.recording.api.CapturedLogEvent;
+import org.cru.redegg.recording.api.ErrorRecorder;
+import org.cru.redegg.reporting.api.ErrorLink;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * The recorder for a {@linkplain RecorderBinding#branch(Supplier) branch} of a request.
+ * It may be used by any number of threads at once.
+ * Recordings are deferred to the request, and applied to its recorder on the request's thread when it completes.
+ * If the request has already completed, each recording is applied to a new recorder from the fallback instead,
+ * which reports it on its own, as if the work had not been handed off from a request.
+ *
+ * @author Matt Drees
+ */
+class BranchRecorder implements ErrorRecorder
+{
+    private final RecorderBinding parent;
+    private final Supplier<? extends ErrorRecorder> fallback;
+
+    BranchRecorder(RecorderBinding parent, Supplier<? extends ErrorRecorder> fallback)
+    {
+        this.parent = parent;
+        this.fallback = fallback;
+    }
+
+    private ErrorRecorder record(Consumer<? super ErrorRecorder> recording)
+    {
+        return record(recording, parent.defer(recording));
+    }
+
+    private ErrorRecorder record(Consumer<? super ErrorRecorder> recording, boolean deferred)
+    {
+        if (!deferred)
+        {
+            ErrorRecorder recorder = fallback.get();
+            recording.accept(recorder);
+            recorder.sendReportIfNecessary();
+        }
+        return this;
+    }
+
+    @Override
+    public ErrorRecorder recordContext(String key, Object object)
+    {
+        return record(recorder -> recorder.recordContext(key, object));
+    }
+
+    @Override
+    public ErrorRecorder recordContextSnapshot(Map<String, String> snapshot)
+    {
+        return record(recorder -> recorder.recordContextSnapshot(snapshot));
+    }
+
+    @Override
+    public ErrorRecorder recordUser(Object user)
+    {
+        return record(recorder -> recorder.recordUser(user));
+    }
+
+    @Override
+    public ErrorRecorder recordSystemProperties(Properties properties)
+    {
+        return record(recorder -> recorder.recordSystemProperties(properties));
+    }
+
+    @Override
+    public ErrorRecorder recordEnvironmentVariables(Map<String, String> variables)
+    {
+        return record(recorder -> recorder.recordEnvironmentVariables(variables));
+    }
+
+    @Override
+    public ErrorRecorder recordLocalHost(InetAddress localHost)
+    {
+        return record(recorder -> recorder.recordLocalHost(localHost));
+    }
+
+    @Override
+    public ErrorRecorder ignoreLogger(String loggerName)
+    {
+        return record(recorder -> recorder.ignoreLogger(loggerName));
+    }
+
+    @Override
+    public ErrorRecorder ignoreErrorsFromLogger(String loggerName)
+    {
+        return record(recorder -> recorder.ignoreErrorsFromLogger(loggerName));
+    }
+
+    @Override
+    public ErrorRecorder userError()
+    {
+        return record(ErrorRecorder::userError);
+    }
+
+    @Override
+    public ErrorRecorder mustNotify()
+    {
+        return record(ErrorRecorder::mustNotify);
+    }
+
+    @Override
+    public ErrorRecorder recordThrown(Throwable thrown)
+    {
+        return record(recorder -> recorder.recordThrown(thrown));
+    }
+
+    @Override
+    public ErrorRecorder recordLogRecord(LogRecord record)
+    {
+        return recordLogEvent(CapturedLogEvent.from(record));
+    }
+
+    @Override
+    public ErrorRecorder recordLogEvent(CapturedLogEvent event)
+    {
+        Consumer<ErrorRecorder> recording = recorder -> recorder.recordLogEvent(event);
+        if (event.getLevel().intValue() >= Level.WARNING.intValue())
+            return record(recording);
+        else
+            return record(recording, parent.deferLogEvent(recording));
+    }
+
+    @Override
+    public void error()
+    {
+        record(ErrorRecorder::error);
+    }
+
+    /**
+     * Does nothing; the request's report is sent when it completes.
+     */
+    @Override
+    public void sendReportIfNecessary()
+    {
+    }
+
+    /**
+     * Always returns empty, since the request's recorder can only be asked for a link on the request's thread.
+     */
+    @Override
+    public Optional<ErrorLink> getErrorLink()
+    {
+        return Optional.empty();
+    }
+}
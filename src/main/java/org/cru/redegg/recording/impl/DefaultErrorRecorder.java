@@ -1,31 +1,27 @@
 package org.cru.redegg.recording.impl;
 
 import com.google.common.base.Preconditions;
-import com.google.common.base.Throwables;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.recording.LoggerNameRules;
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.api.CapturedLogEvent;
 import org.cru.redegg.recording.api.ErrorRecorder;
 import org.cru.redegg.recording.api.NotificationLevel;
 import org.cru.redegg.recording.api.Serializer;
 import org.cru.redegg.reporting.ErrorReport;
 import org.cru.redegg.reporting.api.ErrorLink;
 import org.cru.redegg.reporting.api.ErrorQueue;
-import org.cru.redegg.util.RedEggStrings;
 
 import javax.inject.Inject;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Collections;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -34,7 +30,6 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
-import java.util.logging.SimpleFormatter;
 
 import static org.cru.redegg.recording.api.NotificationLevel.ERROR;
 import static org.cru.redegg.recording.api.NotificationLevel.NONE;
@@ -45,32 +40,52 @@ import static org.cru.redegg.recording.api.NotificationLevel.WARNING;
  */
 public class DefaultErrorRecorder implements ErrorRecorder {
 
-    private static final int LOG_RECORD_LIMIT = 100;
-
-    private static final SimpleFormatter SIMPLE_FORMATTER = new SimpleFormatter();
+    /**
+     * The most distinct context snapshots kept per recorder;
+     * beyond this, snapshots are merged into the context as they are recorded.
+     */
+    private static final int CONTEXT_SNAPSHOT_LIMIT = 16;
 
     private ErrorQueue queue;
     private Serializer serializer;
+    private LogEventBufferPool logEventBufferPool;
+    private LoggerNameRules configuredLoggersToIgnoreErrors;
 
     private Multimap<String, Object> context;
+    private List<Map<String, String>> contextSnapshots;
+    private Map<String, String> lastContextSnapshot;
     private Object user;
     private LinkedHashSet<Throwable> thrown;
-    private LinkedList<LogRecord> logRecords;
+    private LogEventBuffer logEvents;
     private InetAddress localHost;
     private Map<String, String> environmentVariables;
     private Properties systemProperties;
-    private Set<String> loggersToIgnoreErrors;
-    private Set<String> loggersToIgnoreEntirely;
+    private LoggerNameRules loggersToIgnoreErrors;
+    private LoggerNameRules loggersToIgnoreEntirely;
 
     private NotificationLevel level = NONE;
     private boolean sentError;
     private boolean mustNotify;
     private ErrorLink errorLink;
 
-    @Inject
     public DefaultErrorRecorder(ErrorQueue queue, Serializer serializer) {
+        this(queue, serializer, new RecordingConfig());
+    }
+
+    @Inject
+    public DefaultErrorRecorder(ErrorQueue queue, Serializer serializer, @Selected RecordingConfig recordingConfig) {
+        this(queue, serializer, recordingConfig, new LogEventBufferPool(recordingConfig, 0));
+    }
+
+    public DefaultErrorRecorder(
+        ErrorQueue queue,
+        Serializer serializer,
+        RecordingConfig recordingConfig,
+        LogEventBufferPool logEventBufferPool) {
         this.queue = queue;
         this.serializer = serializer;
+        this.logEventBufferPool = logEventBufferPool;
+        this.configuredLoggersToIgnoreErrors = LoggerNameRules.compile(recordingConfig.getLoggersWithIgnoredErrors());
     }
 
     @Override
@@ -82,6 +97,24 @@ public class DefaultErrorRecorder implements ErrorRecorder {
         return this;
     }
 
+    @Override
+    public ErrorRecorder recordContextSnapshot(Map<String, String> snapshot) {
+        checkNotSent();
+        // logging frameworks usually hand out the same map until the context changes
+        if (snapshot == lastContextSnapshot || snapshot.isEmpty())
+            return this;
+        lastContextSnapshot = snapshot;
+        if (contextSnapshots == null)
+            contextSnapshots = Lists.newArrayListWithCapacity(4);
+        if (contextSnapshots.contains(snapshot))
+            return this;
+        if (contextSnapshots.size() < CONTEXT_SNAPSHOT_LIMIT)
+            contextSnapshots.add(snapshot);
+        else
+            snapshot.forEach(this::recordContext);
+        return this;
+    }
+
     private void checkNotSent() {
         Preconditions.checkState(!sentError, "already sent the error report");
     }
@@ -103,25 +136,30 @@ public class DefaultErrorRecorder implements ErrorRecorder {
 
     @Override
     public ErrorRecorder recordLogRecord(LogRecord record) {
+        return recordLogEvent(CapturedLogEvent.from(record));
+    }
+
+    @Override
+    public ErrorRecorder recordLogEvent(CapturedLogEvent event) {
         checkNotSent();
-        String loggerName = record.getLoggerName();
+        String loggerName = event.getLoggerName();
         if (messagesFromLoggerShouldBeIgnored(loggerName))
             return this;
 
-        addRecordToList(record);
+        addEventToList(event);
 
         if (errorsFromLoggerShouldTriggerNotification(loggerName))
         {
-            if (isErrorLog(record))
+            if (isErrorLog(event))
             {
                 ensureNotificationLevel(ERROR);
             }
-            else if (isWarningLog(record))
+            else if (isWarningLog(event))
             {
                 ensureNotificationLevel(WARNING);
             }
-            if (record.getThrown() != null)
-                addToThrownSet(record.getThrown());
+            if (event.getThrown() != null)
+                addToThrownSet(event.getThrown());
         }
         return this;
     }
@@ -129,29 +167,67 @@ public class DefaultErrorRecorder implements ErrorRecorder {
     private boolean messagesFromLoggerShouldBeIgnored(String loggerName)
     {
         return loggersToIgnoreEntirely != null &&
-               loggersToIgnoreEntirely.contains(loggerName);
+               loggersToIgnoreEntirely.matches(loggerName);
+    }
+
+    private void addEventToList(CapturedLogEvent event)
+    {
+        if (logEvents == null)
+            logEvents = logEventBufferPool.acquire();
+        logEvents.add(event);
     }
 
-    private void addRecordToList(LogRecord record)
+    /**
+     * Returns the log event buffer to its pool.
+     * Called once a report has been built (or is known to be unnecessary), since log events are not needed after that.
+     */
+    void releaseLogEvents()
     {
-        if (logRecords == null)
-            logRecords = Lists.newLinkedList();
-        if (logRecords.size() < LOG_RECORD_LIMIT)
-            logRecords.add(record);
+        if (logEvents != null)
+        {
+            logEventBufferPool.release(logEvents);
+            logEvents = null;
+        }
+    }
+
+    /**
+     * Clears everything that has been recorded, so this recorder can be reused for another unit of work.
+     * Collections are cleared rather than dropped, so that their capacity is reused.
+     */
+    void reset()
+    {
+        releaseLogEvents();
+        if (context != null)
+            context.clear();
+        if (contextSnapshots != null)
+            contextSnapshots.clear();
+        lastContextSnapshot = null;
+        user = null;
+        if (thrown != null)
+            thrown.clear();
+        localHost = null;
+        environmentVariables = null;
+        systemProperties = null;
+        loggersToIgnoreErrors = null;
+        loggersToIgnoreEntirely = null;
+        level = NONE;
+        sentError = false;
+        mustNotify = false;
+        errorLink = null;
     }
 
     private boolean errorsFromLoggerShouldTriggerNotification(String loggerName)
     {
-        return loggersToIgnoreErrors == null ||
-               !loggersToIgnoreErrors.contains(loggerName);
+        return !configuredLoggersToIgnoreErrors.matches(loggerName) &&
+               (loggersToIgnoreErrors == null || !loggersToIgnoreErrors.matches(loggerName));
     }
 
-    private boolean isErrorLog(LogRecord record) {
-        return record.getLevel().intValue() >= Level.SEVERE.intValue();
+    private boolean isErrorLog(CapturedLogEvent event) {
+        return event.getLevel().intValue() >= Level.SEVERE.intValue();
     }
 
-    private boolean isWarningLog(LogRecord record) {
-        int levelAsInt = record.getLevel().intValue();
+    private boolean isWarningLog(CapturedLogEvent event) {
+        int levelAsInt = event.getLevel().intValue();
         return
             levelAsInt >= Level.WARNING.intValue() &&
             levelAsInt < Level.SEVERE.intValue();
@@ -203,9 +279,7 @@ public class DefaultErrorRecorder implements ErrorRecorder {
     public ErrorRecorder ignoreLogger(String loggerName)
     {
         checkNotSent();
-        if (loggersToIgnoreEntirely == null)
-            loggersToIgnoreEntirely = Sets.newHashSetWithExpectedSize(1);
-        loggersToIgnoreEntirely.add(loggerName);
+        loggersToIgnoreEntirely = withPattern(loggersToIgnoreEntirely, loggerName);
         return this;
     }
 
@@ -213,12 +287,17 @@ public class DefaultErrorRecorder implements ErrorRecorder {
     public ErrorRecorder ignoreErrorsFromLogger(String loggerName)
     {
         checkNotSent();
-        if (loggersToIgnoreErrors == null)
-            loggersToIgnoreErrors = Sets.newHashSetWithExpectedSize(1);
-        loggersToIgnoreErrors.add(loggerName);
+        loggersToIgnoreErrors = withPattern(loggersToIgnoreErrors, loggerName);
         return this;
     }
 
+    private LoggerNameRules withPattern(LoggerNameRules rules, String pattern)
+    {
+        if (rules == null)
+            return LoggerNameRules.compile(Collections.singleton(pattern));
+        return LoggerNameRules.compile(Sets.union(rules.getPatterns(), Collections.singleton(pattern)));
+    }
+
     @Override
     public void error() {
         checkNotSent();
@@ -248,7 +327,9 @@ public class DefaultErrorRecorder implements ErrorRecorder {
     private void sendReport()
     {
         addAdditionalContextIfPossible();
-        queue.enqueue(buildReport());
+        ErrorReport report = buildReport();
+        releaseLogEvents();
+        queue.enqueue(report);
         sentError = true;
     }
 
@@ -277,8 +358,14 @@ public class DefaultErrorRecorder implements ErrorRecorder {
         report.setErrorLink(errorLink);
         report.setContext(serializeContext());
         report.setUser(serializeUser());
-        report.setThrown(getThrown());
-        report.setLogRecords(serializeLogRecords());
+        List<Throwable> reportedThrowables = getThrown();
+        report.setThrown(reportedThrowables);
+        if (logEvents != null)
+        {
+            LogRecordFormatter formatter = new LogRecordFormatter(logEvents);
+            report.deferLogRecords(formatter);
+            report.setLogSignature(formatter.getSignature());
+        }
         if (localHost != null)
         {
             report.setLocalHostName(localHost.getHostName());
@@ -295,12 +382,25 @@ public class DefaultErrorRecorder implements ErrorRecorder {
 
     private Multimap<String, String> serializeContext()
     {
-        if (context == null)
+        if (context == null && contextSnapshots == null)
             return ImmutableMultimap.of();
-        Multimap<String, String> serializedContext = HashMultimap.create(context.keys().size(), 1);
-        for (Map.Entry<String, Object> entry : context.entries())
+        Multimap<String, String> serializedContext = HashMultimap.create(10, 1);
+        if (context != null)
         {
-            serializedContext.put(entry.getKey(), serializer.toString(entry.getValue()));
+            for (Map.Entry<String, Object> entry : context.entries())
+            {
+                serializedContext.put(entry.getKey(), serializer.toString(entry.getValue()));
+            }
+        }
+        if (contextSnapshots != null)
+        {
+            for (Map<String, String> snapshot : contextSnapshots)
+            {
+                for (Map.Entry<String, String> entry : snapshot.entrySet())
+                {
+                    serializedContext.put(entry.getKey(), serializer.toString(entry.getValue()));
+                }
+            }
         }
         return serializedContext;
     }
@@ -340,82 +440,6 @@ public class DefaultErrorRecorder implements ErrorRecorder {
         return filtered;
     }
 
-    private List<ErrorReport.LogRecord> serializeLogRecords()
-    {
-        if (logRecords == null)
-            return Collections.emptyList();
-
-        List<ErrorReport.LogRecord> serializedLogRecords = Lists.newArrayListWithCapacity(logRecords.size());
-
-        for (LogRecord logRecord : logRecords)
-        {
-            StacktraceSimplifier simplifier = new StacktraceSimplifier(logRecord.getThrown());
-            simplifier.replaceStacktraceIfRedundant();
-            try
-            {
-                serializedLogRecords.add(buildErrorReportLogRecord(logRecord));
-            }
-            finally
-            {
-                simplifier.restoreOriginalStacktraces();
-            }
-        }
-        if (logRecords.size() == LOG_RECORD_LIMIT)
-        {
-            String message =
-                "<limit of " +
-                LOG_RECORD_LIMIT +
-                " was reached; any further log records were not recorded>";
-
-            ErrorReport.LogRecord warningMessage =
-                new ErrorReport.LogRecord(NotificationLevel.NONE, "", message);
-            serializedLogRecords.add(warningMessage);
-        }
-        return serializedLogRecords;
-    }
-
-    private ErrorReport.LogRecord buildErrorReportLogRecord(LogRecord logRecord)
-    {
-        String header = buildHeader(logRecord);
-        String formattedMessage = SIMPLE_FORMATTER.formatMessage(logRecord);
-        String message = RedEggStrings.truncate(formattedMessage, 2000, "...");
-
-        NotificationLevel level = logLevelToNotificationLevel(logRecord);
-
-        return new ErrorReport.LogRecord(level, header, message);
-    }
-
-    private String buildHeader(LogRecord logRecord)
-    {
-        ZonedDateTime dateTime = Instant.ofEpochMilli(logRecord.getMillis()).atZone(ZoneId.systemDefault());
-        return DateTimeFormatter.ISO_ZONED_DATE_TIME.format(dateTime) + " " + logRecord.getLoggerName();
-    }
-
-    private NotificationLevel logLevelToNotificationLevel(LogRecord logRecord)
-    {
-        Level logLevel = logRecord.getLevel();
-        if (logLevel.intValue() >= Level.SEVERE.intValue())
-        {
-            return NotificationLevel.ERROR;
-        }
-        else if (logLevel.intValue() >= Level.WARNING.intValue())
-        {
-            return NotificationLevel.WARNING;
-        }
-        else if (logLevel.intValue() >= Level.INFO.intValue())
-        {
-            return NotificationLevel.INFO;
-        }
-        else if (logLevel.intValue() >= Level.FINEST.intValue())
-        {
-            return NotificationLevel.DEBUG;
-        }
-        else
-        {
-            return NotificationLevel.NONE;
-        }
-    }
-
     private Map<String, String> getSystemProperties()
     {
         if (systemProperties == null)
@@ -451,64 +475,4 @@ public class DefaultErrorRecorder implements ErrorRecorder {
             this.level = level;
         }
     }
-
-    private class StacktraceSimplifier
-    {
-        private Throwable loggedThrowable;
-
-        Map<Throwable, StackTraceElement[]> originalStacktraces = Maps.newHashMapWithExpectedSize(4);
-
-        public StacktraceSimplifier(Throwable loggedThrowable)
-        {
-            this.loggedThrowable = loggedThrowable;
-        }
-
-        private void replaceStacktraceIfRedundant()
-        {
-            if (loggedThrowable == null)
-                return;
-            if (isThrowableRedundant())
-            {
-                removeStackTrace();
-            }
-        }
-
-        private void removeStackTrace()
-        {
-            for (Throwable link : Throwables.getCausalChain(loggedThrowable))
-            {
-                StackTraceElement[] originalStacktrace = link.getStackTrace();
-                originalStacktraces.put(link, originalStacktrace);
-
-                StackTraceElement[] newStackTrace = new StackTraceElement[1];
-                StackTraceElement dummy = new StackTraceElement("...(" + originalStacktrace.length  + " redundant stack frames removed)", "", "", 0);
-                newStackTrace[0] = dummy;
-                link.setStackTrace(newStackTrace);
-            }
-        }
-
-        private boolean isThrowableRedundant()
-        {
-            for (Throwable recordedThrowable : getThrown())
-            {
-                for (Throwable link : Throwables.getCausalChain(recordedThrowable))
-                {
-                    if (link == loggedThrowable)
-                    {
-                        return true;
-                    }
-                }
-            }
-            return false;
-        }
-
-        public void restoreOriginalStacktraces()
-        {
-            for (Map.Entry<Throwable, StackTraceElement[]> entry : originalStacktraces.entrySet())
-            {
-                Throwable t = entry.getKey();
-                t.setStackTrace(entry.getValue());
-            }
-        }
-    }
 }
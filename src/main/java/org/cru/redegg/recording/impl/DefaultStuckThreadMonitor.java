@@ -1,6 +1,7 @@
 package org.cru.redegg.recording.impl;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.MapMaker;
 import java.time.Clock;
 import java.time.Duration;
@@ -43,8 +44,9 @@ public class DefaultStuckThreadMonitor implements StuckThreadMonitor
      * finishMonitoringRequest() before it finishes a request
      * (some kind of Error might be thrown, for example),
      * the map entry will eventually get garbage collected.
+     * Units of work are kept here too, keyed by the object that identifies them.
      */
-    private final Map<WebContext, Request> currentlyActiveRequests = new MapMaker()
+    private final Map<Object, Request> currentlyActiveRequests = new MapMaker()
         .initialCapacity(50)
         .weakKeys()
         .makeMap();
@@ -111,19 +113,40 @@ public class DefaultStuckThreadMonitor implements StuckThreadMonitor
     public void startMonitoringRequest(WebContext webContext)
     {
         Request request = new Request(
+            webContext.getStart(),
             webContext.getStart().plus(threshold),
             webContext.clone(),
+            null,
             Thread.currentThread());
 
         currentlyActiveRequests.put(webContext, request);
     }
 
+    @Override
+    public void startMonitoringUnitOfWork(Object unit, String name, Instant start, Duration timeLimit)
+    {
+        Request request = new Request(
+            start,
+            start.plus(timeLimit != null ? timeLimit : threshold),
+            null,
+            name,
+            Thread.currentThread());
+
+        currentlyActiveRequests.put(unit, request);
+    }
+
     @Override
     public void finishMonitoringRequest(WebContext webContext)
     {
         currentlyActiveRequests.remove(webContext);
     }
 
+    @Override
+    public void finishMonitoringUnitOfWork(Object unit)
+    {
+        currentlyActiveRequests.remove(unit);
+    }
+
     @PreDestroy
     public void stop()
     {
@@ -137,18 +160,29 @@ public class DefaultStuckThreadMonitor implements StuckThreadMonitor
 
 
     private class Request {
+        final Instant start;
         final Instant deadline;
+
+        /** null for a unit of work */
         final WebContext webContext;
+
+        /** null for a web request */
+        final String unitOfWork;
+
         final Thread processingThread;
         final AtomicBoolean notified = new AtomicBoolean();
 
         Request(
+            Instant start,
             Instant deadline,
             WebContext webContext,
+            String unitOfWork,
             Thread processingThread)
         {
+            this.start = start;
             this.deadline = deadline;
             this.webContext = webContext;
+            this.unitOfWork = unitOfWork;
             this.processingThread = processingThread;
         }
     }
@@ -159,7 +193,7 @@ public class DefaultStuckThreadMonitor implements StuckThreadMonitor
         public void run()
         {
             Instant now = Instant.now(clock);
-            for (Map.Entry<WebContext, Request> entry : currentlyActiveRequests.entrySet())
+            for (Map.Entry<Object, Request> entry : currentlyActiveRequests.entrySet())
             {
                 Request request = entry.getValue();
                 boolean overdue = now.isAfter(request.deadline);
@@ -185,7 +219,10 @@ public class DefaultStuckThreadMonitor implements StuckThreadMonitor
             Instant now)
         {
             ErrorReport report = new ErrorReport();
-            report.setWebContext(webContext);
+            if (webContext != null)
+                report.setWebContext(webContext);
+            else
+                report.setContext(ImmutableMultimap.of("unit of work", request.unitOfWork));
             report.setErrorLink(errorQueue.buildLink().orElse(null));
 
             Throwable standInException = buildStandInException(webContext, request, now);
@@ -206,6 +243,14 @@ public class DefaultStuckThreadMonitor implements StuckThreadMonitor
             Request request,
             Instant now)
         {
+            if (webContext == null)
+            {
+                return new StuckThreadException(
+                    request.unitOfWork,
+                    request.start,
+                    now,
+                    request.processingThread);
+            }
             return new StuckThreadException(
                 webContext.getStart(),
                 now,
@@ -238,6 +283,21 @@ public class DefaultStuckThreadMonitor implements StuckThreadMonitor
             setStackTrace(thread.getStackTrace());
         }
 
+        StuckThreadException(
+            String unitOfWork,
+            Instant start,
+            Instant now,
+            Thread thread)
+        {
+            super(String.format(
+                "Thread %s seems to be stuck; unit of work '%s' began %s ago",
+                thread.getName(),
+                unitOfWork,
+                getRelativeTimePhrase(now, start)));
+
+            setStackTrace(thread.getStackTrace());
+        }
+
         private static String getRelativeTimePhrase(
             Instant now,
             Instant start)
@@ -0,0 +1,222 @@
+package org.cru.redegg.recording.impl;
+
+import com.google.common.base.Preconditions;
+import org.cru.redegg.recording.StuckThreadMonitor;
+import org.cru.redegg.recording.api.CapturedLogEvent;
+import org.cru.redegg.recording.api.ErrorRecorder;
+import org.cru.redegg.recording.api.UnitOfWork;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.api.ErrorLink;
+import org.cru.redegg.reporting.api.ErrorQueue;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.logging.LogRecord;
+
+import static org.cru.redegg.recording.api.NotificationLevel.ERROR;
+
+/**
+ * A unit of work begun by {@link DefaultUnitsOfWork}.
+ * It is bound to its thread while it is open (see {@link RecorderBinding}),
+ * and delegates to a pooled {@link DefaultErrorRecorder}, which is reset and returned to the pool when it is closed.
+ *
+ * @author Matt Drees
+ */
+class DefaultUnitOfWork implements UnitOfWork
+{
+    private final DefaultUnitsOfWork unitsOfWork;
+    private final DefaultErrorRecorder recorder;
+    private final ErrorQueue queue;
+    private final String name;
+    private final Instant start;
+    private final RecorderBinding binding;
+
+    /** the binding this unit of work replaced, if it was begun during a request or another unit of work */
+    private RecorderBinding enclosingBinding;
+    private boolean closed;
+
+    DefaultUnitOfWork(
+        DefaultUnitsOfWork unitsOfWork,
+        DefaultErrorRecorder recorder,
+        ErrorQueue queue,
+        String name,
+        Instant start,
+        int deferredCapacity)
+    {
+        this.unitsOfWork = unitsOfWork;
+        this.recorder = recorder;
+        this.queue = queue;
+        this.name = name;
+        this.start = start;
+        this.binding = new RecorderBinding(this, deferredCapacity);
+    }
+
+    void begin(StuckThreadMonitor stuckThreadMonitor, Duration timeLimit)
+    {
+        enclosingBinding = binding.bindInPlace();
+        stuckThreadMonitor.startMonitoringUnitOfWork(this, name, start, timeLimit);
+    }
+
+    @Override
+    public void close()
+    {
+        if (closed)
+            return;
+        binding.retire();
+        closed = true;
+        RecorderBinding.restore(enclosingBinding);
+
+        try
+        {
+            if (recorder.shouldNotificationBeSent())
+                sendReport();
+        }
+        finally
+        {
+            unitsOfWork.finished(this, recorder);
+        }
+    }
+
+    private void sendReport()
+    {
+        Duration duration = Duration.between(start, unitsOfWork.getClock().instant());
+        recorder.recordContext("unit of work", name);
+        recorder.recordContext("duration", duration.toString());
+        recorder.addAdditionalContextIfPossible();
+        ErrorReport report = recorder.buildReport();
+        recorder.releaseLogEvents();
+        queue.enqueue(report);
+    }
+
+    private void checkOpen()
+    {
+        Preconditions.checkState(!closed, "unit of work '%s' is already closed", name);
+    }
+
+    @Override
+    public ErrorRecorder recordContext(String key, Object object)
+    {
+        checkOpen();
+        recorder.recordContext(key, object);
+        return this;
+    }
+
+    @Override
+    public ErrorRecorder recordContextSnapshot(Map<String, String> snapshot)
+    {
+        checkOpen();
+        recorder.recordContextSnapshot(snapshot);
+        return this;
+    }
+
+    @Override
+    public ErrorRecorder recordUser(Object user)
+    {
+        checkOpen();
+        recorder.recordUser(user);
+        return this;
+    }
+
+    @Override
+    public ErrorRecorder recordSystemProperties(Properties properties)
+    {
+        checkOpen();
+        recorder.recordSystemProperties(properties);
+        return this;
+    }
+
+    @Override
+    public ErrorRecorder recordEnvironmentVariables(Map<String, String> variables)
+    {
+        checkOpen();
+        recorder.recordEnvironmentVariables(variables);
+        return this;
+    }
+
+    @Override
+    public ErrorRecorder recordLocalHost(InetAddress localHost)
+    {
+        checkOpen();
+        recorder.recordLocalHost(localHost);
+        return this;
+    }
+
+    @Override
+    public ErrorRecorder ignoreLogger(String loggerName)
+    {
+        checkOpen();
+        recorder.ignoreLogger(loggerName);
+        return this;
+    }
+
+    @Override
+    public ErrorRecorder ignoreErrorsFromLogger(String loggerName)
+    {
+        checkOpen();
+        recorder.ignoreErrorsFromLogger(loggerName);
+        return this;
+    }
+
+    @Override
+    public ErrorRecorder userError()
+    {
+        checkOpen();
+        recorder.userError();
+        return this;
+    }
+
+    @Override
+    public ErrorRecorder mustNotify()
+    {
+        checkOpen();
+        recorder.mustNotify();
+        return this;
+    }
+
+    @Override
+    public ErrorRecorder recordThrown(Throwable thrown)
+    {
+        checkOpen();
+        recorder.recordThrown(thrown);
+        return this;
+    }
+
+    @Override
+    public ErrorRecorder recordLogRecord(LogRecord record)
+    {
+        checkOpen();
+        recorder.recordLogRecord(record);
+        return this;
+    }
+
+    @Override
+    public ErrorRecorder recordLogEvent(CapturedLogEvent event)
+    {
+        checkOpen();
+        recorder.recordLogEvent(event);
+        return this;
+    }
+
+    @Override
+    public void error()
+    {
+        checkOpen();
+        recorder.ensureNotificationLevel(ERROR);
+    }
+
+    @Override
+    public void sendReportIfNecessary()
+    {
+    }
+
+    @Override
+    public Optional<ErrorLink> getErrorLink()
+    {
+        checkOpen();
+        return recorder.getErrorLink();
+    }
+}
@@ -0,0 +1,127 @@
+package org.cru.redegg.recording.impl;
+
+import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.StuckThreadMonitor;
+import org.cru.redegg.recording.api.Serializer;
+import org.cru.redegg.recording.api.UnitOfWork;
+import org.cru.redegg.recording.api.UnitsOfWork;
+import org.cru.redegg.reporting.api.ErrorQueue;
+import org.cru.redegg.util.ProxyConstructor;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Begins units of work, each backed by a {@link DefaultErrorRecorder}.
+ * Recorders are reset and kept for reuse when their unit of work is closed,
+ * since consumers and jobs may run through a great many units of work.
+ *
+ * @author Matt Drees
+ */
+@ApplicationScoped
+public class DefaultUnitsOfWork implements UnitsOfWork
+{
+    /**
+     * Idle recorders (and log event buffers) kept for reuse; concurrent units of work beyond this allocate their own.
+     */
+    private static final int MAX_IDLE_RECORDERS = 64;
+
+    private final ErrorQueue queue;
+    private final Serializer serializer;
+    private final RecordingConfig recordingConfig;
+    private final LogEventBufferPool logEventBufferPool;
+    private final StuckThreadMonitor stuckThreadMonitor;
+    private final Clock clock;
+    private final BlockingQueue<DefaultErrorRecorder> idleRecorders;
+
+    @Inject
+    public DefaultUnitsOfWork(
+        ErrorQueue queue,
+        Serializer serializer,
+        @Selected RecordingConfig recordingConfig,
+        StuckThreadMonitor stuckThreadMonitor,
+        @Selected Clock clock)
+    {
+        this(
+            queue,
+            serializer,
+            recordingConfig,
+            new LogEventBufferPool(recordingConfig, MAX_IDLE_RECORDERS),
+            stuckThreadMonitor,
+            clock);
+    }
+
+    public DefaultUnitsOfWork(
+        ErrorQueue queue,
+        Serializer serializer,
+        RecordingConfig recordingConfig,
+        LogEventBufferPool logEventBufferPool,
+        StuckThreadMonitor stuckThreadMonitor,
+        Clock clock)
+    {
+        this.queue = queue;
+        this.serializer = serializer;
+        this.recordingConfig = recordingConfig;
+        this.logEventBufferPool = logEventBufferPool;
+        this.stuckThreadMonitor = stuckThreadMonitor;
+        this.clock = clock;
+        this.idleRecorders = new ArrayBlockingQueue<>(MAX_IDLE_RECORDERS);
+    }
+
+    @ProxyConstructor
+    public DefaultUnitsOfWork()
+    {
+        this.queue = null;
+        this.serializer = null;
+        this.recordingConfig = null;
+        this.logEventBufferPool = null;
+        this.stuckThreadMonitor = null;
+        this.clock = null;
+        this.idleRecorders = null;
+    }
+
+    @Override
+    public UnitOfWork begin(String name)
+    {
+        return begin(name, null);
+    }
+
+    @Override
+    public UnitOfWork begin(String name, Duration timeLimit)
+    {
+        DefaultUnitOfWork unit = new DefaultUnitOfWork(
+            this,
+            acquireRecorder(),
+            queue,
+            name,
+            clock.instant(),
+            recordingConfig.getLogRecordCapacity());
+        unit.begin(stuckThreadMonitor, timeLimit);
+        return unit;
+    }
+
+    private DefaultErrorRecorder acquireRecorder()
+    {
+        DefaultErrorRecorder recorder = idleRecorders.poll();
+        if (recorder == null)
+            recorder = new DefaultErrorRecorder(queue, serializer, recordingConfig, logEventBufferPool);
+        return recorder;
+    }
+
+    void finished(DefaultUnitOfWork unit, DefaultErrorRecorder recorder)
+    {
+        stuckThreadMonitor.finishMonitoringUnitOfWork(unit);
+        recorder.reset();
+        idleRecorders.offer(recorder);
+    }
+
+    Clock getClock()
+    {
+        return clock;
+    }
+}
@@ -4,10 +4,13 @@ import com.google.common.collect.Multimap;
 import java.time.Instant;
 import org.cru.redegg.qualifier.Selected;
 import org.cru.redegg.recording.StuckThreadMonitor;
+import org.cru.redegg.recording.api.CapturedEntity;
+import org.cru.redegg.recording.api.CapturedLogEvent;
 import org.cru.redegg.recording.api.EntitySanitizer;
 import org.cru.redegg.recording.api.ErrorRecorder;
 import org.cru.redegg.recording.api.WebErrorRecorder;
 import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.StreamedEntity;
 import org.cru.redegg.reporting.WebContext;
 import org.cru.redegg.reporting.api.ErrorLink;
 import org.cru.redegg.reporting.api.ErrorQueue;
@@ -24,6 +27,7 @@ import java.net.URL;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.function.Consumer;
 import java.util.logging.LogRecord;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -72,6 +76,12 @@ public class DefaultWebErrorRecorder implements WebErrorRecorder {
 
     private boolean completed;
 
+    /** taken once a report is likely; see {@link #recordRequestSnapshot(Consumer)} */
+    private Consumer<? super WebErrorRecorder> pendingSnapshot;
+
+    /** decoded only if a report is sent; see {@link #recordEntity(CapturedEntity)} */
+    private CapturedEntity capturedEntity;
+
     @Override
     public WebErrorRecorder recordRequestUrl(String url) {
         checkState(!completed);
@@ -158,11 +168,52 @@ public class DefaultWebErrorRecorder implements WebErrorRecorder {
     public WebErrorRecorder recordEntityRepresentation(String entityRepresentation) {
         checkState(!completed);
         checkNotNull(entityRepresentation);
+        releaseCapturedEntity();
         String sanitized = entitySanitizer.sanitizeEntity(entityRepresentation);
         webContext.setEntityRepresentation(sanitized);
         return this;
     }
 
+    @Override
+    public WebErrorRecorder recordEntity(CapturedEntity entity) {
+        checkState(!completed);
+        releaseCapturedEntity();
+        capturedEntity = checkNotNull(entity);
+        return this;
+    }
+
+    private void decodeCapturedEntity()
+    {
+        if (capturedEntity == null)
+            return;
+        try
+        {
+            if (capturedEntity.isSpilled())
+            {
+                // the report takes over the capture, and releases it once it is delivered
+                webContext.setStreamedEntity(new StreamedEntity(capturedEntity, entitySanitizer));
+                capturedEntity = null;
+            }
+            else
+            {
+                webContext.setEntityRepresentation(entitySanitizer.sanitizeEntity(capturedEntity.decode()));
+            }
+        }
+        catch (RuntimeException e)
+        {
+            errorLog.error("unable to record entity", e);
+        }
+    }
+
+    private void releaseCapturedEntity()
+    {
+        if (capturedEntity != null)
+        {
+            capturedEntity.release();
+            capturedEntity = null;
+        }
+    }
+
     @Override
     public WebErrorRecorder recordResponseStatus(int responseStatus)
     {
@@ -179,9 +230,41 @@ public class DefaultWebErrorRecorder implements WebErrorRecorder {
         return this;
     }
 
+    @Override
+    public WebErrorRecorder recordRequestSnapshot(Consumer<? super WebErrorRecorder> snapshot) {
+        checkState(!completed);
+        pendingSnapshot = checkNotNull(snapshot);
+        takeSnapshotIfReportIsLikely();
+        return this;
+    }
+
+    /**
+     * Takes the pending snapshot once a warning or error has been recorded.
+     * It is taken on the request's thread, while the request is still active,
+     * since containers may recycle the request object once it completes.
+     */
+    private void takeSnapshotIfReportIsLikely()
+    {
+        if (pendingSnapshot == null || !defaultRecorder.shouldNotificationBeSent())
+            return;
+        Consumer<? super WebErrorRecorder> snapshot = pendingSnapshot;
+        // cleared first, since the snapshot may log, which would bring us back here
+        pendingSnapshot = null;
+        try
+        {
+            snapshot.accept(this);
+        }
+        catch (RuntimeException e)
+        {
+            errorLog.error("unable to capture request details", e);
+        }
+    }
+
     @Override
     public void recordRequestComplete(Instant finish) {
         checkState(!completed);
+        takeSnapshotIfReportIsLikely();
+        pendingSnapshot = null;
         completed = true;
 
         stuckThreadMonitor.finishMonitoringRequest(webContext);
@@ -193,11 +276,19 @@ public class DefaultWebErrorRecorder implements WebErrorRecorder {
             {
                 defaultRecorder.userError();
             }
+            decodeCapturedEntity();
+            releaseCapturedEntity();
             defaultRecorder.addAdditionalContextIfPossible();
             ErrorReport report = defaultRecorder.buildReport();
             report.addWebContext(webContext);
+            defaultRecorder.releaseLogEvents();
             queue.enqueue(report);
         }
+        else
+        {
+            releaseCapturedEntity();
+            defaultRecorder.releaseLogEvents();
+        }
     }
 
     private boolean wasClientError()
@@ -217,6 +308,13 @@ public class DefaultWebErrorRecorder implements WebErrorRecorder {
         return this;
     }
 
+    @Override
+    public ErrorRecorder recordContextSnapshot(Map<String, String> snapshot) {
+        checkState(!completed);
+        defaultRecorder.recordContextSnapshot(snapshot);
+        return this;
+    }
+
     @Override
     public ErrorRecorder recordUser(Object user) {
         checkState(!completed);
@@ -230,6 +328,7 @@ public class DefaultWebErrorRecorder implements WebErrorRecorder {
         {
             checkState(!completed);
             defaultRecorder.recordThrown(thrown);
+            takeSnapshotIfReportIsLikely();
         }
         catch (Throwable t)
         {
@@ -243,6 +342,15 @@ public class DefaultWebErrorRecorder implements WebErrorRecorder {
     public ErrorRecorder recordLogRecord(LogRecord record) {
         checkState(!completed);
         defaultRecorder.recordLogRecord(record);
+        takeSnapshotIfReportIsLikely();
+        return this;
+    }
+
+    @Override
+    public ErrorRecorder recordLogEvent(CapturedLogEvent event) {
+        checkState(!completed);
+        defaultRecorder.recordLogEvent(event);
+        takeSnapshotIfReportIsLikely();
         return this;
     }
 
@@ -288,6 +396,7 @@ public class DefaultWebErrorRecorder implements WebErrorRecorder {
     {
         checkState(!completed);
         defaultRecorder.mustNotify();
+        takeSnapshotIfReportIsLikely();
         return this;
     }
 
@@ -295,6 +404,7 @@ public class DefaultWebErrorRecorder implements WebErrorRecorder {
     public void error() {
         checkState(!completed);
         defaultRecorder.ensureNotificationLevel(ERROR);
+        takeSnapshotIfReportIsLikely();
     }
 
     @Override
@@ -307,6 +417,7 @@ public class DefaultWebErrorRecorder implements WebErrorRecorder {
     {
         checkState(!completed);
         defaultRecorder.userError();
+        takeSnapshotIfReportIsLikely();
         return this;
     }
 
@@ -3,6 +3,9 @@ package org.cru.redegg.recording.impl;
 import org.cru.redegg.qualifier.Fallback;
 import org.cru.redegg.recording.api.EntitySanitizer;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.logging.Logger;
 
 /**
@@ -24,6 +27,12 @@ public class HyperConservativeEntitySanitizer implements EntitySanitizer
         return "<removed>";
     }
 
+    @Override
+    public void sanitizeEntity(Reader entity, Writer out) throws IOException
+    {
+        out.write(sanitizeEntity((String) null));
+    }
+
     private void warnIfNecessary()
     {
         if (!warned)
@@ -0,0 +1,113 @@
+package org.cru.redegg.recording.impl;
+
+import org.cru.redegg.recording.api.CapturedLogEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Holds the log events recorded for one request, up to a fixed capacity.
+ * Once it is full, the oldest events are evicted, since the events closest to a failure are usually the most useful.
+ * Optionally, the first few events are pinned, and are never evicted.
+ *
+ * <p>
+ * The slots are allocated up front, so the memory a buffer holds on to is bounded and predictable,
+ * and a buffer can be cleared and reused for another request (see {@link LogEventBufferPool}).
+ *
+ * @author Matt Drees
+ */
+public class LogEventBuffer
+{
+    private final CapturedLogEvent[] pinned;
+    private final CapturedLogEvent[] recent;
+
+    private int pinnedSize;
+    private int recentSize;
+    private int nextRecent;
+    private long added;
+
+    public LogEventBuffer(int capacity, int pinnedCapacity)
+    {
+        checkArgument(capacity > 0, "capacity must be positive");
+        checkArgument(pinnedCapacity >= 0 && pinnedCapacity < capacity, "pinned capacity must be less than capacity");
+        pinned = new CapturedLogEvent[pinnedCapacity];
+        recent = new CapturedLogEvent[capacity - pinnedCapacity];
+    }
+
+    public void add(CapturedLogEvent event)
+    {
+        added++;
+        if (pinnedSize < pinned.length)
+        {
+            pinned[pinnedSize++] = event;
+            return;
+        }
+
+        recent[nextRecent] = event;
+        nextRecent++;
+        if (nextRecent == recent.length)
+            nextRecent = 0;
+        if (recentSize < recent.length)
+            recentSize++;
+    }
+
+    public int getCapacity()
+    {
+        return pinned.length + recent.length;
+    }
+
+    public int size()
+    {
+        return pinnedSize + recentSize;
+    }
+
+    public boolean isEmpty()
+    {
+        return added == 0;
+    }
+
+    /**
+     * Returns the number of pinned events.
+     * If any events were evicted, they were logged between these and the rest.
+     */
+    public int getPinnedCount()
+    {
+        return pinnedSize;
+    }
+
+    public long getEvictedCount()
+    {
+        return added - size();
+    }
+
+    /**
+     * Returns the retained events, in the order they were added.
+     */
+    public List<CapturedLogEvent> getEvents()
+    {
+        List<CapturedLogEvent> events = new ArrayList<>(size());
+        events.addAll(Arrays.asList(pinned).subList(0, pinnedSize));
+        int oldest = recentSize < recent.length ? 0 : nextRecent;
+        for (int i = 0; i < recentSize; i++)
+        {
+            events.add(recent[(oldest + i) % recent.length]);
+        }
+        return events;
+    }
+
+    /**
+     * Empties this buffer, releasing its references to events, so it can be reused.
+     */
+    public void clear()
+    {
+        Arrays.fill(pinned, 0, pinnedSize, null);
+        Arrays.fill(recent, 0, recentSize, null);
+        pinnedSize = 0;
+        recentSize = 0;
+        nextRecent = 0;
+        added = 0;
+    }
+}
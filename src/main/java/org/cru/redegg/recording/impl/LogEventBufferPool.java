@@ -0,0 +1,46 @@
+package org.cru.redegg.recording.impl;
+
+import org.cru.redegg.recording.RecordingConfig;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands out {@link LogEventBuffer}s sized by a {@link RecordingConfig},
+ * and keeps up to a fixed number of released buffers for reuse.
+ *
+ * @author Matt Drees
+ */
+public class LogEventBufferPool
+{
+    private final int capacity;
+    private final int pinnedCapacity;
+    private final BlockingQueue<LogEventBuffer> idleBuffers;
+
+    /**
+     * @param maxIdleBuffers how many released buffers to keep; if 0, buffers are not reused
+     */
+    public LogEventBufferPool(RecordingConfig config, int maxIdleBuffers)
+    {
+        this.capacity = config.getLogRecordCapacity();
+        this.pinnedCapacity = config.getPinnedLogRecords();
+        this.idleBuffers = maxIdleBuffers > 0 ? new ArrayBlockingQueue<>(maxIdleBuffers) : null;
+    }
+
+    public LogEventBuffer acquire()
+    {
+        LogEventBuffer buffer = idleBuffers == null ? null : idleBuffers.poll();
+        return buffer != null ? buffer : new LogEventBuffer(capacity, pinnedCapacity);
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used by the caller afterwards.
+     */
+    public void release(LogEventBuffer buffer)
+    {
+        if (idleBuffers == null)
+            return;
+        buffer.clear();
+        idleBuffers.offer(buffer);
+    }
+}
@@ -0,0 +1,142 @@
+package org.cru.redegg.recording.impl;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import org.cru.redegg.recording.api.CapturedLogEvent;
+import org.cru.redegg.recording.api.MessageBuffer;
+import org.cru.redegg.recording.api.NotificationLevel;
+import org.cru.redegg.reporting.ErrorReport;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Formats a report's captured log events into {@link ErrorReport.LogRecord}s.
+ *
+ * <p>
+ * It holds everything it needs from the recorder, so it can be run after the recorder is done,
+ * on the thread that delivers the report (see {@link ErrorReport#deferLogRecords(Supplier)}).
+ * Messages are formatted into a single size-capped buffer,
+ * so long messages are cut off as they are formatted.
+ * Logged throwables are not part of the formatted records, and are never modified,
+ * since the application (or another report) may still be using them.
+ *
+ * @author Matt Drees
+ */
+class LogRecordFormatter implements Supplier<List<ErrorReport.LogRecord>>
+{
+    static final int MESSAGE_LIMIT = 2000;
+
+    private static final TimestampFormatter TIMESTAMP_FORMATTER = new TimestampFormatter();
+
+    private final List<CapturedLogEvent> events;
+    private final int pinnedCount;
+    private final long evictedCount;
+    private final int capacity;
+
+    LogRecordFormatter(LogEventBuffer logEvents)
+    {
+        this.events = logEvents.getEvents();
+        this.pinnedCount = logEvents.getPinnedCount();
+        this.evictedCount = logEvents.getEvictedCount();
+        this.capacity = logEvents.getCapacity();
+    }
+
+    @Override
+    public List<ErrorReport.LogRecord> get()
+    {
+        List<ErrorReport.LogRecord> logRecords = Lists.newArrayListWithCapacity(events.size() + 1);
+        MessageBuffer messageBuffer = new MessageBuffer(MESSAGE_LIMIT);
+        StringBuilder headerBuilder = new StringBuilder(128);
+
+        for (int i = 0; i < events.size(); i++)
+        {
+            if (evictedCount > 0 && i == pinnedCount)
+                logRecords.add(buildEvictionNotice());
+            logRecords.add(buildLogRecord(events.get(i), messageBuffer, headerBuilder));
+        }
+        return logRecords;
+    }
+
+    /**
+     * Returns the {@linkplain ErrorReport#getLogSignature() log signature} of the first event at the most severe level,
+     * or null if there are no events.
+     * No messages are formatted.
+     */
+    String getSignature()
+    {
+        CapturedLogEvent mostSevere = null;
+        for (CapturedLogEvent event : events)
+        {
+            if (mostSevere == null || event.getLevel().intValue() > mostSevere.getLevel().intValue())
+                mostSevere = event;
+            if (mostSevere.getLevel().intValue() >= Level.SEVERE.intValue())
+                break;
+        }
+        if (mostSevere == null)
+            return null;
+        return mostSevere.getLoggerName() + ": " + Strings.nullToEmpty(mostSevere.getMessagePattern());
+    }
+
+    private ErrorReport.LogRecord buildEvictionNotice()
+    {
+        String message =
+            "<limit of " +
+            capacity +
+            " was reached; " +
+            evictedCount +
+            " log records were dropped here>";
+        return new ErrorReport.LogRecord(NotificationLevel.NONE, "", message);
+    }
+
+    private ErrorReport.LogRecord buildLogRecord(
+        CapturedLogEvent logEvent,
+        MessageBuffer messageBuffer,
+        StringBuilder headerBuilder)
+    {
+        messageBuffer.clear();
+        logEvent.writeMessageTo(messageBuffer);
+
+        headerBuilder.setLength(0);
+        buildHeader(logEvent, headerBuilder);
+
+        NotificationLevel level = logLevelToNotificationLevel(logEvent);
+
+        return new ErrorReport.LogRecord(level, headerBuilder.toString(), messageBuffer.toString());
+    }
+
+    private void buildHeader(CapturedLogEvent logEvent, StringBuilder header)
+    {
+        TIMESTAMP_FORMATTER.formatTo(header, logEvent.getMillis());
+        header.append(' ').append(logEvent.getLoggerName());
+        StackTraceElement caller = logEvent.getCaller();
+        if (caller != null)
+            header.append(' ').append(caller.getClassName()).append('.').append(caller.getMethodName());
+    }
+
+    private NotificationLevel logLevelToNotificationLevel(CapturedLogEvent logEvent)
+    {
+        Level logLevel = logEvent.getLevel();
+        if (logLevel.intValue() >= Level.SEVERE.intValue())
+        {
+            return NotificationLevel.ERROR;
+        }
+        else if (logLevel.intValue() >= Level.WARNING.intValue())
+        {
+            return NotificationLevel.WARNING;
+        }
+        else if (logLevel.intValue() >= Level.INFO.intValue())
+        {
+            return NotificationLevel.INFO;
+        }
+        else if (logLevel.intValue() >= Level.FINEST.intValue())
+        {
+            return NotificationLevel.DEBUG;
+        }
+        else
+        {
+            return NotificationLevel.NONE;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package org.cru.redegg.recording.impl;
+
+import org.cru.redegg.recording.api.ErrorRecorder;
+import org.cru.redegg.recording.api.WebErrorRecorder;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Holds the recorder for the web request (or {@linkplain org.cru.redegg.recording.api.UnitOfWork unit of work})
+ * being processed on the current thread.
+ * {@link org.cru.redegg.boot.Lifecycle} binds it when a request starts (or resumes after async processing),
+ * and unbinds it when the request is finished or suspended.
+ *
+ * <p>
+ * The recorder factories check this before anything else,
+ * so that finding the recorder for a log event is a single thread-local lookup,
+ * and calls on it don't go through a CDI context lookup or client proxy.
+ *
+ * <p>
+ * Each binding also has a token, which a logging framework can carry along with its events
+ * so that events handled on another thread (by an async logger, for example) can be routed to the request.
+ * Recorders aren't thread-safe, so such events are {@linkplain #defer(Consumer) deferred},
+ * and recorded when the request completes.
+ *
+ * <p>
+ * Work that a request hands off to other threads is bound to the request's {@linkplain #branch(Supplier) branch},
+ * whose recorder defers everything to the request in the same way.
+ *
+ * @author Matt Drees
+ */
+public class RecorderBinding
+{
+    private static final ThreadLocal<RecorderBinding> current = new ThreadLocal<RecorderBinding>();
+    private static final ConcurrentMap<String, RecorderBinding> bindingsByToken = new ConcurrentHashMap<>();
+    private static final AtomicLong tokenSequence = new AtomicLong();
+
+    private final ErrorRecorder recorder;
+    private final String token;
+    private final int deferredCapacity;
+
+    /** the binding this is a branch of, or null if this is not a branch */
+    private final RecorderBinding parent;
+
+    /* guarded by this */
+    private Deque<Deferred> deferred;
+    private int deferredLogEvents;
+    private boolean retired;
+
+    private volatile RecorderBinding branch;
+
+    /**
+     * @param deferredCapacity the most deferred {@linkplain #deferLogEvent(Consumer) log events} to hold;
+     *                         once full, the oldest are dropped
+     */
+    public RecorderBinding(ErrorRecorder recorder, int deferredCapacity)
+    {
+        this.recorder = recorder;
+        this.token = Long.toString(tokenSequence.incrementAndGet(), Character.MAX_RADIX);
+        this.deferredCapacity = deferredCapacity;
+        this.parent = null;
+        bindingsByToken.put(token, this);
+    }
+
+    private RecorderBinding(RecorderBinding parent, Supplier<? extends ErrorRecorder> fallback)
+    {
+        this.recorder = new BranchRecorder(parent, fallback);
+        this.token = parent.token;
+        this.deferredCapacity = 0;
+        this.parent = parent;
+    }
+
+    /**
+     * Binds this to the current thread.
+     */
+    public void bind()
+    {
+        current.set(this);
+    }
+
+    public static void unbind()
+    {
+        current.remove();
+    }
+
+    /**
+     * Binds this to the current thread in place of the thread's current binding, which is returned,
+     * so that it can be {@linkplain #restore(RecorderBinding) restored} afterwards.
+     * A branch is not bound on a thread where its request is already bound.
+     */
+    public RecorderBinding bindInPlace()
+    {
+        RecorderBinding previous = current.get();
+        if (previous != this && (parent == null || previous != parent))
+            current.set(this);
+        return previous;
+    }
+
+    /**
+     * Restores the binding returned by {@link #bindInPlace()}.
+     */
+    public static void restore(RecorderBinding previous)
+    {
+        if (previous != null)
+            current.set(previous);
+        else
+            current.remove();
+    }
+
+    /**
+     * Returns the binding for this thread, or null if there is none.
+     */
+    public static RecorderBinding current()
+    {
+        return current.get();
+    }
+
+    /**
+     * Returns the web request recorder bound to this thread, or null if there is none.
+     */
+    public static WebErrorRecorder get()
+    {
+        RecorderBinding binding = current.get();
+        return binding != null && binding.recorder instanceof WebErrorRecorder ?
+            (WebErrorRecorder) binding.recorder :
+            null;
+    }
+
+    /**
+     * Returns the binding with the given token, or null if its request has completed.
+     */
+    public static RecorderBinding forToken(String token)
+    {
+        return bindingsByToken.get(token);
+    }
+
+    public ErrorRecorder getRecorder()
+    {
+        return recorder;
+    }
+
+    public String getToken()
+    {
+        return token;
+    }
+
+    /**
+     * Returns the binding for work that this binding's request hands off to other threads.
+     * Its recorder is thread-safe; it {@linkplain #defer(Consumer) defers} each recording to this binding,
+     * so that it is merged into the request's report.
+     * Once the request has completed, recordings go to a recorder from {@code fallback} instead,
+     * which must not return the current thread's recorder.
+     *
+     * <p>
+     * The branch is created once and shared by all of the request's threads; a branch is its own branch.
+     */
+    public RecorderBinding branch(Supplier<? extends ErrorRecorder> fallback)
+    {
+        if (parent != null)
+            return this;
+        RecorderBinding result = branch;
+        if (result == null)
+        {
+            synchronized (this)
+            {
+                result = branch;
+                if (result == null)
+                {
+                    result = new RecorderBinding(this, fallback);
+                    branch = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Queues a recording to be applied to this binding's recorder when its request completes.
+     * This may be called from any thread.
+     * Recordings that may change whether or how the request is reported
+     * (thrown exceptions, warnings and errors, context) are never dropped.
+     *
+     * @return false if the request has already completed, in which case the recording was not queued
+     */
+    public boolean defer(Consumer<? super ErrorRecorder> recording)
+    {
+        if (parent != null)
+            return parent.defer(recording);
+        return enqueue(recording, false);
+    }
+
+    /**
+     * Like {@link #defer(Consumer)}, for recording a log event that doesn't change whether the request is reported.
+     * Once the binding holds as many of these as its capacity, the oldest of them is dropped.
+     */
+    public boolean deferLogEvent(Consumer<? super ErrorRecorder> recording)
+    {
+        if (parent != null)
+            return parent.deferLogEvent(recording);
+        return enqueue(recording, true);
+    }
+
+    /**
+     * Synchronized with {@link #retire()}, so a recording is either applied or refused, never lost.
+     */
+    private synchronized boolean enqueue(Consumer<? super ErrorRecorder> recording, boolean logEvent)
+    {
+        if (retired)
+            return false;
+        if (logEvent)
+        {
+            if (deferredCapacity == 0)
+                return true;
+            if (deferredLogEvents == deferredCapacity)
+                dropOldestLogEvent();
+            deferredLogEvents++;
+        }
+        if (deferred == null)
+            deferred = new ArrayDeque<>();
+        deferred.add(new Deferred(recording, logEvent));
+        return true;
+    }
+
+    private void dropOldestLogEvent()
+    {
+        for (Iterator<Deferred> iterator = deferred.iterator(); iterator.hasNext(); )
+        {
+            if (iterator.next().logEvent)
+            {
+                iterator.remove();
+                deferredLogEvents--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops routing events to this binding, and applies any deferred recordings to its recorder.
+     * Called just before the request is completed.
+     */
+    public void retire()
+    {
+        Deque<Deferred> recordings;
+        synchronized (this)
+        {
+            retired = true;
+            bindingsByToken.remove(token);
+            recordings = deferred;
+            deferred = null;
+            deferredLogEvents = 0;
+        }
+        if (recordings == null)
+            return;
+        for (Deferred recording : recordings)
+        {
+            recording.recording.accept(recorder);
+        }
+    }
+
+    private static class Deferred
+    {
+        private final Consumer<? super ErrorRecorder> recording;
+        private final boolean logEvent;
+
+        Deferred(Consumer<? super ErrorRecorder> recording, boolean logEvent)
+        {
+            this.recording = recording;
+            this.logEvent = logEvent;
+        }
+    }
+}
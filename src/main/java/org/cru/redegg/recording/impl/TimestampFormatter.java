@@ -0,0 +1,72 @@
+package org.cru.redegg.recording.impl;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Formats log event timestamps as {@link DateTimeFormatter#ISO_ZONED_DATE_TIME} does.
+ *
+ * <p>
+ * Log events tend to come in bursts, so the text for the most recent second is cached,
+ * and events within that second only need their milliseconds appended.
+ * This is safe to share between threads.
+ *
+ * @author Matt Drees
+ */
+class TimestampFormatter
+{
+    private volatile FormattedSecond lastSecond;
+
+    void formatTo(StringBuilder builder, long millis)
+    {
+        long epochSecond = Math.floorDiv(millis, 1000L);
+        FormattedSecond second = lastSecond;
+        if (second == null || second.epochSecond != epochSecond)
+        {
+            second = new FormattedSecond(epochSecond, ZoneId.systemDefault());
+            lastSecond = second;
+        }
+
+        builder.append(second.dateTime);
+        appendFraction(builder, (int) Math.floorMod(millis, 1000L));
+        builder.append(second.zone);
+    }
+
+    /**
+     * Appends the milliseconds the way ISO_LOCAL_TIME does: omitted if zero, and without trailing zeros.
+     */
+    private void appendFraction(StringBuilder builder, int millis)
+    {
+        if (millis == 0)
+            return;
+        builder.append('.').append((char) ('0' + millis / 100));
+        if (millis % 100 != 0)
+        {
+            builder.append((char) ('0' + millis / 10 % 10));
+            if (millis % 10 != 0)
+                builder.append((char) ('0' + millis % 10));
+        }
+    }
+
+    private static class FormattedSecond
+    {
+        final long epochSecond;
+
+        /** the local date and time, up to the seconds */
+        final String dateTime;
+
+        /** the offset and zone id */
+        final String zone;
+
+        FormattedSecond(long epochSecond, ZoneId zoneId)
+        {
+            ZonedDateTime time = Instant.ofEpochSecond(epochSecond).atZone(zoneId);
+            String formatted = DateTimeFormatter.ISO_ZONED_DATE_TIME.format(time);
+            this.epochSecond = epochSecond;
+            this.dateTime = DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(time.toLocalDateTime());
+            this.zone = formatted.substring(dateTime.length());
+        }
+    }
+}
@@ -1,10 +1,10 @@
 package org.cru.redegg.recording.jul;
 
+import org.cru.redegg.recording.LoggerNameRules;
+import org.cru.redegg.recording.RecordingConfig;
 import org.cru.redegg.recording.api.LoggingRecorder;
 import org.cru.redegg.recording.api.RecorderFactory;
 
-import java.util.Set;
-
 /**
  * @author Matt Drees
  */
@@ -13,16 +13,20 @@ public class JulRecorder implements LoggingRecorder
     private java.util.logging.Logger root;
     private RedEggHandler julHandler;
 
-    public static JulRecorder add(RecorderFactory recorderFactory, Set<String> ignoredLoggers)
+    public static JulRecorder add(
+        RecorderFactory recorderFactory,
+        LoggerNameRules ignoredLoggers,
+        RecordingConfig recordingConfig)
     {
-        return new JulRecorder(recorderFactory, ignoredLoggers);
+        return new JulRecorder(recorderFactory, ignoredLoggers, recordingConfig);
     }
 
     private JulRecorder(
         RecorderFactory recorderFactory,
-        Set<String> ignoredLoggers)
+        LoggerNameRules ignoredLoggers,
+        RecordingConfig recordingConfig)
     {
-        julHandler = new RedEggHandler(recorderFactory, ignoredLoggers);
+        julHandler = new RedEggHandler(recorderFactory, ignoredLoggers, recordingConfig);
         root = java.util.logging.Logger.getLogger("");
         root.info("adding j.u.l. handler");
         root.addHandler(julHandler);
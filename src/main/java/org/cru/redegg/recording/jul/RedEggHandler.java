@@ -1,5 +1,8 @@
 package org.cru.redegg.recording.jul;
 
+import org.cru.redegg.recording.LoggerNameRules;
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.api.CapturedLogEvent;
 import org.cru.redegg.recording.api.ErrorRecorder;
 import org.cru.redegg.recording.api.RecorderFactory;
 
@@ -16,22 +19,47 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class RedEggHandler extends Handler {
 
     private final RecorderFactory factory;
-    private final Set<String> ignoredLoggerNames;
+    private final LoggerNameRules ignoredLoggers;
+    private final RecordingConfig config;
 
     public RedEggHandler(RecorderFactory factory, Set<String> ignoredLoggerNames) {
+        this(factory, ignoredLoggerNames, new RecordingConfig());
+    }
+
+    public RedEggHandler(RecorderFactory factory, Set<String> ignoredLoggerNames, RecordingConfig config) {
+        this(factory, LoggerNameRules.compile(ignoredLoggerNames), config);
+    }
+
+    public RedEggHandler(RecorderFactory factory, LoggerNameRules ignoredLoggers, RecordingConfig config) {
         this.factory = checkNotNull(factory);
-        this.ignoredLoggerNames = checkNotNull(ignoredLoggerNames);
+        this.ignoredLoggers = checkNotNull(ignoredLoggers);
+        this.config = checkNotNull(config);
         setLevel(Level.FINE);
     }
 
     @Override
     public void publish(LogRecord record) {
-        if (ignoredLoggerNames.contains(record.getLoggerName()))
+        if (record.getLevel().intValue() < Level.WARNING.intValue() && !factory.isRecorderActive())
+            return;
+        if (ignoredLoggers.matches(record.getLoggerName()))
             return;
         ErrorRecorder recorder = factory.getRecorder();
-        recorder
-            .recordLogRecord(record)
-            .sendReportIfNecessary();
+        if (config.isIncludeCallerData())
+            recorder.recordLogEvent(captureWithCaller(record));
+        else
+            recorder.recordLogRecord(record);
+        recorder.sendReportIfNecessary();
+    }
+
+    /**
+     * j.u.l. infers the caller when it is first asked for it, so this must happen on the logging thread.
+     */
+    private CapturedLogEvent captureWithCaller(LogRecord record) {
+        String sourceClassName = record.getSourceClassName();
+        StackTraceElement caller = sourceClassName == null ?
+            null :
+            new StackTraceElement(sourceClassName, String.valueOf(record.getSourceMethodName()), null, -1);
+        return CapturedLogEvent.from(record, caller);
     }
 
     @Override
@@ -1,11 +1,12 @@
 package org.cru.redegg.recording.log4j;
 
 import org.apache.log4j.Logger;
+import org.cru.redegg.recording.LoggerNameRules;
+import org.cru.redegg.recording.RecordingConfig;
 import org.cru.redegg.recording.api.LoggingRecorder;
 import org.cru.redegg.recording.api.RecorderFactory;
 
 import java.util.Enumeration;
-import java.util.Set;
 
 /**
  * Encapsulates a dependency on log4j.
@@ -17,14 +18,20 @@ public class Log4jRecorder implements LoggingRecorder
     private Logger root;
     private RedEggLog4jAppender appender;
 
-    public static Log4jRecorder add(RecorderFactory recorderFactory, Set<String> ignoredLoggers)
+    public static Log4jRecorder add(
+        RecorderFactory recorderFactory,
+        LoggerNameRules ignoredLoggers,
+        RecordingConfig recordingConfig)
     {
-        return new Log4jRecorder(recorderFactory, ignoredLoggers);
+        return new Log4jRecorder(recorderFactory, ignoredLoggers, recordingConfig);
     }
 
-    private Log4jRecorder(RecorderFactory recorderFactory, Set<String> ignoredLoggers)
+    private Log4jRecorder(
+        RecorderFactory recorderFactory,
+        LoggerNameRules ignoredLoggers,
+        RecordingConfig recordingConfig)
     {
-        appender = new RedEggLog4jAppender(recorderFactory, ignoredLoggers);
+        appender = new RedEggLog4jAppender(recorderFactory, ignoredLoggers, recordingConfig);
         root = Logger.getRootLogger();
         root.info("adding log4j appender");
         root.addAppender(appender);
@@ -2,14 +2,17 @@ package org.cru.redegg.recording.log4j;
 
 import org.apache.log4j.AppenderSkeleton;
 import org.apache.log4j.Level;
+import org.apache.log4j.spi.LocationInfo;
 import org.apache.log4j.spi.LoggingEvent;
 import org.apache.log4j.spi.ThrowableInformation;
+import org.cru.redegg.recording.LoggerNameRules;
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.api.CapturedLogEvent;
 import org.cru.redegg.recording.api.ErrorRecorder;
 import org.cru.redegg.recording.api.RecorderFactory;
 
 import java.util.Map;
 import java.util.Set;
-import java.util.logging.LogRecord;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -19,22 +22,35 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class RedEggLog4jAppender extends AppenderSkeleton {
 
     private final RecorderFactory factory;
-    private final Set<String> ignoredLoggerNames;
+    private final LoggerNameRules ignoredLoggers;
+    private final RecordingConfig config;
 
     public RedEggLog4jAppender(RecorderFactory factory, Set<String> ignoredLoggerNames) {
+        this(factory, ignoredLoggerNames, new RecordingConfig());
+    }
+
+    public RedEggLog4jAppender(RecorderFactory factory, Set<String> ignoredLoggerNames, RecordingConfig config) {
+        this(factory, LoggerNameRules.compile(ignoredLoggerNames), config);
+    }
+
+    public RedEggLog4jAppender(RecorderFactory factory, LoggerNameRules ignoredLoggers, RecordingConfig config) {
         this.factory = checkNotNull(factory);
-        this.ignoredLoggerNames = checkNotNull(ignoredLoggerNames);
+        this.ignoredLoggers = checkNotNull(ignoredLoggers);
+        this.config = checkNotNull(config);
         setThreshold(Level.DEBUG);
     }
 
     @Override
     protected void append(LoggingEvent event) {
-        if (ignoredLoggerNames.contains(event.getLoggerName()))
+        boolean warning = event.getLevel().toInt() >= Level.WARN.toInt();
+        if (!warning && !factory.isRecorderActive())
+            return;
+        if (ignoredLoggers.matches(event.getLoggerName()))
             return;
 
         ErrorRecorder recorder = factory.getRecorder();
 
-        if (event.getLevel().toInt() >= Level.WARN.toInt()) {
+        if (warning) {
 
             @SuppressWarnings("unchecked") //log4j API is not generic
             Map<String, Object> properties = event.getProperties();
@@ -48,29 +64,37 @@ public class RedEggLog4jAppender extends AppenderSkeleton {
         }
 
         recorder
-            .recordLogRecord(toLogRecord(event))
+            .recordLogEvent(capture(event))
             .sendReportIfNecessary();
     }
 
-    private LogRecord toLogRecord(LoggingEvent event) {
+    private CapturedLogEvent capture(LoggingEvent event) {
 
-        LogRecord record = new LogRecord(toJulLevel(event.getLevel()), String.valueOf(event.getMessage()));
+        Object message = event.getMessage();
 
+        Throwable thrown = null;
         ThrowableInformation throwableInformation = event.getThrowableInformation();
         if (throwableInformation != null && throwableInformation.getThrowable() != null)
         {
-            record.setThrown(throwableInformation.getThrowable());
+            thrown = throwableInformation.getThrowable();
         }
-        else if (event.getMessage() instanceof Throwable) {
-            Throwable throwable = (Throwable) event.getMessage();
-            record.setThrown(throwable);
+        else if (message instanceof Throwable) {
+            thrown = (Throwable) message;
         }
 
-        record.setMillis(event.getTimeStamp());
-        record.setLoggerName(event.getLoggerName());
-        record.setSourceClassName(event.getLocationInformation().getClassName());
-        record.setSourceMethodName(event.getLocationInformation().getMethodName());
-        return record;
+        return new CapturedLogEvent(
+            toJulLevel(event.getLevel()),
+            event.getLoggerName(),
+            event.getTimeStamp(),
+            thrown,
+            message instanceof String ? (String) message : null,
+            buffer -> buffer.append(String.valueOf(message)),
+            config.isIncludeCallerData() ? getCaller(event) : null);
+    }
+
+    private StackTraceElement getCaller(LoggingEvent event) {
+        LocationInfo location = event.getLocationInformation();
+        return new StackTraceElement(location.getClassName(), location.getMethodName(), location.getFileName(), -1);
     }
 
     private java.util.logging.Level toJulLevel(Level level) {
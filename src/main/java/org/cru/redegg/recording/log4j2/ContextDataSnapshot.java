@@ -0,0 +1,145 @@
+package org.cru.redegg.recording.log4j2;
+
+import org.apache.logging.log4j.util.ReadOnlyStringMap;
+import org.apache.logging.log4j.util.StringMap;
+import org.apache.logging.log4j.util.TriConsumer;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Presents a log4j2 event's context data as a Map, leaving out red-egg's request token,
+ * so it can be given to {@link org.cru.redegg.recording.api.ErrorRecorder#recordContextSnapshot(Map)}.
+ *
+ * <p>
+ * log4j2's default (copy-on-write) context map hands every event the same frozen map until the context changes,
+ * so frozen maps are wrapped rather than copied.
+ * Other maps (as used in garbage-free mode) may be reused for later events, so they are copied.
+ * Maps without any context besides the request token aren't wrapped or copied at all.
+ *
+ * @author Matt Drees
+ */
+class ContextDataSnapshot extends AbstractMap<String, String>
+{
+    private static final TriConsumer<String, Object, Map<String, String>> COPY_ENTRY = (key, value, copy) -> {
+        if (!RedEggLog4j2Appender.REQUEST_TOKEN_KEY.equals(key))
+            copy.put(key, stringValue(value));
+    };
+
+    static Map<String, String> of(ReadOnlyStringMap contextData)
+    {
+        if (contextData.isEmpty() ||
+            contextData.size() == 1 && contextData.containsKey(RedEggLog4j2Appender.REQUEST_TOKEN_KEY))
+            return Collections.emptyMap();
+        if (contextData instanceof StringMap && ((StringMap) contextData).isFrozen())
+            return new ContextDataSnapshot(contextData);
+
+        Map<String, String> copy = new HashMap<>(contextData.size() * 2);
+        contextData.forEach(COPY_ENTRY, copy);
+        return Collections.unmodifiableMap(copy);
+    }
+
+    private final ReadOnlyStringMap contextData;
+
+    private ContextDataSnapshot(ReadOnlyStringMap contextData)
+    {
+        this.contextData = contextData;
+    }
+
+    @Override
+    public int size()
+    {
+        return contextData.containsKey(RedEggLog4j2Appender.REQUEST_TOKEN_KEY) ?
+            contextData.size() - 1 :
+            contextData.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return !RedEggLog4j2Appender.REQUEST_TOKEN_KEY.equals(key) &&
+               key instanceof String &&
+               contextData.containsKey((String) key);
+    }
+
+    @Override
+    public String get(Object key)
+    {
+        return containsKey(key) ? stringValue(contextData.getValue((String) key)) : null;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        return o instanceof ContextDataSnapshot && ((ContextDataSnapshot) o).contextData == contextData ||
+               super.equals(o);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return super.hashCode();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet()
+    {
+        return new AbstractSet<Entry<String, String>>()
+        {
+            @Override
+            public Iterator<Entry<String, String>> iterator()
+            {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size()
+            {
+                return ContextDataSnapshot.this.size();
+            }
+        };
+    }
+
+    private class EntryIterator implements Iterator<Entry<String, String>>
+    {
+        private final String[] keys = new String[size()];
+        private int next;
+
+        EntryIterator()
+        {
+            contextData.forEach(
+                (key, value, iterator) -> {
+                    if (!RedEggLog4j2Appender.REQUEST_TOKEN_KEY.equals(key))
+                        iterator.keys[iterator.next++] = key;
+                },
+                this);
+            next = 0;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return next < keys.length;
+        }
+
+        @Override
+        public Entry<String, String> next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            String key = keys[next++];
+            return new SimpleImmutableEntry<>(key, stringValue(contextData.getValue(key)));
+        }
+    }
+
+    private static String stringValue(Object value)
+    {
+        return value == null ? null : String.valueOf(value);
+    }
+}
@@ -2,15 +2,16 @@ package org.cru.redegg.recording.log4j2;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.ThreadContext;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.config.AbstractConfiguration;
 import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.cru.redegg.recording.LoggerNameRules;
+import org.cru.redegg.recording.RecordingConfig;
 import org.cru.redegg.recording.api.LoggingRecorder;
 import org.cru.redegg.recording.api.RecorderFactory;
 
-import java.util.Set;
-
 /**
  * Encapsulates a dependency on log4j2.
  *
@@ -21,14 +22,20 @@ public class Log4j2Recorder implements LoggingRecorder
     private RedEggLog4j2Appender appender;
     private final LoggerContext loggerContext;
 
-    public static Log4j2Recorder add(RecorderFactory recorderFactory, Set<String> ignoredLoggers)
+    public static Log4j2Recorder add(
+        RecorderFactory recorderFactory,
+        LoggerNameRules ignoredLoggers,
+        RecordingConfig recordingConfig)
     {
-        return new Log4j2Recorder(recorderFactory, ignoredLoggers);
+        return new Log4j2Recorder(recorderFactory, ignoredLoggers, recordingConfig);
     }
 
-    private Log4j2Recorder(RecorderFactory recorderFactory, Set<String> ignoredLoggers)
+    private Log4j2Recorder(
+        RecorderFactory recorderFactory,
+        LoggerNameRules ignoredLoggers,
+        RecordingConfig recordingConfig)
     {
-        appender = new RedEggLog4j2Appender(recorderFactory, ignoredLoggers);
+        appender = new RedEggLog4j2Appender(recorderFactory, ignoredLoggers, recordingConfig);
         LogManager.getRootLogger().info("adding log4j2 appender");
         loggerContext = (LoggerContext) LogManager.getContext(false);
         final Configuration config = loggerContext.getConfiguration();
@@ -47,4 +54,16 @@ public class Log4j2Recorder implements LoggingRecorder
         config.removeAppender(appender.getName());
         loggerContext.updateLoggers();
     }
+
+    @Override
+    public void requestBound(String requestToken)
+    {
+        ThreadContext.put(RedEggLog4j2Appender.REQUEST_TOKEN_KEY, requestToken);
+    }
+
+    @Override
+    public void requestUnbound()
+    {
+        ThreadContext.remove(RedEggLog4j2Appender.REQUEST_TOKEN_KEY);
+    }
 }
@@ -1,80 +1,175 @@
 package org.cru.redegg.recording.log4j2;
 
 import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.ThreadContext;
 import org.apache.logging.log4j.core.Filter;
 import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.appender.AbstractAppender;
 import org.apache.logging.log4j.core.filter.ThresholdFilter;
 import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ReusableMessage;
+import org.cru.redegg.recording.LoggerNameRules;
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.api.CapturedLogEvent;
 import org.cru.redegg.recording.api.ErrorRecorder;
 import org.cru.redegg.recording.api.RecorderFactory;
+import org.cru.redegg.recording.impl.RecorderBinding;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.logging.LogRecord;
+import java.util.function.Supplier;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
+ * Records log4j2 events.
+ *
+ * <p>
+ * This is safe to use with log4j2's garbage-free mode and async loggers:
+ * the parts of an event that are kept are copied out of it before this returns,
+ * since log4j2 may reuse the event (and its message) afterwards.
+ * If {@link RecordingConfig#isPropagateRequestToken()} is set,
+ * events handled on an async logger's thread are routed by their {@link #REQUEST_TOKEN_KEY} context entry
+ * to the request that logged them.
+ *
  * @author Matt Drees
  */
 public class RedEggLog4j2Appender extends AbstractAppender
 {
+    /**
+     * The context data key under which {@link Log4j2Recorder} puts the current request's token.
+     */
+    public static final String REQUEST_TOKEN_KEY = "redEggRequest";
 
     private final RecorderFactory factory;
-    private final Set<String> ignoredLoggerNames;
+    private final LoggerNameRules ignoredLoggers;
+    private final RecordingConfig config;
 
     public RedEggLog4j2Appender(RecorderFactory factory, Set<String> ignoredLoggerNames) {
+        this(factory, ignoredLoggerNames, new RecordingConfig());
+    }
+
+    public RedEggLog4j2Appender(RecorderFactory factory, Set<String> ignoredLoggerNames, RecordingConfig config) {
+        this(factory, LoggerNameRules.compile(ignoredLoggerNames), config);
+    }
+
+    public RedEggLog4j2Appender(RecorderFactory factory, LoggerNameRules ignoredLoggers, RecordingConfig config) {
         super("red-egg-appender", null, null, false);
         this.factory = checkNotNull(factory);
-        this.ignoredLoggerNames = checkNotNull(ignoredLoggerNames);
+        this.ignoredLoggers = checkNotNull(ignoredLoggers);
+        this.config = checkNotNull(config);
         addFilter(ThresholdFilter.createFilter(Level.DEBUG, Filter.Result.ACCEPT, Filter.Result.DENY));
     }
 
     @Override
     public void append(LogEvent event)
     {
-        if (ignoredLoggerNames.contains(event.getLoggerName()))
+        boolean warning = event.getLevel().isMoreSpecificThan(Level.WARN);
+        if (config.isPropagateRequestToken() && deferToOriginatingRequest(event, warning))
+            return;
+        if (!warning && !factory.isRecorderActive())
+            return;
+        if (ignoredLoggers.matches(event.getLoggerName()))
             return;
 
         ErrorRecorder recorder = factory.getRecorder();
 
-        if (event.getLevel().intLevel() >= Level.WARN.intLevel()) {
-
-            Map<String, String> properties = event.getContextData().toMap();
-            for (Map.Entry<String, String> entry : properties.entrySet())
-            {
-                recorder.recordContext(entry.getKey(), entry.getValue());
-            }
-
-            recorder.recordContext("log4j2 NDC", event.getContextStack().asList());
+        if (warning) {
+            recordContext(recorder, ContextDataSnapshot.of(event.getContextData()), contextStackOf(event));
         }
 
         recorder
-            .recordLogRecord(toLogRecord(event))
+            .recordLogEvent(capture(event))
             .sendReportIfNecessary();
 
     }
 
+    /**
+     * If this event was logged during a request, but is being handled on another thread,
+     * copies what is needed from it and defers it to that request.
+     *
+     * @return true if the event was handled
+     */
+    private boolean deferToOriginatingRequest(LogEvent event, boolean warning)
+    {
+        if (RecorderBinding.current() != null)
+            return false;
+        String token = event.getContextData().getValue(REQUEST_TOKEN_KEY);
+        if (token == null)
+            return false;
+        RecorderBinding binding = RecorderBinding.forToken(token);
+        if (binding == null)
+            return false;
+        if (ignoredLoggers.matches(event.getLoggerName()))
+            return true;
+
+        CapturedLogEvent captured = capture(event);
+        if (warning)
+        {
+            Map<String, String> context = ContextDataSnapshot.of(event.getContextData());
+            List<String> contextStack = contextStackOf(event);
+            return binding.defer(recorder -> {
+                recordContext(recorder, context, contextStack);
+                recorder.recordLogEvent(captured);
+            });
+        }
+        else
+        {
+            return binding.deferLogEvent(recorder -> recorder.recordLogEvent(captured));
+        }
+    }
+
+    /**
+     * Returns the event's NDC, or null if it is empty (as it usually is), so it isn't recorded.
+     */
+    private List<String> contextStackOf(LogEvent event)
+    {
+        ThreadContext.ContextStack contextStack = event.getContextStack();
+        return contextStack == null || contextStack.getDepth() == 0 ? null : contextStack.asList();
+    }
+
+    private void recordContext(ErrorRecorder recorder, Map<String, String> context, List<String> contextStack)
+    {
+        if (!context.isEmpty())
+            recorder.recordContextSnapshot(context);
+        if (contextStack != null)
+            recorder.recordContext("log4j2 NDC", contextStack);
+    }
 
-    private LogRecord toLogRecord(LogEvent event) {
+    private CapturedLogEvent capture(LogEvent event) {
         Message message = event.getMessage();
-        LogRecord record = new LogRecord(toJulLevel(event.getLevel()), message != null ? message.getFormattedMessage() : null);
 
-        if (event.getThrown() != null)
-        {
-            record.setThrown(event.getThrown());
-        }
-        else if (event.getMessage().getThrowable() != null) { //TODO: check if this makes sense to do
-            record.setThrown(event.getMessage().getThrowable());
+        Throwable thrown = event.getThrown();
+        if (thrown == null && message != null) { //TODO: check if this makes sense to do
+            thrown = message.getThrowable();
         }
 
-        record.setMillis(event.getTimeMillis());
-        record.setLoggerName(event.getLoggerName());
-        StackTraceElement source = event.getSource();
-        record.setSourceClassName(source == null ? null : source.getClassName());
-        record.setSourceMethodName(source == null ? null : source.getMethodName());
-        return record;
+        Supplier<String> formatted = deferFormatting(message);
+        return new CapturedLogEvent(
+            toJulLevel(event.getLevel()),
+            event.getLoggerName(),
+            event.getTimeMillis(),
+            thrown,
+            message == null ? null : message.getFormat(),
+            buffer -> buffer.append(formatted.get()),
+            config.isIncludeCallerData() ? event.getSource() : null);
+    }
+
+    /**
+     * Reusable messages (used when log4j2 runs garbage-free) are overwritten by later events,
+     * so they must be formatted now; other messages are formatted only if a report is built.
+     */
+    private Supplier<String> deferFormatting(Message message) {
+        if (message == null)
+            return () -> null;
+        else if (message instanceof ReusableMessage)
+        {
+            String formatted = message.getFormattedMessage();
+            return () -> formatted;
+        }
+        else
+            return message::getFormattedMessage;
     }
 
     private java.util.logging.Level toJulLevel(Level level) {
@@ -3,12 +3,13 @@ package org.cru.redegg.recording.logback;
 import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
+import org.cru.redegg.recording.LoggerNameRules;
+import org.cru.redegg.recording.RecordingConfig;
 import org.cru.redegg.recording.api.LoggingRecorder;
 import org.cru.redegg.recording.api.RecorderFactory;
 import org.slf4j.LoggerFactory;
 
 import java.util.Iterator;
-import java.util.Set;
 
 /**
  * Encapsulates a dependency on logback.
@@ -25,14 +26,20 @@ public class LogbackRecorder implements LoggingRecorder
         return getRootSlf4jLogger() instanceof Logger;
     }
 
-    public static LogbackRecorder add(RecorderFactory recorderFactory, Set<String> ignoredLoggers)
+    public static LogbackRecorder add(
+        RecorderFactory recorderFactory,
+        LoggerNameRules ignoredLoggers,
+        RecordingConfig recordingConfig)
     {
-        return new LogbackRecorder(recorderFactory, ignoredLoggers);
+        return new LogbackRecorder(recorderFactory, ignoredLoggers, recordingConfig);
     }
 
-    private LogbackRecorder(RecorderFactory recorderFactory, Set<String> ignoredLoggers)
+    private LogbackRecorder(
+        RecorderFactory recorderFactory,
+        LoggerNameRules ignoredLoggers,
+        RecordingConfig recordingConfig)
     {
-        appender = new RedEggLogbackAppender(recorderFactory, ignoredLoggers);
+        appender = new RedEggLogbackAppender(recorderFactory, ignoredLoggers, recordingConfig);
         root = (Logger) getRootSlf4jLogger();
         appender.setContext(root.getLoggerContext());
         appender.start();
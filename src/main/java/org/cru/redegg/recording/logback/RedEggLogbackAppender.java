@@ -5,12 +5,13 @@ import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.IThrowableProxy;
 import ch.qos.logback.classic.spi.ThrowableProxy;
 import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import org.cru.redegg.recording.LoggerNameRules;
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.api.CapturedLogEvent;
 import org.cru.redegg.recording.api.ErrorRecorder;
 import org.cru.redegg.recording.api.RecorderFactory;
 
-import java.util.Map;
 import java.util.Set;
-import java.util.logging.LogRecord;
 
 /**
  * @author Matt Drees
@@ -18,57 +19,79 @@ import java.util.logging.LogRecord;
 public class RedEggLogbackAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
 {
     private final RecorderFactory factory;
-    private final Set<String> ignoredLoggerNames;
+    private final LoggerNameRules ignoredLoggers;
+    private final RecordingConfig config;
 
     public RedEggLogbackAppender(
         RecorderFactory factory,
         Set<String> ignoredLoggerNames)
+    {
+        this(factory, ignoredLoggerNames, new RecordingConfig());
+    }
+
+    public RedEggLogbackAppender(
+        RecorderFactory factory,
+        Set<String> ignoredLoggerNames,
+        RecordingConfig config)
+    {
+        this(factory, LoggerNameRules.compile(ignoredLoggerNames), config);
+    }
+
+    public RedEggLogbackAppender(
+        RecorderFactory factory,
+        LoggerNameRules ignoredLoggers,
+        RecordingConfig config)
     {
         this.factory = factory;
-        this.ignoredLoggerNames = ignoredLoggerNames;
+        this.ignoredLoggers = ignoredLoggers;
+        this.config = config;
     }
 
     @Override
     protected void append(ILoggingEvent event)
     {
-        if (ignoredLoggerNames.contains(event.getLoggerName()))
+        boolean warning = event.getLevel().toInt() >= Level.WARN.toInt();
+        if (!warning && !factory.isRecorderActive())
+            return;
+        if (ignoredLoggers.matches(event.getLoggerName()))
             return;
 
         ErrorRecorder recorder = factory.getRecorder();
 
-        if (event.getLevel().toInt() >= Level.WARN.toInt()) {
-            Map<String, String> properties = event.getMDCPropertyMap();
-            for (Map.Entry<String, String> entry : properties.entrySet())
-            {
-                recorder.recordContext(entry.getKey(), entry.getValue());
-            }
+        if (warning) {
+            recorder.recordContextSnapshot(event.getMDCPropertyMap());
         }
 
         recorder
-            .recordLogRecord(toLogRecord(event))
+            .recordLogEvent(capture(event))
             .sendReportIfNecessary();
     }
 
-    private LogRecord toLogRecord(ILoggingEvent event)
+    private CapturedLogEvent capture(ILoggingEvent event)
     {
-        LogRecord record = new LogRecord(
-            toJulLevel(event.getLevel()),
-            String.valueOf(event.getFormattedMessage()));
-
+        Throwable thrown = null;
         IThrowableProxy iThrowbleProxy = event.getThrowableProxy();
         if (iThrowbleProxy != null &&
             iThrowbleProxy instanceof ThrowableProxy)
         {
             ThrowableProxy throwbleProxy = (ThrowableProxy) iThrowbleProxy;
-            record.setThrown(throwbleProxy.getThrowable());
+            thrown = throwbleProxy.getThrowable();
         }
 
-        record.setMillis(event.getTimeStamp());
-        record.setLoggerName(event.getLoggerName());
-        StackTraceElement callerElement = event.getCallerData()[0];
-        record.setSourceClassName(callerElement.getClassName());
-        record.setSourceMethodName(callerElement.getMethodName());
-        return record;
+        return new CapturedLogEvent(
+            toJulLevel(event.getLevel()),
+            event.getLoggerName(),
+            event.getTimeStamp(),
+            thrown,
+            event.getMessage(),
+            new Slf4jMessageWriter(event.getMessage(), event.getArgumentArray()),
+            config.isIncludeCallerData() ? getCaller(event) : null);
+    }
+
+    private StackTraceElement getCaller(ILoggingEvent event)
+    {
+        StackTraceElement[] callerData = event.getCallerData();
+        return callerData.length > 0 ? callerData[0] : null;
     }
 
     private java.util.logging.Level toJulLevel(Level level) {
@@ -0,0 +1,111 @@
+package org.cru.redegg.recording.logback;
+
+import org.cru.redegg.recording.api.MessageBuffer;
+import org.cru.redegg.recording.api.MessageWriter;
+
+import java.util.Arrays;
+
+/**
+ * Formats an slf4j message pattern the way {@link org.slf4j.helpers.MessageFormatter} does,
+ * but writes directly into a {@link MessageBuffer}, and stops once the buffer is full.
+ *
+ * @author Matt Drees
+ */
+class Slf4jMessageWriter implements MessageWriter
+{
+    private static final String DELIMITER = "{}";
+    private static final char ESCAPE = '\\';
+
+    private final String pattern;
+    private final Object[] arguments;
+
+    Slf4jMessageWriter(String pattern, Object[] arguments)
+    {
+        this.pattern = pattern;
+        this.arguments = arguments;
+    }
+
+    @Override
+    public void writeTo(MessageBuffer buffer)
+    {
+        if (pattern == null || arguments == null)
+        {
+            buffer.append(pattern);
+            return;
+        }
+
+        int start = 0;
+        for (int argument = 0; argument < arguments.length && !buffer.isFull(); argument++)
+        {
+            int delimiter = pattern.indexOf(DELIMITER, start);
+            if (delimiter == -1)
+                break;
+
+            if (isEscaped(delimiter))
+            {
+                if (!isEscaped(delimiter - 1))
+                {
+                    // "\{}" is a literal "{}", and doesn't use up an argument
+                    argument--;
+                    buffer.append(pattern, start, delimiter - 1).append('{');
+                    start = delimiter + 1;
+                    continue;
+                }
+                // "\\{}" is a literal backslash, followed by the argument
+                buffer.append(pattern, start, delimiter - 1);
+            }
+            else
+            {
+                buffer.append(pattern, start, delimiter);
+            }
+            appendArgument(buffer, arguments[argument]);
+            start = delimiter + DELIMITER.length();
+        }
+        buffer.append(pattern, start, pattern.length());
+    }
+
+    private boolean isEscaped(int delimiter)
+    {
+        return delimiter > 0 && pattern.charAt(delimiter - 1) == ESCAPE;
+    }
+
+    private void appendArgument(MessageBuffer buffer, Object argument)
+    {
+        if (argument == null)
+            buffer.append("null");
+        else if (!argument.getClass().isArray())
+            appendSafely(buffer, argument);
+        else if (argument instanceof Object[])
+            buffer.append(Arrays.deepToString((Object[]) argument));
+        else if (argument instanceof boolean[])
+            buffer.append(Arrays.toString((boolean[]) argument));
+        else if (argument instanceof byte[])
+            buffer.append(Arrays.toString((byte[]) argument));
+        else if (argument instanceof char[])
+            buffer.append(Arrays.toString((char[]) argument));
+        else if (argument instanceof short[])
+            buffer.append(Arrays.toString((short[]) argument));
+        else if (argument instanceof int[])
+            buffer.append(Arrays.toString((int[]) argument));
+        else if (argument instanceof long[])
+            buffer.append(Arrays.toString((long[]) argument));
+        else if (argument instanceof float[])
+            buffer.append(Arrays.toString((float[]) argument));
+        else
+            buffer.append(Arrays.toString((double[]) argument));
+    }
+
+    private void appendSafely(MessageBuffer buffer, Object argument)
+    {
+        String string;
+        try
+        {
+            string = argument.toString();
+        }
+        catch (RuntimeException e)
+        {
+            string = "[FAILED toString()]";
+        }
+        buffer.append(string);
+    }
+}
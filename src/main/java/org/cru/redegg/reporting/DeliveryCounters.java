@@ -0,0 +1,79 @@
+package org.cru.redegg.reporting;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe counters shared by the queue implementations.
+ * LongAdders are used since these are updated from request threads and delivery workers alike.
+ *
+ * @author Matt Drees
+ */
+public class DeliveryCounters
+{
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder fallback = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+
+    public void recordEnqueued()
+    {
+        enqueued.increment();
+    }
+
+    public void recordDropped()
+    {
+        dropped.increment();
+    }
+
+    public void recordFallback()
+    {
+        fallback.increment();
+    }
+
+    public void recordDelivered()
+    {
+        delivered.increment();
+    }
+
+    public void recordFailed()
+    {
+        failed.increment();
+    }
+
+    public void recordRateLimited()
+    {
+        rateLimited.increment();
+    }
+
+    public long getEnqueuedCount()
+    {
+        return enqueued.sum();
+    }
+
+    public long getDroppedCount()
+    {
+        return dropped.sum();
+    }
+
+    public long getFallbackCount()
+    {
+        return fallback.sum();
+    }
+
+    public long getDeliveredCount()
+    {
+        return delivered.sum();
+    }
+
+    public long getFailedCount()
+    {
+        return failed.sum();
+    }
+
+    public long getRateLimitedCount()
+    {
+        return rateLimited.sum();
+    }
+}
@@ -0,0 +1,302 @@
+package org.cru.redegg.reporting;
+
+import org.cru.redegg.qualifier.Fallback;
+import org.cru.redegg.reporting.ring.WaitStrategies;
+import org.cru.redegg.reporting.ring.WaitStrategy;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Configures how error reports are buffered and delivered.
+ *
+ * The defaults are intended to be reasonable for a typical app;
+ * apps that see error storms may want a larger queue or more workers.
+ *
+ * @author Matt Drees
+ */
+@Fallback
+public class ErrorQueueConfig
+{
+    private static final int DEFAULT_WORKER_COUNT = 4;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    private static final Duration DEFAULT_BLOCK_TIMEOUT = Duration.ofSeconds(1);
+    private static final Duration DEFAULT_WORKER_KEEP_ALIVE = Duration.ofMinutes(5);
+    private static final int MAX_RING_CAPACITY = 1 << 30;
+    private static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+    private static final int DEFAULT_MAX_SEGMENTS = 64;
+    private static final int DEFAULT_MAX_DELIVERY_ATTEMPTS = 3;
+    private static final Duration DEFAULT_RETRY_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration DEFAULT_MAX_RETRY_BACKOFF = Duration.ofMinutes(1);
+    private static final Duration DEFAULT_MAX_RETRY_AGE = Duration.ofMinutes(10);
+    private static final int DEFAULT_MAX_PENDING_RETRIES = 1000;
+
+    private int workerCount = DEFAULT_WORKER_COUNT;
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    private OverflowPolicy overflowPolicy = OverflowPolicy.CALLER_RUNS;
+
+    private Duration blockTimeout = DEFAULT_BLOCK_TIMEOUT;
+
+    private Duration workerKeepAlive = DEFAULT_WORKER_KEEP_ALIVE;
+
+    private QueueType queueType = QueueType.EXECUTOR;
+
+    private WaitStrategy waitStrategy = WaitStrategies.blocking();
+
+    private Path durableDirectory;
+
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+    private int maxSegments = DEFAULT_MAX_SEGMENTS;
+
+    private int maxDeliveryAttempts = DEFAULT_MAX_DELIVERY_ATTEMPTS;
+
+    private Duration retryBackoff = DEFAULT_RETRY_BACKOFF;
+
+    private Duration maxRetryBackoff = DEFAULT_MAX_RETRY_BACKOFF;
+
+    private Duration maxRetryAge = DEFAULT_MAX_RETRY_AGE;
+
+    private int maxPendingRetries = DEFAULT_MAX_PENDING_RETRIES;
+
+    public int getWorkerCount()
+    {
+        return workerCount;
+    }
+
+    /**
+     * Sets the number of threads that deliver reports concurrently.
+     * Idle workers are released after the {@link #setWorkerKeepAlive(Duration) keep-alive} period.
+     */
+    public void setWorkerCount(int workerCount)
+    {
+        this.workerCount = workerCount;
+    }
+
+    public int getQueueCapacity()
+    {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets the number of reports that can wait for a worker before the overflow policy applies.
+     */
+    public void setQueueCapacity(int queueCapacity)
+    {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return overflowPolicy;
+    }
+
+    /**
+     * Sets what happens when the queue is full. Defaults to {@link OverflowPolicy#CALLER_RUNS}.
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy)
+    {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public Duration getBlockTimeout()
+    {
+        return blockTimeout;
+    }
+
+    /**
+     * Sets how long an enqueuing thread waits for room under {@link OverflowPolicy#BLOCK}.
+     */
+    public void setBlockTimeout(Duration blockTimeout)
+    {
+        this.blockTimeout = blockTimeout;
+    }
+
+    public Duration getWorkerKeepAlive()
+    {
+        return workerKeepAlive;
+    }
+
+    public void setWorkerKeepAlive(Duration workerKeepAlive)
+    {
+        this.workerKeepAlive = workerKeepAlive;
+    }
+
+    public QueueType getQueueType()
+    {
+        return queueType;
+    }
+
+    /**
+     * Selects the queue implementation. Defaults to {@link QueueType#EXECUTOR}.
+     * The worker count and keep-alive settings don't apply to {@link QueueType#RING_BUFFER},
+     * which always uses a single delivery thread.
+     */
+    public void setQueueType(QueueType queueType)
+    {
+        this.queueType = queueType;
+    }
+
+    public WaitStrategy getWaitStrategy()
+    {
+        return waitStrategy;
+    }
+
+    /**
+     * Sets how the {@link QueueType#RING_BUFFER ring buffer}'s delivery thread waits for reports.
+     * Defaults to {@link WaitStrategies#blocking()}.
+     */
+    public void setWaitStrategy(WaitStrategy waitStrategy)
+    {
+        this.waitStrategy = waitStrategy;
+    }
+
+    public Path getDurableDirectory()
+    {
+        return durableDirectory;
+    }
+
+    /**
+     * Sets the directory where the {@link QueueType#DURABLE durable} queue keeps its files.
+     * Each app needs its own directory, and it should survive a redeploy.
+     */
+    public void setDurableDirectory(Path durableDirectory)
+    {
+        this.durableDirectory = durableDirectory;
+    }
+
+    public int getSegmentSize()
+    {
+        return segmentSize;
+    }
+
+    /**
+     * Sets the size, in bytes, of each of the durable queue's files. Defaults to 4 MiB.
+     * A report larger than this can't be written to disk, and goes to the fallback reporter.
+     */
+    public void setSegmentSize(int segmentSize)
+    {
+        this.segmentSize = segmentSize;
+    }
+
+    public int getMaxSegments()
+    {
+        return maxSegments;
+    }
+
+    /**
+     * Sets the maximum number of files the durable queue may use. Defaults to 64.
+     * When they are all in use, the overflow policy applies.
+     */
+    public void setMaxSegments(int maxSegments)
+    {
+        this.maxSegments = maxSegments;
+    }
+
+    public int getMaxDeliveryAttempts()
+    {
+        return maxDeliveryAttempts;
+    }
+
+    /**
+     * Sets how many times a report is sent before it is given to the fallback reporter. Defaults to 3.
+     * Use 1 to disable retries.
+     * This doesn't apply to the {@link QueueType#DURABLE durable} queue, which keeps trying for much longer.
+     */
+    public void setMaxDeliveryAttempts(int maxDeliveryAttempts)
+    {
+        this.maxDeliveryAttempts = maxDeliveryAttempts;
+    }
+
+    public Duration getRetryBackoff()
+    {
+        return retryBackoff;
+    }
+
+    /**
+     * Sets the delay before the first retry; each later retry waits twice as long (with jitter).
+     * Defaults to one second.
+     */
+    public void setRetryBackoff(Duration retryBackoff)
+    {
+        this.retryBackoff = retryBackoff;
+    }
+
+    public Duration getMaxRetryBackoff()
+    {
+        return maxRetryBackoff;
+    }
+
+    /**
+     * Sets the longest delay between retries. Defaults to one minute.
+     */
+    public void setMaxRetryBackoff(Duration maxRetryBackoff)
+    {
+        this.maxRetryBackoff = maxRetryBackoff;
+    }
+
+    public Duration getMaxRetryAge()
+    {
+        return maxRetryAge;
+    }
+
+    /**
+     * Sets how long after its first failure a report may still be retried. Defaults to 10 minutes.
+     */
+    public void setMaxRetryAge(Duration maxRetryAge)
+    {
+        this.maxRetryAge = maxRetryAge;
+    }
+
+    public int getMaxPendingRetries()
+    {
+        return maxPendingRetries;
+    }
+
+    /**
+     * Sets how many reports can wait for a retry at once; beyond this, failed reports go to the fallback reporter.
+     */
+    public void setMaxPendingRetries(int maxPendingRetries)
+    {
+        this.maxPendingRetries = maxPendingRetries;
+    }
+
+    public void validate()
+    {
+        if (workerCount < 1)
+            throw new IllegalArgumentException("worker count must be at least 1");
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException("queue capacity must be at least 1");
+        if (overflowPolicy == null)
+            throw new IllegalArgumentException("overflow policy is required");
+        if (blockTimeout == null || blockTimeout.isNegative())
+            throw new IllegalArgumentException("block timeout must not be negative");
+        if (workerKeepAlive == null || workerKeepAlive.isNegative() || workerKeepAlive.isZero())
+            throw new IllegalArgumentException("worker keep-alive must be positive");
+        if (queueType == null)
+            throw new IllegalArgumentException("queue type is required");
+        if (waitStrategy == null)
+            throw new IllegalArgumentException("wait strategy is required");
+        if (queueCapacity > MAX_RING_CAPACITY && queueType == QueueType.RING_BUFFER)
+            throw new IllegalArgumentException("ring buffer capacity must be at most " + MAX_RING_CAPACITY);
+        if (queueType == QueueType.DURABLE && durableDirectory == null)
+            throw new IllegalArgumentException("durable queue requires a directory");
+        if (segmentSize < MIN_SEGMENT_SIZE)
+            throw new IllegalArgumentException("segment size must be at least " + MIN_SEGMENT_SIZE + " bytes");
+        if (maxSegments < 2)
+            throw new IllegalArgumentException("max segments must be at least 2");
+        if (maxDeliveryAttempts < 1)
+            throw new IllegalArgumentException("max delivery attempts must be at least 1");
+        if (retryBackoff == null || retryBackoff.isNegative())
+            throw new IllegalArgumentException("retry backoff must not be negative");
+        if (maxRetryBackoff == null || maxRetryBackoff.compareTo(retryBackoff) < 0)
+            throw new IllegalArgumentException("max retry backoff must be at least the retry backoff");
+        if (maxRetryAge == null || maxRetryAge.isNegative())
+            throw new IllegalArgumentException("max retry age must not be negative");
+        if (maxPendingRetries < 1)
+            throw new IllegalArgumentException("max pending retries must be at least 1");
+    }
+}
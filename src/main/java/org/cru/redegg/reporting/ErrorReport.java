@@ -11,6 +11,7 @@ import org.cru.redegg.recording.api.NotificationLevel;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import static org.cru.redegg.util.RedEggStrings.truncate;
 
@@ -24,6 +25,8 @@ public class ErrorReport {
     private Map<String, String> user = Collections.emptyMap();
     private List<Throwable> thrown = Collections.emptyList();
     private List<LogRecord> logRecords = Collections.emptyList();
+    private Supplier<List<LogRecord>> pendingLogRecords;
+    private String logSignature;
     private String localHostName;
     private String localHostAddress;
     private Map<String, String> environmentVariables;
@@ -68,14 +71,60 @@ public class ErrorReport {
         this.thrown = thrown;
     }
 
-    public List<LogRecord> getLogRecords()
+    public synchronized List<LogRecord> getLogRecords()
     {
+        if (pendingLogRecords != null)
+        {
+            logRecords = pendingLogRecords.get();
+            pendingLogRecords = null;
+        }
         return logRecords;
     }
 
-    public void setLogRecords(List<LogRecord> logRecords)
+    public synchronized void setLogRecords(List<LogRecord> logRecords)
     {
         this.logRecords = logRecords;
+        this.pendingLogRecords = null;
+    }
+
+    /**
+     * Sets log records that are built the first time they are needed.
+     * Usually that is when the report is delivered,
+     * so formatting them happens on a delivery thread rather than on the thread that recorded them.
+     */
+    public synchronized void deferLogRecords(Supplier<List<LogRecord>> logRecords)
+    {
+        this.pendingLogRecords = logRecords;
+    }
+
+    /**
+     * Identifies the most severe log message without formatting it:
+     * its logger name and its message as it was passed to the logger.
+     * This lets reports without exceptions be told apart on the thread that enqueues them,
+     * before their log records are built.
+     * It may be null (for example, for reports read back by the durable queue).
+     */
+    public String getLogSignature()
+    {
+        return logSignature;
+    }
+
+    public void setLogSignature(String logSignature)
+    {
+        this.logSignature = logSignature;
+    }
+
+    /**
+     * Releases any resources the report holds, such as a {@link StreamedEntity}'s temp file.
+     * Queues call this once the report has been delivered (or given up on).
+     * The report may not be delivered again afterwards.
+     */
+    public void release()
+    {
+        if (webContext != null && webContext.getStreamedEntity() != null)
+        {
+            webContext.getStreamedEntity().release();
+        }
     }
 
     public static class LogRecord
@@ -199,6 +248,7 @@ public class ErrorReport {
 
     private Optional<String> getFirstHighestLevelLogMessage()
     {
+        List<LogRecord> logRecords = getLogRecords();
         if (logRecords.isEmpty())
             return Optional.absent();
         else
@@ -1,11 +1,12 @@
 package org.cru.redegg.reporting;
 
-import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.cru.redegg.qualifier.Fallback;
 import org.cru.redegg.qualifier.Selected;
 import org.cru.redegg.reporting.api.ErrorLink;
-import org.cru.redegg.reporting.api.ErrorQueue;
+import org.cru.redegg.reporting.api.ErrorQueueMetrics;
 import org.cru.redegg.reporting.api.ErrorReporter;
+import org.cru.redegg.reporting.ratelimit.ReportRateLimiter;
 import org.cru.redegg.util.ErrorLog;
 import org.cru.redegg.util.MoreExecutors;
 import org.cru.redegg.util.ProxyConstructor;
@@ -14,11 +15,14 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Typed;
 import javax.inject.Inject;
 import java.util.Optional;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -26,47 +30,65 @@ import java.util.concurrent.TimeUnit;
  * @author Matt Drees
  */
 @ApplicationScoped
-public class InMemoryErrorQueue implements ErrorQueue
+@Typed(InMemoryErrorQueue.class)
+public class InMemoryErrorQueue implements ManagedErrorQueue
 {
 
     private static final Logger LOG = LoggerFactory.getLogger(InMemoryErrorQueue.class);
 
-    private final ErrorReporter primaryErrorReporter;
-
-    private final ErrorReporter fallbackReporter;
+    private final ReportDelivery delivery;
 
     private final ErrorLog errorLog;
 
     private final ExecutorService executorService;
 
-    private final DatadogEnricher enricher;
+    private final DeliveryCounters counters;
+
+    private final Metrics metrics = new Metrics();
 
     @Inject
     public InMemoryErrorQueue(
         @Selected ErrorReporter primaryErrorReporter,
         @Fallback ErrorReporter fallbackReporter,
         ErrorLog errorLog,
-        DatadogEnricher enricher)
+        DatadogEnricher enricher,
+        @Selected ErrorQueueConfig config,
+        ReportRateLimiter rateLimiter)
     {
         this(
             primaryErrorReporter,
             fallbackReporter,
             errorLog,
             enricher,
-            //TODO: this should probably be configurable
-            new ThreadPoolExecutor(
-                0,
-                10,
-                5,
-                TimeUnit.MINUTES,
-                new ArrayBlockingQueue<Runnable>(1000))
-        );
+            config,
+            rateLimiter,
+            new DeliveryCounters());
+    }
+
+    private InMemoryErrorQueue(
+        ErrorReporter primaryErrorReporter,
+        ErrorReporter fallbackReporter,
+        ErrorLog errorLog,
+        DatadogEnricher enricher,
+        ErrorQueueConfig config,
+        ReportRateLimiter rateLimiter,
+        DeliveryCounters counters)
+    {
+        this(
+            primaryErrorReporter,
+            fallbackReporter,
+            errorLog,
+            enricher,
+            buildExecutor(config, counters),
+            rateLimiter,
+            config,
+            counters);
     }
 
     @ProxyConstructor
     @SuppressWarnings("UnusedDeclaration")
     InMemoryErrorQueue() {
-        this(null, null, null, null);
+        this(null, null, null, null, (ExecutorService) null, null, null, null);
     }
 
     InMemoryErrorQueue(
@@ -76,14 +98,66 @@ public class InMemoryErrorQueue implements ErrorQueue
         DatadogEnricher enricher,
         ExecutorService executorService)
     {
-        this.primaryErrorReporter = primaryErrorReporter;
-        this.fallbackReporter = fallbackReporter;
+        this(
+            primaryErrorReporter,
+            fallbackReporter,
+            errorLog,
+            enricher,
+            executorService,
+            ReportRateLimiter.UNLIMITED,
+            null,
+            new DeliveryCounters());
+    }
+
+    private InMemoryErrorQueue(
+        ErrorReporter primaryErrorReporter,
+        ErrorReporter fallbackReporter,
+        ErrorLog errorLog,
+        DatadogEnricher enricher,
+        ExecutorService executorService,
+        ReportRateLimiter rateLimiter,
+        ErrorQueueConfig config,
+        DeliveryCounters counters)
+    {
+        this.delivery = new ReportDelivery(
+            primaryErrorReporter,
+            fallbackReporter,
+            errorLog,
+            enricher,
+            counters,
+            rateLimiter,
+            config);
         this.errorLog = errorLog;
-        this.enricher = enricher;
         this.executorService = executorService;
+        this.counters = counters;
+    }
+
+    private static ExecutorService buildExecutor(ErrorQueueConfig config, DeliveryCounters counters)
+    {
+        if (config == null)
+            return null;
+        config.validate();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            config.getWorkerCount(),
+            config.getWorkerCount(),
+            config.getWorkerKeepAlive().toMillis(),
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(config.getQueueCapacity()),
+            new ThreadFactoryBuilder()
+                .setNameFormat("red-egg-delivery-%d")
+                .setDaemon(true)
+                .build(),
+            new OverflowHandler(config, counters));
+
+        // with a fixed pool size, core threads must be allowed to time out
+        // so that an idle app doesn't keep workers around
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     @PreDestroy
+    @Override
     public void shutdown()
     {
         MoreExecutors.shutdownAndHandleInterruptions(
@@ -92,69 +166,238 @@ public class InMemoryErrorQueue implements ErrorQueue
             "report",
             errorLog
         );
+        delivery.shutdown();
     }
 
     @Override
     public void enqueue(final ErrorReport report)
     {
+        if (!delivery.admit(report))
+            return;
         try
         {
             submit(report);
-            final ErrorLink errorLink = report.getErrorLink();
-            if (errorLink != null)
-            {
-                LOG.info("Error details available at {}", errorLink.getTarget());
-            }
+        }
+        catch (ReportDroppedException e)
+        {
+            // the overflow policy discarded it; it has already been counted as dropped
+            report.release();
+            return;
         }
         catch (RejectedExecutionException e)
         {
             errorLog.error("unable to submit error report to queue; using fallback reporter", e);
 
             // run on this thread
-            fallback(report);
+            delivery.fallback(report);
+            return;
+        }
+
+        counters.recordEnqueued();
+        final ErrorLink errorLink = report.getErrorLink();
+        if (errorLink != null)
+        {
+            LOG.info("Error details available at {}", errorLink.getTarget());
         }
     }
 
     private void submit(final ErrorReport report)
     {
-        executorService.submit(new Runnable()
+        executorService.execute(new DeliveryTask(report));
+    }
+
+    @Override
+    public Optional<ErrorLink> buildLink()
+    {
+        return delivery.buildLink();
+    }
+
+    @Override
+    public ErrorQueueMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Applies the configured {@link OverflowPolicy} when the executor's queue is full.
+     * Rejections that aren't caused by a full queue (i.e. shutdown) always go to the fallback reporter.
+     */
+    static class OverflowHandler implements RejectedExecutionHandler
+    {
+        private final OverflowPolicy policy;
+        private final long blockTimeoutMillis;
+        private final DeliveryCounters counters;
+
+        OverflowHandler(ErrorQueueConfig config, DeliveryCounters counters)
+        {
+            this.policy = config.getOverflowPolicy();
+            this.blockTimeoutMillis = config.getBlockTimeout().toMillis();
+            this.counters = counters;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor)
         {
-            @Override
-            public void run()
+            if (executor.isShutdown())
+                throw new RejectedExecutionException("error queue has been shut down");
+
+            switch (policy)
             {
-                try
+                case DROP_NEWEST:
+                    counters.recordDropped();
+                    throw new ReportDroppedException();
+                case DROP_OLDEST:
+                    dropOldest(task, executor);
+                    break;
+                case CALLER_RUNS:
+                    throw new RejectedExecutionException("error queue is full");
+                case BLOCK:
+                    block(task, executor);
+                    break;
+                default:
+                    throw new AssertionError("unexpected policy: " + policy);
+            }
+        }
+
+        /**
+         * Discards the oldest queued reports until the task fits.
+         * Workers take tasks from the queue concurrently, so a single poll doesn't guarantee room.
+         */
+        private void dropOldest(Runnable task, ThreadPoolExecutor executor)
+        {
+            BlockingQueue<Runnable> queue = executor.getQueue();
+            while (!queue.offer(task))
+            {
+                Runnable oldest = queue.poll();
+                if (oldest != null)
                 {
-                    enricher.enrich(report);
-                    primaryErrorReporter.send(report);
+                    counters.recordDropped();
+                    if (oldest instanceof DeliveryTask)
+                        ((DeliveryTask) oldest).report.release();
                 }
-                catch (Throwable t)
-                {
-                    errorLog.error("unable to send error report; using fallback reporter", t);
-                    fallback(report);
+            }
+            checkNotShutDown(task, executor);
+        }
 
-                    //propagate to kill this thread if necessary
-                    throw Throwables.propagate(t);
+        private void block(Runnable task, ThreadPoolExecutor executor)
+        {
+            try
+            {
+                if (!executor.getQueue().offer(task, blockTimeoutMillis, TimeUnit.MILLISECONDS))
+                {
+                    counters.recordDropped();
+                    throw new ReportDroppedException();
                 }
             }
-        });
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                counters.recordDropped();
+                throw new ReportDroppedException();
+            }
+            checkNotShutDown(task, executor);
+        }
+
+        /**
+         * The task was put straight on the queue, bypassing the executor's own shutdown check,
+         * and the executor may have shut down meanwhile (perhaps after its workers had exited).
+         * If so, the task is taken back, so its report goes to the fallback reporter instead.
+         */
+        private void checkNotShutDown(Runnable task, ThreadPoolExecutor executor)
+        {
+            if (executor.isShutdown() && executor.getQueue().remove(task))
+                throw new RejectedExecutionException("error queue has been shut down");
+        }
     }
 
-    private void fallback(ErrorReport report)
+    /**
+     * Keeps a reference to its report, so that it can be released if the task is dropped from the queue.
+     */
+    private class DeliveryTask implements Runnable
     {
-        try
+        private final ErrorReport report;
+
+        DeliveryTask(ErrorReport report)
         {
-            fallbackReporter.send(report);
+            this.report = report;
         }
-        catch (Throwable t2)
+
+        @Override
+        public void run()
         {
-            errorLog.error("unable to send error report with fallback reporter", t2);
-            //swallow t2
+            delivery.deliver(report);
         }
     }
 
-    @Override
-    public Optional<ErrorLink> buildLink()
+    /**
+     * Thrown when the overflow policy discards the submitted report,
+     * so that it isn't counted as enqueued.
+     */
+    static class ReportDroppedException extends RejectedExecutionException
     {
-        return primaryErrorReporter.buildLink();
+        ReportDroppedException()
+        {
+            super("error queue is full; report dropped");
+        }
+    }
+
+    private class Metrics implements ErrorQueueMetrics
+    {
+        @Override
+        public int getQueueDepth()
+        {
+            if (executorService instanceof ThreadPoolExecutor)
+                return ((ThreadPoolExecutor) executorService).getQueue().size();
+            else
+                return 0;
+        }
+
+        @Override
+        public int getQueueCapacity()
+        {
+            if (executorService instanceof ThreadPoolExecutor)
+            {
+                ThreadPoolExecutor executor = (ThreadPoolExecutor) executorService;
+                return executor.getQueue().size() + executor.getQueue().remainingCapacity();
+            }
+            else
+                return 0;
+        }
+
+        @Override
+        public long getEnqueuedCount()
+        {
+            return counters.getEnqueuedCount();
+        }
+
+        @Override
+        public long getDroppedCount()
+        {
+            return counters.getDroppedCount();
+        }
+
+        @Override
+        public long getFallbackCount()
+        {
+            return counters.getFallbackCount();
+        }
+
+        @Override
+        public long getDeliveredCount()
+        {
+            return counters.getDeliveredCount();
+        }
+
+        @Override
+        public long getFailedCount()
+        {
+            return counters.getFailedCount();
+        }
+
+        @Override
+        public long getRateLimitedCount()
+        {
+            return counters.getRateLimitedCount();
+        }
     }
 }
@@ -0,0 +1,16 @@
+package org.cru.redegg.reporting;
+
+import org.cru.redegg.reporting.api.ErrorQueue;
+
+/**
+ * An {@link ErrorQueue} that owns delivery threads, and so must be shut down when the app stops.
+ *
+ * @author Matt Drees
+ */
+public interface ManagedErrorQueue extends ErrorQueue
+{
+    /**
+     * Stops accepting reports, and waits a short while for pending reports to be delivered.
+     */
+    void shutdown();
+}
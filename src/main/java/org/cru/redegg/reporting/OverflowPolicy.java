@@ -0,0 +1,32 @@
+package org.cru.redegg.reporting;
+
+/**
+ * Determines what an {@link org.cru.redegg.reporting.api.ErrorQueue} does with a report
+ * when its buffer is already full.
+ *
+ * @author Matt Drees
+ */
+public enum OverflowPolicy
+{
+    /**
+     * The report being enqueued is discarded.
+     */
+    DROP_NEWEST,
+
+    /**
+     * The report that has been waiting the longest is discarded to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The report is sent by the fallback reporter, on the enqueuing thread.
+     * This was the only behavior available before overflow policies were introduced.
+     */
+    CALLER_RUNS,
+
+    /**
+     * The enqueuing thread waits (up to the configured block timeout) for room in the queue.
+     * If there is still no room after the timeout, the report is discarded.
+     */
+    BLOCK
+}
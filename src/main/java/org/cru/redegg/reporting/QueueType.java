@@ -0,0 +1,27 @@
+package org.cru.redegg.reporting;
+
+/**
+ * Selects the {@link org.cru.redegg.reporting.api.ErrorQueue} implementation used to deliver reports.
+ *
+ * @author Matt Drees
+ */
+public enum QueueType
+{
+    /**
+     * Reports are submitted to a thread pool; see {@link InMemoryErrorQueue}.
+     */
+    EXECUTOR,
+
+    /**
+     * Reports are published to a preallocated lock-free ring buffer and drained by a single thread;
+     * see {@link org.cru.redegg.reporting.ring.RingBufferErrorQueue}.
+     */
+    RING_BUFFER,
+
+    /**
+     * Reports are written to memory-mapped files before delivery, so they survive restarts and reporter outages;
+     * see {@link org.cru.redegg.reporting.durable.DurableErrorQueue}.
+     * Requires a {@link ErrorQueueConfig#setDurableDirectory(java.nio.file.Path) directory}.
+     */
+    DURABLE
+}
@@ -0,0 +1,48 @@
+package org.cru.redegg.reporting;
+
+/**
+ * Stands in for a throwable that was recorded in an earlier JVM (or class loader),
+ * such as one read back from a {@link org.cru.redegg.reporting.durable.DurableErrorQueue}.
+ * The original class may no longer be loadable, so only its name, message, stack trace, and cause are kept.
+ *
+ * @author Matt Drees
+ */
+public class ReplayedThrowable extends Throwable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String className;
+
+    public ReplayedThrowable(String className, String message, StackTraceElement[] stackTrace, Throwable cause)
+    {
+        super(message, cause, false, true);
+        this.className = className;
+        setStackTrace(stackTrace);
+    }
+
+    /**
+     * Returns the class name of the given throwable, or of the throwable it stands in for.
+     * Reporters should use this instead of {@code throwable.getClass().getName()}.
+     */
+    public static String classNameOf(Throwable throwable)
+    {
+        if (throwable instanceof ReplayedThrowable)
+            return ((ReplayedThrowable) throwable).className;
+        else
+            return throwable.getClass().getName();
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace()
+    {
+        // the stack trace is the original one, given to the constructor
+        return this;
+    }
+
+    @Override
+    public String toString()
+    {
+        String message = getLocalizedMessage();
+        return message != null ? className + ": " + message : className;
+    }
+}
@@ -0,0 +1,207 @@
+package org.cru.redegg.reporting;
+
+import org.cru.redegg.reporting.api.ErrorLink;
+import org.cru.redegg.reporting.api.ErrorReporter;
+import org.cru.redegg.reporting.breaker.CircuitOpenException;
+import org.cru.redegg.reporting.dedup.ReportSuppressedException;
+import org.cru.redegg.reporting.ratelimit.ReportRateLimiter;
+import org.cru.redegg.reporting.retry.Retries;
+import org.cru.redegg.reporting.retry.RetryScheduler;
+import org.cru.redegg.util.ErrorLog;
+
+import java.util.Optional;
+
+/**
+ * Performs the actual delivery of a report once a queue has decided it is time to send it.
+ * This is shared by the {@link org.cru.redegg.reporting.api.ErrorQueue} implementations,
+ * which only differ in how they buffer reports and which threads do the sending.
+ *
+ * @author Matt Drees
+ */
+public class ReportDelivery
+{
+    private final ErrorReporter primaryErrorReporter;
+    private final ErrorReporter fallbackReporter;
+    private final ErrorLog errorLog;
+    private final DatadogEnricher enricher;
+    private final DeliveryCounters counters;
+    private final ReportRateLimiter rateLimiter;
+    private final RetryScheduler retries;
+
+    public ReportDelivery(
+        ErrorReporter primaryErrorReporter,
+        ErrorReporter fallbackReporter,
+        ErrorLog errorLog,
+        DatadogEnricher enricher,
+        DeliveryCounters counters)
+    {
+        this(primaryErrorReporter, fallbackReporter, errorLog, enricher, counters, ReportRateLimiter.UNLIMITED, null);
+    }
+
+    /**
+     * @param config the retry settings, or null if failed reports shouldn't be retried
+     */
+
+    public ReportDelivery(
+        ErrorReporter primaryErrorReporter,
+        ErrorReporter fallbackReporter,
+        ErrorLog errorLog,
+        DatadogEnricher enricher,
+        DeliveryCounters counters,
+        ReportRateLimiter rateLimiter,
+        ErrorQueueConfig config)
+    {
+        this.primaryErrorReporter = primaryErrorReporter;
+        this.fallbackReporter = fallbackReporter;
+        this.errorLog = errorLog;
+        this.enricher = enricher;
+        this.counters = counters;
+        this.rateLimiter = rateLimiter;
+        this.retries = config == null || config.getMaxDeliveryAttempts() <= 1
+            ? null
+            : new RetryScheduler(config, primaryErrorReporter, this::fallback, counters, errorLog);
+    }
+
+    /**
+     * Queues call this as soon as a report is enqueued,
+     * so that rate-limited reports are discarded before any work is done for them.
+     *
+     * @return whether the report should be queued for delivery
+     */
+    public boolean admit(ErrorReport report)
+    {
+        if (rateLimiter.tryAcquire(report))
+            return true;
+        counters.recordRateLimited();
+        report.release();
+        return false;
+    }
+
+    /**
+     * Sends the report with the primary reporter.
+     * If that fails, the report is scheduled to be retried (if retries are configured and the failure is transient),
+     * or else it is sent with the fallback reporter.
+     * Failures are not propagated, so the calling worker thread survives them.
+     */
+    public void deliver(ErrorReport report)
+    {
+        try
+        {
+            enricher.enrich(report);
+            primaryErrorReporter.send(report);
+            counters.recordDelivered();
+            report.release();
+        }
+        catch (ReportSuppressedException e)
+        {
+            // the deduplicating reporter owns it now
+        }
+        catch (CircuitOpenException e)
+        {
+            if (retries == null || !retries.schedule(report, e))
+                fallback(report);
+        }
+        catch (Throwable t)
+        {
+            counters.recordFailed();
+            if (retries != null && retries.schedule(report, t))
+            {
+                errorLog.error("unable to send error report; will try again later", t);
+            }
+            else
+            {
+                errorLog.error("unable to send error report; using fallback reporter", t);
+                fallback(report);
+            }
+        }
+    }
+
+    public void enrich(ErrorReport report)
+    {
+        enricher.enrich(report);
+    }
+
+    /**
+     * Sends the (already enriched) report with the primary reporter.
+     * This is for queues that keep the report and try again later,
+     * so the report is only sent to the fallback reporter if the failure isn't {@link Retries#isRetryable retryable}.
+     *
+     * @return true if the report was delivered, suppressed as a repeat, or rejected and sent to the fallback reporter;
+     *   false if it should be tried again later
+     * @throws CircuitOpenException if the primary reporter's circuit is open, so the report wasn't attempted at all;
+     *   it should be tried again later too
+     */
+    public boolean tryDeliver(ErrorReport report)
+    {
+        try
+        {
+            primaryErrorReporter.send(report);
+            counters.recordDelivered();
+            report.release();
+            return true;
+        }
+        catch (ReportSuppressedException e)
+        {
+            // the deduplicating reporter owns it now
+            return true;
+        }
+        catch (CircuitOpenException e)
+        {
+            throw e;
+        }
+        catch (Throwable t)
+        {
+            counters.recordFailed();
+            if (Retries.isRetryable(t))
+            {
+                errorLog.error("unable to send error report; will try again later", t);
+                return false;
+            }
+            errorLog.error("error report was rejected; using fallback reporter", t);
+            fallback(report);
+            return true;
+        }
+    }
+
+    public void fallback(ErrorReport report)
+    {
+        counters.recordFallback();
+        try
+        {
+            fallbackReporter.send(report);
+        }
+        catch (Throwable t2)
+        {
+            errorLog.error("unable to send error report with fallback reporter", t2);
+            //swallow t2
+        }
+        finally
+        {
+            report.release();
+        }
+    }
+
+    /**
+     * Stops retrying failed reports; any still waiting are sent to the fallback reporter.
+     */
+    public void shutdown()
+    {
+        if (retries != null)
+            retries.shutdown();
+    }
+
+    public Optional<ErrorLink> buildLink()
+    {
+        return primaryErrorReporter.buildLink();
+    }
+
+    public DeliveryCounters getCounters()
+    {
+        return counters;
+    }
+
+    public ErrorLog getErrorLog()
+    {
+        return errorLog;
+    }
+}
@@ -0,0 +1,60 @@
+package org.cru.redegg.reporting;
+
+import org.cru.redegg.recording.api.CapturedEntity;
+import org.cru.redegg.recording.api.EntitySanitizer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * A request entity that is too large to keep as a String,
+ * so it is read back and sanitized as it is written to a report.
+ * Reports hold on to it until they are delivered, and then {@linkplain #release() release} it.
+ *
+ * @author Matt Drees
+ */
+public class StreamedEntity
+{
+    private final CapturedEntity entity;
+    private final EntitySanitizer sanitizer;
+
+    public StreamedEntity(CapturedEntity entity, EntitySanitizer sanitizer)
+    {
+        this.entity = entity;
+        this.sanitizer = sanitizer;
+    }
+
+    public void writeTo(Writer out) throws IOException
+    {
+        try (Reader reader = entity.openReader())
+        {
+            sanitizer.sanitizeEntity(reader, out);
+        }
+    }
+
+    /**
+     * Returns the sanitized entity as one String, for reporters that can't stream it.
+     */
+    @Override
+    public String toString()
+    {
+        StringWriter writer = new StringWriter();
+        try
+        {
+            writeTo(writer);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("unable to read entity", e);
+        }
+        return writer.toString();
+    }
+
+    public void release()
+    {
+        entity.release();
+    }
+}
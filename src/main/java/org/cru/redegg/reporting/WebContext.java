@@ -24,6 +24,7 @@ public class WebContext implements Cloneable {
     private Multimap<String, String> queryParameters;
     private Multimap<String, String> postParameters;
     private String entityRepresentation;
+    private StreamedEntity streamedEntity;
     private Instant finish;
     private Integer responseStatus;
     private Method component;
@@ -134,8 +135,14 @@ public class WebContext implements Cloneable {
         return finish;
     }
 
+    /**
+     * Returns the sanitized entity.
+     * If it is a {@linkplain #getStreamedEntity() streamed entity}, it is read into a String the first time.
+     */
     public String getEntityRepresentation()
     {
+        if (entityRepresentation == null && streamedEntity != null)
+            entityRepresentation = streamedEntity.toString();
         return entityRepresentation;
     }
 
@@ -144,6 +151,20 @@ public class WebContext implements Cloneable {
         this.entityRepresentation = entityRepresentation;
     }
 
+    /**
+     * Returns the entity, if it is too large to have been kept as a String.
+     * Reporters that can write it as a stream should use this rather than {@link #getEntityRepresentation()}.
+     */
+    public StreamedEntity getStreamedEntity()
+    {
+        return streamedEntity;
+    }
+
+    public void setStreamedEntity(StreamedEntity streamedEntity)
+    {
+        this.streamedEntity = streamedEntity;
+    }
+
     public Integer getResponseStatus()
     {
         return responseStatus;
@@ -0,0 +1,17 @@
+package org.cru.redegg.reporting.api;
+
+/**
+ * Live state and counters for the circuit breaker in front of the primary error reporter.
+ *
+ * @author Matt Drees
+ */
+public interface CircuitBreakerMetrics
+{
+    CircuitState getState();
+
+    /** the number of times the circuit has opened */
+    long getOpenedCount();
+
+    /** the number of reports that were not sent because the circuit was open (or a probe was in flight) */
+    long getRejectedCount();
+}
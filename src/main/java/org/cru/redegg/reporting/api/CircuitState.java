@@ -0,0 +1,18 @@
+package org.cru.redegg.reporting.api;
+
+/**
+ * The state of the circuit breaker in front of the primary error reporter.
+ *
+ * @author Matt Drees
+ */
+public enum CircuitState
+{
+    /** reports are sent normally */
+    CLOSED,
+
+    /** the reporter has been failing; reports are not sent to it */
+    OPEN,
+
+    /** the open period has passed; one report at a time is sent, to see if the reporter has recovered */
+    HALF_OPEN
+}
@@ -25,4 +25,12 @@ public interface ErrorQueue {
      * The link can be used in logs or http responses.
      */
     Optional<ErrorLink> buildLink();
+
+    /**
+     * Returns live counters for this queue, if the implementation keeps them.
+     */
+    default ErrorQueueMetrics getMetrics()
+    {
+        return ErrorQueueMetrics.UNAVAILABLE;
+    }
 }
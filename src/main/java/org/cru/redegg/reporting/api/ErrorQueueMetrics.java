@@ -0,0 +1,87 @@
+package org.cru.redegg.reporting.api;
+
+/**
+ * Live counters describing an {@link ErrorQueue}.
+ *
+ * The values are read directly from the queue, so they change over time;
+ * callers that need a consistent view should copy them.
+ *
+ * @author Matt Drees
+ */
+public interface ErrorQueueMetrics
+{
+    ErrorQueueMetrics UNAVAILABLE = new ErrorQueueMetrics()
+    {
+        @Override
+        public int getQueueDepth()
+        {
+            return 0;
+        }
+
+        @Override
+        public int getQueueCapacity()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getEnqueuedCount()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getDroppedCount()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getFallbackCount()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getDeliveredCount()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getFailedCount()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getRateLimitedCount()
+        {
+            return 0;
+        }
+    };
+
+    /** the number of reports currently waiting for delivery */
+    int getQueueDepth();
+
+    /** the maximum number of reports that can wait for delivery */
+    int getQueueCapacity();
+
+    /** the number of reports submitted to the queue, including any that were later dropped */
+    long getEnqueuedCount();
+
+    /** the number of reports discarded because the queue was full */
+    long getDroppedCount();
+
+    /** the number of reports that were handed to the fallback reporter */
+    long getFallbackCount();
+
+    /** the number of reports successfully sent by the primary reporter */
+    long getDeliveredCount();
+
+    /** the number of reports the primary reporter failed to send */
+    long getFailedCount();
+
+    /** the number of reports discarded by the rate limiter (and not counted as enqueued) */
+    long getRateLimitedCount();
+}
@@ -0,0 +1,200 @@
+package org.cru.redegg.reporting.breaker;
+
+import com.google.common.base.Ticker;
+import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.reporting.api.CircuitBreakerMetrics;
+import org.cru.redegg.reporting.api.CircuitState;
+import org.cru.redegg.util.ErrorLog;
+import org.cru.redegg.util.ProxyConstructor;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+/**
+ * Tracks failures of the primary error reporter, and stops calls to it while it is down,
+ * so that each report doesn't wait out the connect and read timeouts.
+ *
+ * After the configured number of consecutive failures, the circuit opens,
+ * and {@link #acquirePermission()} throws a {@link CircuitOpenException}.
+ * Once the open duration has passed, the circuit is half-open, and a single probe is allowed at a time;
+ * enough successful probes close the circuit, and a failed probe opens it again.
+ *
+ * Transitions are logged to the {@link ErrorLog}.
+ *
+ * @author Matt Drees
+ */
+@ApplicationScoped
+public class CircuitBreaker
+{
+    private final ErrorLog errorLog;
+    private final Ticker ticker;
+    private final int failureThreshold;
+    private final int successThreshold;
+    private final long openNanos;
+
+    private CircuitState state = CircuitState.CLOSED;
+    private int consecutiveFailures;
+    private int probeSuccesses;
+    private boolean probeInFlight;
+    private long openedAt;
+
+    private long openedCount;
+    private long rejectedCount;
+
+    private final Metrics metrics = new Metrics();
+
+    @Inject
+    public CircuitBreaker(@Selected CircuitBreakerConfig config, ErrorLog errorLog)
+    {
+        this(config, errorLog, Ticker.systemTicker());
+    }
+
+    CircuitBreaker(CircuitBreakerConfig config, ErrorLog errorLog, Ticker ticker)
+    {
+        config.validate();
+        this.errorLog = errorLog;
+        this.ticker = ticker;
+        this.failureThreshold = config.getFailureThreshold();
+        this.successThreshold = config.getSuccessThreshold();
+        this.openNanos = config.getOpenDuration().toNanos();
+    }
+
+    @ProxyConstructor
+    @SuppressWarnings("UnusedDeclaration")
+    CircuitBreaker()
+    {
+        this.errorLog = null;
+        this.ticker = null;
+        this.failureThreshold = 0;
+        this.successThreshold = 0;
+        this.openNanos = 0;
+    }
+
+    /**
+     * Must be called before each send; if it returns normally,
+     * {@link #recordSuccess()}, {@link #recordFailure()} or {@link #releasePermission()} must be called afterward.
+     *
+     * @throws CircuitOpenException if the report should not be sent
+     */
+    public synchronized void acquirePermission()
+    {
+        switch (state)
+        {
+            case CLOSED:
+                return;
+            case OPEN:
+                if (ticker.read() - openedAt < openNanos)
+                    throw reject();
+                transition(CircuitState.HALF_OPEN);
+                probeSuccesses = 0;
+                probeInFlight = true;
+                return;
+            case HALF_OPEN:
+                if (probeInFlight)
+                    throw reject();
+                probeInFlight = true;
+                return;
+            default:
+                throw new AssertionError("unexpected state: " + state);
+        }
+    }
+
+    private CircuitOpenException reject()
+    {
+        rejectedCount++;
+        return new CircuitOpenException("error reporter circuit is " + state);
+    }
+
+    public synchronized void recordSuccess()
+    {
+        if (state == CircuitState.HALF_OPEN)
+        {
+            probeInFlight = false;
+            if (++probeSuccesses >= successThreshold)
+            {
+                consecutiveFailures = 0;
+                transition(CircuitState.CLOSED);
+            }
+        }
+        else if (state == CircuitState.CLOSED)
+        {
+            consecutiveFailures = 0;
+        }
+    }
+
+    /**
+     * Called instead of recording an outcome when the report wasn't sent after all,
+     * so that a half-open circuit allows another probe.
+     */
+    public synchronized void releasePermission()
+    {
+        if (state == CircuitState.HALF_OPEN)
+            probeInFlight = false;
+    }
+
+    public synchronized void recordFailure()
+    {
+        if (state == CircuitState.HALF_OPEN)
+        {
+            probeInFlight = false;
+            open();
+        }
+        else if (state == CircuitState.CLOSED && ++consecutiveFailures >= failureThreshold)
+        {
+            open();
+        }
+    }
+
+    private void open()
+    {
+        openedAt = ticker.read();
+        openedCount++;
+        transition(CircuitState.OPEN);
+    }
+
+    private void transition(CircuitState newState)
+    {
+        CircuitState oldState = state;
+        state = newState;
+        String message = "error reporter circuit changed from " + oldState + " to " + newState;
+        if (newState == CircuitState.OPEN)
+            errorLog.warn(message + "; reports will use the fallback reporter");
+        else
+            errorLog.info(message);
+    }
+
+    public CircuitBreakerMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    private class Metrics implements CircuitBreakerMetrics
+    {
+        @Override
+        public CircuitState getState()
+        {
+            synchronized (CircuitBreaker.this)
+            {
+                return state;
+            }
+        }
+
+        @Override
+        public long getOpenedCount()
+        {
+            synchronized (CircuitBreaker.this)
+            {
+                return openedCount;
+            }
+        }
+
+        @Override
+        public long getRejectedCount()
+        {
+            synchronized (CircuitBreaker.this)
+            {
+                return rejectedCount;
+            }
+        }
+    }
+}
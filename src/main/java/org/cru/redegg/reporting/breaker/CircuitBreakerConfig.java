@@ -0,0 +1,85 @@
+package org.cru.redegg.reporting.breaker;
+
+import org.cru.redegg.qualifier.Fallback;
+
+import java.time.Duration;
+
+/**
+ * Configures when the circuit breaker in front of the primary error reporter opens and closes.
+ *
+ * @author Matt Drees
+ */
+@Fallback
+public class CircuitBreakerConfig
+{
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final int DEFAULT_SUCCESS_THRESHOLD = 1;
+    private static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+
+    private boolean enabled = true;
+
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+    private int successThreshold = DEFAULT_SUCCESS_THRESHOLD;
+
+    private Duration openDuration = DEFAULT_OPEN_DURATION;
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public int getFailureThreshold()
+    {
+        return failureThreshold;
+    }
+
+    /**
+     * Sets how many consecutive failures open the circuit. Defaults to 5.
+     */
+    public void setFailureThreshold(int failureThreshold)
+    {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public int getSuccessThreshold()
+    {
+        return successThreshold;
+    }
+
+    /**
+     * Sets how many consecutive successful probes close the circuit again. Defaults to 1.
+     */
+    public void setSuccessThreshold(int successThreshold)
+    {
+        this.successThreshold = successThreshold;
+    }
+
+    public Duration getOpenDuration()
+    {
+        return openDuration;
+    }
+
+    /**
+     * Sets how long the circuit stays open before a probe is allowed. Defaults to 30 seconds.
+     */
+    public void setOpenDuration(Duration openDuration)
+    {
+        this.openDuration = openDuration;
+    }
+
+    public void validate()
+    {
+        if (failureThreshold < 1)
+            throw new IllegalArgumentException("failure threshold must be at least 1");
+        if (successThreshold < 1)
+            throw new IllegalArgumentException("success threshold must be at least 1");
+        if (openDuration == null || openDuration.isNegative())
+            throw new IllegalArgumentException("open duration must not be negative");
+    }
+}
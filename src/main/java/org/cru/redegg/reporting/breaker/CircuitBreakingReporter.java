@@ -0,0 +1,62 @@
+package org.cru.redegg.reporting.breaker;
+
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.api.ErrorLink;
+import org.cru.redegg.reporting.api.ErrorReporter;
+import org.cru.redegg.reporting.dedup.ReportSuppressedException;
+
+import java.util.Optional;
+
+/**
+ * Sends reports through a {@link CircuitBreaker}.
+ * While the circuit is open, {@link #send} throws a {@link CircuitOpenException} immediately;
+ * queues send such reports to the fallback reporter, or (for the durable queue) keep them for later.
+ *
+ * This is not a CDI bean; it wraps the selected {@link ErrorReporter}.
+ *
+ * @author Matt Drees
+ */
+public class CircuitBreakingReporter implements ErrorReporter
+{
+    private final ErrorReporter delegate;
+    private final CircuitBreaker breaker;
+
+    public CircuitBreakingReporter(ErrorReporter delegate, CircuitBreaker breaker)
+    {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public void send(ErrorReport report)
+    {
+        breaker.acquirePermission();
+        try
+        {
+            delegate.send(report);
+        }
+        catch (ReportSuppressedException e)
+        {
+            // nothing was sent, so this says nothing about the reporter
+            breaker.releasePermission();
+            throw e;
+        }
+        catch (RuntimeException | Error e)
+        {
+            breaker.recordFailure();
+            throw e;
+        }
+        breaker.recordSuccess();
+    }
+
+    public ErrorReporter getDelegate()
+    {
+        return delegate;
+    }
+
+    @Override
+    public Optional<ErrorLink> buildLink()
+    {
+        return delegate.buildLink();
+    }
+}
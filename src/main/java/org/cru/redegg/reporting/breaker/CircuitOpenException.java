@@ -0,0 +1,15 @@
+package org.cru.redegg.reporting.breaker;
+
+/**
+ * Thrown instead of sending a report while the circuit is open.
+ * Stack traces are not filled in, since these are expected, and frequent during an outage.
+ *
+ * @author Matt Drees
+ */
+public class CircuitOpenException extends RuntimeException
+{
+    public CircuitOpenException(String message)
+    {
+        super(message, null, false, false);
+    }
+}
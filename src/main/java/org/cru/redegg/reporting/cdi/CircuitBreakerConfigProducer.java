@@ -0,0 +1,26 @@
+package org.cru.redegg.reporting.cdi;
+
+import org.cru.redegg.qualifier.Fallback;
+import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.reporting.breaker.CircuitBreakerConfig;
+
+import javax.enterprise.inject.Default;
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.Produces;
+
+public class CircuitBreakerConfigProducer
+{
+
+    @Produces
+    @Selected
+    public CircuitBreakerConfig selectCircuitBreakerConfig(
+        @Default Instance<CircuitBreakerConfig> defaultConfig,
+        @Fallback CircuitBreakerConfig fallbackConfig)
+    {
+        if (!defaultConfig.isUnsatisfied())
+            return defaultConfig.get();
+        else
+            return fallbackConfig;
+    }
+
+}
@@ -0,0 +1,26 @@
+package org.cru.redegg.reporting.cdi;
+
+import org.cru.redegg.qualifier.Fallback;
+import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.reporting.dedup.DeduplicationConfig;
+
+import javax.enterprise.inject.Default;
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.Produces;
+
+public class DeduplicationConfigProducer
+{
+
+    @Produces
+    @Selected
+    public DeduplicationConfig selectDeduplicationConfig(
+        @Default Instance<DeduplicationConfig> defaultConfig,
+        @Fallback DeduplicationConfig fallbackConfig)
+    {
+        if (!defaultConfig.isUnsatisfied())
+            return defaultConfig.get();
+        else
+            return fallbackConfig;
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.cru.redegg.reporting.cdi;
+
+import org.cru.redegg.qualifier.Fallback;
+import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.reporting.DatadogEnricher;
+import org.cru.redegg.reporting.DeliveryCounters;
+import org.cru.redegg.reporting.ErrorQueueConfig;
+import org.cru.redegg.reporting.InMemoryErrorQueue;
+import org.cru.redegg.reporting.ManagedErrorQueue;
+import org.cru.redegg.reporting.QueueType;
+import org.cru.redegg.reporting.ReportDelivery;
+import org.cru.redegg.reporting.api.ErrorQueue;
+import org.cru.redegg.reporting.api.ErrorReporter;
+import org.cru.redegg.reporting.durable.DurableErrorQueue;
+import org.cru.redegg.reporting.ratelimit.ReportRateLimiter;
+import org.cru.redegg.reporting.ring.RingBufferErrorQueue;
+import org.cru.redegg.util.ErrorLog;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Disposes;
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.Produces;
+
+/**
+ * Chooses the {@link ErrorQueue} implementation according to the {@link QueueType} in the selected config.
+ *
+ * @author Matt Drees
+ */
+public class ErrorQueueProducer
+{
+    public
+    @Produces
+    @ApplicationScoped
+    ErrorQueue selectErrorQueue(
+        @Selected ErrorQueueConfig config,
+        Instance<InMemoryErrorQueue> inMemoryErrorQueue,
+        @Selected ErrorReporter primaryErrorReporter,
+        @Fallback ErrorReporter fallbackReporter,
+        ErrorLog errorLog,
+        DatadogEnricher enricher,
+        ReportRateLimiter rateLimiter)
+    {
+        switch (config.getQueueType())
+        {
+            case RING_BUFFER:
+                return new RingBufferErrorQueue(
+                    new ReportDelivery(
+                        primaryErrorReporter,
+                        fallbackReporter,
+                        errorLog,
+                        enricher,
+                        new DeliveryCounters(),
+                        rateLimiter,
+                        config),
+                    config);
+            case DURABLE:
+                // the durable queue retries from disk itself, so its delivery doesn't need a retry scheduler
+                return new DurableErrorQueue(
+                    new ReportDelivery(
+                        primaryErrorReporter,
+                        fallbackReporter,
+                        errorLog,
+                        enricher,
+                        new DeliveryCounters(),
+                        rateLimiter,
+                        null),
+                    config);
+            default:
+                return inMemoryErrorQueue.get();
+        }
+    }
+
+    public void shutdown(@Disposes ErrorQueue queue)
+    {
+        /* the InMemoryErrorQueue is a bean in its own right; the container shuts it down */
+        if (queue instanceof ManagedErrorQueue && !(queue instanceof InMemoryErrorQueue))
+            ((ManagedErrorQueue) queue).shutdown();
+    }
+}
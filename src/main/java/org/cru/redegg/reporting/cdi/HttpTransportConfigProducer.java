@@ -0,0 +1,26 @@
+package org.cru.redegg.reporting.cdi;
+
+import org.cru.redegg.qualifier.Fallback;
+import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.reporting.common.HttpTransportConfig;
+
+import javax.enterprise.inject.Default;
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.Produces;
+
+public class HttpTransportConfigProducer
+{
+
+    @Produces
+    @Selected
+    public HttpTransportConfig selectHttpTransportConfig(
+        @Default Instance<HttpTransportConfig> defaultConfig,
+        @Fallback HttpTransportConfig fallbackConfig)
+    {
+        if (!defaultConfig.isUnsatisfied())
+            return defaultConfig.get();
+        else
+            return fallbackConfig;
+    }
+
+}
@@ -0,0 +1,44 @@
+package org.cru.redegg.reporting.cdi;
+
+import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.reporting.common.HttpTransport;
+import org.cru.redegg.reporting.common.HttpTransportConfig;
+import org.cru.redegg.reporting.common.HttpTransports;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Default;
+import javax.enterprise.inject.Disposes;
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.Produces;
+
+/**
+ * Uses the app's {@link HttpTransport}, if it provides one, or else creates one from the selected config.
+ * A created transport is shut down with the application; an app's transport is left for the app to manage.
+ *
+ * @author Matt Drees
+ */
+public class HttpTransportProducer
+{
+
+    @Produces
+    @Selected
+    @ApplicationScoped
+    public HttpTransport selectHttpTransport(
+        @Default Instance<HttpTransport> defaultTransport,
+        @Selected HttpTransportConfig config)
+    {
+        if (!defaultTransport.isUnsatisfied())
+            return defaultTransport.get();
+        else
+            return HttpTransports.create(config);
+    }
+
+    public void shutdown(
+        @Disposes @Selected HttpTransport transport,
+        @Default Instance<HttpTransport> defaultTransport)
+    {
+        if (defaultTransport.isUnsatisfied())
+            transport.shutdown();
+    }
+
+}
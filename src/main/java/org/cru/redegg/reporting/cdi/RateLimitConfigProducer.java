@@ -0,0 +1,26 @@
+package org.cru.redegg.reporting.cdi;
+
+import org.cru.redegg.qualifier.Fallback;
+import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.reporting.ratelimit.RateLimitConfig;
+
+import javax.enterprise.inject.Default;
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.Produces;
+
+public class RateLimitConfigProducer
+{
+
+    @Produces
+    @Selected
+    public RateLimitConfig selectRateLimitConfig(
+        @Default Instance<RateLimitConfig> defaultConfig,
+        @Fallback RateLimitConfig fallbackConfig)
+    {
+        if (!defaultConfig.isUnsatisfied())
+            return defaultConfig.get();
+        else
+            return fallbackConfig;
+    }
+
+}
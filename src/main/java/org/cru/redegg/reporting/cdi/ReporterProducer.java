@@ -2,12 +2,28 @@ package org.cru.redegg.reporting.cdi;
 
 import org.cru.redegg.qualifier.Fallback;
 import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.reporting.DatadogEnricher;
+import org.cru.redegg.reporting.DeliveryCounters;
+import org.cru.redegg.reporting.ErrorQueueConfig;
+import org.cru.redegg.reporting.ReportDelivery;
 import org.cru.redegg.reporting.api.ErrorReporter;
+import org.cru.redegg.reporting.breaker.CircuitBreaker;
+import org.cru.redegg.reporting.breaker.CircuitBreakerConfig;
+import org.cru.redegg.reporting.breaker.CircuitBreakingReporter;
+import org.cru.redegg.reporting.common.HttpTransport;
+import org.cru.redegg.reporting.dedup.DeduplicatingReporter;
+import org.cru.redegg.reporting.dedup.DeduplicationConfig;
+import org.cru.redegg.reporting.dedup.ErrorFingerprint;
 import org.cru.redegg.reporting.errbit.ErrbitConfig;
 import org.cru.redegg.reporting.errbit.NativeErrbitReporter;
+import org.cru.redegg.reporting.ratelimit.ReportRateLimiter;
 import org.cru.redegg.reporting.rollbar.RollbarConfig;
 import org.cru.redegg.reporting.rollbar.RollbarReporter;
+import org.cru.redegg.util.ErrorLog;
 
+import java.time.Clock;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Disposes;
 import javax.enterprise.inject.Instance;
 import javax.enterprise.inject.Produces;
 
@@ -16,22 +32,69 @@ import javax.enterprise.inject.Produces;
  */
 public class ReporterProducer
 {
+    /**
+     * Application scoped, so that a deduplicating reporter's open windows are shared,
+     * and are flushed (by the disposer) only when the application shuts down.
+     */
     public
     @Produces
     @Selected
+    @ApplicationScoped
     ErrorReporter selectErrorReporter(
         Instance<ErrbitConfig> errbitConfig,
-        Instance<NativeErrbitReporter> errbitReporter,
         Instance<RollbarConfig> rollbarConfig,
-        Instance<RollbarReporter> rollbarReporter,
-        @Fallback ErrorReporter fallbackReporter)
+        @Fallback ErrorReporter fallbackReporter,
+        @Selected DeduplicationConfig deduplicationConfig,
+        @Selected Clock clock,
+        ErrorLog errorLog,
+        @Selected CircuitBreakerConfig circuitBreakerConfig,
+        Instance<CircuitBreaker> circuitBreaker,
+        @Selected HttpTransport httpTransport,
+        @Selected ErrorQueueConfig errorQueueConfig,
+        DatadogEnricher enricher)
     {
+        ErrorReporter reporter;
         if (available(errbitConfig))
-            return new NativeErrbitReporter(errbitConfig.get());
+        {
+            reporter = new NativeErrbitReporter(errbitConfig.get(), httpTransport);
+        }
         else if (available(rollbarConfig))
-            return new RollbarReporter(rollbarConfig.get());
+        {
+            reporter = new RollbarReporter(rollbarConfig.get(), httpTransport);
+        }
         else
             return fallbackReporter;
+
+        if (deduplicationConfig.isEnabled())
+        {
+            ErrorReporter flushReporter = circuitBreakerConfig.isEnabled()
+                ? new CircuitBreakingReporter(reporter, circuitBreaker.get())
+                : reporter;
+            reporter = new DeduplicatingReporter(
+                reporter,
+                deduplicationConfig,
+                ErrorFingerprint.create(deduplicationConfig, available(errbitConfig) ? errbitConfig.get() : null),
+                new ReportDelivery(
+                    flushReporter,
+                    fallbackReporter,
+                    errorLog,
+                    enricher,
+                    new DeliveryCounters(),
+                    ReportRateLimiter.UNLIMITED,
+                    errorQueueConfig),
+                clock);
+        }
+        if (circuitBreakerConfig.isEnabled())
+            reporter = new CircuitBreakingReporter(reporter, circuitBreaker.get());
+        return reporter;
+    }
+
+    public void shutdown(@Disposes @Selected ErrorReporter reporter)
+    {
+        if (reporter instanceof CircuitBreakingReporter)
+            reporter = ((CircuitBreakingReporter) reporter).getDelegate();
+        if (reporter instanceof DeduplicatingReporter)
+            ((DeduplicatingReporter) reporter).shutdown();
     }
 
     private boolean available(Instance<?> instance)
@@ -0,0 +1,49 @@
+package org.cru.redegg.reporting.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * How a {@link HttpTransport} compresses request bodies.
+ *
+ * @author Matt Drees
+ */
+public enum ContentEncoding
+{
+    IDENTITY(null),
+
+    GZIP("gzip"),
+
+    /** zlib-wrapped deflate, as the http spec defines it */
+    DEFLATE("deflate");
+
+    private final String headerValue;
+
+    ContentEncoding(String headerValue)
+    {
+        this.headerValue = headerValue;
+    }
+
+    /**
+     * Returns the Content-Encoding header value, or null if the body is not compressed.
+     */
+    public String getHeaderValue()
+    {
+        return headerValue;
+    }
+
+    DeflaterOutputStream compress(OutputStream out) throws IOException
+    {
+        switch (this)
+        {
+            case GZIP:
+                return new GZIPOutputStream(out, 8192);
+            case DEFLATE:
+                return new DeflaterOutputStream(out);
+            default:
+                throw new IllegalStateException(this + " does not compress");
+        }
+    }
+}
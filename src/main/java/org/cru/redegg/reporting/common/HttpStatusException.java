@@ -0,0 +1,22 @@
+package org.cru.redegg.reporting.common;
+
+/**
+ * Thrown when an error reporting service responds with an error status.
+ *
+ * @author Matt Drees
+ */
+public class HttpStatusException extends RuntimeException
+{
+    private final int statusCode;
+
+    public HttpStatusException(int statusCode, String message)
+    {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode()
+    {
+        return statusCode;
+    }
+}
@@ -0,0 +1,77 @@
+package org.cru.redegg.reporting.common;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Posts payloads to an error reporting service.
+ * Implementations are shared by all reporters, so they must be threadsafe,
+ * and they should reuse connections between requests.
+ *
+ * <p>
+ * The default implementation is {@link UrlConnectionTransport}.
+ * To use a different one (for example, one built on a newer http client),
+ * list it in {@code META-INF/services/org.cru.redegg.reporting.common.HttpTransport};
+ * see {@link HttpTransports#getDefault()}.
+ *
+ * @author Matt Drees
+ */
+public interface HttpTransport
+{
+
+    /**
+     * Posts the payload and waits for the response.
+     *
+     * @return the response status code
+     * @throws HttpStatusException if the response status code is 400 or greater
+     */
+    int post(URI endpoint, String contentType, Payload payload) throws IOException;
+
+    /**
+     * Posts the payload on the given executor.
+     * The returned future completes with the response status code,
+     * or exceptionally if {@link #post(URI, String, Payload)} would have thrown.
+     *
+     * <p>
+     * The default implementation just runs the blocking {@link #post} on the executor,
+     * so an executor thread is occupied for the whole exchange.
+     * ({@link java.net.HttpURLConnection} has no non-blocking mode, so {@link UrlConnectionTransport} can do no better.)
+     * Transports built on a non-blocking client should override this.
+     */
+    default CompletableFuture<Integer> postAsync(
+        URI endpoint,
+        String contentType,
+        Payload payload,
+        Executor executor)
+    {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try
+            {
+                future.complete(post(endpoint, contentType, payload));
+            }
+            catch (IOException e)
+            {
+                future.completeExceptionally(new UncheckedIOException(e));
+            }
+            catch (Throwable t)
+            {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Releases the transport's connections and threads, if it has any.
+     * Red Egg calls this when it stops using a transport that it created;
+     * transports given to it by an app are not shut down.
+     * The default implementation does nothing.
+     */
+    default void shutdown()
+    {
+    }
+}
@@ -0,0 +1,72 @@
+package org.cru.redegg.reporting.common;
+
+import org.cru.redegg.qualifier.Fallback;
+
+/**
+ * Configures the default {@link HttpTransport}.
+ *
+ * @author Matt Drees
+ */
+@Fallback
+public class HttpTransportConfig
+{
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 4 * 1024;
+
+    private int maxConcurrentRequestsPerEndpoint = DEFAULT_MAX_CONCURRENT_REQUESTS;
+
+    private ContentEncoding contentEncoding = ContentEncoding.IDENTITY;
+
+    private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+
+    public int getMaxConcurrentRequestsPerEndpoint()
+    {
+        return maxConcurrentRequestsPerEndpoint;
+    }
+
+    /**
+     * Sets how many requests may be sent to one endpoint at once. Defaults to 4.
+     * Connections beyond the JVM's {@code http.maxConnections} (5 by default) are not kept alive.
+     */
+    public void setMaxConcurrentRequestsPerEndpoint(int maxConcurrentRequestsPerEndpoint)
+    {
+        this.maxConcurrentRequestsPerEndpoint = maxConcurrentRequestsPerEndpoint;
+    }
+
+    public ContentEncoding getContentEncoding()
+    {
+        return contentEncoding;
+    }
+
+    /**
+     * Sets how request bodies are compressed. Defaults to {@link ContentEncoding#IDENTITY} (not compressed).
+     * Only use compression if the error service (or a proxy in front of it) accepts compressed request bodies.
+     */
+    public void setContentEncoding(ContentEncoding contentEncoding)
+    {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public int getCompressionThreshold()
+    {
+        return compressionThreshold;
+    }
+
+    /**
+     * Sets the size, in bytes, below which request bodies are sent uncompressed. Defaults to 4 KiB.
+     */
+    public void setCompressionThreshold(int compressionThreshold)
+    {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public void validate()
+    {
+        if (maxConcurrentRequestsPerEndpoint < 1)
+            throw new IllegalArgumentException("max concurrent requests per endpoint must be at least 1");
+        if (contentEncoding == null)
+            throw new IllegalArgumentException("content encoding is required");
+        if (compressionThreshold < 0)
+            throw new IllegalArgumentException("compression threshold must not be negative");
+    }
+}
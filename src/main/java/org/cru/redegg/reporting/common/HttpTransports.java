@@ -0,0 +1,41 @@
+package org.cru.redegg.reporting.common;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+/**
+ * Provides the {@link HttpTransport} shared by reporters that aren't given one explicitly.
+ *
+ * @author Matt Drees
+ */
+public class HttpTransports
+{
+    private HttpTransports() {}
+
+    /**
+     * Returns a shared transport, as created by {@link #create(HttpTransportConfig)} with the default config.
+     */
+    public static HttpTransport getDefault()
+    {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Returns the first transport registered with the {@link ServiceLoader},
+     * or else a new {@link UrlConnectionTransport} with the given config.
+     */
+    public static HttpTransport create(HttpTransportConfig config)
+    {
+        ClassLoader classLoader = HttpTransports.class.getClassLoader();
+        Iterator<HttpTransport> transports = ServiceLoader.load(HttpTransport.class, classLoader).iterator();
+        if (transports.hasNext())
+            return transports.next();
+        else
+            return new UrlConnectionTransport(config);
+    }
+
+    private static class DefaultHolder
+    {
+        static final HttpTransport INSTANCE = create(new HttpTransportConfig());
+    }
+}
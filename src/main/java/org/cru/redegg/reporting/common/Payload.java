@@ -10,4 +10,36 @@ public interface Payload
 {
 
     void writeTo(Writer writer) throws IOException;
+
+    /**
+     * Whether this payload streams content that may be too large to hold in memory,
+     * such as a request entity that was spilled to disk.
+     * Transports send such payloads as they are written, instead of buffering them first.
+     * The payload may be written more than once.
+     */
+    default boolean isStreamed()
+    {
+        return false;
+    }
+
+    /**
+     * Returns a payload that writes as the given one does, but is {@linkplain #isStreamed() streamed}.
+     */
+    static Payload streamed(Payload payload)
+    {
+        return new Payload()
+        {
+            @Override
+            public void writeTo(Writer writer) throws IOException
+            {
+                payload.writeTo(writer);
+            }
+
+            @Override
+            public boolean isStreamed()
+            {
+                return true;
+            }
+        };
+    }
 }
@@ -0,0 +1,88 @@
+package org.cru.redegg.reporting.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Supplier;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Collects a request body, and compresses it as it is written once it grows past a threshold.
+ * Bodies that stay below the threshold are kept as they are,
+ * since compressing them doesn't save enough to be worth it.
+ *
+ * @author Matt Drees
+ */
+class ThresholdCompressingOutputStream<B extends ByteArrayOutputStream> extends OutputStream
+{
+    private final B raw;
+    private final Supplier<B> compressedBufferSupplier;
+    private final ContentEncoding encoding;
+    private final int threshold;
+
+    private B compressed;
+    private DeflaterOutputStream compressor;
+
+    ThresholdCompressingOutputStream(
+        B raw,
+        Supplier<B> compressedBufferSupplier,
+        ContentEncoding encoding,
+        int threshold)
+    {
+        this.raw = raw;
+        this.compressedBufferSupplier = compressedBufferSupplier;
+        this.encoding = encoding;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        current(1).write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        current(len).write(b, off, len);
+    }
+
+    private OutputStream current(int length) throws IOException
+    {
+        if (compressor == null &&
+            encoding != ContentEncoding.IDENTITY &&
+            raw.size() + length > threshold)
+        {
+            compressed = compressedBufferSupplier.get();
+            compressor = encoding.compress(compressed);
+            raw.writeTo(compressor);
+        }
+        return compressor != null ? compressor : raw;
+    }
+
+    /**
+     * Finishes compression, if it was started, and releases the compressor's native memory.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (compressor != null)
+            compressor.close();
+    }
+
+    /**
+     * Returns the buffer holding the (possibly compressed) body; only valid once this stream is closed.
+     */
+    B getBody()
+    {
+        return compressor != null ? compressed : raw;
+    }
+
+    /**
+     * Returns the Content-Encoding header value for the body, or null if it was not compressed.
+     */
+    String getContentEncoding()
+    {
+        return compressor != null ? encoding.getHeaderValue() : null;
+    }
+}
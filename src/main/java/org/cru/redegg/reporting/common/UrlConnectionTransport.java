@@ -0,0 +1,378 @@
+package org.cru.redegg.reporting.common;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Closeables;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.NoRouteToHostException;
+import java.net.ProtocolException;
+import java.net.SocketException;
+import java.net.URI;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link HttpTransport} built on {@link HttpURLConnection} that reuses connections.
+ *
+ * <p>
+ * The JDK keeps connections alive and reuses them,
+ * but only once a response has been completely read and closed,
+ * and it caches at most {@code http.maxConnections} (5 by default) idle connections per endpoint.
+ * So this transport always drains the response,
+ * and it limits the number of concurrent requests to each endpoint
+ * (which should not be more than {@code http.maxConnections}).
+ *
+ * <p>
+ * Most payloads are first written to a pooled buffer, which is reused between requests,
+ * and then sent with a fixed length in one write.
+ * This means payloads aren't sent as a long series of small writes,
+ * and the JDK doesn't need to buffer the request body itself.
+ * Unlike in its buffered mode, the JDK will not re-send a fixed-length request
+ * when a kept-alive connection turns out to have been closed by the server,
+ * so this transport does that itself: a request that fails that way is sent once more, on another connection.
+ * (As with the JDK's own retry, the server may have received the first request.)
+ *
+ * <p>
+ * If the config asks for compression, payloads larger than the compression threshold
+ * are compressed as they are written (so the uncompressed payload is never held in full),
+ * and sent with a Content-Encoding header.
+ *
+ * <p>
+ * {@linkplain Payload#isStreamed() Streamed} payloads, such as reports carrying a request entity spilled to disk,
+ * are not buffered; they are written straight to the connection in chunks (and compressed, if configured).
+ *
+ * @author Matt Drees
+ */
+public class UrlConnectionTransport implements HttpTransport
+{
+    static final int CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(10);
+    static final int READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(30);
+
+    /** buffers that grew larger than this (for an unusually large report) are not kept */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+    /** the length given for streamed payloads, which are sent in chunks of this size */
+    private static final int STREAMED = -1;
+    private static final int CHUNK_SIZE = 8192;
+
+    private final int maxConcurrentRequestsPerEndpoint;
+    private final ContentEncoding contentEncoding;
+    private final int compressionThreshold;
+
+    private final BlockingQueue<PayloadBuffer> buffers;
+
+    private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    public UrlConnectionTransport(HttpTransportConfig config)
+    {
+        config.validate();
+        this.maxConcurrentRequestsPerEndpoint = config.getMaxConcurrentRequestsPerEndpoint();
+        this.contentEncoding = config.getContentEncoding();
+        this.compressionThreshold = config.getCompressionThreshold();
+        this.buffers = new ArrayBlockingQueue<>(maxConcurrentRequestsPerEndpoint * 2);
+    }
+
+    public UrlConnectionTransport(int maxConcurrentRequestsPerEndpoint)
+    {
+        this(configWithConcurrency(maxConcurrentRequestsPerEndpoint));
+    }
+
+    private static HttpTransportConfig configWithConcurrency(int maxConcurrentRequestsPerEndpoint)
+    {
+        HttpTransportConfig config = new HttpTransportConfig();
+        config.setMaxConcurrentRequestsPerEndpoint(maxConcurrentRequestsPerEndpoint);
+        return config;
+    }
+
+    public int getMaxConcurrentRequestsPerEndpoint()
+    {
+        return maxConcurrentRequestsPerEndpoint;
+    }
+
+    @Override
+    public int post(URI endpoint, String contentType, Payload payload) throws IOException
+    {
+        if (endpoint == null)
+            throw new IllegalArgumentException("no endpoint is configured!");
+
+        if (payload.isStreamed())
+            return postStreamed(endpoint, contentType, payload);
+
+        PayloadBuffer raw = takeBuffer();
+        ThresholdCompressingOutputStream<PayloadBuffer> body = new ThresholdCompressingOutputStream<>(
+            raw,
+            this::takeBuffer,
+            contentEncoding,
+            compressionThreshold);
+        try
+        {
+            render(payload, body);
+            Semaphore semaphore = permitsFor(endpoint);
+            acquire(semaphore);
+            try
+            {
+                PayloadBuffer buffer = body.getBody();
+                RequestBody requestBody = buffer::writeTo;
+                try
+                {
+                    return exchange(endpoint, contentType, body.getContentEncoding(), buffer.size(), requestBody);
+                }
+                catch (SocketException e)
+                {
+                    if (!isStaleConnection(e))
+                        throw e;
+                    return exchange(endpoint, contentType, body.getContentEncoding(), buffer.size(), requestBody);
+                }
+            }
+            finally
+            {
+                semaphore.release();
+            }
+        }
+        finally
+        {
+            body.close();
+            release(raw);
+            if (body.getBody() != raw)
+                release(body.getBody());
+        }
+    }
+
+    /**
+     * Renders the payload straight to the connection, in chunks, so it is never held in memory.
+     * It is compressed whenever the config asks for compression, since streamed payloads are large.
+     * The payload is rendered again if the connection turns out to be stale.
+     */
+    private int postStreamed(URI endpoint, String contentType, Payload payload) throws IOException
+    {
+        String encoding = contentEncoding.getHeaderValue();
+        RequestBody requestBody = outputStream -> {
+            OutputStream body = contentEncoding == ContentEncoding.IDENTITY
+                ? outputStream
+                : contentEncoding.compress(outputStream);
+            render(payload, body);
+        };
+        Semaphore semaphore = permitsFor(endpoint);
+        acquire(semaphore);
+        try
+        {
+            try
+            {
+                return exchange(endpoint, contentType, encoding, STREAMED, requestBody);
+            }
+            catch (SocketException e)
+            {
+                if (!isStaleConnection(e))
+                    throw e;
+                return exchange(endpoint, contentType, encoding, STREAMED, requestBody);
+            }
+        }
+        finally
+        {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * A kept-alive connection that the server has closed fails with a SocketException once it is used.
+     * Failures to connect at all are SocketExceptions too, but they wouldn't go any differently a second time.
+     */
+    private boolean isStaleConnection(SocketException e)
+    {
+        return !(e instanceof ConnectException) && !(e instanceof NoRouteToHostException);
+    }
+
+    private void render(Payload payload, OutputStream body) throws IOException
+    {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(body, Charsets.UTF_8));
+        payload.writeTo(writer);
+        writer.flush();
+        body.close();
+    }
+
+    /**
+     * Discards the pooled buffers.
+     * The JDK's keep-alive connections are shared by the whole JVM, so they are left alone.
+     */
+    @Override
+    public void shutdown()
+    {
+        buffers.clear();
+    }
+
+    private PayloadBuffer takeBuffer()
+    {
+        PayloadBuffer buffer = buffers.poll();
+        return buffer != null ? buffer : new PayloadBuffer();
+    }
+
+    private void release(PayloadBuffer buffer)
+    {
+        if (buffer.capacity() <= MAX_RETAINED_BUFFER_SIZE)
+        {
+            buffer.reset();
+            buffers.offer(buffer);
+        }
+    }
+
+    private Semaphore permitsFor(URI endpoint)
+    {
+        String key = endpoint.getScheme() + "://" + endpoint.getAuthority();
+        return permits.computeIfAbsent(key, k -> new Semaphore(maxConcurrentRequestsPerEndpoint));
+    }
+
+    private void acquire(Semaphore semaphore) throws InterruptedIOException
+    {
+        try
+        {
+            semaphore.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a connection");
+        }
+    }
+
+    private int exchange(
+        URI endpoint,
+        String contentType,
+        String contentEncoding,
+        int length,
+        RequestBody body) throws IOException
+    {
+        HttpURLConnection urlConnection = (HttpURLConnection) endpoint.toURL().openConnection();
+        configure(urlConnection, contentType, contentEncoding, length);
+        try
+        {
+            OutputStream outputStream = urlConnection.getOutputStream();
+            body.writeTo(outputStream);
+            outputStream.close();
+
+            int responseCode = urlConnection.getResponseCode();
+            if (responseCode >= 400)
+            {
+                throw new HttpStatusException(
+                    responseCode,
+                    "notice not successfully submitted; response code: " + responseCode +
+                    "; content:\n" + readErrorContent(urlConnection));
+            }
+            drain(urlConnection.getInputStream());
+            return responseCode;
+        }
+        catch (IOException e)
+        {
+            drainQuietly(urlConnection.getErrorStream());
+            throw e;
+        }
+    }
+
+    private void configure(
+        HttpURLConnection urlConnection,
+        String contentType,
+        String contentEncoding,
+        int length) throws ProtocolException
+    {
+        urlConnection.setDoOutput(true);
+        urlConnection.setUseCaches(false);
+        if (length == STREAMED)
+            urlConnection.setChunkedStreamingMode(CHUNK_SIZE);
+        else
+            urlConnection.setFixedLengthStreamingMode(length);
+        urlConnection.setRequestMethod("POST");
+        urlConnection.setRequestProperty("Content-Type", contentType);
+        if (contentEncoding != null)
+            urlConnection.setRequestProperty("Content-Encoding", contentEncoding);
+        urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        urlConnection.setReadTimeout(READ_TIMEOUT_MILLIS);
+    }
+
+    private String readErrorContent(HttpURLConnection urlConnection) throws IOException
+    {
+        InputStream errorStream = urlConnection.getErrorStream();
+        if (errorStream == null)
+            return "(no content)";
+
+        Reader reader = new InputStreamReader(errorStream, Charsets.UTF_8);
+        boolean threw = true;
+        try
+        {
+            String content = CharStreams.toString(reader);
+            threw = false;
+            return content;
+        }
+        finally
+        {
+            Closeables.close(reader, threw);
+        }
+    }
+
+    /**
+     * Reads the rest of the response, so the JDK can return the connection to its keep-alive cache.
+     */
+    private void drain(InputStream inputStream) throws IOException
+    {
+        boolean threw = true;
+        try
+        {
+            ByteStreams.exhaust(inputStream);
+            threw = false;
+        }
+        finally
+        {
+            Closeables.close(inputStream, threw);
+        }
+    }
+
+    private void drainQuietly(InputStream errorStream)
+    {
+        if (errorStream == null)
+            return;
+        try
+        {
+            drain(errorStream);
+        }
+        catch (IOException ignored)
+        {
+            // the connection won't be reused; nothing else to do
+        }
+    }
+
+    private interface RequestBody
+    {
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * A ByteArrayOutputStream that exposes its capacity, so oversized buffers aren't pooled.
+     */
+    private static class PayloadBuffer extends ByteArrayOutputStream
+    {
+        PayloadBuffer()
+        {
+            super(8192);
+        }
+
+        int capacity()
+        {
+            return buf.length;
+        }
+    }
+}
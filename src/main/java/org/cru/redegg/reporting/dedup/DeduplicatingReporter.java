@@ -0,0 +1,274 @@
+package org.cru.redegg.reporting.dedup;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.ReportDelivery;
+import org.cru.redegg.reporting.WebContext;
+import org.cru.redegg.reporting.api.ErrorLink;
+import org.cru.redegg.reporting.api.ErrorReporter;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Combines repeated reports of the same error before they reach the underlying reporter.
+ *
+ * The first report with a given {@link ErrorFingerprint fingerprint} is sent immediately, in full.
+ * Repeats within the configured window are counted, and when the window closes,
+ * the most recent repeat is sent with extra context:
+ * the number of occurrences, the first and last occurrence times, and a few sample request urls.
+ * Combined reports are sent with their own {@link ReportDelivery},
+ * so they get the same circuit breaker, retries and fallback as reports sent from the queue.
+ * Note that the error links of the combined repeats (other than the most recent) will not resolve.
+ *
+ * Repeats are not sent; {@link #send} throws a {@link ReportSuppressedException} for them instead,
+ * and this takes ownership of them:
+ * each is released once a later repeat supersedes it, and the most recent is released once it has been sent.
+ *
+ * This is not a CDI bean; it wraps the selected {@link ErrorReporter}.
+ *
+ * @author Matt Drees
+ */
+public class DeduplicatingReporter implements ErrorReporter
+{
+    public static final String OCCURRENCES = "occurrences";
+    public static final String FIRST_OCCURRENCE = "first_occurrence";
+    public static final String LAST_OCCURRENCE = "last_occurrence";
+    public static final String SAMPLE_URLS = "sample_urls";
+
+    private final ErrorReporter delegate;
+    private final ErrorFingerprint fingerprint;
+    private final ReportDelivery flushDelivery;
+    private final Clock clock;
+    private final long windowMillis;
+    private final int maxSampleUrls;
+    private final int maxTrackedFingerprints;
+
+    private final ConcurrentMap<Long, Window> windows = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    private boolean shutdown;
+
+    /**
+     * @param flushDelivery sends the combined reports when their windows close;
+     *   its primary reporter should be the delegate (behind the same circuit breaker, if there is one)
+     */
+    public DeduplicatingReporter(
+        ErrorReporter delegate,
+        DeduplicationConfig config,
+        ErrorFingerprint fingerprint,
+        ReportDelivery flushDelivery,
+        Clock clock)
+    {
+        config.validate();
+        this.delegate = delegate;
+        this.fingerprint = fingerprint;
+        this.flushDelivery = flushDelivery;
+        this.clock = clock;
+        this.windowMillis = config.getWindow().toMillis();
+        this.maxSampleUrls = config.getMaxSampleUrls();
+        this.maxTrackedFingerprints = config.getMaxTrackedFingerprints();
+    }
+
+    /**
+     * @throws ReportSuppressedException if the report is a repeat, and will be combined with others later
+     */
+    @Override
+    public void send(ErrorReport report)
+    {
+        long key = fingerprint.compute(report);
+        Instant now = clock.instant();
+        while (true)
+        {
+            Window window = windows.get(key);
+            if (window == null)
+            {
+                if (windows.size() >= maxTrackedFingerprints)
+                {
+                    delegate.send(report);
+                    return;
+                }
+                Window opened = new Window(now);
+                if (windows.putIfAbsent(key, opened) == null)
+                {
+                    if (!scheduleClose(key, opened))
+                        windows.remove(key, opened);
+                    sendFirst(key, opened, report);
+                    return;
+                }
+            }
+            else if (window.add(report, now))
+            {
+                throw new ReportSuppressedException("repeated report will be combined with its window's report");
+            }
+            // the window closed while we were looking at it; try again
+        }
+    }
+
+    /**
+     * If the first occurrence can't be sent, its window is discarded,
+     * so that a retry of the same report isn't mistaken for a repeat of it.
+     * Repeats that arrived in the meantime are sent on their own.
+     */
+    private void sendFirst(long key, Window opened, ErrorReport report)
+    {
+        try
+        {
+            delegate.send(report);
+        }
+        catch (RuntimeException | Error e)
+        {
+            windows.remove(key, opened);
+            ErrorReport repeat = opened.discard();
+            if (repeat != null)
+                flushDelivery.deliver(repeat);
+            throw e;
+        }
+    }
+
+    private synchronized boolean scheduleClose(long key, Window window)
+    {
+        if (shutdown)
+            return false;
+        if (scheduler == null)
+        {
+            scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                    .setNameFormat("red-egg-dedup-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        try
+        {
+            scheduler.schedule(() -> close(key, window), windowMillis, TimeUnit.MILLISECONDS);
+            return true;
+        }
+        catch (RejectedExecutionException e)
+        {
+            return false;
+        }
+    }
+
+    private void close(long key, Window window)
+    {
+        windows.remove(key, window);
+        ErrorReport combined = window.close();
+        if (combined != null)
+            flushDelivery.deliver(combined);
+    }
+
+    /**
+     * Sends the combined reports for all open windows, and stops the timer.
+     * Combined reports still waiting to be retried are then sent to the fallback reporter.
+     */
+    public void shutdown()
+    {
+        ScheduledExecutorService toStop;
+        synchronized (this)
+        {
+            shutdown = true;
+            toStop = scheduler;
+        }
+        if (toStop != null)
+            toStop.shutdownNow();
+        for (Long key : windows.keySet())
+        {
+            Window window = windows.get(key);
+            if (window != null)
+                close(key, window);
+        }
+        flushDelivery.shutdown();
+    }
+
+    @Override
+    public Optional<ErrorLink> buildLink()
+    {
+        return delegate.buildLink();
+    }
+
+    private class Window
+    {
+        private final Instant first;
+        private Instant last;
+        private int repeats;
+        private ErrorReport latest;
+        private final List<String> sampleUrls = new ArrayList<>();
+        private boolean closed;
+
+        Window(Instant first)
+        {
+            this.first = first;
+            this.last = first;
+        }
+
+        /**
+         * @return false if the window is already closed
+         */
+        synchronized boolean add(ErrorReport report, Instant now)
+        {
+            if (closed)
+                return false;
+            repeats++;
+            last = now;
+            // only the most recent repeat is sent
+            if (latest != null)
+                latest.release();
+            latest = report;
+            WebContext webContext = report.getWebContext();
+            if (webContext != null && webContext.getUrl() != null && sampleUrls.size() < maxSampleUrls)
+            {
+                String url = webContext.getUrl().toString();
+                if (!sampleUrls.contains(url))
+                    sampleUrls.add(url);
+            }
+            return true;
+        }
+
+        /**
+         * Closes the window without combining its repeats.
+         *
+         * @return the most recent repeat, or null if there were none
+         */
+        synchronized ErrorReport discard()
+        {
+            if (closed)
+                return null;
+            closed = true;
+            return latest;
+        }
+
+        /**
+         * @return the combined report, or null if there were no repeats
+         */
+        synchronized ErrorReport close()
+        {
+            if (closed || repeats == 0)
+            {
+                closed = true;
+                return null;
+            }
+            closed = true;
+
+            Multimap<String, String> context = HashMultimap.create(latest.getContext());
+            // the first occurrence was sent on its own
+            context.put(OCCURRENCES, String.valueOf(repeats + 1));
+            context.put(FIRST_OCCURRENCE, first.toString());
+            context.put(LAST_OCCURRENCE, last.toString());
+            context.putAll(SAMPLE_URLS, sampleUrls);
+            latest.setContext(context);
+            return latest;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.cru.redegg.reporting.dedup;
+
+import org.cru.redegg.qualifier.Fallback;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Configures how repeated reports of the same error are combined before they are sent.
+ *
+ * @author Matt Drees
+ */
+@Fallback
+public class DeduplicationConfig
+{
+    private static final Duration DEFAULT_WINDOW = Duration.ofMinutes(1);
+    private static final int DEFAULT_MAX_SAMPLE_URLS = 5;
+    private static final int DEFAULT_MAX_TRACKED_FINGERPRINTS = 1000;
+
+    private Duration window = DEFAULT_WINDOW;
+
+    private int maxSampleUrls = DEFAULT_MAX_SAMPLE_URLS;
+
+    private int maxTrackedFingerprints = DEFAULT_MAX_TRACKED_FINGERPRINTS;
+
+    private Set<String> applicationBasePackages = Collections.emptySet();
+
+    public Duration getWindow()
+    {
+        return window;
+    }
+
+    /**
+     * Sets how long repeats of a report are combined after the first one is sent.
+     * A zero window disables deduplication. Defaults to one minute.
+     */
+    public void setWindow(Duration window)
+    {
+        this.window = window;
+    }
+
+    public boolean isEnabled()
+    {
+        return !window.isZero();
+    }
+
+    public int getMaxSampleUrls()
+    {
+        return maxSampleUrls;
+    }
+
+    /**
+     * Sets how many request urls are listed in a combined report.
+     */
+    public void setMaxSampleUrls(int maxSampleUrls)
+    {
+        this.maxSampleUrls = maxSampleUrls;
+    }
+
+    public int getMaxTrackedFingerprints()
+    {
+        return maxTrackedFingerprints;
+    }
+
+    /**
+     * Sets how many distinct errors can be combined at once.
+     * Beyond this, new errors are sent without deduplication, to bound memory use.
+     */
+    public void setMaxTrackedFingerprints(int maxTrackedFingerprints)
+    {
+        this.maxTrackedFingerprints = maxTrackedFingerprints;
+    }
+
+    public Set<String> getApplicationBasePackages()
+    {
+        return applicationBasePackages;
+    }
+
+    /**
+     * Sets the packages whose stack frames identify an error.
+     * If empty, the Errbit config's application base packages are used, if available;
+     * otherwise, the top frames of the stack trace are used.
+     */
+    public void setApplicationBasePackages(Set<String> applicationBasePackages)
+    {
+        this.applicationBasePackages = applicationBasePackages;
+    }
+
+    public void validate()
+    {
+        if (window == null || window.isNegative())
+            throw new IllegalArgumentException("window must not be negative");
+        if (maxSampleUrls < 0)
+            throw new IllegalArgumentException("max sample urls must not be negative");
+        if (maxTrackedFingerprints < 1)
+            throw new IllegalArgumentException("max tracked fingerprints must be at least 1");
+        if (applicationBasePackages == null)
+            throw new IllegalArgumentException("application base packages must not be null");
+    }
+}
@@ -0,0 +1,137 @@
+package org.cru.redegg.reporting.dedup;
+
+import com.google.common.base.Throwables;
+import org.cru.redegg.recording.api.NotificationLevel;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.ReplayedThrowable;
+import org.cru.redegg.reporting.errbit.ErrbitConfig;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Computes a 64-bit fingerprint that is the same for reports caused by the same problem.
+ *
+ * The fingerprint combines the root exception's class, the application frames of its stack trace,
+ * and the component (e.g. JAX-RS resource method) that handled the request.
+ * If no application packages are configured, the top frames are used instead.
+ * Reports without exceptions are fingerprinted by their {@linkplain ErrorReport#getLogSignature() log signature},
+ * so their log records don't have to be built;
+ * if they don't have one, they are fingerprinted by their first error message
+ * (or, if nothing was logged at the error level, their first message at the most severe level that was).
+ *
+ * This runs for every report, on the enqueuing thread (for rate limiting) as well as the delivery thread,
+ * so it only hashes existing strings (whose hash codes are cached) and never builds new ones.
+ *
+ * @author Matt Drees
+ */
+public class ErrorFingerprint
+{
+    private static final int MAX_FRAMES = 32;
+
+    private final String[] applicationBasePackages;
+
+    public ErrorFingerprint(Collection<String> applicationBasePackages)
+    {
+        this.applicationBasePackages = applicationBasePackages.toArray(new String[0]);
+    }
+
+    /**
+     * Uses the dedup config's application packages, or else the errbit config's (if there is one).
+     */
+    public static ErrorFingerprint create(DeduplicationConfig config, ErrbitConfig errbitConfig)
+    {
+        if (config.getApplicationBasePackages().isEmpty() && errbitConfig != null)
+            return new ErrorFingerprint(errbitConfig.getApplicationBasePackages());
+        else
+            return new ErrorFingerprint(config.getApplicationBasePackages());
+    }
+
+    public long compute(ErrorReport report)
+    {
+        long hash = 0x9E3779B97F4A7C15L;
+        List<Throwable> thrown = report.getThrown();
+        if (!thrown.isEmpty())
+        {
+            Throwable root = Throwables.getRootCause(thrown.get(0));
+            hash = mix(hash, ReplayedThrowable.classNameOf(root).hashCode());
+            hash = mixFrames(hash, root.getStackTrace());
+        }
+        else if (report.getLogSignature() != null)
+        {
+            hash = mix(hash, report.getLogSignature().hashCode());
+        }
+        else
+        {
+            ErrorReport.LogRecord first = firstMostSevere(report.getLogRecords());
+            if (first != null)
+                hash = mix(hash, first.message == null ? 0 : first.message.hashCode());
+        }
+
+        if (report.getWebContext() != null)
+        {
+            Method component = report.getWebContext().getComponent();
+            hash = mix(hash, component == null ? 0 : component.hashCode());
+        }
+        return finish(hash);
+    }
+
+    private static ErrorReport.LogRecord firstMostSevere(List<ErrorReport.LogRecord> logRecords)
+    {
+        ErrorReport.LogRecord first = null;
+        for (ErrorReport.LogRecord logRecord : logRecords)
+        {
+            if (first == null || logRecord.level.compareTo(first.level) > 0)
+                first = logRecord;
+            if (first.level == NotificationLevel.ERROR)
+                break;
+        }
+        return first;
+    }
+
+    private long mixFrames(long hash, StackTraceElement[] frames)
+    {
+        int used = 0;
+        for (int i = 0; i < frames.length && used < MAX_FRAMES; i++)
+        {
+            StackTraceElement frame = frames[i];
+            if (isApplicationFrame(frame.getClassName()))
+            {
+                hash = mix(hash, frame.getClassName().hashCode());
+                hash = mix(hash, frame.getMethodName().hashCode());
+                hash = mix(hash, frame.getLineNumber());
+                used++;
+            }
+        }
+        return hash;
+    }
+
+    private boolean isApplicationFrame(String className)
+    {
+        if (applicationBasePackages.length == 0)
+            return true;
+        for (String basePackage : applicationBasePackages)
+        {
+            if (className.startsWith(basePackage))
+                return true;
+        }
+        return false;
+    }
+
+    private static long mix(long hash, int value)
+    {
+        return (hash ^ value) * 0x100000001B3L;
+    }
+
+    /** murmur3's finalizer, so that similar inputs don't produce similar fingerprints */
+    private static long finish(long hash)
+    {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
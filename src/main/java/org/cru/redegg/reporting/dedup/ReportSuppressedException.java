@@ -0,0 +1,17 @@
+package org.cru.redegg.reporting.dedup;
+
+/**
+ * Thrown instead of sending a repeated report that will be combined into its window's report.
+ * The {@link DeduplicatingReporter} then owns the report,
+ * so callers must neither count it as delivered nor release it.
+ * Stack traces are not filled in, since these are expected, and frequent during an error storm.
+ *
+ * @author Matt Drees
+ */
+public class ReportSuppressedException extends RuntimeException
+{
+    public ReportSuppressedException(String message)
+    {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,367 @@
+package org.cru.redegg.reporting.durable;
+
+import org.cru.redegg.reporting.DeliveryCounters;
+import org.cru.redegg.reporting.ErrorQueueConfig;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.ManagedErrorQueue;
+import org.cru.redegg.reporting.OverflowPolicy;
+import org.cru.redegg.reporting.ReportDelivery;
+import org.cru.redegg.reporting.api.ErrorLink;
+import org.cru.redegg.reporting.api.ErrorQueueMetrics;
+import org.cru.redegg.reporting.breaker.CircuitOpenException;
+import org.cru.redegg.reporting.retry.Retries;
+import org.cru.redegg.util.ErrorLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An error queue that writes reports to disk before they are delivered,
+ * so that they survive a redeploy or a long outage of the error reporting service.
+ *
+ * Reports are appended to a {@link SegmentedLog} on the enqueuing thread,
+ * and a single background thread delivers them in order.
+ * If the primary reporter fails, the report stays at the head of the log and is retried with
+ * exponential backoff; after {@link #MAX_ATTEMPTS} failures it is given to the fallback reporter and skipped.
+ * Waiting for an open circuit doesn't count as a failure.
+ * Reports that are rejected outright (see {@link Retries#isRetryable}) go to the fallback reporter immediately.
+ * Reports that haven't been delivered when the app shuts down are delivered after the next startup.
+ *
+ * Disk usage is bounded by the configured segment size and count;
+ * when every segment is in use, the configured {@link OverflowPolicy} applies,
+ * except that {@link OverflowPolicy#DROP_OLDEST} behaves like {@link OverflowPolicy#DROP_NEWEST}.
+ *
+ * This is not a CDI bean; it is chosen via {@link ErrorQueueConfig#setQueueType}.
+ *
+ * @author Matt Drees
+ */
+public class DurableErrorQueue implements ManagedErrorQueue
+{
+    private static final Logger LOG = LoggerFactory.getLogger(DurableErrorQueue.class);
+
+    static final int MAX_ATTEMPTS = 100;
+
+    private static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long IDLE_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 20;
+
+    private final ReportDelivery delivery;
+    private final DeliveryCounters counters;
+    private final ErrorLog errorLog;
+    private final ErrorReportCodec codec = new ErrorReportCodec();
+    private final SegmentedLog log;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMillis;
+    private final long initialBackoffMillis;
+
+    private final Thread deliverer;
+    private final Metrics metrics = new Metrics();
+
+    private volatile boolean running = true;
+
+    public DurableErrorQueue(ReportDelivery delivery, ErrorQueueConfig config)
+    {
+        this(delivery, config, INITIAL_BACKOFF_MILLIS);
+    }
+
+    DurableErrorQueue(ReportDelivery delivery, ErrorQueueConfig config, long initialBackoffMillis)
+    {
+        config.validate();
+        this.delivery = delivery;
+        this.counters = delivery.getCounters();
+        this.errorLog = delivery.getErrorLog();
+        this.overflowPolicy = config.getOverflowPolicy();
+        this.blockTimeoutMillis = config.getBlockTimeout().toMillis();
+        this.initialBackoffMillis = initialBackoffMillis;
+        try
+        {
+            this.log = new SegmentedLog(
+                config.getDurableDirectory(),
+                config.getSegmentSize(),
+                config.getMaxSegments());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("unable to open error queue in " + config.getDurableDirectory(), e);
+        }
+
+        int pending = log.getPendingCount();
+        if (pending > 0)
+        {
+            LOG.info("replaying {} error reports from {}", pending, config.getDurableDirectory());
+        }
+
+        deliverer = new Thread(new Deliverer(), "red-egg-durable-delivery");
+        deliverer.setDaemon(true);
+        deliverer.start();
+    }
+
+    @Override
+    public void enqueue(ErrorReport report)
+    {
+        if (!delivery.admit(report))
+            return;
+        if (!running)
+        {
+            errorLog.warn("error queue has been shut down; using fallback reporter");
+            delivery.fallback(report);
+            return;
+        }
+
+        byte[] encoded;
+        try
+        {
+            encoded = codec.encode(report);
+        }
+        catch (RuntimeException e)
+        {
+            errorLog.error("unable to write error report to disk; using fallback reporter", e);
+            delivery.fallback(report);
+            return;
+        }
+
+        try
+        {
+            if (!append(report, encoded))
+                return;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            errorLog.error("unable to write error report to disk; using fallback reporter", e);
+            delivery.fallback(report);
+            return;
+        }
+        counters.recordEnqueued();
+        // the logged record holds everything that is delivered from here on
+        report.release();
+
+        final ErrorLink errorLink = report.getErrorLink();
+        if (errorLink != null)
+        {
+            LOG.info("Error details available at {}", errorLink.getTarget());
+        }
+    }
+
+    /**
+     * @return false if the log was full, and the overflow policy was applied
+     */
+    private boolean append(ErrorReport report, byte[] record) throws IOException
+    {
+        if (log.append(record))
+            return true;
+
+        if (overflowPolicy == OverflowPolicy.BLOCK && appendBlocking(record))
+            return true;
+
+        if (overflowPolicy == OverflowPolicy.CALLER_RUNS)
+        {
+            delivery.fallback(report);
+        }
+        else
+        {
+            counters.recordDropped();
+            report.release();
+        }
+        return false;
+    }
+
+    private boolean appendBlocking(byte[] record) throws IOException
+    {
+        long deadline = System.currentTimeMillis() + blockTimeoutMillis;
+        long remaining;
+        try
+        {
+            while ((remaining = deadline - System.currentTimeMillis()) > 0 && running)
+            {
+                log.awaitSpace(remaining);
+                if (log.append(record))
+                    return true;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Stops delivery, and closes the log.
+     * Reports that haven't been delivered remain on disk, and will be delivered after the next startup.
+     */
+    @Override
+    public void shutdown()
+    {
+        running = false;
+        deliverer.interrupt();
+        try
+        {
+            deliverer.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+            if (deliverer.isAlive())
+                errorLog.warn("durable error queue delivery did not stop within " + SHUTDOWN_TIMEOUT_SECONDS + " seconds");
+        }
+        catch (InterruptedException e)
+        {
+            errorLog.error("durable error queue shutdown interrupted", e);
+            Thread.currentThread().interrupt();
+        }
+        delivery.shutdown();
+
+        try
+        {
+            log.close();
+        }
+        catch (IOException e)
+        {
+            errorLog.error("unable to close durable error queue", e);
+        }
+
+        int pending = log.getPendingCount();
+        if (pending > 0)
+        {
+            LOG.info("{} error reports will be delivered after the next startup", pending);
+        }
+    }
+
+    @Override
+    public Optional<ErrorLink> buildLink()
+    {
+        return delivery.buildLink();
+    }
+
+    @Override
+    public ErrorQueueMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    private class Deliverer implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (running)
+                {
+                    byte[] record = log.peek();
+                    if (record == null)
+                        log.awaitRecord(IDLE_WAIT_MILLIS);
+                    else
+                        deliver(record);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                // shutting down
+            }
+            catch (Throwable t)
+            {
+                if (running)
+                    errorLog.error("durable error queue delivery stopped unexpectedly", t);
+            }
+        }
+
+        private void deliver(byte[] record) throws IOException, InterruptedException
+        {
+            ErrorReport report;
+            try
+            {
+                report = codec.decode(record);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                errorLog.error("unable to read error report from disk; skipping it", e);
+                log.acknowledge();
+                return;
+            }
+
+            delivery.enrich(report);
+            long backoff = initialBackoffMillis;
+            int attempts = 0;
+            while (true)
+            {
+                try
+                {
+                    if (delivery.tryDeliver(report))
+                        break;
+                    attempts++;
+                }
+                catch (CircuitOpenException e)
+                {
+                    // the report wasn't sent, so this doesn't count as an attempt
+                }
+                if (attempts >= MAX_ATTEMPTS)
+                {
+                    errorLog.warn("giving up on error report after " + attempts + " attempts; using fallback reporter");
+                    delivery.fallback(report);
+                    break;
+                }
+                // an interruption here means shutdown; the report stays on disk for the next startup
+                Thread.sleep(Retries.withJitter(backoff));
+                backoff = Retries.nextBackoff(backoff, MAX_BACKOFF_MILLIS);
+            }
+            log.acknowledge();
+        }
+    }
+
+    /**
+     * The queue depth is the number of reports on disk that haven't been delivered.
+     * The capacity is bounded by disk space rather than a number of reports, so it is reported as 0.
+     */
+    private class Metrics implements ErrorQueueMetrics
+    {
+        @Override
+        public int getQueueDepth()
+        {
+            return log.getPendingCount();
+        }
+
+        @Override
+        public int getQueueCapacity()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getEnqueuedCount()
+        {
+            return counters.getEnqueuedCount();
+        }
+
+        @Override
+        public long getDroppedCount()
+        {
+            return counters.getDroppedCount();
+        }
+
+        @Override
+        public long getFallbackCount()
+        {
+            return counters.getFallbackCount();
+        }
+
+        @Override
+        public long getDeliveredCount()
+        {
+            return counters.getDeliveredCount();
+        }
+
+        @Override
+        public long getFailedCount()
+        {
+            return counters.getFailedCount();
+        }
+
+        @Override
+        public long getRateLimitedCount()
+        {
+            return counters.getRateLimitedCount();
+        }
+    }
+}
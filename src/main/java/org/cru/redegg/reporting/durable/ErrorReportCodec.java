@@ -0,0 +1,486 @@
+package org.cru.redegg.reporting.durable;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import org.cru.redegg.recording.api.NotificationLevel;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.ReplayedThrowable;
+import org.cru.redegg.reporting.WebContext;
+import org.cru.redegg.reporting.api.ErrorLink;
+import org.cru.redegg.reporting.rollbar.RollbarErrorLink;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Converts {@link ErrorReport}s to and from a compact binary form, so they can be stored on disk.
+ *
+ * Throwables are not java-serialized, since app exceptions often aren't serializable
+ * (and their classes may not be loadable after a redeploy).
+ * Instead, their class names, messages, stack traces and causes are written,
+ * and they are read back as {@link ReplayedThrowable}s.
+ *
+ * @author Matt Drees
+ */
+public class ErrorReportCodec
+{
+    private static final int VERSION = 1;
+
+    /** guards against causal loops */
+    private static final int MAX_CAUSAL_CHAIN = 64;
+
+    private static final byte NO_LINK = 0;
+    private static final byte ROLLBAR_LINK = 1;
+    private static final byte URI_LINK = 2;
+
+    public byte[] encode(ErrorReport report)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+            out.writeByte(VERSION);
+            writeMultimap(out, report.getContext());
+            writeMap(out, report.getUser());
+            writeThrown(out, report.getThrown());
+            writeLogRecords(out, report.getLogRecords());
+            writeString(out, report.getLocalHostName());
+            writeString(out, report.getLocalHostAddress());
+            writeMap(out, report.getEnvironmentVariables());
+            writeMap(out, report.getSystemProperties());
+            writeWebContext(out, report.getWebContext());
+            out.writeBoolean(report.isMustNotify());
+            writeEnum(out, report.getNotificationLevel());
+            writeErrorLink(out, report.getErrorLink());
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError("ByteArrayOutputStream doesn't throw IOExceptions", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public ErrorReport decode(byte[] encoded) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        int version = in.readByte();
+        if (version != VERSION)
+            throw new IOException("unsupported report encoding version: " + version);
+
+        ErrorReport report = new ErrorReport();
+        report.setContext(readMutableMultimap(in));
+        report.setUser(nullToEmpty(readMap(in)));
+        report.setThrown(readThrown(in));
+        report.setLogRecords(readLogRecords(in));
+        report.setLocalHostName(readString(in));
+        report.setLocalHostAddress(readString(in));
+        report.setEnvironmentVariables(readMap(in));
+        report.setSystemProperties(readMap(in));
+        report.setWebContext(readWebContext(in));
+        report.setMustNotify(in.readBoolean());
+        report.setNotificationLevel(readEnum(in, NotificationLevel.class));
+        report.setErrorLink(readErrorLink(in));
+        return report;
+    }
+
+    private void writeThrown(DataOutputStream out, List<Throwable> thrown) throws IOException
+    {
+        out.writeInt(thrown.size());
+        for (Throwable throwable : thrown)
+        {
+            List<Throwable> chain = new ArrayList<>();
+            for (Throwable link = throwable; link != null && chain.size() < MAX_CAUSAL_CHAIN; link = link.getCause())
+            {
+                chain.add(link);
+                if (link.getCause() == link)
+                    break;
+            }
+            out.writeInt(chain.size());
+            for (Throwable link : chain)
+            {
+                writeString(out, ReplayedThrowable.classNameOf(link));
+                writeString(out, link.getMessage());
+                writeStackTrace(out, link.getStackTrace());
+            }
+        }
+    }
+
+    private List<Throwable> readThrown(DataInputStream in) throws IOException
+    {
+        int count = in.readInt();
+        if (count == 0)
+            return Collections.emptyList();
+        List<Throwable> thrown = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            int chainLength = in.readInt();
+            String[] classNames = new String[chainLength];
+            String[] messages = new String[chainLength];
+            StackTraceElement[][] stackTraces = new StackTraceElement[chainLength][];
+            for (int j = 0; j < chainLength; j++)
+            {
+                classNames[j] = readString(in);
+                messages[j] = readString(in);
+                stackTraces[j] = readStackTrace(in);
+            }
+
+            // causes have to be given to the constructor, so build the chain from the inside out
+            ReplayedThrowable outermost = null;
+            for (int j = chainLength - 1; j >= 0; j--)
+            {
+                outermost = new ReplayedThrowable(classNames[j], messages[j], stackTraces[j], outermost);
+            }
+            thrown.add(outermost);
+        }
+        return thrown;
+    }
+
+    private void writeStackTrace(DataOutputStream out, StackTraceElement[] stackTrace) throws IOException
+    {
+        out.writeInt(stackTrace.length);
+        for (StackTraceElement element : stackTrace)
+        {
+            writeString(out, element.getClassName());
+            writeString(out, element.getMethodName());
+            writeString(out, element.getFileName());
+            out.writeInt(element.getLineNumber());
+        }
+    }
+
+    private StackTraceElement[] readStackTrace(DataInputStream in) throws IOException
+    {
+        StackTraceElement[] stackTrace = new StackTraceElement[in.readInt()];
+        for (int i = 0; i < stackTrace.length; i++)
+        {
+            stackTrace[i] = new StackTraceElement(readString(in), readString(in), readString(in), in.readInt());
+        }
+        return stackTrace;
+    }
+
+    private void writeLogRecords(DataOutputStream out, List<ErrorReport.LogRecord> logRecords) throws IOException
+    {
+        out.writeInt(logRecords.size());
+        for (ErrorReport.LogRecord logRecord : logRecords)
+        {
+            writeEnum(out, logRecord.level);
+            writeString(out, logRecord.header);
+            writeString(out, logRecord.message);
+        }
+    }
+
+    private List<ErrorReport.LogRecord> readLogRecords(DataInputStream in) throws IOException
+    {
+        int count = in.readInt();
+        if (count == 0)
+            return Collections.emptyList();
+        List<ErrorReport.LogRecord> logRecords = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            logRecords.add(new ErrorReport.LogRecord(
+                readEnum(in, NotificationLevel.class),
+                readString(in),
+                readString(in)));
+        }
+        return logRecords;
+    }
+
+    private void writeWebContext(DataOutputStream out, WebContext webContext) throws IOException
+    {
+        out.writeBoolean(webContext != null);
+        if (webContext == null)
+            return;
+        writeString(out, webContext.getUrl() == null ? null : webContext.getUrl().toString());
+        writeString(out, webContext.getQueryString());
+        writeInstant(out, webContext.getStart());
+        writeMultimap(out, webContext.getHeaders());
+        writeString(out, webContext.getMethod());
+        writeMultimap(out, webContext.getQueryParameters());
+        writeMultimap(out, webContext.getPostParameters());
+        writeString(out, webContext.getEntityRepresentation());
+        writeInstant(out, webContext.getFinish());
+        out.writeBoolean(webContext.getResponseStatus() != null);
+        if (webContext.getResponseStatus() != null)
+            out.writeInt(webContext.getResponseStatus());
+        writeMethod(out, webContext.getComponent());
+        writeString(out, webContext.getRemoteIpAddress());
+    }
+
+    private WebContext readWebContext(DataInputStream in) throws IOException
+    {
+        if (!in.readBoolean())
+            return null;
+        WebContext webContext = new WebContext();
+        String url = readString(in);
+        webContext.setUrl(url == null ? null : URI.create(url));
+        webContext.setQueryString(readString(in));
+        webContext.setStart(readInstant(in));
+        webContext.setHeaders(readMultimap(in));
+        webContext.setMethod(readString(in));
+        webContext.setQueryParameters(readMultimap(in));
+        webContext.setPostParameters(readMultimap(in));
+        webContext.setEntityRepresentation(readString(in));
+        webContext.setFinish(readInstant(in));
+        if (in.readBoolean())
+            webContext.setResponseStatus(in.readInt());
+        webContext.setComponent(readMethod(in));
+        webContext.setRemoteIpAddress(readString(in));
+        return webContext;
+    }
+
+    private void writeMethod(DataOutputStream out, Method method) throws IOException
+    {
+        out.writeBoolean(method != null);
+        if (method == null)
+            return;
+        writeString(out, method.getDeclaringClass().getName());
+        writeString(out, method.getName());
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        out.writeInt(parameterTypes.length);
+        for (Class<?> parameterType : parameterTypes)
+        {
+            writeString(out, parameterType.getName());
+        }
+    }
+
+    /**
+     * Returns null if the method's class is no longer available,
+     * which is likely if the report was written by a previous deployment.
+     */
+    private Method readMethod(DataInputStream in) throws IOException
+    {
+        if (!in.readBoolean())
+            return null;
+        String className = readString(in);
+        String methodName = readString(in);
+        String[] parameterTypeNames = new String[in.readInt()];
+        for (int i = 0; i < parameterTypeNames.length; i++)
+        {
+            parameterTypeNames[i] = readString(in);
+        }
+
+        try
+        {
+            Class<?> declaringClass = loadClass(className);
+            Class<?>[] parameterTypes = new Class<?>[parameterTypeNames.length];
+            for (int i = 0; i < parameterTypes.length; i++)
+            {
+                parameterTypes[i] = loadClass(parameterTypeNames[i]);
+            }
+            return declaringClass.getDeclaredMethod(methodName, parameterTypes);
+        }
+        catch (ClassNotFoundException | NoSuchMethodException | LinkageError e)
+        {
+            return null;
+        }
+    }
+
+    private Class<?> loadClass(String name) throws ClassNotFoundException
+    {
+        switch (name)
+        {
+            case "boolean": return boolean.class;
+            case "byte": return byte.class;
+            case "char": return char.class;
+            case "short": return short.class;
+            case "int": return int.class;
+            case "long": return long.class;
+            case "float": return float.class;
+            case "double": return double.class;
+            default:
+                ClassLoader loader = Thread.currentThread().getContextClassLoader();
+                if (loader == null)
+                    loader = ErrorReportCodec.class.getClassLoader();
+                return Class.forName(name, false, loader);
+        }
+    }
+
+    private void writeErrorLink(DataOutputStream out, ErrorLink errorLink) throws IOException
+    {
+        if (errorLink == null)
+        {
+            out.writeByte(NO_LINK);
+        }
+        else if (errorLink instanceof RollbarErrorLink)
+        {
+            out.writeByte(ROLLBAR_LINK);
+            writeString(out, ((RollbarErrorLink) errorLink).getId().toString());
+        }
+        else
+        {
+            out.writeByte(URI_LINK);
+            writeString(out, errorLink.getTarget().toString());
+        }
+    }
+
+    private ErrorLink readErrorLink(DataInputStream in) throws IOException
+    {
+        byte type = in.readByte();
+        switch (type)
+        {
+            case NO_LINK:
+                return null;
+            case ROLLBAR_LINK:
+                return new RollbarErrorLink(UUID.fromString(readString(in)));
+            case URI_LINK:
+                return new StoredErrorLink(URI.create(readString(in)));
+            default:
+                throw new IOException("unknown error link type: " + type);
+        }
+    }
+
+    private void writeInstant(DataOutputStream out, Instant instant) throws IOException
+    {
+        out.writeBoolean(instant != null);
+        if (instant != null)
+        {
+            out.writeLong(instant.getEpochSecond());
+            out.writeInt(instant.getNano());
+        }
+    }
+
+    private Instant readInstant(DataInputStream in) throws IOException
+    {
+        if (!in.readBoolean())
+            return null;
+        return Instant.ofEpochSecond(in.readLong(), in.readInt());
+    }
+
+    private void writeEnum(DataOutputStream out, Enum<?> value) throws IOException
+    {
+        writeString(out, value == null ? null : value.name());
+    }
+
+    private <E extends Enum<E>> E readEnum(DataInputStream in, Class<E> enumClass) throws IOException
+    {
+        String name = readString(in);
+        return name == null ? null : Enum.valueOf(enumClass, name);
+    }
+
+    private void writeMultimap(DataOutputStream out, Multimap<String, String> multimap) throws IOException
+    {
+        if (multimap == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(multimap.size());
+        for (Map.Entry<String, String> entry : multimap.entries())
+        {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private Multimap<String, String> readMultimap(DataInputStream in) throws IOException
+    {
+        int size = in.readInt();
+        if (size < 0)
+            return null;
+        ListMultimap<String, String> multimap = ArrayListMultimap.create(Math.max(size, 1), 1);
+        for (int i = 0; i < size; i++)
+        {
+            multimap.put(readString(in), readString(in));
+        }
+        // WebContext's multimaps must be immutable; see WebContext.clone()
+        return Multimaps.unmodifiableListMultimap(multimap);
+    }
+
+    /** the report context is enriched before delivery, so it must be mutable */
+    private Multimap<String, String> readMutableMultimap(DataInputStream in) throws IOException
+    {
+        int size = in.readInt();
+        Multimap<String, String> multimap = HashMultimap.create(Math.max(size, 1), 1);
+        for (int i = 0; i < size; i++)
+        {
+            multimap.put(readString(in), readString(in));
+        }
+        return multimap;
+    }
+
+    private void writeMap(DataOutputStream out, Map<String, String> map) throws IOException
+    {
+        if (map == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet())
+        {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private Map<String, String> readMap(DataInputStream in) throws IOException
+    {
+        int size = in.readInt();
+        if (size < 0)
+            return null;
+        Map<String, String> map = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++)
+        {
+            map.put(readString(in), readString(in));
+        }
+        return map;
+    }
+
+    private Map<String, String> nullToEmpty(Map<String, String> map)
+    {
+        return map == null ? Collections.<String, String>emptyMap() : map;
+    }
+
+    /** unlike {@link DataOutputStream#writeUTF}, this handles nulls and strings longer than 64k */
+    private void writeString(DataOutputStream out, String string) throws IOException
+    {
+        if (string == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class StoredErrorLink implements ErrorLink
+    {
+        private final URI target;
+
+        StoredErrorLink(URI target)
+        {
+            this.target = target;
+        }
+
+        @Override
+        public URI getTarget()
+        {
+            return target;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package org.cru.redegg.reporting.durable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead log of opaque records, stored in fixed-size memory-mapped segment files.
+ *
+ * Records are appended to the newest segment, and read (in order) from a single cursor.
+ * The cursor position is saved in a small checkpoint file as each record is acknowledged,
+ * and segments behind the cursor are deleted.
+ * When the log is reopened, reading resumes from the checkpoint,
+ * so any records that were not acknowledged are read again.
+ *
+ * Each record is stored as its length, a CRC32 of its bytes, and then the bytes.
+ * A record that doesn't fit in the remainder of a segment starts a new segment.
+ * A zero length (or a bad checksum) marks the end of a segment's data.
+ *
+ * All methods are synchronized; records are small, and copying them in and out of the
+ * mapped buffers is quick compared to encoding or delivering them.
+ *
+ * @author Matt Drees
+ */
+class SegmentedLog implements Closeable
+{
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String LOCK_FILE = "lock";
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int CHECKPOINT_SIZE = 16;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final MappedByteBuffer checkpoint;
+
+    /** the mapped segments, by id; every segment file in the directory is mapped */
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+
+    private long writeSegment;
+    private int writeOffset;
+
+    private long readSegment;
+    private int readOffset;
+
+    /** the size of the record at the read position, once it has been peeked */
+    private int peekedLength = -1;
+
+    private int pendingCount;
+
+    private boolean closed;
+
+    SegmentedLog(Path directory, int segmentSize, int maxSegments) throws IOException
+    {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(
+            directory.resolve(LOCK_FILE),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE);
+        lock = tryLock(lockChannel);
+        if (lock == null)
+        {
+            lockChannel.close();
+            throw new IllegalStateException(directory + " is in use by another error queue");
+        }
+
+        checkpoint = map(directory.resolve(CHECKPOINT_FILE), CHECKPOINT_SIZE);
+        openSegments();
+        recover();
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException
+    {
+        try
+        {
+            return channel.tryLock();
+        }
+        catch (OverlappingFileLockException e)
+        {
+            // locked by this jvm
+            return null;
+        }
+    }
+
+    private void openSegments() throws IOException
+    {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX))
+        {
+            for (Path file : files)
+            {
+                String name = file.getFileName().toString();
+                long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(id, map(file, segmentSize));
+            }
+        }
+    }
+
+    private void recover() throws IOException
+    {
+        readCheckpoint();
+
+        // segments before the checkpoint were fully acknowledged, but not yet deleted
+        while (!segments.isEmpty() && segments.firstKey() < readSegment)
+        {
+            deleteSegment(segments.firstKey());
+        }
+
+        if (segments.isEmpty())
+        {
+            readOffset = 0;
+            startSegment(readSegment);
+        }
+        else if (!segments.containsKey(readSegment))
+        {
+            // the checkpoint was lost or torn; start from the beginning of what's left
+            readSegment = segments.firstKey();
+            readOffset = 0;
+        }
+
+        writeSegment = segments.lastKey();
+        writeOffset = findEndOfData(segments.get(writeSegment));
+        clearFrom(segments.get(writeSegment), writeOffset);
+
+        pendingCount = countPendingRecords();
+    }
+
+    private void readCheckpoint()
+    {
+        checkpoint.clear();
+        long segment = checkpoint.getLong(0);
+        int offset = checkpoint.getInt(8);
+        int crc = checkpoint.getInt(12);
+        if (crc == checkpointCrc(segment, offset) && offset >= 0 && offset <= segmentSize)
+        {
+            readSegment = segment;
+            readOffset = offset;
+        }
+        else
+        {
+            readSegment = segments.isEmpty() ? 0 : segments.firstKey();
+            readOffset = 0;
+        }
+    }
+
+    private void writeCheckpoint()
+    {
+        checkpoint.putLong(0, readSegment);
+        checkpoint.putInt(8, readOffset);
+        checkpoint.putInt(12, checkpointCrc(readSegment, readOffset));
+    }
+
+    private static int checkpointCrc(long segment, int offset)
+    {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < 8; i++)
+        {
+            crc.update((int) (segment >>> (i * 8)));
+        }
+        for (int i = 0; i < 4; i++)
+        {
+            crc.update(offset >>> (i * 8));
+        }
+        return (int) crc.getValue();
+    }
+
+    /** Scans the segment's records, and returns the offset just past the last valid one. */
+    private int findEndOfData(MappedByteBuffer segment)
+    {
+        int offset = 0;
+        int length;
+        while ((length = validRecordLength(segment, offset)) > 0)
+        {
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the length of the record at the given offset, or 0 if there isn't a complete, valid record there.
+     */
+    private int validRecordLength(MappedByteBuffer segment, int offset)
+    {
+        if (offset > segmentSize - RECORD_HEADER_SIZE)
+            return 0;
+        int length = segment.getInt(offset);
+        if (length <= 0 || length > segmentSize - RECORD_HEADER_SIZE - offset)
+            return 0;
+        int expectedCrc = segment.getInt(offset + 4);
+        return crc(segment, offset + RECORD_HEADER_SIZE, length) == expectedCrc ? length : 0;
+    }
+
+    private static int crc(MappedByteBuffer segment, int start, int length)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(slice(segment, start, length));
+        return (int) crc.getValue();
+    }
+
+    /** a view of part of the segment, so bulk operations don't disturb the segment's own position */
+    private static ByteBuffer slice(MappedByteBuffer segment, int start, int length)
+    {
+        ByteBuffer slice = segment.duplicate();
+        slice.limit(start + length);
+        slice.position(start);
+        return slice;
+    }
+
+    /** Zeros out anything after the last valid record, such as a record that was only partially written */
+    private void clearFrom(MappedByteBuffer segment, int offset)
+    {
+        for (int i = offset; i < segmentSize; i++)
+        {
+            if (segment.get(i) != 0)
+                segment.put(i, (byte) 0);
+        }
+    }
+
+    private int countPendingRecords()
+    {
+        int count = 0;
+        for (Map.Entry<Long, MappedByteBuffer> entry : segments.tailMap(readSegment).entrySet())
+        {
+            int offset = entry.getKey() == readSegment ? readOffset : 0;
+            int length;
+            while ((length = validRecordLength(entry.getValue(), offset)) > 0)
+            {
+                count++;
+                offset += RECORD_HEADER_SIZE + length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @return false if the log is full (every segment is in use)
+     * @throws IllegalArgumentException if the record could never fit in a segment
+     */
+    synchronized boolean append(byte[] record) throws IOException
+    {
+        checkOpen();
+        if (record.length > segmentSize - RECORD_HEADER_SIZE)
+            throw new IllegalArgumentException(
+                "record of " + record.length + " bytes is larger than the segment size");
+
+        if (writeOffset + RECORD_HEADER_SIZE + record.length > segmentSize)
+        {
+            if (segments.size() >= maxSegments)
+                return false;
+            segments.get(writeSegment).force();
+            startSegment(writeSegment + 1);
+        }
+
+        MappedByteBuffer segment = segments.get(writeSegment);
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        slice(segment, writeOffset + RECORD_HEADER_SIZE, record.length).put(record);
+        segment.putInt(writeOffset + 4, (int) crc.getValue());
+        // the length goes last, so a torn write is never mistaken for a complete record
+        segment.putInt(writeOffset, record.length);
+        writeOffset += RECORD_HEADER_SIZE + record.length;
+        pendingCount++;
+        notifyAll();
+        return true;
+    }
+
+    private void startSegment(long id) throws IOException
+    {
+        segments.put(id, map(segmentFile(id), segmentSize));
+        writeSegment = id;
+        writeOffset = 0;
+    }
+
+    /**
+     * Returns a copy of the record at the read position, without moving past it,
+     * or null if there is no unread record.
+     */
+    synchronized byte[] peek()
+    {
+        checkOpen();
+        MappedByteBuffer segment = segments.get(readSegment);
+        int length = validRecordLength(segment, readOffset);
+        if (length == 0 && readSegment < writeSegment)
+        {
+            readSegment = segments.higherKey(readSegment);
+            readOffset = 0;
+            segment = segments.get(readSegment);
+            length = validRecordLength(segment, readOffset);
+        }
+        if (length == 0)
+            return null;
+
+        byte[] record = new byte[length];
+        slice(segment, readOffset + RECORD_HEADER_SIZE, length).get(record);
+        peekedLength = length;
+        return record;
+    }
+
+    /**
+     * Moves past the record returned by the last {@link #peek()},
+     * saves the new position, and deletes segments that are no longer needed.
+     */
+    synchronized void acknowledge() throws IOException
+    {
+        checkOpen();
+        if (peekedLength < 0)
+            throw new IllegalStateException("nothing to acknowledge");
+        readOffset += RECORD_HEADER_SIZE + peekedLength;
+        peekedLength = -1;
+        pendingCount--;
+        writeCheckpoint();
+
+        while (segments.firstKey() < readSegment)
+        {
+            deleteSegment(segments.firstKey());
+        }
+        notifyAll();
+    }
+
+    /**
+     * Waits until a record is appended, or the timeout elapses.
+     */
+    synchronized void awaitRecord(long timeoutMillis) throws InterruptedException
+    {
+        if (pendingCount == 0 && !closed)
+            wait(timeoutMillis);
+    }
+
+    /**
+     * Waits until a record is acknowledged (which may free a segment), or the timeout elapses.
+     */
+    synchronized void awaitSpace(long timeoutMillis) throws InterruptedException
+    {
+        if (!closed)
+            wait(timeoutMillis);
+    }
+
+    synchronized int getPendingCount()
+    {
+        return pendingCount;
+    }
+
+    private void deleteSegment(long id) throws IOException
+    {
+        segments.remove(id);
+        // the mapping itself is released when the buffer is garbage collected
+        Files.deleteIfExists(segmentFile(id));
+    }
+
+    private Path segmentFile(long id)
+    {
+        return directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+    }
+
+    private static MappedByteBuffer map(Path file, int size) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE))
+        {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private void checkOpen()
+    {
+        if (closed)
+            throw new IllegalStateException("log is closed");
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (closed)
+            return;
+        closed = true;
+        notifyAll();
+        for (MappedByteBuffer segment : segments.values())
+        {
+            segment.force();
+        }
+        checkpoint.force();
+        try
+        {
+            lock.release();
+        }
+        finally
+        {
+            lockChannel.close();
+        }
+    }
+}
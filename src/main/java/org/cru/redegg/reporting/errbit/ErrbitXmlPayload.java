@@ -4,6 +4,7 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.ReplayedThrowable;
 import org.cru.redegg.reporting.WebContext;
 import org.cru.redegg.reporting.common.Payload;
 import org.cru.redegg.reporting.common.Reporters;
@@ -114,7 +115,7 @@ public class ErrbitXmlPayload implements Payload
     {
         if (!report.getThrown().isEmpty())
         {
-            writeElementWithContent("class", report.getRootException().get().getClass().getName());
+            writeElementWithContent("class", ReplayedThrowable.classNameOf(report.getRootException().get()));
         }
     }
 
@@ -4,6 +4,8 @@ import org.cru.redegg.reporting.api.ErrorLink;
 import org.cru.redegg.reporting.ErrorReport;
 import org.cru.redegg.reporting.api.ErrorReporter;
 import org.cru.redegg.reporting.common.HttpPayloadSender;
+import org.cru.redegg.reporting.common.HttpTransport;
+import org.cru.redegg.reporting.common.HttpTransports;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,9 +29,17 @@ public class NativeErrbitReporter implements ErrorReporter
 
     ErrbitConfig config;
 
+    HttpPayloadSender sender;
+
     public NativeErrbitReporter(ErrbitConfig config)
+    {
+        this(config, HttpTransports.getDefault());
+    }
+
+    public NativeErrbitReporter(ErrbitConfig config, HttpTransport transport)
     {
         this.config = config;
+        this.sender = new HttpPayloadSender(config.getEndpoint(), "application/xml", transport);
     }
 
     public void send(ErrorReport report)
@@ -62,7 +72,7 @@ public class NativeErrbitReporter implements ErrorReporter
         ErrbitXmlPayload payload = new ErrbitXmlPayload(report, config);
         try
         {
-            new HttpPayloadSender(config.getEndpoint(), "application/xml").send(payload);
+            sender.send(payload);
         }
         catch (IOException e)
         {
@@ -0,0 +1,162 @@
+package org.cru.redegg.reporting.ratelimit;
+
+import org.cru.redegg.qualifier.Fallback;
+
+import java.time.Duration;
+
+/**
+ * Configures how many reports are accepted for delivery, per error and overall.
+ *
+ * Each error (as identified by its {@link org.cru.redegg.reporting.dedup.ErrorFingerprint fingerprint})
+ * has a token bucket that refills at the per-error rate, up to the per-error burst;
+ * all reports also share a global bucket.
+ * Once an error's bucket is empty, its reports are sampled at the configured sample rate.
+ *
+ * @author Matt Drees
+ */
+@Fallback
+public class RateLimitConfig
+{
+    private static final int DEFAULT_PER_ERROR_RATE = 10;
+    private static final int DEFAULT_PER_ERROR_BURST = 10;
+    private static final int DEFAULT_GLOBAL_RATE = 300;
+    private static final int DEFAULT_GLOBAL_BURST = 100;
+    private static final double DEFAULT_SAMPLE_RATE = 0.01;
+    private static final int DEFAULT_MAX_TRACKED_ERRORS = 1000;
+    private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(10);
+
+    private boolean enabled = false;
+
+    private int perErrorRate = DEFAULT_PER_ERROR_RATE;
+
+    private int perErrorBurst = DEFAULT_PER_ERROR_BURST;
+
+    private int globalRate = DEFAULT_GLOBAL_RATE;
+
+    private int globalBurst = DEFAULT_GLOBAL_BURST;
+
+    private double sampleRate = DEFAULT_SAMPLE_RATE;
+
+    private int maxTrackedErrors = DEFAULT_MAX_TRACKED_ERRORS;
+
+    private Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Turns rate limiting on. It is off by default, so that every report is accepted unless an app opts in.
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public int getPerErrorRate()
+    {
+        return perErrorRate;
+    }
+
+    /**
+     * Sets how many reports per minute are accepted for any one error. Defaults to 10.
+     */
+    public void setPerErrorRate(int perErrorRate)
+    {
+        this.perErrorRate = perErrorRate;
+    }
+
+    public int getPerErrorBurst()
+    {
+        return perErrorBurst;
+    }
+
+    /**
+     * Sets how many reports of one error can be accepted at once, after the error has been quiet. Defaults to 10.
+     */
+    public void setPerErrorBurst(int perErrorBurst)
+    {
+        this.perErrorBurst = perErrorBurst;
+    }
+
+    public int getGlobalRate()
+    {
+        return globalRate;
+    }
+
+    /**
+     * Sets how many reports per minute are accepted in total. Defaults to 300.
+     */
+    public void setGlobalRate(int globalRate)
+    {
+        this.globalRate = globalRate;
+    }
+
+    public int getGlobalBurst()
+    {
+        return globalBurst;
+    }
+
+    /**
+     * Sets how many reports can be accepted at once, after a quiet period. Defaults to 100.
+     */
+    public void setGlobalBurst(int globalBurst)
+    {
+        this.globalBurst = globalBurst;
+    }
+
+    public double getSampleRate()
+    {
+        return sampleRate;
+    }
+
+    /**
+     * Sets the chance that a report is accepted anyway when its error's bucket is empty.
+     * The chance falls as more reports of the error are suppressed. Defaults to 1%.
+     */
+    public void setSampleRate(double sampleRate)
+    {
+        this.sampleRate = sampleRate;
+    }
+
+    public int getMaxTrackedErrors()
+    {
+        return maxTrackedErrors;
+    }
+
+    /**
+     * Sets how many errors' buckets are kept; the least recently used are discarded beyond this.
+     */
+    public void setMaxTrackedErrors(int maxTrackedErrors)
+    {
+        this.maxTrackedErrors = maxTrackedErrors;
+    }
+
+    public Duration getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets how long an error's bucket is kept after its last report.
+     */
+    public void setIdleTimeout(Duration idleTimeout)
+    {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public void validate()
+    {
+        if (perErrorRate < 1 || globalRate < 1)
+            throw new IllegalArgumentException("rates must be at least 1");
+        if (perErrorBurst < 1 || globalBurst < 1)
+            throw new IllegalArgumentException("bursts must be at least 1");
+        if (sampleRate < 0 || sampleRate > 1)
+            throw new IllegalArgumentException("sample rate must be between 0 and 1");
+        if (maxTrackedErrors < 1)
+            throw new IllegalArgumentException("max tracked errors must be at least 1");
+        if (idleTimeout == null || idleTimeout.isNegative() || idleTimeout.isZero())
+            throw new IllegalArgumentException("idle timeout must be positive");
+    }
+}
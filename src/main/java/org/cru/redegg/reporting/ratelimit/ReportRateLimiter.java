@@ -0,0 +1,181 @@
+package org.cru.redegg.reporting.ratelimit;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.dedup.DeduplicationConfig;
+import org.cru.redegg.reporting.dedup.ErrorFingerprint;
+import org.cru.redegg.reporting.errbit.ErrbitConfig;
+
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides, on the enqueuing thread, whether a report is accepted for delivery,
+ * so that a single noisy error can't use up the delivery capacity.
+ *
+ * A report must take a token from its error's bucket (or be sampled, if that bucket is empty),
+ * and then from the global bucket.
+ * The number of an error's reports that were turned away is added to the next one that is accepted,
+ * under the {@link #SUPPRESSED} context key.
+ *
+ * Buckets are kept in a size-bounded cache, and discarded once their error has been idle for a while.
+ *
+ * @author Matt Drees
+ */
+public class ReportRateLimiter
+{
+    public static final String SUPPRESSED = "suppressed_reports";
+
+    public static final ReportRateLimiter UNLIMITED = new ReportRateLimiter();
+
+    private final boolean enabled;
+    private final ErrorFingerprint fingerprint;
+    private final Ticker ticker;
+    private final int perErrorBurst;
+    private final double perErrorTokensPerNano;
+    private final double sampleRate;
+    private final TokenBucket global;
+    private final Cache<Long, ErrorState> errors;
+
+    @Inject
+    public ReportRateLimiter(
+        @Selected RateLimitConfig config,
+        @Selected DeduplicationConfig deduplicationConfig,
+        Instance<ErrbitConfig> errbitConfig)
+    {
+        this(
+            config,
+            ErrorFingerprint.create(deduplicationConfig, errbitConfig.isUnsatisfied() ? null : errbitConfig.get()));
+    }
+
+    public ReportRateLimiter(RateLimitConfig config, ErrorFingerprint fingerprint)
+    {
+        this(config, fingerprint, Ticker.systemTicker());
+    }
+
+    ReportRateLimiter(RateLimitConfig config, ErrorFingerprint fingerprint, Ticker ticker)
+    {
+        config.validate();
+        this.enabled = config.isEnabled();
+        this.fingerprint = fingerprint;
+        this.ticker = ticker;
+        this.perErrorBurst = config.getPerErrorBurst();
+        this.perErrorTokensPerNano = perNano(config.getPerErrorRate());
+        this.sampleRate = config.getSampleRate();
+        this.global = new TokenBucket(config.getGlobalBurst(), perNano(config.getGlobalRate()), ticker.read());
+        this.errors = CacheBuilder.newBuilder()
+            .maximumSize(config.getMaxTrackedErrors())
+            .expireAfterAccess(config.getIdleTimeout().toNanos(), TimeUnit.NANOSECONDS)
+            .ticker(ticker)
+            .build();
+    }
+
+    private ReportRateLimiter()
+    {
+        this.enabled = false;
+        this.fingerprint = null;
+        this.ticker = null;
+        this.perErrorBurst = 0;
+        this.perErrorTokensPerNano = 0;
+        this.sampleRate = 0;
+        this.global = null;
+        this.errors = null;
+    }
+
+    private static double perNano(int perMinute)
+    {
+        return perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+    }
+
+    /**
+     * @return true if the report should be delivered, or false if it should be discarded
+     */
+    public boolean tryAcquire(ErrorReport report)
+    {
+        if (!enabled)
+            return true;
+
+        long now = ticker.read();
+        ErrorState state = errors.asMap().computeIfAbsent(
+            fingerprint.compute(report),
+            key -> new ErrorState(now));
+
+        int suppressed;
+        synchronized (state)
+        {
+            boolean admitted = state.bucket.tryTake(now) || sample(state.suppressed);
+            if (!admitted || !global.tryTake(now))
+            {
+                state.suppressed++;
+                return false;
+            }
+            suppressed = state.suppressed;
+            state.suppressed = 0;
+        }
+
+        if (suppressed > 0)
+        {
+            Multimap<String, String> context = HashMultimap.create(report.getContext());
+            context.put(SUPPRESSED, String.valueOf(suppressed));
+            report.setContext(context);
+        }
+        return true;
+    }
+
+    /**
+     * The sample rate is scaled down by the number of bucketfuls suppressed so far,
+     * so a sustained storm yields fewer and fewer samples.
+     */
+    private boolean sample(int suppressed)
+    {
+        double rate = sampleRate * perErrorBurst / (perErrorBurst + suppressed);
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private class ErrorState
+    {
+        final TokenBucket bucket;
+        int suppressed;
+
+        ErrorState(long now)
+        {
+            bucket = new TokenBucket(perErrorBurst, perErrorTokensPerNano, now);
+        }
+    }
+
+    private static class TokenBucket
+    {
+        private final double capacity;
+        private final double tokensPerNano;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(int capacity, double tokensPerNano, long now)
+        {
+            this.capacity = capacity;
+            this.tokensPerNano = tokensPerNano;
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        synchronized boolean tryTake(long now)
+        {
+            if (now > lastRefill)
+            {
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+                lastRefill = now;
+            }
+            if (tokens < 1)
+                return false;
+            tokens--;
+            return true;
+        }
+    }
+}
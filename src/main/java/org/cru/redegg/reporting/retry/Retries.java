@@ -0,0 +1,55 @@
+package org.cru.redegg.reporting.retry;
+
+import org.cru.redegg.reporting.common.HttpStatusException;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Helpers shared by the queues that retry failed deliveries.
+ *
+ * @author Matt Drees
+ */
+public final class Retries
+{
+    private Retries()
+    {
+    }
+
+    /**
+     * Decides whether a failed send is worth trying again.
+     *
+     * A 4xx response (other than 408 Request Timeout and 429 Too Many Requests) means the report itself was
+     * rejected, and sending it again won't help.
+     * Anything else (5xx responses, timeouts, connection failures) is assumed to be transient.
+     */
+    public static boolean isRetryable(Throwable failure)
+    {
+        for (Throwable t = failure; t != null; t = t.getCause())
+        {
+            if (t instanceof HttpStatusException)
+            {
+                int status = ((HttpStatusException) t).getStatusCode();
+                return status < 400 || status >= 500 || status == 408 || status == 429;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the next backoff: double the current one, up to the max.
+     */
+    public static long nextBackoff(long currentMillis, long maxMillis)
+    {
+        return Math.min(currentMillis * 2, maxMillis);
+    }
+
+    /**
+     * Returns a delay between half the backoff and the full backoff,
+     * so that reports that failed together don't all retry together.
+     */
+    public static long withJitter(long backoffMillis)
+    {
+        long half = backoffMillis / 2;
+        return half + ThreadLocalRandom.current().nextLong(backoffMillis - half + 1);
+    }
+}
@@ -0,0 +1,220 @@
+package org.cru.redegg.reporting.retry;
+
+import org.cru.redegg.reporting.DeliveryCounters;
+import org.cru.redegg.reporting.ErrorQueueConfig;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.api.ErrorReporter;
+import org.cru.redegg.reporting.breaker.CircuitOpenException;
+import org.cru.redegg.reporting.dedup.ReportSuppressedException;
+import org.cru.redegg.util.ErrorLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Sends failed reports again after a delay, with exponential backoff and jitter.
+ *
+ * Pending retries wait in a {@link DelayQueue}, ordered by when they are due,
+ * and a single thread (started when the first retry is scheduled) sends them.
+ * A report is given up on, and handed to the fallback consumer,
+ * once its failure isn't {@link Retries#isRetryable retryable},
+ * or it has used up its attempts or its maximum age, or too many other reports are already waiting.
+ *
+ * @author Matt Drees
+ */
+public class RetryScheduler
+{
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 20;
+
+    private final ErrorReporter primaryErrorReporter;
+    private final Consumer<ErrorReport> fallback;
+    private final DeliveryCounters counters;
+    private final ErrorLog errorLog;
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long maxAgeNanos;
+    private final int maxPending;
+
+    private final DelayQueue<PendingRetry> pending = new DelayQueue<>();
+
+    private Thread retrier;
+    private boolean shutdown;
+
+    public RetryScheduler(
+        ErrorQueueConfig config,
+        ErrorReporter primaryErrorReporter,
+        Consumer<ErrorReport> fallback,
+        DeliveryCounters counters,
+        ErrorLog errorLog)
+    {
+        this.primaryErrorReporter = primaryErrorReporter;
+        this.fallback = fallback;
+        this.counters = counters;
+        this.errorLog = errorLog;
+        this.maxAttempts = config.getMaxDeliveryAttempts();
+        this.initialBackoffMillis = config.getRetryBackoff().toMillis();
+        this.maxBackoffMillis = config.getMaxRetryBackoff().toMillis();
+        this.maxAgeNanos = config.getMaxRetryAge().toNanos();
+        this.maxPending = config.getMaxPendingRetries();
+    }
+
+    /**
+     * Schedules a retry for a report whose first attempt failed.
+     *
+     * @return false if the report won't be retried; the caller is responsible for it
+     */
+    public boolean schedule(ErrorReport report, Throwable failure)
+    {
+        return schedule(new PendingRetry(report, System.nanoTime()), failure);
+    }
+
+    private boolean schedule(PendingRetry retry, Throwable failure)
+    {
+        if (retry.attempts >= maxAttempts || !Retries.isRetryable(failure))
+            return false;
+
+        long delayMillis = Retries.withJitter(retry.backoffMillis);
+        retry.dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        if (retry.dueNanos - retry.firstFailureNanos > maxAgeNanos)
+            return false;
+        retry.backoffMillis = Retries.nextBackoff(retry.backoffMillis, maxBackoffMillis);
+
+        synchronized (this)
+        {
+            if (shutdown || pending.size() >= maxPending)
+                return false;
+            startRetrier();
+            pending.add(retry);
+        }
+        return true;
+    }
+
+    private void startRetrier()
+    {
+        if (retrier == null)
+        {
+            retrier = new Thread(this::run, "red-egg-retry");
+            retrier.setDaemon(true);
+            retrier.start();
+        }
+    }
+
+    private void run()
+    {
+        try
+        {
+            while (!Thread.currentThread().isInterrupted())
+            {
+                retry(pending.take());
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // shutting down
+        }
+    }
+
+    private void retry(PendingRetry retry)
+    {
+        retry.attempts++;
+        try
+        {
+            primaryErrorReporter.send(retry.report);
+            counters.recordDelivered();
+            retry.report.release();
+        }
+        catch (ReportSuppressedException e)
+        {
+            // the deduplicating reporter owns it now
+        }
+        catch (Throwable t)
+        {
+            if (!(t instanceof CircuitOpenException))
+                counters.recordFailed();
+            if (!schedule(retry, t))
+            {
+                errorLog.error(
+                    "unable to send error report after " + retry.attempts + " attempts; using fallback reporter",
+                    t);
+                fallback.accept(retry.report);
+            }
+        }
+    }
+
+    public synchronized int getPendingCount()
+    {
+        return pending.size();
+    }
+
+    /**
+     * Stops retrying, and hands any reports still waiting to the fallback consumer.
+     */
+    public void shutdown()
+    {
+        Thread toStop;
+        synchronized (this)
+        {
+            shutdown = true;
+            toStop = retrier;
+        }
+        if (toStop != null)
+        {
+            toStop.interrupt();
+            try
+            {
+                toStop.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        List<PendingRetry> abandoned = new ArrayList<>();
+        synchronized (this)
+        {
+            for (PendingRetry retry : pending)
+            {
+                abandoned.add(retry);
+            }
+            pending.clear();
+        }
+        for (PendingRetry retry : abandoned)
+        {
+            fallback.accept(retry.report);
+        }
+    }
+
+    private class PendingRetry implements Delayed
+    {
+        final ErrorReport report;
+        final long firstFailureNanos;
+        int attempts = 1;
+        long backoffMillis = initialBackoffMillis;
+        long dueNanos;
+
+        PendingRetry(ErrorReport report, long firstFailureNanos)
+        {
+            this.report = report;
+            this.firstFailureNanos = firstFailureNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit)
+        {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other)
+        {
+            return Long.compare(dueNanos, ((PendingRetry) other).dueNanos);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package org.cru.redegg.reporting.ring;
+
+import org.cru.redegg.reporting.DeliveryCounters;
+import org.cru.redegg.reporting.ErrorQueueConfig;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.ManagedErrorQueue;
+import org.cru.redegg.reporting.OverflowPolicy;
+import org.cru.redegg.reporting.ReportDelivery;
+import org.cru.redegg.reporting.api.ErrorLink;
+import org.cru.redegg.reporting.api.ErrorQueueMetrics;
+import org.cru.redegg.util.ErrorLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * An error queue backed by a preallocated ring buffer.
+ *
+ * Producers claim a slot by advancing a shared sequence with a CAS, fill it,
+ * and then mark it published; no locks are taken and nothing is allocated.
+ * A single consumer thread drains published slots in batches and delivers them.
+ *
+ * The ring size is the configured queue capacity, rounded up to a power of two.
+ * When the ring is full, the configured {@link OverflowPolicy} applies,
+ * except that {@link OverflowPolicy#DROP_OLDEST} behaves like {@link OverflowPolicy#DROP_NEWEST}:
+ * slots between the consumer and the producers can't be reclaimed without a lock.
+ *
+ * This is not a CDI bean; it is chosen via {@link ErrorQueueConfig#setQueueType}.
+ *
+ * @author Matt Drees
+ */
+public class RingBufferErrorQueue implements ManagedErrorQueue
+{
+    private static final Logger LOG = LoggerFactory.getLogger(RingBufferErrorQueue.class);
+
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 20;
+
+    private static final int BLOCK_YIELD_TRIES = 100;
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final ReportDelivery delivery;
+    private final DeliveryCounters counters;
+    private final ErrorLog errorLog;
+    private final WaitStrategy waitStrategy;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+
+    private final ErrorReport[] slots;
+    private final int mask;
+    private final int indexShift;
+
+    /**
+     * For each slot, the 'lap' of the most recently published sequence;
+     * a slot is readable once its lap matches the lap of the sequence the consumer wants.
+     */
+    private final AtomicIntegerArray published;
+
+    /** the highest sequence claimed by a producer */
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    /** the highest sequence the consumer has finished with */
+    private final AtomicLong consumed = new AtomicLong(-1);
+
+    private final Thread consumer;
+
+    private final Metrics metrics = new Metrics();
+
+    private volatile boolean running = true;
+
+    public RingBufferErrorQueue(ReportDelivery delivery, ErrorQueueConfig config)
+    {
+        this(delivery, config, config.getWaitStrategy());
+    }
+
+    RingBufferErrorQueue(ReportDelivery delivery, ErrorQueueConfig config, WaitStrategy waitStrategy)
+    {
+        config.validate();
+        this.delivery = delivery;
+        this.counters = delivery.getCounters();
+        this.errorLog = delivery.getErrorLog();
+        this.waitStrategy = waitStrategy;
+        this.overflowPolicy = config.getOverflowPolicy();
+        this.blockTimeoutNanos = config.getBlockTimeout().toNanos();
+
+        int size = ceilingPowerOfTwo(config.getQueueCapacity());
+        this.slots = new ErrorReport[size];
+        this.mask = size - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(size);
+        this.published = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++)
+        {
+            published.set(i, -1);
+        }
+
+        consumer = new Thread(new Consumer(), "red-egg-ring-consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    static int ceilingPowerOfTwo(int capacity)
+    {
+        int size = Integer.highestOneBit(capacity);
+        return size == capacity ? size : size << 1;
+    }
+
+    @Override
+    public void enqueue(ErrorReport report)
+    {
+        if (!delivery.admit(report))
+            return;
+        if (!running)
+        {
+            errorLog.warn("error queue has been shut down; using fallback reporter");
+            delivery.fallback(report);
+            return;
+        }
+
+        long sequence = tryClaim();
+        if (sequence < 0)
+        {
+            sequence = handleOverflow(report);
+            if (sequence < 0)
+                return;
+        }
+        counters.recordEnqueued();
+        publish(sequence, report);
+
+        final ErrorLink errorLink = report.getErrorLink();
+        if (errorLink != null)
+        {
+            LOG.info("Error details available at {}", errorLink.getTarget());
+        }
+    }
+
+    /**
+     * @return the claimed sequence, or -1 if the ring is full
+     */
+    private long tryClaim()
+    {
+        long current;
+        long next;
+        do
+        {
+            current = claimed.get();
+            next = current + 1;
+            if (next - slots.length > consumed.get())
+                return -1;
+        }
+        while (!claimed.compareAndSet(current, next));
+        return next;
+    }
+
+    private long handleOverflow(ErrorReport report)
+    {
+        switch (overflowPolicy)
+        {
+            case DROP_NEWEST:
+            case DROP_OLDEST:
+                counters.recordDropped();
+                report.release();
+                return -1;
+            case CALLER_RUNS:
+                delivery.fallback(report);
+                return -1;
+            case BLOCK:
+                return claimBlocking(report);
+            default:
+                throw new AssertionError("unexpected policy: " + overflowPolicy);
+        }
+    }
+
+    private long claimBlocking(ErrorReport report)
+    {
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        int tries = 0;
+        while (running && !Thread.currentThread().isInterrupted())
+        {
+            long sequence = tryClaim();
+            if (sequence >= 0)
+                return sequence;
+            if (System.nanoTime() - deadline >= 0)
+                break;
+            // give the consumer a chance to run before backing off further
+            if (++tries < BLOCK_YIELD_TRIES)
+                Thread.yield();
+            else
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+        }
+        counters.recordDropped();
+        report.release();
+        return -1;
+    }
+
+    private void publish(long sequence, ErrorReport report)
+    {
+        int index = (int) sequence & mask;
+        slots[index] = report;
+        // a full volatile write, so that the blocking wait strategy's check of the waiting flag can't be reordered before it
+        published.set(index, lap(sequence));
+        waitStrategy.signal();
+    }
+
+    private int lap(long sequence)
+    {
+        return (int) (sequence >>> indexShift);
+    }
+
+    private boolean isPublished(long sequence)
+    {
+        return published.get((int) sequence & mask) == lap(sequence);
+    }
+
+    @Override
+    public void shutdown()
+    {
+        running = false;
+        waitStrategy.signal();
+        try
+        {
+            consumer.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+            if (consumer.isAlive())
+            {
+                errorLog.warn(
+                    "unable to deliver queued reports within " + SHUTDOWN_TIMEOUT_SECONDS + " seconds");
+                consumer.interrupt();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            errorLog.error("ring buffer shutdown interrupted", e);
+            Thread.currentThread().interrupt();
+            consumer.interrupt();
+        }
+        delivery.shutdown();
+    }
+
+    @Override
+    public Optional<ErrorLink> buildLink()
+    {
+        return delivery.buildLink();
+    }
+
+    @Override
+    public ErrorQueueMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    private class Metrics implements ErrorQueueMetrics
+    {
+        @Override
+        public int getQueueDepth()
+        {
+            return (int) Math.max(0, claimed.get() - consumed.get());
+        }
+
+        @Override
+        public int getQueueCapacity()
+        {
+            return slots.length;
+        }
+
+        @Override
+        public long getEnqueuedCount()
+        {
+            return counters.getEnqueuedCount();
+        }
+
+        @Override
+        public long getDroppedCount()
+        {
+            return counters.getDroppedCount();
+        }
+
+        @Override
+        public long getFallbackCount()
+        {
+            return counters.getFallbackCount();
+        }
+
+        @Override
+        public long getDeliveredCount()
+        {
+            return counters.getDeliveredCount();
+        }
+
+        @Override
+        public long getFailedCount()
+        {
+            return counters.getFailedCount();
+        }
+
+        @Override
+        public long getRateLimitedCount()
+        {
+            return counters.getRateLimitedCount();
+        }
+    }
+
+    private class Consumer implements Runnable, BooleanSupplier
+    {
+        private final ErrorReport[] batch = new ErrorReport[MAX_BATCH_SIZE];
+
+        private long next = 0;
+
+        @Override
+        public boolean getAsBoolean()
+        {
+            return isPublished(next);
+        }
+
+        @Override
+        public void run()
+        {
+            int idleCount = 0;
+            try
+            {
+                while (true)
+                {
+                    if (drainBatch() > 0)
+                    {
+                        idleCount = 0;
+                    }
+                    else if (!running && next > claimed.get())
+                    {
+                        break;
+                    }
+                    else
+                    {
+                        waitStrategy.await(this, ++idleCount);
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                errorLog.warn((claimed.get() - consumed.get()) + " queued reports were not delivered");
+            }
+        }
+
+        /**
+         * Copies out the run of published reports (up to {@link #MAX_BATCH_SIZE}),
+         * releases their slots to producers in one step,
+         * and only then delivers them, so that slow delivery doesn't hold up producers.
+         */
+        private int drainBatch()
+        {
+            int count = 0;
+            while (count < MAX_BATCH_SIZE && isPublished(next))
+            {
+                int index = (int) next & mask;
+                batch[count++] = slots[index];
+                slots[index] = null;
+                next++;
+            }
+            if (count > 0)
+            {
+                consumed.lazySet(next - 1);
+                for (int i = 0; i < count; i++)
+                {
+                    delivery.deliver(batch[i]);
+                    batch[i] = null;
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.cru.redegg.reporting.ring;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The built-in {@link WaitStrategy} implementations.
+ *
+ * A strategy instance should only be used by one queue at a time.
+ *
+ * @author Matt Drees
+ */
+public class WaitStrategies
+{
+    private WaitStrategies() {}
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+
+    /**
+     * The consumer spins continuously. Lowest latency, but keeps a core busy even when the app is idle.
+     */
+    public static WaitStrategy busySpin()
+    {
+        return new BusySpin();
+    }
+
+    /**
+     * The consumer spins briefly, and then yields its cpu between checks.
+     */
+    public static WaitStrategy yielding()
+    {
+        return new Yielding();
+    }
+
+    /**
+     * The consumer spins, then yields, and finally sleeps for the given period between checks.
+     * Producers never need to signal the consumer.
+     */
+    public static WaitStrategy sleeping(long sleepTime, TimeUnit unit)
+    {
+        return new Sleeping(unit.toNanos(sleepTime));
+    }
+
+    /**
+     * The consumer blocks on a condition until a producer signals it.
+     * Producers only take the lock when the consumer is actually blocked.
+     */
+    public static WaitStrategy blocking()
+    {
+        return new Blocking();
+    }
+
+    private static class BusySpin implements WaitStrategy
+    {
+        @Override
+        public void await(BooleanSupplier workAvailable, int idleCount)
+        {
+        }
+
+        @Override
+        public void signal()
+        {
+        }
+    }
+
+    private static class Yielding implements WaitStrategy
+    {
+        @Override
+        public void await(BooleanSupplier workAvailable, int idleCount)
+        {
+            if (idleCount > SPIN_TRIES)
+                Thread.yield();
+        }
+
+        @Override
+        public void signal()
+        {
+        }
+    }
+
+    private static class Sleeping implements WaitStrategy
+    {
+        private final long sleepNanos;
+
+        Sleeping(long sleepNanos)
+        {
+            this.sleepNanos = sleepNanos;
+        }
+
+        @Override
+        public void await(BooleanSupplier workAvailable, int idleCount) throws InterruptedException
+        {
+            if (idleCount > SPIN_TRIES + YIELD_TRIES)
+            {
+                LockSupport.parkNanos(sleepNanos);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+            else if (idleCount > SPIN_TRIES)
+                Thread.yield();
+        }
+
+        @Override
+        public void signal()
+        {
+        }
+    }
+
+    private static class Blocking implements WaitStrategy
+    {
+        /* bounds the wait, so that the consumer notices a shutdown even if no one signals it */
+        private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition published = lock.newCondition();
+        private final AtomicBoolean consumerWaiting = new AtomicBoolean();
+
+        @Override
+        public void await(BooleanSupplier workAvailable, int idleCount) throws InterruptedException
+        {
+            if (idleCount <= SPIN_TRIES)
+                return;
+
+            lock.lock();
+            try
+            {
+                consumerWaiting.set(true);
+                // re-check after announcing that we're waiting, so a concurrent publish isn't missed
+                if (!workAvailable.getAsBoolean())
+                    published.awaitNanos(MAX_WAIT_NANOS);
+            }
+            finally
+            {
+                consumerWaiting.set(false);
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void signal()
+        {
+            if (consumerWaiting.get())
+            {
+                lock.lock();
+                try
+                {
+                    published.signalAll();
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.cru.redegg.reporting.ring;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Determines how the {@link RingBufferErrorQueue} consumer waits for reports to be published,
+ * and what producers must do to wake it up.
+ *
+ * Implementations trade delivery latency against cpu usage while the queue is idle.
+ * Since errors are usually rare, {@link WaitStrategies#blocking()} is the default.
+ *
+ * @author Matt Drees
+ */
+public interface WaitStrategy
+{
+    /**
+     * Called by the consumer when no report is available.
+     * Returns when {@code workAvailable} may have become true,
+     * or when the consumer should check whether the queue has been shut down.
+     *
+     * @param workAvailable checks whether the next report has been published
+     * @param idleCount the number of times this has been called since the consumer last found work
+     */
+    void await(BooleanSupplier workAvailable, int idleCount) throws InterruptedException;
+
+    /**
+     * Called by a producer after publishing a report.
+     * This is on the enqueue path, so it should be cheap when the consumer isn't blocked.
+     */
+    void signal();
+}
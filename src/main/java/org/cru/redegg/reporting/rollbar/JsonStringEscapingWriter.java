@@ -0,0 +1,83 @@
+package org.cru.redegg.reporting.rollbar;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Escapes text the way {@link com.google.gson.stream.JsonWriter} escapes string values,
+ * so that a long string can be streamed into a json document.
+ * The surrounding quotes are not written.
+ *
+ * @author Matt Drees
+ */
+class JsonStringEscapingWriter extends Writer
+{
+    private final Writer out;
+
+    JsonStringEscapingWriter(Writer out)
+    {
+        this.out = out;
+    }
+
+    @Override
+    public void write(char[] chars, int off, int len) throws IOException
+    {
+        int last = off;
+        int end = off + len;
+        for (int i = off; i < end; i++)
+        {
+            String replacement = replacementFor(chars[i]);
+            if (replacement == null)
+                continue;
+            if (last < i)
+                out.write(chars, last, i - last);
+            out.write(replacement);
+            last = i + 1;
+        }
+        if (last < end)
+            out.write(chars, last, end - last);
+    }
+
+    private static String replacementFor(char c)
+    {
+        switch (c)
+        {
+            case '"':
+                return "\\\"";
+            case '\\':
+                return "\\\\";
+            case '\t':
+                return "\\t";
+            case '\b':
+                return "\\b";
+            case '\n':
+                return "\\n";
+            case '\r':
+                return "\\r";
+            case '\f':
+                return "\\f";
+            case '\u2028':
+                return "\\u2028";
+            case '\u2029':
+                return "\\u2029";
+            default:
+                return c < 0x20 ? String.format("\\u%04x", (int) c) : null;
+        }
+    }
+
+    /**
+     * Does nothing; the underlying writer belongs to the json document.
+     */
+    @Override
+    public void flush()
+    {
+    }
+
+    /**
+     * Does nothing; the underlying writer belongs to the json document.
+     */
+    @Override
+    public void close()
+    {
+    }
+}
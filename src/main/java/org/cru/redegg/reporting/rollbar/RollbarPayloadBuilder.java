@@ -2,6 +2,7 @@ package org.cru.redegg.reporting.rollbar;
 
 import com.google.common.base.Ascii;
 import com.google.common.base.Joiner;
+import com.google.common.base.MoreObjects;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ArrayListMultimap;
@@ -9,6 +10,7 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.gson.stream.JsonWriter;
 import com.rollbar.api.payload.Payload;
 import com.rollbar.api.payload.data.Data;
 import com.rollbar.api.payload.data.Level;
@@ -21,6 +23,9 @@ import com.rollbar.api.payload.data.body.BodyContent;
 import com.rollbar.api.payload.data.body.Message;
 import com.rollbar.notifier.util.BodyFactory;
 import com.rollbar.notifier.wrapper.RollbarThrowableWrapper;
+import com.rollbar.notifier.wrapper.ThrowableWrapper;
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
@@ -28,6 +33,8 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -36,6 +43,8 @@ import java.util.stream.Collectors;
 import org.cru.redegg.recording.api.NotificationLevel;
 import org.cru.redegg.reporting.ErrorReport;
 import org.cru.redegg.reporting.ExceptionDetailsExtractor;
+import org.cru.redegg.reporting.ReplayedThrowable;
+import org.cru.redegg.reporting.StreamedEntity;
 import org.cru.redegg.reporting.WebContext;
 import org.cru.redegg.reporting.api.ErrorLink;
 import org.cru.redegg.reporting.common.Reporters;
@@ -50,6 +59,7 @@ import java.util.stream.IntStream;
 class RollbarPayloadBuilder
 {
     private static final Joiner COMMA_JOINER = Joiner.on(",");
+    private static final Joiner PARAGRAPH_JOINER = Joiner.on("\n\n");
 
     private final RollbarConfig config;
     private final ErrorReport report;
@@ -85,12 +95,7 @@ class RollbarPayloadBuilder
             data.uuid(rollbarErrorLink.getId().toString());
         }
 
-        if (report.getContext().containsKey("framework"))
-        {
-            String framework =
-                RedEggCollections.flatten(report.getContext()).get("framework").toString();
-            data.framework(framework);
-        }
+        data.framework(getFramework());
 
         // request data
         Request request = getRequestData();
@@ -119,6 +124,314 @@ class RollbarPayloadBuilder
             .build();
     }
 
+    /**
+     * Writes the same item json that {@link #build()} produces directly to the writer, in one pass,
+     * without building rollbar-java's payload objects first.
+     * As with {@link TraceChainInverter}, the trace chain is written with the root cause first.
+     * Frame locals are not written; rollbar-java only collects them when its JVMTI agent is installed.
+     */
+    void writeTo(Writer writer) throws IOException
+    {
+        JsonWriter json = new JsonWriter(writer);
+        json.setSerializeNulls(false);
+        json.beginObject();
+        json.name("access_token").value(config.getAccessToken());
+        json.name("data");
+        writeData(json, writer);
+        json.endObject();
+        json.flush();
+    }
+
+    private void writeData(JsonWriter json, Writer writer) throws IOException
+    {
+        json.beginObject();
+        json.name("environment").value(config.getEnvironmentName());
+        json.name("body");
+        writeBody(json);
+        json.name("title").value(buildTitle());
+        json.name("level").value(determineLevel(report.getNotificationLevel()).asJson());
+        json.name("platform").value(config.getPlatform());
+        json.name("language").value(NOTIFIER_LANGUAGE);
+        json.name("timestamp").value(toJavaTimestamp(getErrorTimestamp()) / 1000.0);
+        final ErrorLink errorLink = report.getErrorLink();
+        if (errorLink != null)
+        {
+            RollbarErrorLink rollbarErrorLink = (RollbarErrorLink) errorLink;
+            json.name("uuid").value(rollbarErrorLink.getId().toString());
+        }
+        json.name("framework").value(getFramework());
+
+        WebContext webContext = report.getWebContext();
+        if (webContext != null)
+        {
+            json.name("request");
+            writeRequest(json, writer, webContext);
+            json.name("context").value(getContext());
+        }
+
+        json.name("custom");
+        writeCustomData(json);
+
+        String personId = report.getUser().isEmpty() ? null : determineId(report.getUser());
+        if (personId != null)
+        {
+            json.name("person");
+            writePerson(json, personId);
+        }
+
+        json.name("server");
+        writeServer(json);
+        json.name("notifier").beginObject()
+            .name("name").value("red-egg")
+            .name("version").value(RedEggVersion.get())
+            .endObject();
+        json.name("code_version").value(config.getCodeVersion());
+        json.endObject();
+    }
+
+    private void writeBody(JsonWriter json) throws IOException
+    {
+        json.beginObject();
+        List<Throwable> thrown = report.getThrown();
+        if (thrown.isEmpty())
+        {
+            json.name("message").beginObject()
+                .name("body").value(report.getRootErrorMessage().or("(message not available)"))
+                .endObject();
+        }
+        else
+        {
+            List<Throwable> chain = Throwables.getCausalChain(thrown.get(0));
+            if (chain.size() == 1)
+            {
+                json.name("trace");
+                writeTrace(json, chain.get(0));
+            }
+            else
+            {
+                json.name("trace_chain").beginArray();
+                for (Throwable link : Lists.reverse(chain))
+                {
+                    writeTrace(json, link);
+                }
+                json.endArray();
+            }
+        }
+        json.endObject();
+    }
+
+    /**
+     * Writes a trace the way rollbar-java's BodyFactory builds it, with the outer-most frame first.
+     */
+    private void writeTrace(JsonWriter json, Throwable throwable) throws IOException
+    {
+        json.beginObject();
+        json.name("frames").beginArray();
+        StackTraceElement[] stackTrace = throwable.getStackTrace();
+        for (int i = stackTrace.length - 1; i >= 0; i--)
+        {
+            StackTraceElement element = stackTrace[i];
+            json.beginObject()
+                .name("filename").value(MoreObjects.firstNonNull(element.getFileName(), "[unknown]"))
+                .name("lineno").value(element.getLineNumber())
+                .name("method").value(element.getMethodName())
+                .name("class_name").value(element.getClassName())
+                .endObject();
+        }
+        json.endArray();
+        json.name("exception").beginObject()
+            .name("class").value(ReplayedThrowable.classNameOf(throwable))
+            .name("message").value(throwable.getMessage())
+            .endObject();
+        json.endObject();
+    }
+
+    private void writeRequest(JsonWriter json, Writer writer, WebContext webContext) throws IOException
+    {
+        json.beginObject();
+
+        ZonedDateTime start = ZonedDateTime.ofInstant(webContext.getStart(), ZoneId.systemDefault());
+        json.name("timing").beginObject();
+        json.name("start").value(start.toString());
+        if (webContext.getFinish() != null)
+        {
+            ZonedDateTime finish = ZonedDateTime.ofInstant(webContext.getFinish(), ZoneId.systemDefault());
+            json.name("finish").value(finish.toString());
+            json.name("duration").value(Duration.between(start, finish).toString());
+        }
+        json.endObject();
+        json.name("response_status_code").value(
+            webContext.getResponseStatus() == null ? "unknown" : webContext.getResponseStatus().toString());
+
+        json.name("url").value(webContext.getUrl().toString());
+        json.name("method").value(webContext.getMethod());
+        json.name("headers");
+        writeCommaSeparatedValues(json, webContext.getHeaders());
+        json.name("get");
+        writeFlattened(json, webContext.getQueryParameters());
+        json.name("query_string").value(webContext.getQueryString());
+        json.name("post");
+        writeCommaSeparatedValues(json, webContext.getPostParameters());
+        json.name("body");
+        StreamedEntity streamedEntity = webContext.getStreamedEntity();
+        if (streamedEntity != null)
+            writeStreamedString(json, writer, streamedEntity);
+        else
+            json.value(webContext.getEntityRepresentation());
+        json.name("user_ip").value(getUserIp(webContext));
+        json.endObject();
+    }
+
+    /**
+     * JsonWriter can't write a string value in pieces,
+     * so the opening quote goes through it (along with the pending name),
+     * and the escaped entity and closing quote are written straight to the underlying writer.
+     * JsonWriter doesn't buffer, so they end up in order.
+     */
+    private void writeStreamedString(JsonWriter json, Writer writer, StreamedEntity streamedEntity) throws IOException
+    {
+        json.jsonValue("\"");
+        streamedEntity.writeTo(new JsonStringEscapingWriter(writer));
+        writer.write('"');
+    }
+
+    private void writeCustomData(JsonWriter json) throws IOException
+    {
+        boolean hasOtherExceptions = report.getThrown().size() > 1;
+
+        json.beginObject();
+        for (Map.Entry<String, Collection<String>> entry : report.getContext().asMap().entrySet())
+        {
+            String key = entry.getKey();
+            // these are replaced below, as they are in getCustomData()
+            if (key.equals("exception_details") ||
+                key.equals("log_messages") ||
+                (hasOtherExceptions && key.equals("other_exceptions")))
+                continue;
+            json.name(key);
+            writeFlattenedValue(json, entry.getValue());
+        }
+
+        if (hasOtherExceptions)
+        {
+            json.name("other_exceptions").value(getOtherExceptions());
+        }
+
+        json.name("exception_details").beginObject();
+        ExceptionDetailsExtractor extractor = new ExceptionDetailsExtractor();
+        int i = 0;
+        for (Throwable throwable : report.getThrown())
+        {
+            for (Throwable link : Lists.reverse(Throwables.getCausalChain(throwable)))
+            {
+                final Map<String, Object> details = extractor.extractDetails(link);
+                if (!details.isEmpty()) {
+                    json.name(String.valueOf(i));
+                    writeValue(json, details);
+                    i++;
+                }
+            }
+        }
+        json.endObject();
+
+        json.name("log_messages").value(getLogMessages());
+        json.endObject();
+    }
+
+    private void writePerson(JsonWriter json, String id) throws IOException
+    {
+        json.beginObject();
+        json.name("id").value(id);
+        for (Map.Entry<String, String> entry : report.getUser().entrySet())
+        {
+            if (!entry.getKey().equals("id"))
+                json.name(entry.getKey()).value(entry.getValue());
+        }
+        json.endObject();
+    }
+
+    private void writeServer(JsonWriter json) throws IOException
+    {
+        json.beginObject();
+        json.name("host").value(report.getLocalHostName());
+        json.name("branch").value(config.getBranch());
+        json.name("hostAddress").value(report.getLocalHostAddress());
+        json.name("system_properties");
+        writeValue(json, report.getSystemProperties());
+        json.name("environment_variables");
+        writeValue(json, report.getEnvironmentVariables());
+        json.endObject();
+    }
+
+    private void writeCommaSeparatedValues(JsonWriter json, Multimap<String, String> multimap) throws IOException
+    {
+        json.beginObject();
+        for (Map.Entry<String, Collection<String>> entry : multimap.asMap().entrySet())
+        {
+            json.name(entry.getKey()).value(COMMA_JOINER.join(entry.getValue()));
+        }
+        json.endObject();
+    }
+
+    /**
+     * Writes single values as scalars and multiple values as arrays,
+     * like {@link RedEggCollections#flatten(Multimap)} and rollbar-java's handling of query parameters.
+     */
+    private void writeFlattened(JsonWriter json, Multimap<String, String> multimap) throws IOException
+    {
+        json.beginObject();
+        for (Map.Entry<String, Collection<String>> entry : multimap.asMap().entrySet())
+        {
+            json.name(entry.getKey());
+            writeFlattenedValue(json, entry.getValue());
+        }
+        json.endObject();
+    }
+
+    private void writeFlattenedValue(JsonWriter json, Collection<String> values) throws IOException
+    {
+        if (values.size() == 1)
+            json.value(Iterables.getOnlyElement(values));
+        else
+            writeValue(json, values);
+    }
+
+    /**
+     * Writes an arbitrary value the way rollbar-java's JsonSerializerImpl does.
+     */
+    private void writeValue(JsonWriter json, Object value) throws IOException
+    {
+        if (value == null)
+            json.nullValue();
+        else if (value instanceof Boolean)
+            json.value((Boolean) value);
+        else if (value instanceof Number)
+            json.value((Number) value);
+        else if (value instanceof Map)
+        {
+            json.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+            {
+                json.name(String.valueOf(entry.getKey()));
+                writeValue(json, entry.getValue());
+            }
+            json.endObject();
+        }
+        else if (value instanceof Iterable)
+        {
+            json.beginArray();
+            for (Object element : (Iterable<?>) value)
+            {
+                writeValue(json, element);
+            }
+            json.endArray();
+        }
+        else if (value instanceof Object[])
+            writeValue(json, Arrays.asList((Object[]) value));
+        else
+            json.value(value.toString());
+    }
+
     /**
      * Builds a more useful title from the exception chain than what Rollbar builds by default.
      * By default, it seems to just use the outer-most exception's class and message, separated by a colon.
@@ -166,6 +479,33 @@ class RollbarPayloadBuilder
         }
     }
 
+    /**
+     * Wraps the throwable for rollbar, using the original class names of any replayed throwables.
+     */
+    private ThrowableWrapper wrap(Throwable throwable)
+    {
+        if (!(throwable instanceof ReplayedThrowable))
+            return new RollbarThrowableWrapper(throwable);
+
+        Throwable cause = throwable.getCause();
+        return new RollbarThrowableWrapper(
+            ReplayedThrowable.classNameOf(throwable),
+            throwable.getMessage(),
+            throwable.getStackTrace(),
+            cause == null ? null : wrap(cause));
+    }
+
+    private String getFramework()
+    {
+        Collection<String> framework = report.getContext().get("framework");
+        if (framework.isEmpty())
+            return null;
+        else if (framework.size() == 1)
+            return Iterables.getOnlyElement(framework);
+        else
+            return framework.toString();
+    }
+
     private String getContext()
     {
         Method component = report.getWebContext().getComponent();
@@ -188,11 +528,7 @@ class RollbarPayloadBuilder
         List<Throwable> thrown = report.getThrown();
         if (thrown.size() > 1)
         {
-            List<String> otherTraceChains = IntStream.range(1, thrown.size())
-                .mapToObj(thrown::get)
-                .map(Throwables::getStackTraceAsString)
-                .collect(Collectors.toList());
-            customData.put("other_exceptions", Joiner.on("\n\n").join(otherTraceChains));
+            customData.put("other_exceptions", getOtherExceptions());
         }
 
         // Note: the Rollbar UI doesn't handle arrays nicely, but it does handle for maps
@@ -212,10 +548,25 @@ class RollbarPayloadBuilder
         }
         customData.put("exception_details", allDetails);
 
-        customData.put("log_messages", Joiner.on("\n\n").join(report.getLogRecords()));
+        customData.put("log_messages", getLogMessages());
         return customData;
     }
 
+    private String getOtherExceptions()
+    {
+        List<Throwable> thrown = report.getThrown();
+        List<String> otherTraceChains = IntStream.range(1, thrown.size())
+            .mapToObj(thrown::get)
+            .map(Throwables::getStackTraceAsString)
+            .collect(Collectors.toList());
+        return PARAGRAPH_JOINER.join(otherTraceChains);
+    }
+
+    private String getLogMessages()
+    {
+        return PARAGRAPH_JOINER.join(report.getLogRecords());
+    }
+
     private Instant getErrorTimestamp()
     {
         // TODO: record time of actual error.
@@ -235,7 +586,7 @@ class RollbarPayloadBuilder
     private BodyContent getBody() {
         List<Throwable> thrown = report.getThrown();
         if (!thrown.isEmpty()) {
-            return new BodyFactory().from(new RollbarThrowableWrapper(thrown.get(0)), null).getContents();
+            return new BodyFactory().from(wrap(thrown.get(0)), null).getContents();
 
 //            //TODO: make this use a FilenameResolver, so that we can get github file links
 //            return TraceChain.fromThrowable(thrown.get(0));
@@ -274,18 +625,7 @@ class RollbarPayloadBuilder
 
         requestData.queryString(webContext.getQueryString());
 
-        if (!Strings.isNullOrEmpty(webContext.getRemoteIpAddress()))
-        {
-            try
-            {
-                InetAddress address = InetAddress.getByName(webContext.getRemoteIpAddress());
-                requestData.userIp(address.toString());
-            }
-            catch (UnknownHostException e)
-            {
-                // ignore
-            }
-        }
+        requestData.userIp(getUserIp(webContext));
 
         // TODO: protocol ?
 
@@ -318,6 +658,21 @@ class RollbarPayloadBuilder
         return requestData.build();
     }
 
+    private String getUserIp(WebContext webContext)
+    {
+        if (Strings.isNullOrEmpty(webContext.getRemoteIpAddress()))
+            return null;
+        try
+        {
+            return InetAddress.getByName(webContext.getRemoteIpAddress()).toString();
+        }
+        catch (UnknownHostException e)
+        {
+            // ignore
+            return null;
+        }
+    }
+
     private Map<String, List<String>> getQueryParametersAsMapOfLists(WebContext webContext)
     {
         ArrayListMultimap<String, String> listMultimap =
@@ -1,21 +1,22 @@
 package org.cru.redegg.reporting.rollbar;
 
-import com.google.common.base.Throwables;
 import org.cru.redegg.reporting.api.ErrorLink;
-import com.rollbar.api.payload.Payload;
-import com.rollbar.notifier.sender.Sender;
-import com.rollbar.notifier.sender.SyncSender;
-import com.rollbar.notifier.sender.exception.SenderException;
-import com.rollbar.notifier.sender.listener.SenderListener;
-import com.rollbar.notifier.sender.result.Response;
 import org.cru.redegg.reporting.ErrorReport;
 import org.cru.redegg.reporting.api.ErrorReporter;
+import org.cru.redegg.reporting.common.HttpPayloadSender;
+import org.cru.redegg.reporting.common.HttpTransport;
+import org.cru.redegg.reporting.common.HttpTransports;
+import org.cru.redegg.reporting.common.Payload;
 
-import java.net.MalformedURLException;
+import java.io.IOException;
 import java.util.Optional;
 import java.util.UUID;
 
 /**
+ * Reports errors to Rollbar's item api.
+ * Items are streamed straight to the request body by {@link RollbarPayloadBuilder#writeTo},
+ * and sent with the same {@link HttpTransport} used for Errbit.
+ *
  * @author Matt Drees
  */
 public class RollbarReporter implements ErrorReporter
@@ -23,22 +24,17 @@ public class RollbarReporter implements ErrorReporter
 
 
     private final RollbarConfig config;
-    private final Sender sender;
+    private final HttpPayloadSender sender;
 
     public RollbarReporter(RollbarConfig config)
+    {
+        this(config, HttpTransports.getDefault());
+    }
+
+    public RollbarReporter(RollbarConfig config, HttpTransport transport)
     {
         this.config = config;
-        try
-        {
-            this.sender = new SyncSender.Builder()
-                .url(config.getEndpoint().toURL())
-                .build();
-            sender.addListener(new Listener());
-        }
-        catch (MalformedURLException e)
-        {
-            throw Throwables.propagate(e);
-        }
+        this.sender = new HttpPayloadSender(config.getEndpoint(), "application/json", transport);
     }
 
 
@@ -46,26 +42,24 @@ public class RollbarReporter implements ErrorReporter
     public void send(ErrorReport report)
     {
         RollbarPayloadBuilder builder = new RollbarPayloadBuilder(config, report);
-        sender.send(builder.build());
-    }
-
-    private class Listener implements SenderListener
-    {
-        @Override
-        public void onResponse(Payload payload, Response response) { }
-
-        @Override
-        public void onError(Payload payload, Exception e)
+        Payload payload = builder::writeTo;
+        if (hasStreamedEntity(report))
+            payload = Payload.streamed(payload);
+        try
+        {
+            sender.send(payload);
+        }
+        catch (IOException e)
         {
-            if (e instanceof SenderException && e.getCause() instanceof RuntimeException)
-            {
-                throw (RuntimeException) e.getCause();
-            }
-            Throwables.propagateIfPossible(e);
             throw new RuntimeException(e);
         }
     }
 
+    private boolean hasStreamedEntity(ErrorReport report)
+    {
+        return report.getWebContext() != null && report.getWebContext().getStreamedEntity() != null;
+    }
+
     @Override
     public Optional<ErrorLink> buildLink()
     {
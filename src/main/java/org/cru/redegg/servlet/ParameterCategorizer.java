@@ -1,6 +1,5 @@
 package org.cru.redegg.servlet;
 
-import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
@@ -14,13 +13,9 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
 * @author Matt Drees
@@ -47,43 +42,13 @@ public class ParameterCategorizer
         Multimap<String, String> queryParameters;
         Multimap<String, String> postParameters;
         String queryString;
-
-        void sanitizeQueryString(String parameter)
-        {
-            assert queryString != null : "should only reach this code if queryString is not null";
-            String regex = "((^|&)" + Pattern.quote(parameter) + "=)[^&]*";
-            Matcher matcher = Pattern.compile(regex).matcher(queryString);
-
-            StringBuffer newQueryString = new StringBuffer(queryString.length());
-            Iterator<String> sanitizedValues = queryParameters.get(parameter).iterator();
-            String sanitizedValue = null;
-            while (matcher.find())
-            {
-                sanitizedValue = determineSanitizedValue(sanitizedValues, sanitizedValue);
-                String replacement = matcher.group(1) + sanitizedValue;
-                matcher.appendReplacement(newQueryString, Matcher.quoteReplacement(replacement));
-            }
-            matcher.appendTail(newQueryString);
-            queryString = newQueryString.toString();
-        }
-
-        private String determineSanitizedValue(Iterator<String> sanitizedValues, String sanitizedValue)
-        {
-            if (sanitizedValues.hasNext())
-            {
-                sanitizedValue = sanitizedValues.next();
-            }
-            // otherwise, the sanitizer gave back an unexpected number of values.
-            // Just use the last sanitized value that we found,
-            // or nothing if there were no sanitized values.
-
-            return Strings.nullToEmpty(sanitizedValue);
-        }
     }
 
     /**
      * Determines which parameters are query string parameters, and which are form parameters.
      * The servlet API doesn't directly give this information.
+     * The query string is tokenized once, and each parameter is categorized by how many times it appears in it.
+     * A parameter can be both; the servlet API gives its query string values first.
      */
     Categorization categorize(HttpServletRequest request) {
 
@@ -91,24 +56,46 @@ public class ParameterCategorizer
             return empty();
 
         Map<String, String[]> parameterMap = request.getParameterMap();
-        Set<String> keys = parameterMap.keySet();
+        boolean post = request.getMethod().equals("POST");
 
         Categorization categorization = new Categorization();
-        if (request.getMethod().equals("POST"))
+        if (post)
         {
             categorization.queryParameters = LinkedHashMultimap.create(0, 1);
-            categorization.postParameters = LinkedHashMultimap.create(keys.size(), 1);
+            categorization.postParameters = LinkedHashMultimap.create(parameterMap.size(), 1);
         }
         else
         {
-            categorization.queryParameters = LinkedHashMultimap.create(keys.size(), 1);
+            categorization.queryParameters = LinkedHashMultimap.create(parameterMap.size(), 1);
             categorization.postParameters = ImmutableMultimap.of();
         }
         categorization.queryString = request.getQueryString();
 
-        for (String param : keys)
+        QueryString queryString = QueryString.parse(categorization.queryString);
+        Map<String, List<String>> sanitizedQueryValues = new HashMap<>();
+        for (Map.Entry<String, String[]> entry : parameterMap.entrySet())
+        {
+            String parameter = entry.getKey();
+            List<String> values = Arrays.asList(entry.getValue());
+            int queryValues = Math.min(queryString.occurrences(parameter), values.size());
+
+            if (queryValues > 0)
+            {
+                addQueryStringParameter(
+                    parameter,
+                    queryValues == values.size() ? values : values.subList(0, queryValues),
+                    categorization,
+                    sanitizedQueryValues);
+            }
+            if (queryValues < values.size())
+            {
+                addFormParameter(parameter, values.subList(queryValues, values.size()), request, categorization);
+            }
+        }
+
+        if (!sanitizedQueryValues.isEmpty())
         {
-            categorizeParameter(param, request, parameterMap, categorization);
+            categorization.queryString = queryString.replaceValues(sanitizedQueryValues);
         }
         return categorization;
     }
@@ -121,56 +108,28 @@ public class ParameterCategorizer
         return emptyCategorization;
     }
 
-    private void categorizeParameter(
-        String parameter,
-        HttpServletRequest request,
-        Map<String, String[]> parameterMap,
-        Categorization categorization)
-    {
-        String queryString = request.getQueryString();
-        //TODO: this dichotomy isn't completely accurate; a parameter can be both.
-        if (queryString != null && isQueryParameter(parameter, queryString))
-        {
-            addQueryStringParameter(parameter, parameterMap, categorization);
-        }
-        else
-        {
-            addFormParameter(parameter, request, parameterMap, categorization);
-        }
-    }
-
-    /* need to verify the param is the 'parameter' part of the query string, and not just a value */
-    private boolean isQueryParameter(String param, String queryString) {
-        return (queryString.startsWith(param + "=") ||
-                queryString.contains('&' + param + "=") ||
-                queryString.equals(param) // eg. /soap/MyServiceEndpoint?wsdl
-        );
-    }
-
     private void addQueryStringParameter(
         String parameter,
-        Map<String, String[]> parameterMap,
-        Categorization categorization)
+        List<String> original,
+        Categorization categorization,
+        Map<String, List<String>> sanitizedQueryValues)
     {
-        List<String> original = Arrays.asList(parameterMap.get(parameter));
         List<String> sanitized = sanitizer.sanitizeQueryStringParameter(parameter, original);
         categorization.queryParameters.putAll(parameter, sanitized);
         if (!original.equals(sanitized))
         {
-            categorization.sanitizeQueryString(parameter);
+            sanitizedQueryValues.put(parameter, sanitized);
         }
     }
 
     private void addFormParameter(
         String parameter,
+        List<String> values,
         HttpServletRequest request,
-        Map<String, String[]> parameterMap,
         Categorization categorization)
     {
         if (request.getMethod().equals("POST")) {
-            List<String> sanitized = sanitizer.sanitizePostBodyParameter(
-                parameter,
-                Arrays.asList(parameterMap.get(parameter)));
+            List<String> sanitized = sanitizer.sanitizePostBodyParameter(parameter, values);
             categorization.postParameters.putAll(
                 parameter,
                 sanitized);
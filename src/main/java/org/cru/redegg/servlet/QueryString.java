@@ -0,0 +1,165 @@
+package org.cru.redegg.servlet;
+
+import com.google.common.base.Strings;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A raw query string, split once into its parameters' name and value spans.
+ *
+ * <p>
+ * Names are decoded (as UTF-8) only if they contain escapes,
+ * so they can be compared with the names the servlet api gives.
+ * Values are left as they are in the query string.
+ *
+ * @author Matt Drees
+ */
+class QueryString
+{
+    private static final int NO_VALUE = -1;
+
+    private final String raw;
+
+    /* for each parameter: where its value starts (or NO_VALUE), and where it ends */
+    private final int[] valueStarts;
+    private final int[] ends;
+    private final String[] names;
+    private final int count;
+
+    private final Map<String, Integer> occurrences;
+
+    private QueryString(String raw)
+    {
+        this.raw = raw;
+        int capacity = countSeparators(raw) + 1;
+        valueStarts = new int[capacity];
+        ends = new int[capacity];
+        names = new String[capacity];
+        occurrences = new HashMap<>(capacity * 4 / 3 + 1);
+
+        int parameter = 0;
+        int start = 0;
+        while (start <= raw.length())
+        {
+            int end = raw.indexOf('&', start);
+            if (end == -1)
+                end = raw.length();
+            if (end > start)
+            {
+                int equals = raw.indexOf('=', start);
+                boolean hasValue = equals != -1 && equals < end;
+                int nameEnd = hasValue ? equals : end;
+                String name = decodeName(raw.substring(start, nameEnd));
+
+                valueStarts[parameter] = hasValue ? equals + 1 : NO_VALUE;
+                ends[parameter] = end;
+                names[parameter] = name;
+                occurrences.merge(name, 1, Integer::sum);
+                parameter++;
+            }
+            start = end + 1;
+        }
+        count = parameter;
+    }
+
+    static QueryString parse(String raw)
+    {
+        return new QueryString(Strings.nullToEmpty(raw));
+    }
+
+    private static int countSeparators(String raw)
+    {
+        int separators = 0;
+        for (int i = 0; i < raw.length(); i++)
+        {
+            if (raw.charAt(i) == '&')
+                separators++;
+        }
+        return separators;
+    }
+
+    private static String decodeName(String name)
+    {
+        if (name.indexOf('%') == -1 && name.indexOf('+') == -1)
+            return name;
+        try
+        {
+            return URLDecoder.decode(name, "UTF-8");
+        }
+        catch (UnsupportedEncodingException | IllegalArgumentException e)
+        {
+            return name;
+        }
+    }
+
+    /**
+     * Returns how many times the parameter appears in the query string, or 0 if it doesn't.
+     */
+    int occurrences(String name)
+    {
+        Integer occurrences = this.occurrences.get(name);
+        return occurrences == null ? 0 : occurrences;
+    }
+
+    /**
+     * Rebuilds the query string with the given parameters' values replaced, in order, by their sanitized values.
+     * Everything else is kept exactly as it was.
+     */
+    String replaceValues(Map<String, List<String>> sanitizedValues)
+    {
+        if (sanitizedValues.isEmpty())
+            return raw;
+
+        Map<String, Replacements> replacements = new HashMap<>(sanitizedValues.size() * 4 / 3 + 1);
+        for (Map.Entry<String, List<String>> entry : sanitizedValues.entrySet())
+        {
+            replacements.put(entry.getKey(), new Replacements(entry.getValue()));
+        }
+
+        StringBuilder builder = new StringBuilder(raw.length() + 16 * sanitizedValues.size());
+        int copied = 0;
+        for (int parameter = 0; parameter < count; parameter++)
+        {
+            Replacements replacement = replacements.get(names[parameter]);
+            if (replacement == null)
+                continue;
+            // a value-less occurrence still has a (blank) value in the servlet api, and so a sanitized value
+            String sanitizedValue = replacement.next();
+            if (valueStarts[parameter] == NO_VALUE)
+                continue;
+            builder.append(raw, copied, valueStarts[parameter]).append(sanitizedValue);
+            copied = ends[parameter];
+        }
+        builder.append(raw, copied, raw.length());
+        return builder.toString();
+    }
+
+    private static class Replacements
+    {
+        private final Iterator<String> sanitizedValues;
+        private String sanitizedValue;
+
+        Replacements(List<String> sanitizedValues)
+        {
+            this.sanitizedValues = sanitizedValues.iterator();
+        }
+
+        String next()
+        {
+            if (sanitizedValues.hasNext())
+            {
+                sanitizedValue = sanitizedValues.next();
+            }
+            // otherwise, the sanitizer gave back an unexpected number of values.
+            // Just use the last sanitized value that we found,
+            // or nothing if there were no sanitized values.
+
+            return Strings.nullToEmpty(sanitizedValue);
+        }
+    }
+}
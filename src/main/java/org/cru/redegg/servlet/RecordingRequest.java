@@ -1,54 +1,99 @@
 package org.cru.redegg.servlet;
 
-import com.google.common.io.ByteStreams;
-import com.google.common.io.CharStreams;
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.api.CapturedEntity;
+import org.cru.redegg.recording.api.RequestMatcher;
+import org.cru.redegg.recording.api.RequestMatchers;
 import org.cru.redegg.recording.api.WebErrorRecorder;
+import org.cru.redegg.recording.entity.CapturedBytes;
+import org.cru.redegg.recording.entity.CapturedChars;
+import org.cru.redegg.recording.entity.TeeReader;
 import org.cru.redegg.util.ErrorLog;
 
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.StringReader;
 import java.nio.charset.Charset;
 
 /**
  * @author Matt Drees
  *
- * For now, we buffer all request entities.
- *
- * FUTURE: enable a way to opt-out of this, if requests are too massive to be buffered in memory
+ * Captures the first part of the request entity as the application reads it,
+ * without buffering the entity up front.
+ * The capture is only decoded (and sanitized) if a report is sent.
  */
 public class RecordingRequest extends HttpServletRequestWrapper
 {
-
     private final ErrorLog errorLog;
     private final WebErrorRecorder recorder;
+    private final RecordingConfig config;
+    private final RequestMatcher nonBlockingEntityReadsMatcher;
+    private final int entityCaptureLimit;
+
+    private ServletInputStream inputStream;
+    private BufferedReader reader;
 
     public RecordingRequest(HttpServletRequest request, ErrorLog errorLog, WebErrorRecorder recorder)
+    {
+        this(request, errorLog, recorder, new RecordingConfig());
+    }
+
+    public RecordingRequest(
+        HttpServletRequest request,
+        ErrorLog errorLog,
+        WebErrorRecorder recorder,
+        RecordingConfig config)
+    {
+        this(request, errorLog, recorder, config, RequestMatchers.none());
+    }
+
+    /**
+     * @param config determines how much of the entity is captured, and whether it may be spilled to disk
+     * @param nonBlockingEntityReadsMatcher identifies the requests whose entity stream is not captured,
+     *                                      because the application may read it with a ReadListener
+     */
+    public RecordingRequest(
+        HttpServletRequest request,
+        ErrorLog errorLog,
+        WebErrorRecorder recorder,
+        RecordingConfig config,
+        RequestMatcher nonBlockingEntityReadsMatcher)
     {
         super(request);
+        this.nonBlockingEntityReadsMatcher = nonBlockingEntityReadsMatcher;
         this.errorLog = errorLog;
         this.recorder = recorder;
+        this.config = config;
+        this.entityCaptureLimit = config.getEntityCaptureLimit();
     }
 
     @Override
     public BufferedReader getReader() throws IOException
     {
-        String entity = CharStreams.toString(super.getReader());
-        recorder.recordEntityRepresentation(entity);
-        return new BufferedReader(new StringReader(entity));
+        BufferedReader containerReader = super.getReader();
+        if (entityCaptureLimit == 0)
+            return containerReader;
+        if (reader == null)
+        {
+            CapturedChars capture = new CapturedChars(entityCaptureLimit);
+            reader = new BufferedReader(new TeeReader(containerReader, capture));
+            recordEntity(capture);
+        }
+        return reader;
     }
 
     @Override
     public ServletInputStream getInputStream() throws IOException
     {
+        if (inputStream != null)
+            return inputStream;
+
         String characterEncoding = getCharacterEncoding();
         String contentEncoding = getHeader("Content-Encoding");
         boolean isContentEncoded = contentEncoding != null && !contentEncoding.equals("identity");
-        if (characterEncoding == null || isContentEncoded)
+        if (characterEncoding == null || isContentEncoded || entityCaptureLimit == 0 || mayReadWithoutBlocking())
         {
             return super.getInputStream();
         }
@@ -63,23 +108,33 @@ public class RecordingRequest extends HttpServletRequestWrapper
             {
                 return super.getInputStream();
             }
-            return recordEntityIfPossibleAndWrapContent(charset);
+            CapturedBytes capture = CapturedBytes.create(config, charset);
+            inputStream = new TeeServletInputStream(super.getInputStream(), capture);
+            recordEntity(capture);
+            return inputStream;
         }
     }
 
-    private ServletInputStream recordEntityIfPossibleAndWrapContent(Charset charset) throws IOException
+    /**
+     * An async request may read the entity with a Servlet 3.1 ReadListener, which the tee can't support.
+     * The application may get the stream before it starts async processing,
+     * so requests known to do that are identified by the matcher, rather than by {@link #isAsyncStarted()}.
+     */
+    private boolean mayReadWithoutBlocking()
+    {
+        return isAsyncStarted() || nonBlockingEntityReadsMatcher.matches(this);
+    }
+
+    private void recordEntity(CapturedEntity capture)
     {
-        byte[] content = ByteStreams.toByteArray(super.getInputStream());
         try
         {
-            String entity = new String(content, charset);
-            recorder.recordEntityRepresentation(entity);
+            recorder.recordEntity(capture);
         }
         catch (Throwable throwable)
         {
             errorLog.error("unable to record entity", throwable);
         }
-        return new SimpleServletInputStream(new ByteArrayInputStream(content));
     }
 
 }
@@ -1,7 +1,11 @@
 package org.cru.redegg.servlet;
 
 import org.cru.redegg.boot.Initializer;
+import org.cru.redegg.qualifier.NonBlockingEntityReads;
+import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.recording.RecordingConfig;
 import org.cru.redegg.recording.api.RecorderFactory;
+import org.cru.redegg.recording.api.RequestMatcher;
 import org.cru.redegg.recording.api.WebErrorRecorder;
 import org.cru.redegg.reporting.api.ErrorLink;
 import org.cru.redegg.util.ErrorLog;
@@ -32,6 +36,15 @@ public class RedEggFilter implements Filter {
     @Inject
     ErrorLog errorLog;
 
+    @Inject
+    @Selected
+    RecordingConfig recordingConfig;
+
+    @Inject
+    @Selected
+    @NonBlockingEntityReads
+    RequestMatcher nonBlockingEntityReadsMatcher;
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         Initializer.initializeIfNecessary(this, filterConfig.getServletContext());
@@ -54,28 +67,30 @@ public class RedEggFilter implements Filter {
     @SuppressWarnings("TryWithIdenticalCatches") // can't use multicatch; it breaks generic record()
     private void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
         throws IOException, ServletException {
+        WebErrorRecorder recorder = getRecorder();
         RecordingResponse recordingResponse = new RecordingResponse(response);
-        RecordingRequest recordingRequest = new RecordingRequest(request, errorLog, getRecorder());
+        RecordingRequest recordingRequest = new RecordingRequest(
+            request, errorLog, recorder, recordingConfig, nonBlockingEntityReadsMatcher);
         try {
             chain.doFilter(recordingRequest, recordingResponse);
         } catch (IOException e) {
-            throw record(e);
+            throw record(recorder, e);
         } catch (ServletException e) {
-            throw record(e);
+            throw record(recorder, e);
         } catch (RuntimeException e) {
-            throw record(e);
+            throw record(recorder, e);
         } catch (Error e) {
-            throw record(e);
+            throw record(recorder, e);
         }
         finally
         {
             int statusCode = recordingResponse.getStatusCode();
             if (statusCode != -1)
             {
-                getRecorder().recordResponseStatus(statusCode);
+                recorder.recordResponseStatus(statusCode);
             }
 
-            getRecorder().getErrorLink().ifPresent(link -> writeLinkHeader(link, response));
+            recorder.getErrorLink().ifPresent(link -> writeLinkHeader(link, response));
         }
 
     }
@@ -104,8 +119,8 @@ public class RedEggFilter implements Filter {
         }
     }
 
-    private <E extends Throwable> E record(E e) throws E {
-        getRecorder().recordThrown(e);
+    private <E extends Throwable> E record(WebErrorRecorder recorder, E e) throws E {
+        recorder.recordThrown(e);
         throw e;
     }
 
@@ -122,4 +137,14 @@ public class RedEggFilter implements Filter {
     {
         this.errorLog = errorLog;
     }
+
+    public void setRecordingConfig(RecordingConfig recordingConfig)
+    {
+        this.recordingConfig = recordingConfig;
+    }
+
+    public void setNonBlockingEntityReadsMatcher(RequestMatcher nonBlockingEntityReadsMatcher)
+    {
+        this.nonBlockingEntityReadsMatcher = nonBlockingEntityReadsMatcher;
+    }
 }
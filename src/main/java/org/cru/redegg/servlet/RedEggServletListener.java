@@ -7,9 +7,11 @@ import java.time.Instant;
 import org.cru.redegg.boot.Initializer;
 import org.cru.redegg.boot.Lifecycle;
 import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.recording.RecordingConfig;
 import org.cru.redegg.recording.api.ParameterSanitizer;
 import org.cru.redegg.recording.api.RecorderFactory;
 import org.cru.redegg.recording.api.WebErrorRecorder;
+import org.cru.redegg.recording.impl.RecorderBinding;
 
 import javax.inject.Inject;
 import javax.servlet.ServletContextEvent;
@@ -48,6 +50,10 @@ public class RedEggServletListener implements ServletContextListener, ServletReq
     @Selected
     ParameterSanitizer sanitizer;
 
+    @Inject
+    @Selected
+    RecordingConfig recordingConfig;
+
     @Override
     public void contextInitialized(ServletContextEvent sce) {
         Initializer.initializeIfNecessary(this, sce.getServletContext());
@@ -71,6 +77,9 @@ public class RedEggServletListener implements ServletContextListener, ServletReq
     {
         // if we are in an async contextual state, then the request has already been initialized
         if(isAsyncContext(request)) {
+            RecorderBinding binding = getBinding(request);
+            if (binding != null)
+                lifecycle.resumeRequest(binding);
             return;
         }
 
@@ -83,15 +92,31 @@ public class RedEggServletListener implements ServletContextListener, ServletReq
             .recordRequestRemoteIpAddress(request.getRemoteAddr())
             .recordRequestUrl(request.getRequestURL().toString())
             .recordRequestQueryString(request.getQueryString())
-            .recordRequestMethod(request.getMethod())
-            .recordHeaders(getHeadersAsMultimap(request));
+            .recordRequestMethod(request.getMethod());
+
+        if (recordingConfig.isDeferRequestSnapshot())
+            recorder.recordRequestSnapshot(snapshotRecorder -> recordSnapshot(request, snapshotRecorder));
+        else
+            recordSnapshot(request, recorder);
+
+        recorder.startMonitoringRequestForTimeliness();
+
+        // the recorder returned by the calls above is the recorder itself, not a CDI client proxy
+        request.setAttribute(BINDING, lifecycle.bindRequest(recorder));
+    }
+
+    /**
+     * Records the headers and parameters, which are relatively expensive to capture and sanitize.
+     */
+    private void recordSnapshot(HttpServletRequest request, WebErrorRecorder recorder)
+    {
+        recorder.recordHeaders(getHeadersAsMultimap(request));
 
         Categorization categorization = categorizer.categorize(request);
 
         recorder
             .recordRequestQueryParameters(categorization.queryParameters)
-            .recordRequestPostParameters(categorization.postParameters)
-            .startMonitoringRequestForTimeliness();
+            .recordRequestPostParameters(categorization.postParameters);
     }
 
     private Multimap<String, String> getHeadersAsMultimap(HttpServletRequest request) {
@@ -116,18 +141,33 @@ public class RedEggServletListener implements ServletContextListener, ServletReq
 
     @Override
     public void requestDestroyed(ServletRequestEvent sre) {
-        final WebErrorRecorder recorder = recorderFactory.getWebRecorder();
-        // if we are in an async contextual state, then the request has not yet completed
-        if(isAsyncStarted(sre)) {
-            setAsyncContext(sre.getServletRequest(), true);
-            recorder.suspendRequestProcessing();
-        } else {
-            recorder.recordRequestComplete(Instant.now(clock));
-            lifecycle.endRequest();
-            setAsyncContext(sre.getServletRequest(), false);
+        final RecorderBinding binding = getBinding(sre.getServletRequest());
+        // requests are always bound with their web recorder; see requestInitialized()
+        final WebErrorRecorder recorder = binding != null ?
+            (WebErrorRecorder) binding.getRecorder() :
+            recorderFactory.getWebRecorder();
+        try {
+            // if we are in an async contextual state, then the request has not yet completed
+            if(isAsyncStarted(sre)) {
+                setAsyncContext(sre.getServletRequest(), true);
+                recorder.suspendRequestProcessing();
+            } else {
+                if (binding != null)
+                    binding.retire();
+                recorder.recordRequestComplete(Instant.now(clock));
+                lifecycle.endRequest();
+                setAsyncContext(sre.getServletRequest(), false);
+            }
+        } finally {
+            lifecycle.unbindRequest();
         }
     }
 
+    private RecorderBinding getBinding(ServletRequest request)
+    {
+        return (RecorderBinding) request.getAttribute(BINDING);
+    }
+
     private boolean isAsyncStarted(ServletRequestEvent event)
     {
         return event.getServletContext().getMajorVersion() >= 3 &&
@@ -159,10 +199,16 @@ public class RedEggServletListener implements ServletContextListener, ServletReq
         this.sanitizer = sanitizer;
     }
 
+    public void setRecordingConfig(RecordingConfig recordingConfig)
+    {
+        this.recordingConfig = recordingConfig;
+    }
+
     /**
      * Async context state management
      */
     private final String ASYNC_CONTEXT = getClass().getName() + ".asyncContext";
+    private final String BINDING = getClass().getName() + ".recorderBinding";
 
     private boolean isAsyncContext(ServletRequest request) {
         return request.getAttribute(ASYNC_CONTEXT) != null &&
@@ -0,0 +1,114 @@
+package org.cru.redegg.servlet;
+
+import org.cru.redegg.recording.entity.CapturedBytes;
+
+import javax.servlet.ServletInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Passes the request entity through from the container's stream, and copies the first part of it into a {@link CapturedBytes}.
+ *
+ * <p>
+ * Red Egg is built against the Servlet 3.0 api, so this can't override Servlet 3.1's {@code setReadListener()};
+ * {@link RecordingRequest} doesn't use this for requests that may read the entity asynchronously.
+ * It does provide {@link #isFinished()} and {@link #isReady()},
+ * since 3.1 containers and frameworks may call them on any stream.
+ *
+ * @author Matt Drees
+ */
+class TeeServletInputStream extends ServletInputStream
+{
+    /** the container stream's {@code isReady()}, if it is a Servlet 3.1 stream */
+    private static final MethodHandle IS_READY = findIsReady();
+
+    private final ServletInputStream delegate;
+    private final CapturedBytes capture;
+    private boolean finished;
+
+    TeeServletInputStream(ServletInputStream delegate, CapturedBytes capture)
+    {
+        this.delegate = delegate;
+        this.capture = capture;
+    }
+
+    private static MethodHandle findIsReady()
+    {
+        try
+        {
+            return MethodHandles.publicLookup().findVirtual(
+                ServletInputStream.class,
+                "isReady",
+                MethodType.methodType(boolean.class));
+        }
+        catch (NoSuchMethodException | IllegalAccessException e)
+        {
+            return null;
+        }
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        int b = delegate.read();
+        if (b == -1)
+            finished = true;
+        else
+            capture.write(b);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        int count = delegate.read(b, off, len);
+        if (count == -1)
+            finished = true;
+        else
+            capture.write(b, off, count);
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return delegate.available();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        delegate.close();
+    }
+
+    /**
+     * Implements Servlet 3.1's {@code isFinished()}.
+     */
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+    /**
+     * Implements Servlet 3.1's {@code isReady()}.
+     */
+    public boolean isReady()
+    {
+        if (IS_READY == null)
+            return true;
+        try
+        {
+            return (boolean) IS_READY.invoke(delegate);
+        }
+        catch (RuntimeException | Error e)
+        {
+            throw e;
+        }
+        catch (Throwable throwable)
+        {
+            throw new IllegalStateException(throwable);
+        }
+    }
+}
@@ -40,4 +40,9 @@ public class ErrorLog
     {
         log.warn(message);
     }
+
+    public void info(String message)
+    {
+        log.info(message);
+    }
 }
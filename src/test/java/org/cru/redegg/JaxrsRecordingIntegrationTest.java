@@ -6,6 +6,7 @@ import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 import org.cru.redegg.jaxrs.RecordingReaderInterceptor;
 import org.cru.redegg.qualifier.EntityStreamPreservation;
+import org.cru.redegg.recording.api.CapturedEntity;
 import org.cru.redegg.recording.api.RequestMatcher;
 import org.cru.redegg.recording.api.RequestMatchers;
 import org.cru.redegg.recording.api.WebErrorRecorder;
@@ -20,6 +21,7 @@ import org.jboss.shrinkwrap.api.spec.WebArchive;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 
 import javax.enterprise.inject.Default;
 import javax.inject.Inject;
@@ -41,8 +43,7 @@ import static javax.ws.rs.client.Entity.entity;
 import static javax.ws.rs.client.Entity.form;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
-import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.hamcrest.MockitoHamcrest.argThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -92,7 +93,7 @@ public class JaxrsRecordingIntegrationTest
         response.readEntity(Fruit.class);
 
 
-        verify(recorder, never()).recordEntityRepresentation(anyString());
+        verify(recorder, never()).recordEntity(any(CapturedEntity.class));
 
         Multimap<String, String> expected = LinkedHashMultimap.create();
         expected.put("color", "red");
@@ -111,7 +112,7 @@ public class JaxrsRecordingIntegrationTest
             .delete();
         assertThat(response.getStatus(), equalTo(200));
 
-        verify(recorder, never()).recordEntityRepresentation(anyString());
+        verify(recorder, never()).recordEntity(any(CapturedEntity.class));
 
         Multimap<String, String> expected = LinkedHashMultimap.create();
         expected.put("color", "red");
@@ -134,7 +135,9 @@ public class JaxrsRecordingIntegrationTest
             "\"color\": \"orange\"," +
             "\"weight\": 3.3" +
             "}");
-        verify(recorder).recordEntityRepresentation(argThat(matchesExpectedJson));
+        ArgumentCaptor<CapturedEntity> entity = ArgumentCaptor.forClass(CapturedEntity.class);
+        verify(recorder, atLeastOnce()).recordEntity(entity.capture());
+        assertThat(entity.getValue().decode(), matchesExpectedJson);
     }
 
     @Test
@@ -146,7 +149,7 @@ public class JaxrsRecordingIntegrationTest
             .post(entity(fruit, MediaType.APPLICATION_JSON_TYPE));
         assertThat(response.getStatus(), equalTo(200));
 
-        verify(recorder).recordEntityRepresentation(anyString());
+        verify(recorder, atLeastOnce()).recordEntity(any(CapturedEntity.class));
 
         ImmutableMultimap<String, String> expected = ImmutableMultimap.of();
         /* Note: it would be nice to verify this happen occurred exactly once,
@@ -173,7 +176,7 @@ public class JaxrsRecordingIntegrationTest
 
         response.readEntity(Fruit.class);
 
-        verify(recorder, never()).recordEntityRepresentation(anyString());
+        verify(recorder, never()).recordEntity(any(CapturedEntity.class));
 
         Multimap<String, String> expected = LinkedHashMultimap.create();
         expected.put("color", "orange");
@@ -194,7 +197,7 @@ public class JaxrsRecordingIntegrationTest
             .post(form(fruit));
         assertThat(response.getStatus(), equalTo(204));
 
-        verify(recorder).recordEntityRepresentation(anyString());
+        verify(recorder, atLeastOnce()).recordEntity(any(CapturedEntity.class));
 
         Multimap<String, String> expected = ImmutableMultimap.of();
         // See note in testSimpleJsonJaxrsPostJsonRequest()
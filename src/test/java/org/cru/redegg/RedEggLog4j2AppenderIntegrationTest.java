@@ -2,6 +2,7 @@ package org.cru.redegg;
 
 
 import org.apache.logging.log4j.LogManager;
+import org.cru.redegg.recording.api.CapturedLogEvent;
 import org.cru.redegg.recording.api.RecorderFactory;
 import org.cru.redegg.recording.api.WebErrorRecorder;
 import org.cru.redegg.servlet.ParameterCategorizer;
@@ -18,7 +19,6 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import javax.inject.Inject;
-import java.util.logging.LogRecord;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.atLeast;
@@ -63,7 +63,7 @@ public class RedEggLog4j2AppenderIntegrationTest
     public void testLog4j2ErrorLogging() {
         LogManager.getRootLogger().error("error from test");
 
-        verify(recorder, atLeast(1)).recordLogRecord(any(LogRecord.class));
+        verify(recorder, atLeast(1)).recordLogEvent(any(CapturedLogEvent.class));
         verify(recorder, atLeast(1)).sendReportIfNecessary();
     }
 
@@ -1,6 +1,7 @@
 package org.cru.redegg;
 
 
+import org.cru.redegg.recording.api.CapturedLogEvent;
 import org.cru.redegg.recording.api.RecorderFactory;
 import org.cru.redegg.recording.api.WebErrorRecorder;
 import org.cru.redegg.servlet.ParameterCategorizer;
@@ -62,7 +63,7 @@ public class RedEggLog4jAppenderIntegrationTest
     public void testLog4jErrorLogging() throws Exception {
         org.apache.log4j.Logger.getRootLogger().error("error from test");
 
-        verify(recorder, atLeast(1)).recordLogRecord(any(LogRecord.class));
+        verify(recorder, atLeast(1)).recordLogEvent(any(CapturedLogEvent.class));
         verify(recorder, atLeast(1)).sendReportIfNecessary();
     }
 
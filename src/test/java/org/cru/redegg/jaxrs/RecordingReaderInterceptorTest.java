@@ -0,0 +1,149 @@
+package org.cru.redegg.jaxrs;
+
+import com.google.common.io.ByteStreams;
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.api.CapturedEntity;
+import org.cru.redegg.recording.api.RecorderFactory;
+import org.cru.redegg.recording.api.WebErrorRecorder;
+import org.cru.redegg.util.ErrorLog;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Matt Drees
+ */
+public class RecordingReaderInterceptorTest
+{
+    private static final String ENTITY = "{\"color\": \"orange\", \"weight\": 3.3}";
+
+    private final WebErrorRecorder recorder = mock(WebErrorRecorder.class);
+    private final ReaderInterceptorContext context = mock(ReaderInterceptorContext.class);
+    private final ResourceInfo resourceInfo = mock(ResourceInfo.class);
+    private final RecordingConfig recordingConfig = new RecordingConfig();
+    private final RecordingReaderInterceptor interceptor = new RecordingReaderInterceptor();
+
+    private InputStream currentStream;
+    private String readByMessageBodyReader;
+
+    @Before
+    public void setup() throws Exception
+    {
+        RecorderFactory recorderFactory = mock(RecorderFactory.class);
+        when(recorderFactory.getWebRecorder()).thenReturn(recorder);
+        interceptor.setFactory(recorderFactory);
+        interceptor.setRecordingConfig(recordingConfig);
+        interceptor.errorLog = mock(ErrorLog.class);
+        interceptor.resourceInfo = resourceInfo;
+
+        currentStream = new ByteArrayInputStream(ENTITY.getBytes(StandardCharsets.UTF_8));
+        when(context.getInputStream()).thenAnswer(invocation -> currentStream);
+        doAnswer(invocation -> currentStream = invocation.getArgument(0)).when(context).setInputStream(any());
+        when(context.getMediaType()).thenReturn(MediaType.APPLICATION_JSON_TYPE);
+        when(context.proceed()).thenAnswer(invocation ->
+            readByMessageBodyReader = new String(ByteStreams.toByteArray(currentStream), StandardCharsets.UTF_8));
+        doReturn(Resource.class).when(resourceInfo).getResourceClass();
+    }
+
+    @Test
+    public void entityIsCapturedAsItIsRead() throws Exception
+    {
+        when(resourceInfo.getResourceMethod()).thenReturn(Resource.class.getMethod("update"));
+
+        interceptor.aroundReadFrom(context);
+
+        assertThat(readByMessageBodyReader, equalTo(ENTITY));
+        ArgumentCaptor<CapturedEntity> entity = ArgumentCaptor.forClass(CapturedEntity.class);
+        verify(recorder).recordEntity(entity.capture());
+        assertThat(entity.getValue().decode(), equalTo(ENTITY));
+        verify(recorder, never()).recordEntityRepresentation(any());
+    }
+
+    @Test
+    public void captureIsBounded() throws Exception
+    {
+        recordingConfig.setEntityCaptureLimit(9);
+        when(resourceInfo.getResourceMethod()).thenReturn(Resource.class.getMethod("update"));
+
+        interceptor.aroundReadFrom(context);
+
+        assertThat(readByMessageBodyReader, equalTo(ENTITY));
+        ArgumentCaptor<CapturedEntity> entity = ArgumentCaptor.forClass(CapturedEntity.class);
+        verify(recorder).recordEntity(entity.capture());
+        assertThat(entity.getValue().decode(), equalTo("{\"color\":..."));
+    }
+
+    @Test
+    public void annotatedMethodsAreSkipped() throws Exception
+    {
+        when(resourceInfo.getResourceMethod()).thenReturn(Resource.class.getMethod("upload"));
+
+        interceptor.aroundReadFrom(context);
+
+        assertThat(readByMessageBodyReader, equalTo(ENTITY));
+        verify(context, never()).setInputStream(any());
+        verify(recorder, never()).recordEntity(any());
+    }
+
+    @Test
+    public void annotatedClassesAreSkipped() throws Exception
+    {
+        doReturn(UploadResource.class).when(resourceInfo).getResourceClass();
+        when(resourceInfo.getResourceMethod()).thenReturn(UploadResource.class.getMethod("upload"));
+
+        interceptor.aroundReadFrom(context);
+
+        verify(context, never()).setInputStream(any());
+        verify(recorder, never()).recordEntity(any());
+    }
+
+    @Test
+    public void entityIsStillReadWhenRecordingIsNotConfigured() throws Exception
+    {
+        interceptor.setRecordingConfig(null);
+
+        interceptor.aroundReadFrom(context);
+
+        assertThat(readByMessageBodyReader, equalTo(ENTITY));
+        verify(interceptor.errorLog).error(anyString(), any(Throwable.class));
+    }
+
+    public static class Resource
+    {
+        public void update()
+        {
+        }
+
+        @SkipEntityCapture
+        public void upload()
+        {
+        }
+    }
+
+    @SkipEntityCapture
+    public static class UploadResource
+    {
+        public void upload()
+        {
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.cru.redegg.recording;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ * @author Matt Drees
+ */
+public class LoggerNameRulesTest
+{
+
+    @Test
+    public void testExactName()
+    {
+        LoggerNameRules rules = LoggerNameRules.compile(ImmutableSet.of("org.example.Service", "ConfigProviderHelper"));
+
+        assertThat(rules.matches("org.example.Service"), is(true));
+        assertThat(rules.matches("ConfigProviderHelper"), is(true));
+        assertThat(rules.matches("org.example"), is(false));
+        assertThat(rules.matches("org.example.Service.inner"), is(false));
+        assertThat(rules.matches("org.example.ServiceImpl"), is(false));
+        assertThat(rules.matches(null), is(false));
+    }
+
+    @Test
+    public void testTrailingWildcardMatchesLoggerAndDescendants()
+    {
+        LoggerNameRules rules = LoggerNameRules.compile(ImmutableSet.of("com.rollbar.notifier.*"));
+
+        assertThat(rules.matches("com.rollbar.notifier"), is(true));
+        assertThat(rules.matches("com.rollbar.notifier.Rollbar"), is(true));
+        assertThat(rules.matches("com.rollbar.notifier.sender.queue.DiskQueue"), is(true));
+        assertThat(rules.matches("com.rollbar.notifierx.Rollbar"), is(false));
+        assertThat(rules.matches("com.rollbar"), is(false));
+    }
+
+    @Test
+    public void testInnerWildcardMatchesOneSegment()
+    {
+        LoggerNameRules rules = LoggerNameRules.compile(ImmutableSet.of("org.*.sender.Sender", "org.example.sender.Other"));
+
+        assertThat(rules.matches("org.example.sender.Sender"), is(true));
+        assertThat(rules.matches("org.other.sender.Sender"), is(true));
+        assertThat(rules.matches("org.example.sender.Other"), is(true));
+        assertThat(rules.matches("org.sender.Sender"), is(false));
+        assertThat(rules.matches("org.a.b.sender.Sender"), is(false));
+    }
+
+    @Test
+    public void testWildcardAloneMatchesEverything()
+    {
+        LoggerNameRules rules = LoggerNameRules.compile(ImmutableSet.of("*"));
+
+        assertThat(rules.matches("anything"), is(true));
+        assertThat(rules.matches("org.example.Service"), is(true));
+    }
+
+    @Test
+    public void testNoPatternsMatchNothing()
+    {
+        assertThat(LoggerNameRules.compile(ImmutableSet.<String>of()).matches("org.example.Service"), is(false));
+    }
+
+    @Test
+    public void testSamePatternsShareRules()
+    {
+        LoggerNameRules rules = LoggerNameRules.compile(ImmutableList.of("a.b", "c.*"));
+
+        assertThat(LoggerNameRules.compile(ImmutableSet.of("c.*", "a.b")), sameInstance(rules));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptySegmentIsRejected()
+    {
+        LoggerNameRules.compile(ImmutableSet.of("org..example"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPartialWildcardIsRejected()
+    {
+        LoggerNameRules.compile(ImmutableSet.of("org.example*"));
+    }
+}
@@ -0,0 +1,162 @@
+package org.cru.redegg.recording.concurrent;
+
+import org.cru.redegg.recording.api.ErrorRecorder;
+import org.cru.redegg.recording.api.RecorderFactory;
+import org.cru.redegg.recording.impl.RecorderBinding;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Matt Drees
+ */
+public class RecorderPropagatorTest
+{
+    @Mock
+    ErrorRecorder requestRecorder;
+
+    @Mock
+    ErrorRecorder standaloneRecorder;
+
+    @Mock
+    RecorderFactory factory;
+
+    RecorderBinding binding;
+    RecorderPropagator propagator;
+    ExecutorService pool;
+
+    @Before
+    public void setup()
+    {
+        MockitoAnnotations.initMocks(this);
+        when(factory.getRecorder()).thenAnswer(invocation -> {
+            RecorderBinding current = RecorderBinding.current();
+            return current != null ? current.getRecorder() : standaloneRecorder;
+        });
+        propagator = new RecorderPropagator(factory);
+        pool = propagator.wrap(Executors.newFixedThreadPool(4));
+
+        binding = new RecorderBinding(requestRecorder, 100);
+        binding.bind();
+    }
+
+    @After
+    public void tearDown()
+    {
+        binding.retire();
+        RecorderBinding.unbind();
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testParallelBranchesMergeIntoTheRequest() throws Exception
+    {
+        IllegalStateException thrown = new IllegalStateException("boom");
+        List<Future<?>> futures = IntStream.range(0, 8)
+            .mapToObj(i -> pool.submit(() -> {
+                factory.getRecorder().recordContext("branch", i);
+                factory.getRecorder().recordThrown(thrown);
+            }))
+            .collect(Collectors.toList());
+        for (Future<?> future : futures)
+            future.get(5, TimeUnit.SECONDS);
+
+        verify(requestRecorder, never()).recordThrown(any());
+
+        binding.retire();
+
+        verify(requestRecorder, times(8)).recordThrown(thrown);
+        verify(requestRecorder, times(8)).recordContext(anyString(), any());
+        verify(standaloneRecorder, never()).recordThrown(any());
+    }
+
+    @Test
+    public void testCompletableFutureStagesAreBound() throws Exception
+    {
+        IllegalStateException thrown = new IllegalStateException("boom");
+        CompletableFuture
+            .supplyAsync(() -> "account", pool)
+            .thenApplyAsync(propagator.function(account -> {
+                factory.getRecorder().recordThrown(thrown);
+                return account;
+            }))
+            .get(5, TimeUnit.SECONDS);
+
+        binding.retire();
+
+        verify(requestRecorder).recordThrown(thrown);
+    }
+
+    @Test
+    public void testWorkerThreadIsUnboundAfterTheTask() throws Exception
+    {
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        try
+        {
+            RecorderBinding during = worker.submit(propagator.callable(RecorderBinding::current)).get(5, TimeUnit.SECONDS);
+            RecorderBinding after = worker.submit(RecorderBinding::current).get(5, TimeUnit.SECONDS);
+
+            assertThat(during.getToken(), is(binding.getToken()));
+            assertThat(after, is(nullValue()));
+        }
+        finally
+        {
+            worker.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTasksAreNotWrappedWithoutABinding()
+    {
+        RecorderBinding.unbind();
+        Runnable task = () -> {};
+
+        assertThat(propagator.runnable(task), is(sameInstance(task)));
+    }
+
+    @Test
+    public void testTaskRunOnTheRequestThreadRecordsDirectly()
+    {
+        IllegalStateException thrown = new IllegalStateException("boom");
+        propagator.wrap((Runnable command) -> command.run())
+            .execute(() -> factory.getRecorder().recordThrown(thrown));
+
+        verify(requestRecorder).recordThrown(thrown);
+        assertThat(RecorderBinding.current(), is(sameInstance(binding)));
+    }
+
+    @Test
+    public void testRecordingsAfterTheRequestCompletesAreReportedOnTheirOwn() throws Exception
+    {
+        Runnable task = propagator.runnable(() -> factory.getRecorder().recordThrown(new IllegalStateException()));
+        binding.retire();
+
+        pool.submit(task).get(5, TimeUnit.SECONDS);
+
+        verify(requestRecorder, never()).recordThrown(any());
+        verify(standaloneRecorder).recordThrown(any());
+        verify(standaloneRecorder).sendReportIfNecessary();
+    }
+}
@@ -0,0 +1,74 @@
+package org.cru.redegg.recording.entity;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Matt Drees
+ */
+public class CapturedBytesTest
+{
+
+    @Test
+    public void keepsEverythingUnderTheLimit()
+    {
+        CapturedBytes capture = new CapturedBytes(100, StandardCharsets.UTF_8);
+        write(capture, "hello, ");
+        capture.write('w');
+        write(capture, "orld");
+
+        assertThat(capture.decode(), equalTo("hello, world"));
+        assertThat(capture.isTruncated(), is(false));
+    }
+
+    @Test
+    public void keepsOnlyUpToTheLimit()
+    {
+        CapturedBytes capture = new CapturedBytes(5, StandardCharsets.UTF_8);
+        write(capture, "hello, world");
+        capture.write('!');
+
+        assertThat(capture.size(), is(5));
+        assertThat(capture.getTotal(), is(13L));
+        assertThat(capture.decode(), equalTo("hello..."));
+    }
+
+    @Test
+    public void spansChunks()
+    {
+        String content = Strings.repeat("0123456789", CapturedBytes.CHUNK_SIZE / 4);
+        CapturedBytes capture = new CapturedBytes(content.length(), StandardCharsets.UTF_8);
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        for (int off = 0; off < bytes.length; off += 1000)
+        {
+            capture.write(bytes, off, Math.min(1000, bytes.length - off));
+        }
+
+        assertThat(capture.decode(), equalTo(content));
+    }
+
+    @Test
+    public void ignoresWritesAfterRelease()
+    {
+        CapturedBytes capture = new CapturedBytes(100, StandardCharsets.UTF_8);
+        write(capture, "first");
+        capture.release();
+        write(capture, "second");
+        capture.write('!');
+
+        assertThat(capture.size(), is(0));
+        assertThat(capture.getTotal(), is(5L));
+    }
+
+    private void write(CapturedBytes capture, String string)
+    {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        capture.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,96 @@
+package org.cru.redegg.recording.entity;
+
+import com.google.common.base.Strings;
+import com.google.common.io.CharStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Matt Drees
+ */
+public class SpillingCapturedBytesTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void smallEntitiesStayInMemory() throws IOException
+    {
+        SpillingCapturedBytes capture = newCapture(100, 1000);
+        write(capture, "hello");
+
+        assertThat(capture.isSpilled(), is(false));
+        assertThat(capture.decode(), equalTo("hello"));
+        assertThat(temporaryFolder.getRoot().listFiles(), is(emptyArray()));
+    }
+
+    @Test
+    public void largeEntitiesAreSpilledAndReadBack() throws IOException
+    {
+        String content = Strings.repeat("0123456789", 2000);
+        SpillingCapturedBytes capture = newCapture(100, 100_000);
+        write(capture, content);
+
+        assertThat(capture.isSpilled(), is(true));
+        assertThat(capture.getSpilled(), is(content.length() - 100L));
+        assertThat(read(capture), equalTo(content));
+        // it can be read more than once
+        assertThat(capture.decode(), equalTo(content));
+    }
+
+    @Test
+    public void spillingStopsAtTheLimit() throws IOException
+    {
+        SpillingCapturedBytes capture = newCapture(4, 10);
+        write(capture, "hello, world");
+        capture.write('!');
+
+        assertThat(capture.isTruncated(), is(true));
+        assertThat(read(capture), equalTo("hello, wor..."));
+    }
+
+    @Test
+    public void releaseDeletesTheFile() throws IOException
+    {
+        SpillingCapturedBytes capture = newCapture(4, 1000);
+        write(capture, "hello, world");
+
+        capture.release();
+
+        assertThat(temporaryFolder.getRoot().listFiles(), is(emptyArray()));
+        assertThat(capture.isSpilled(), is(false));
+    }
+
+    private SpillingCapturedBytes newCapture(int memoryLimit, long spillLimit)
+    {
+        return new SpillingCapturedBytes(
+            memoryLimit,
+            spillLimit,
+            StandardCharsets.UTF_8,
+            temporaryFolder.getRoot().toPath());
+    }
+
+    private String read(SpillingCapturedBytes capture) throws IOException
+    {
+        try (Reader reader = capture.openReader())
+        {
+            return CharStreams.toString(reader);
+        }
+    }
+
+    private void write(CapturedBytes capture, String string)
+    {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        capture.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,46 @@
+package org.cru.redegg.recording.entity;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Matt Drees
+ */
+public class TeeInputStreamTest
+{
+
+    @Test
+    public void skippedBytesAreCaptured() throws IOException
+    {
+        CapturedBytes capture = new CapturedBytes(100, StandardCharsets.UTF_8);
+        TeeInputStream stream = tee("hello, world", capture);
+
+        assertThat(stream.skip(7), is(7L));
+        assertThat(stream.read(), is((int) 'w'));
+        assertThat(capture.decode(), equalTo("hello, w"));
+    }
+
+    @Test
+    public void skippingNothingOrBackwardsSkipsNothing() throws IOException
+    {
+        CapturedBytes capture = new CapturedBytes(100, StandardCharsets.UTF_8);
+        TeeInputStream stream = tee("hello", capture);
+
+        assertThat(stream.skip(0), is(0L));
+        assertThat(stream.skip(-1), is(0L));
+        assertThat(capture.getTotal(), is(0L));
+        assertThat(stream.read(), is((int) 'h'));
+    }
+
+    private TeeInputStream tee(String content, CapturedBytes capture)
+    {
+        return new TeeInputStream(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), capture);
+    }
+}
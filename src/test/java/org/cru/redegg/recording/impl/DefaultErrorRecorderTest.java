@@ -1,5 +1,10 @@
 package org.cru.redegg.recording.impl;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.api.CapturedLogEvent;
 import org.cru.redegg.recording.api.Serializer;
 import org.cru.redegg.reporting.ErrorReport;
 import org.cru.redegg.reporting.api.ErrorQueue;
@@ -10,12 +15,23 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * @author Matt Drees
@@ -64,6 +80,47 @@ public class DefaultErrorRecorderTest
         assertThat(report.getRootException().get(), CoreMatchers.<Throwable>sameInstance(root));
     }
 
+    @Test
+    public void testRepeatedContextSnapshotsAreSerializedOnce() throws Exception
+    {
+        Map<String, String> mdc = ImmutableMap.of("user", "jdoe", "tenant", "acme");
+        for (int i = 0; i < 50; i++)
+        {
+            recorder.recordContextSnapshot(mdc);
+            recorder.recordContextSnapshot(new HashMap<>(mdc));
+        }
+        recorder.recordContextSnapshot(ImmutableMap.of("user", "jdoe", "tenant", "other"));
+        when(serializer.toString(any())).then(invocation -> invocation.getArgument(0));
+
+        Multimap<String, String> context = recorder.buildReport().getContext();
+
+        assertThat(context.get("user"), contains("jdoe"));
+        assertThat(context.get("tenant"), containsInAnyOrder("acme", "other"));
+        verify(serializer, times(4)).toString(any());
+    }
+
+    @Test
+    public void testMostRecentLogRecordsAreKeptWithPinnedFirstRecords() throws Exception
+    {
+        RecordingConfig recordingConfig = new RecordingConfig();
+        recordingConfig.setLogRecordCapacity(4);
+        recordingConfig.setPinnedLogRecords(1);
+        recorder = new DefaultErrorRecorder(queue, serializer, recordingConfig);
+
+        for (int i = 0; i < 10; i++)
+        {
+            recorder.recordLogRecord(new LogRecord(Level.INFO, "message " + i));
+        }
+
+        List<ErrorReport.LogRecord> logRecords = recorder.buildReport().getLogRecords();
+
+        assertThat(logRecords, hasSize(5));
+        assertThat(logRecords.get(0).message, is("message 0"));
+        assertThat(logRecords.get(1).message, is("<limit of 4 was reached; 6 log records were dropped here>"));
+        assertThat(logRecords.get(2).message, is("message 7"));
+        assertThat(logRecords.get(4).message, is("message 9"));
+    }
+
     @Test
     public void testReportWithTwoUnrelatedLoggedExceptions() throws Exception
     {
@@ -103,6 +160,28 @@ public class DefaultErrorRecorderTest
         assertThat(report.getThrown().get(0), CoreMatchers.<Throwable>sameInstance(wrapper));
     }
 
+    @Test
+    public void testFormattingLogRecordsLeavesLoggedExceptionsAlone() throws Exception
+    {
+        IOException shared = new IOException("boom")
+        {
+            @Override
+            public void setStackTrace(StackTraceElement[] stackTrace)
+            {
+                throw new AssertionError("a logged exception's stack trace was modified");
+            }
+        };
+        LogRecord record = new LogRecord(Level.SEVERE, "bad stuff");
+        record.setThrown(shared);
+        recorder.recordLogRecord(record);
+        recorder.recordThrown(new RuntimeException(shared));
+
+        List<ErrorReport.LogRecord> logRecords = recorder.buildReport().getLogRecords();
+
+        assertThat(logRecords, hasSize(1));
+        assertThat(logRecords.get(0).message, is("bad stuff"));
+    }
+
     @Test
     public void testReportWithALoggedExceptionAndThenARecordedException() throws Exception
     {
@@ -145,5 +224,117 @@ public class DefaultErrorRecorderTest
         assertThat(recorder.shouldNotificationBeSent(), is(false));
     }
 
+    @Test
+    public void testConfiguredLoggerPatternDoesNotTriggerAnError() throws Exception
+    {
+        RecordingConfig recordingConfig = new RecordingConfig();
+        recordingConfig.setLoggersWithIgnoredErrors(ImmutableSet.of("some.dumb.*"));
+        recorder = new DefaultErrorRecorder(queue, serializer, recordingConfig);
+
+        LogRecord record = new LogRecord(Level.SEVERE, "bad stuff");
+        record.setLoggerName("some.dumb.logger");
+        recorder.recordLogRecord(record);
+
+        assertThat(recorder.shouldNotificationBeSent(), is(false));
+
+        record = new LogRecord(Level.SEVERE, "bad stuff");
+        record.setLoggerName("some.smart.logger");
+        recorder.recordLogRecord(record);
+
+        assertThat(recorder.shouldNotificationBeSent(), is(true));
+    }
+
+    @Test
+    public void testCapturedEventIsFormattedOnlyWhenLogRecordsAreNeeded() throws Exception
+    {
+        AtomicInteger formatCount = new AtomicInteger();
+        recorder.recordLogEvent(new CapturedLogEvent(
+            Level.WARNING,
+            "some.logger",
+            System.currentTimeMillis(),
+            null,
+            () -> "formatted " + formatCount.incrementAndGet(),
+            null));
+
+        assertThat(formatCount.get(), is(0));
+        assertThat(recorder.shouldNotificationBeSent(), is(true));
+
+        ErrorReport report = recorder.buildReport();
+
+        assertThat(formatCount.get(), is(0));
+        assertThat(report.getLogRecords().get(0).message, is("formatted 1"));
+        assertThat(report.getLogRecords().get(0).header, endsWith(" some.logger"));
+        assertThat(formatCount.get(), is(1));
+    }
+
+    @Test
+    public void testLongMessageIsCutOffWhileFormatting() throws Exception
+    {
+        AtomicInteger chunksWritten = new AtomicInteger();
+        recorder.recordLogEvent(new CapturedLogEvent(
+            Level.WARNING,
+            "some.logger",
+            System.currentTimeMillis(),
+            null,
+            buffer -> {
+                while (!buffer.isFull())
+                {
+                    buffer.append("0123456789");
+                    chunksWritten.incrementAndGet();
+                }
+            },
+            null));
+
+        String message = recorder.buildReport().getLogRecords().get(0).message;
+
+        assertThat(message.length(), is(2000));
+        assertThat(message, endsWith("456..."));
+        assertThat(chunksWritten.get(), is(201));
+    }
+
+    @Test
+    public void testLogSignatureUsesFirstMostSevereEventWithoutFormatting() throws Exception
+    {
+        AtomicInteger formatCount = new AtomicInteger();
+        recorder.recordLogEvent(new CapturedLogEvent(
+            Level.WARNING,
+            "some.logger",
+            System.currentTimeMillis(),
+            null,
+            "slow request: {}",
+            buffer -> buffer.append("formatted " + formatCount.incrementAndGet()),
+            null));
+        recorder.recordLogEvent(new CapturedLogEvent(
+            Level.SEVERE,
+            "other.logger",
+            System.currentTimeMillis(),
+            null,
+            "unable to frob {}",
+            buffer -> buffer.append("formatted " + formatCount.incrementAndGet()),
+            null));
+
+        ErrorReport report = recorder.buildReport();
+
+        assertThat(report.getLogSignature(), is("other.logger: unable to frob {}"));
+        assertThat(formatCount.get(), is(0));
+    }
+
+    @Test
+    public void testCallerIsIncludedInHeaderWhenCaptured() throws Exception
+    {
+        recorder.recordLogEvent(new CapturedLogEvent(
+            Level.SEVERE,
+            "some.logger",
+            System.currentTimeMillis(),
+            root,
+            () -> "bad stuff",
+            new StackTraceElement("org.example.Widget", "frob", "Widget.java", 12)));
+
+        ErrorReport report = recorder.buildReport();
+
+        assertThat(report.getLogRecords().get(0).header, endsWith(" some.logger org.example.Widget.frob"));
+        assertThat(report.getRootException().get(), CoreMatchers.<Throwable>sameInstance(root));
+    }
+
 
 }
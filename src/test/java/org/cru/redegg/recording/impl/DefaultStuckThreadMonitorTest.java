@@ -145,6 +145,43 @@ public class DefaultStuckThreadMonitorTest
         queue.assertEnqueued(expectedReport(webContext));
     }
 
+    @Test
+    public void unitsOfWorkAreNoticedAfterTheirOwnTimeLimit() throws Exception
+    {
+        Object unit = new Object();
+        monitor.startMonitoringUnitOfWork(unit, "import", Instant.now(clock), Duration.ofMillis(TEST_THRESHOLD_MILLIS / 2));
+
+        // the unit's limit is shorter than the request threshold
+        Thread.sleep(TEST_THRESHOLD_MILLIS / 2 + TEST_PERIOD_MILLIS + 45);
+
+        monitor.finishMonitoringUnitOfWork(unit);
+
+        List<Matcher<? super ErrorReport>> expected = Lists.newArrayList();
+        expected.add(compose(
+            "an error report with",
+            hasFeature(
+                "thrown list",
+                ErrorReport::getThrown,
+                is(contains(isStuckThreadException())))
+        ).and(
+            hasFeature(
+                "unit of work",
+                (ErrorReport report) -> report.getContext().get("unit of work"),
+                contains("import"))
+        ));
+        queue.assertEnqueued(expected);
+    }
+
+    @Test
+    public void fastUnitsOfWorkAreNotNoticed() throws Exception
+    {
+        Object unit = new Object();
+        monitor.startMonitoringUnitOfWork(unit, "import", Instant.now(clock), null);
+        monitor.finishMonitoringUnitOfWork(unit);
+
+        queue.assertNothingEnqueued();
+    }
+
 
 
     private List<Matcher<? super ErrorReport>> expectedReport(WebContext webContext)
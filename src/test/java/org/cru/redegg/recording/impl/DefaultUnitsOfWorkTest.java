@@ -0,0 +1,199 @@
+package org.cru.redegg.recording.impl;
+
+import org.cru.redegg.manual.ManualRecorderFactory;
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.StuckThreadMonitor;
+import org.cru.redegg.recording.api.CapturedLogEvent;
+import org.cru.redegg.recording.api.ErrorRecorder;
+import org.cru.redegg.recording.api.Serializer;
+import org.cru.redegg.recording.api.UnitOfWork;
+import org.cru.redegg.recording.gson.GsonSerializer;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.api.ErrorQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.logging.Level;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Matt Drees
+ */
+public class DefaultUnitsOfWorkTest
+{
+    @Mock
+    ErrorQueue queue;
+
+    @Mock
+    StuckThreadMonitor stuckThreadMonitor;
+
+    Serializer serializer = new GsonSerializer();
+
+    DefaultUnitsOfWork unitsOfWork;
+
+    @Before
+    public void setup()
+    {
+        MockitoAnnotations.initMocks(this);
+        unitsOfWork = new DefaultUnitsOfWork(
+            queue,
+            serializer,
+            new RecordingConfig(),
+            new LogEventBufferPool(new RecordingConfig(), 4),
+            stuckThreadMonitor,
+            Clock.systemDefaultZone());
+    }
+
+    @After
+    public void tearDown()
+    {
+        RecorderBinding.unbind();
+    }
+
+    @Test
+    public void testCleanUnitOfWorkSendsNoReport()
+    {
+        try (UnitOfWork unit = unitsOfWork.begin("clean"))
+        {
+            unit.recordContext("order", "42");
+            unit.recordLogEvent(logEvent(Level.INFO, "all good"));
+        }
+
+        verify(queue, never()).enqueue(any());
+    }
+
+    @Test
+    public void testFailedUnitOfWorkSendsOneAggregatedReport()
+    {
+        IOException first = new IOException("first");
+        IllegalStateException second = new IllegalStateException("second");
+        try (UnitOfWork unit = unitsOfWork.begin("import"))
+        {
+            unit.recordContext("order", "42");
+            unit.recordLogEvent(logEvent(Level.INFO, "starting"));
+            unit.recordLogEvent(logEvent(Level.SEVERE, "failed once", first));
+            unit.recordThrown(second);
+            unit.error();
+            unit.sendReportIfNecessary();
+        }
+
+        ArgumentCaptor<ErrorReport> captor = ArgumentCaptor.forClass(ErrorReport.class);
+        verify(queue, times(1)).enqueue(captor.capture());
+        ErrorReport report = captor.getValue();
+        assertThat(report.getThrown(), contains(first, second));
+        assertThat(report.getContext().get("order"), contains("42"));
+        assertThat(report.getContext().get("unit of work"), contains("import"));
+        assertThat(report.getLogRecords(), hasSize(2));
+    }
+
+    @Test
+    public void testUnitOfWorkIsTheCurrentRecorderWhileOpen()
+    {
+        ManualRecorderFactory factory = new ManualRecorderFactory(null);
+
+        ErrorRecorder during;
+        try (UnitOfWork unit = unitsOfWork.begin("job"))
+        {
+            during = factory.getRecorder();
+            assertThat(during, is(sameInstance((ErrorRecorder) unit)));
+            assertThat(factory.isRecorderActive(), is(true));
+        }
+
+        assertThat(RecorderBinding.current(), is(nullValue()));
+    }
+
+    @Test
+    public void testNestedUnitOfWorkRestoresTheEnclosingBinding()
+    {
+        try (UnitOfWork outer = unitsOfWork.begin("outer"))
+        {
+            RecorderBinding outerBinding = RecorderBinding.current();
+            try (UnitOfWork inner = unitsOfWork.begin("inner"))
+            {
+                assertThat(RecorderBinding.current().getRecorder(), is(sameInstance((ErrorRecorder) inner)));
+            }
+            assertThat(RecorderBinding.current(), is(sameInstance(outerBinding)));
+        }
+    }
+
+    @Test
+    public void testRecordersAreResetAndReused()
+    {
+        try (UnitOfWork unit = unitsOfWork.begin("first"))
+        {
+            unit.recordContext("order", "1");
+            unit.recordThrown(new IOException("boom"));
+        }
+        try (UnitOfWork unit = unitsOfWork.begin("second"))
+        {
+            unit.recordThrown(new IllegalStateException("bang"));
+        }
+
+        ArgumentCaptor<ErrorReport> captor = ArgumentCaptor.forClass(ErrorReport.class);
+        verify(queue, times(2)).enqueue(captor.capture());
+        ErrorReport second = captor.getAllValues().get(1);
+        assertThat(second.getThrown(), hasSize(1));
+        assertThat(second.getContext().containsKey("order"), is(false));
+        assertThat(second.getContext().get("unit of work"), contains("second"));
+    }
+
+    @Test
+    public void testUnitOfWorkIsMonitoredWithItsTimeLimit()
+    {
+        Duration limit = Duration.ofMinutes(5);
+        UnitOfWork unit = unitsOfWork.begin("slow", limit);
+        verify(stuckThreadMonitor).startMonitoringUnitOfWork(same(unit), eq("slow"), any(), eq(limit));
+
+        unit.close();
+        unit.close();
+        verify(stuckThreadMonitor, times(1)).finishMonitoringUnitOfWork(unit);
+
+        UnitOfWork other = unitsOfWork.begin("default");
+        verify(stuckThreadMonitor).startMonitoringUnitOfWork(same(other), eq("default"), any(), isNull());
+        other.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedUnitOfWorkCannotBeUsed()
+    {
+        UnitOfWork unit = unitsOfWork.begin("done");
+        unit.close();
+        unit.recordContext("late", "value");
+    }
+
+    private CapturedLogEvent logEvent(Level level, String message)
+    {
+        return logEvent(level, message, null);
+    }
+
+    private CapturedLogEvent logEvent(Level level, String message, Throwable thrown)
+    {
+        return new CapturedLogEvent(
+            level,
+            "org.example.Job",
+            System.currentTimeMillis(),
+            thrown,
+            buffer -> buffer.append(message),
+            null);
+    }
+}
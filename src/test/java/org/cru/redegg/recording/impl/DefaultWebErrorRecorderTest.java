@@ -2,9 +2,11 @@ package org.cru.redegg.recording.impl;
 
 import java.time.Instant;
 import org.cru.redegg.recording.StuckThreadMonitor;
+import org.cru.redegg.recording.api.CapturedEntity;
 import org.cru.redegg.recording.api.EntitySanitizer;
 import org.cru.redegg.recording.api.NotificationLevel;
 import org.cru.redegg.recording.api.Serializer;
+import org.cru.redegg.recording.api.WebErrorRecorder;
 import org.cru.redegg.reporting.ErrorReport;
 import org.cru.redegg.reporting.api.ErrorQueue;
 import org.cru.redegg.util.ErrorLog;
@@ -13,15 +15,20 @@ import org.hamcrest.Matcher;
 import org.hamcrest.TypeSafeDiagnosingMatcher;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.InternalServerErrorException;
+import java.util.function.Consumer;
 
 import static org.cru.redegg.recording.api.NotificationLevel.ERROR;
 import static org.cru.redegg.recording.api.NotificationLevel.WARNING;
 import static org.mockito.hamcrest.MockitoHamcrest.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 /**
@@ -68,6 +75,86 @@ public class DefaultWebErrorRecorderTest
 
         verify(queue).enqueue(argThat(isServerError()));
     }
+
+    @Test
+    public void capturedEntityIsDecodedOnlyWhenAReportIsSent()
+    {
+        CapturedEntity entity = Mockito.mock(CapturedEntity.class);
+        Mockito.when(entity.decode()).thenReturn("{\"name\": \"bob\"}");
+        recorder.recordEntity(entity);
+
+        recorder.recordThrown(new InternalServerErrorException());
+        recorder.recordResponseStatus(500);
+        recorder.recordRequestComplete(Instant.now());
+
+        verify(entity).decode();
+        verify(entitySanitizer).sanitizeEntity("{\"name\": \"bob\"}");
+        verify(entity).release();
+    }
+
+    @Test
+    public void capturedEntityIsReleasedWithoutDecodingForACleanRequest()
+    {
+        CapturedEntity entity = Mockito.mock(CapturedEntity.class);
+        recorder.recordEntity(entity);
+        recorder.recordResponseStatus(200);
+        recorder.recordRequestComplete(Instant.now());
+
+        verify(entity, never()).decode();
+        verify(entity).release();
+    }
+
+    @Test
+    public void spilledEntityIsHandedToTheReport()
+    {
+        CapturedEntity entity = Mockito.mock(CapturedEntity.class);
+        Mockito.when(entity.isSpilled()).thenReturn(true);
+        recorder.recordEntity(entity);
+
+        recorder.recordThrown(new InternalServerErrorException());
+        recorder.recordResponseStatus(500);
+        recorder.recordRequestComplete(Instant.now());
+
+        ArgumentCaptor<ErrorReport> report = ArgumentCaptor.forClass(ErrorReport.class);
+        verify(queue).enqueue(report.capture());
+        verify(entity, never()).decode();
+        verify(entity, never()).release();
+
+        report.getValue().release();
+        verify(entity).release();
+    }
+
+    @Test
+    public void deferredSnapshotIsTakenWhenAnErrorIsRecorded()
+    {
+        Consumer<WebErrorRecorder> snapshot = mockSnapshot();
+        recorder.recordRequestSnapshot(snapshot);
+        verify(snapshot, never()).accept(Mockito.any());
+
+        recorder.recordThrown(new InternalServerErrorException());
+        recorder.error();
+        recorder.recordRequestComplete(Instant.now());
+
+        verify(snapshot, times(1)).accept(recorder);
+    }
+
+    @Test
+    public void deferredSnapshotIsNotTakenForACleanRequest()
+    {
+        Consumer<WebErrorRecorder> snapshot = mockSnapshot();
+        recorder.recordRequestSnapshot(snapshot);
+        recorder.recordResponseStatus(200);
+        recorder.recordRequestComplete(Instant.now());
+
+        verify(snapshot, never()).accept(Mockito.any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Consumer<WebErrorRecorder> mockSnapshot()
+    {
+        return Mockito.mock(Consumer.class);
+    }
+
     @Test
     public void clientErrorShouldTriggerAUserErrorReport()
     {
@@ -0,0 +1,106 @@
+package org.cru.redegg.recording.impl;
+
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.api.CapturedLogEvent;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ * @author Matt Drees
+ */
+public class LogEventBufferTest
+{
+
+    @Test
+    public void testEventsAreKeptUntilFull()
+    {
+        LogEventBuffer buffer = new LogEventBuffer(3, 0);
+        addEvents(buffer, 2);
+
+        assertThat(messages(buffer), contains("event 0", "event 1"));
+        assertThat(buffer.getEvictedCount(), is(0L));
+    }
+
+    @Test
+    public void testMostRecentEventsAreKept()
+    {
+        LogEventBuffer buffer = new LogEventBuffer(3, 0);
+        addEvents(buffer, 7);
+
+        assertThat(messages(buffer), contains("event 4", "event 5", "event 6"));
+        assertThat(buffer.size(), is(3));
+        assertThat(buffer.getEvictedCount(), is(4L));
+    }
+
+    @Test
+    public void testPinnedEventsAreNeverEvicted()
+    {
+        LogEventBuffer buffer = new LogEventBuffer(4, 2);
+        addEvents(buffer, 9);
+
+        assertThat(messages(buffer), contains("event 0", "event 1", "event 7", "event 8"));
+        assertThat(buffer.getPinnedCount(), is(2));
+        assertThat(buffer.getEvictedCount(), is(5L));
+    }
+
+    @Test
+    public void testClearedBufferCanBeReused()
+    {
+        LogEventBuffer buffer = new LogEventBuffer(3, 1);
+        addEvents(buffer, 5);
+        buffer.clear();
+
+        assertThat(buffer.isEmpty(), is(true));
+        assertThat(messages(buffer), empty());
+
+        addEvents(buffer, 2);
+        assertThat(messages(buffer), contains("event 0", "event 1"));
+        assertThat(buffer.getEvictedCount(), is(0L));
+    }
+
+    @Test
+    public void testPoolReusesReleasedBuffers()
+    {
+        LogEventBufferPool pool = new LogEventBufferPool(new RecordingConfig(), 1);
+        LogEventBuffer buffer = pool.acquire();
+        addEvents(buffer, 2);
+        pool.release(buffer);
+
+        LogEventBuffer reused = pool.acquire();
+        assertThat(reused, sameInstance(buffer));
+        assertThat(reused.isEmpty(), is(true));
+        assertThat(pool.acquire(), not(sameInstance(buffer)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPinnedCapacityMustLeaveRoomForRecentEvents()
+    {
+        new LogEventBuffer(2, 2);
+    }
+
+    private void addEvents(LogEventBuffer buffer, int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            String message = "event " + i;
+            buffer.add(new CapturedLogEvent(Level.INFO, "some.logger", 0, null, () -> message, null));
+        }
+    }
+
+    private List<String> messages(LogEventBuffer buffer)
+    {
+        return buffer.getEvents().stream()
+            .map(CapturedLogEvent::getFormattedMessage)
+            .collect(Collectors.toList());
+    }
+}
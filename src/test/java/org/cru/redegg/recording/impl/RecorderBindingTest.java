@@ -0,0 +1,81 @@
+package org.cru.redegg.recording.impl;
+
+import org.cru.redegg.recording.api.CapturedLogEvent;
+import org.cru.redegg.recording.api.ErrorRecorder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Matt Drees
+ */
+public class RecorderBindingTest
+{
+    private final ErrorRecorder requestRecorder = mock(ErrorRecorder.class);
+
+    @Test
+    public void logEventsDoNotPushOutBranchFailures()
+    {
+        RecorderBinding binding = new RecorderBinding(requestRecorder, 2);
+        ErrorRecorder branch = binding.branch(() -> mock(ErrorRecorder.class)).getRecorder();
+        IllegalStateException failure = new IllegalStateException("branch failed");
+
+        branch.recordThrown(failure);
+        branch.error();
+        for (int i = 0; i < 5; i++)
+        {
+            branch.recordLogRecord(new LogRecord(Level.FINE, "noise " + i));
+        }
+        binding.retire();
+
+        verify(requestRecorder).recordThrown(failure);
+        verify(requestRecorder).error();
+        verify(requestRecorder, times(2)).recordLogEvent(any(CapturedLogEvent.class));
+    }
+
+    @Test
+    public void recordingsAreEitherAppliedOrRefusedWhileRetiring() throws Exception
+    {
+        RecorderBinding binding = new RecorderBinding(requestRecorder, 1_000_000);
+        AtomicInteger applied = new AtomicInteger();
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(4);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++)
+        {
+            Thread thread = new Thread(() -> {
+                started.countDown();
+                while (binding.defer(recorder -> applied.incrementAndGet()))
+                {
+                    accepted.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        started.await();
+        Thread.sleep(20);
+        binding.retire();
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertThat(accepted.get(), greaterThan(0));
+        assertThat(applied.get(), equalTo(accepted.get()));
+    }
+}
@@ -0,0 +1,45 @@
+package org.cru.redegg.recording.impl;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * @author Matt Drees
+ */
+public class TimestampFormatterTest
+{
+    private final TimestampFormatter formatter = new TimestampFormatter();
+
+    @Test
+    public void testMatchesIsoZonedDateTime()
+    {
+        long second = 1714576530000L;
+        long[] timestamps = {
+            second, second + 1, second + 10, second + 120, second + 123, second + 999,
+            second + 1000, second + 1500, second - 1, 0L, -1L, -1001L
+        };
+
+        for (long millis : timestamps)
+        {
+            assertThat("millis " + millis, format(millis), equalTo(isoFormat(millis)));
+        }
+    }
+
+    private String format(long millis)
+    {
+        StringBuilder builder = new StringBuilder();
+        formatter.formatTo(builder, millis);
+        return builder.toString();
+    }
+
+    private String isoFormat(long millis)
+    {
+        return DateTimeFormatter.ISO_ZONED_DATE_TIME.format(Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()));
+    }
+}
@@ -0,0 +1,150 @@
+package org.cru.redegg.recording.log4j2;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.spi.MutableThreadContextStack;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.api.CapturedLogEvent;
+import org.cru.redegg.recording.api.ErrorRecorder;
+import org.cru.redegg.recording.api.RecorderFactory;
+import org.cru.redegg.recording.api.WebErrorRecorder;
+import org.cru.redegg.recording.impl.RecorderBinding;
+import org.cru.redegg.test.AnswerWithSelf;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Matt Drees
+ */
+public class RedEggLog4j2AppenderTest
+{
+    private final RecorderFactory factory = mock(RecorderFactory.class);
+    private final ErrorRecorder standaloneRecorder = mock(ErrorRecorder.class, new AnswerWithSelf(ErrorRecorder.class));
+    private final WebErrorRecorder requestRecorder = mock(WebErrorRecorder.class, new AnswerWithSelf(WebErrorRecorder.class));
+
+    private RedEggLog4j2Appender appender;
+
+    @Before
+    public void setup()
+    {
+        when(factory.getRecorder()).thenReturn(standaloneRecorder);
+
+        RecordingConfig config = new RecordingConfig();
+        config.setPropagateRequestToken(true);
+        appender = new RedEggLog4j2Appender(factory, ImmutableSet.of(), config);
+    }
+
+    @Test
+    public void testContextDataIsRecordedForWarnings()
+    {
+        appender.append(event(Level.WARN, null));
+
+        verify(standaloneRecorder).recordContextSnapshot(ImmutableMap.of("user", "jdoe"));
+        verify(standaloneRecorder).recordLogEvent(any(CapturedLogEvent.class));
+    }
+
+    @Test
+    public void testFrozenContextDataIsSharedWithoutCopying()
+    {
+        SortedArrayStringMap contextData = new SortedArrayStringMap();
+        contextData.putValue("user", "jdoe");
+        contextData.putValue(RedEggLog4j2Appender.REQUEST_TOKEN_KEY, "abc");
+        contextData.freeze();
+
+        Map<String, String> snapshot = ContextDataSnapshot.of(contextData);
+
+        assertThat(snapshot, equalTo(ImmutableMap.of("user", "jdoe")));
+        assertThat(snapshot.get(RedEggLog4j2Appender.REQUEST_TOKEN_KEY), nullValue());
+        assertThat(snapshot, equalTo(ContextDataSnapshot.of(contextData)));
+    }
+
+    @Test
+    public void testContextStackIsRecordedOnlyWhenItIsNotEmpty()
+    {
+        appender.append(event(Level.WARN, null));
+        verify(standaloneRecorder, never()).recordContext(eq("log4j2 NDC"), any());
+
+        LogEvent nested = new Log4jLogEvent.Builder(event(Level.WARN, null))
+            .setContextStack(new MutableThreadContextStack(Collections.singletonList("level 0")))
+            .build();
+        appender.append(nested);
+        verify(standaloneRecorder).recordContext("log4j2 NDC", Collections.singletonList("level 0"));
+    }
+
+    @Test
+    public void testContextDataWithOnlyTheRequestTokenIsNotCopied()
+    {
+        SortedArrayStringMap contextData = new SortedArrayStringMap();
+        contextData.putValue(RedEggLog4j2Appender.REQUEST_TOKEN_KEY, "abc");
+
+        assertThat(ContextDataSnapshot.of(contextData), is(Collections.<String, String>emptyMap()));
+    }
+
+    @Test
+    public void testEventFromAnotherThreadIsDeferredToItsRequest()
+    {
+        RecorderBinding binding = new RecorderBinding(requestRecorder, 10);
+
+        appender.append(event(Level.DEBUG, binding.getToken()));
+        appender.append(event(Level.ERROR, binding.getToken()));
+
+        verify(requestRecorder, never()).recordLogEvent(any(CapturedLogEvent.class));
+        verify(factory, never()).getRecorder();
+
+        binding.retire();
+
+        ArgumentCaptor<CapturedLogEvent> captured = ArgumentCaptor.forClass(CapturedLogEvent.class);
+        verify(requestRecorder, times(2)).recordLogEvent(captured.capture());
+        assertThat(captured.getAllValues().get(1).getFormattedMessage(), is("something happened"));
+        verify(requestRecorder).recordContextSnapshot(ImmutableMap.of("user", "jdoe"));
+    }
+
+    @Test
+    public void testEventForCompletedRequestIsRecordedWithoutIt()
+    {
+        RecorderBinding binding = new RecorderBinding(requestRecorder, 10);
+        binding.retire();
+
+        appender.append(event(Level.ERROR, binding.getToken()));
+
+        verify(standaloneRecorder).recordLogEvent(any(CapturedLogEvent.class));
+        verify(standaloneRecorder).sendReportIfNecessary();
+    }
+
+    private LogEvent event(Level level, String requestToken)
+    {
+        SortedArrayStringMap contextData = new SortedArrayStringMap();
+        contextData.putValue("user", "jdoe");
+        if (requestToken != null)
+            contextData.putValue(RedEggLog4j2Appender.REQUEST_TOKEN_KEY, requestToken);
+
+        return Log4jLogEvent.newBuilder()
+            .setLoggerName("org.example.Service")
+            .setLevel(level)
+            .setMessage(new SimpleMessage("something happened"))
+            .setContextData(contextData)
+            .setTimeMillis(System.currentTimeMillis())
+            .build();
+    }
+}
@@ -0,0 +1,110 @@
+package org.cru.redegg.recording.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import com.google.common.collect.ImmutableSet;
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.api.ErrorRecorder;
+import org.cru.redegg.recording.api.RecorderFactory;
+import org.cru.redegg.recording.api.Serializer;
+import org.cru.redegg.recording.api.WebErrorRecorder;
+import org.cru.redegg.recording.impl.DefaultErrorRecorder;
+import org.cru.redegg.reporting.api.ErrorQueue;
+import org.cru.redegg.test.Measurements;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Measures the per-event cost of logging a DEBUG message through logback,
+ * with and without red-egg's appender attached.
+ * Each simulated request logs 50 events to its own recorder, and none of them trigger a report.
+ * The "background" case logs with no request active, as an executor thread would.
+ * See {@link Measurements} for how to run it.
+ *
+ * @author Matt Drees
+ */
+public class LogCaptureOverheadCheck
+{
+    private static final int EVENTS_PER_REQUEST = 50;
+    private static final int WARMUP = 50_000;
+    private static final int EVENTS = 200_000;
+
+    private final ErrorQueue queue = mock(ErrorQueue.class);
+    private final Serializer serializer = mock(Serializer.class);
+
+    @Test
+    public void measureOverhead() throws Exception
+    {
+        for (int round = 1; round <= 3; round++)
+        {
+            measure("no red-egg", null, null);
+            measure("red-egg", new RecordingConfig(), new PerRequestRecorderFactory());
+            RecordingConfig withCallerData = new RecordingConfig();
+            withCallerData.setIncludeCallerData(true);
+            measure("+ callers", withCallerData, new PerRequestRecorderFactory());
+            measure("background", new RecordingConfig(), new BackgroundRecorderFactory());
+        }
+    }
+
+    private void measure(String name, RecordingConfig config, RecorderFactory factory) throws Exception
+    {
+        LoggerContext context = new LoggerContext();
+        Logger logger = context.getLogger("org.example.Service");
+        logger.setLevel(Level.DEBUG);
+        if (config != null)
+        {
+            RedEggLogbackAppender appender = new RedEggLogbackAppender(
+                factory, ImmutableSet.of(), config);
+            appender.setContext(context);
+            appender.start();
+            context.getLogger(Logger.ROOT_LOGGER_NAME).addAppender(appender);
+        }
+
+        Measurements.measureCost(
+            name, "event", WARMUP, EVENTS, i -> logger.debug("processing item {} of {}", i, EVENTS));
+        context.stop();
+    }
+
+    private class PerRequestRecorderFactory implements RecorderFactory
+    {
+        private DefaultErrorRecorder recorder;
+        private int events;
+
+        @Override
+        public ErrorRecorder getRecorder()
+        {
+            if (events++ % EVENTS_PER_REQUEST == 0)
+                recorder = new DefaultErrorRecorder(queue, serializer);
+            return recorder;
+        }
+
+        @Override
+        public WebErrorRecorder getWebRecorder()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class BackgroundRecorderFactory implements RecorderFactory
+    {
+        @Override
+        public ErrorRecorder getRecorder()
+        {
+            return new DefaultErrorRecorder(queue, serializer);
+        }
+
+        @Override
+        public WebErrorRecorder getWebRecorder()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isRecorderActive()
+        {
+            return false;
+        }
+    }
+}
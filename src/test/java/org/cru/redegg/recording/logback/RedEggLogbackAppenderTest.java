@@ -0,0 +1,84 @@
+package org.cru.redegg.recording.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import com.google.common.collect.ImmutableSet;
+import org.cru.redegg.recording.api.CapturedLogEvent;
+import org.cru.redegg.recording.api.ErrorRecorder;
+import org.cru.redegg.recording.api.RecorderFactory;
+import org.cru.redegg.test.AnswerWithSelf;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Matt Drees
+ */
+public class RedEggLogbackAppenderTest
+{
+    private final RecorderFactory factory = mock(RecorderFactory.class);
+    private final ErrorRecorder recorder = mock(ErrorRecorder.class, new AnswerWithSelf(ErrorRecorder.class));
+
+    private LoggerContext context;
+    private Logger logger;
+
+    @Before
+    public void setup()
+    {
+        when(factory.getRecorder()).thenReturn(recorder);
+
+        context = new LoggerContext();
+        context.setMDCAdapter(new LogbackMDCAdapter());
+        logger = context.getLogger("org.example.Service");
+        logger.setLevel(Level.DEBUG);
+        RedEggLogbackAppender appender = new RedEggLogbackAppender(factory, ImmutableSet.of());
+        appender.setContext(context);
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @After
+    public void tearDown()
+    {
+        context.stop();
+    }
+
+    @Test
+    public void testInfoWithoutActiveRecorderIsSkipped()
+    {
+        when(factory.isRecorderActive()).thenReturn(false);
+
+        logger.info("processing item {}", 1);
+
+        verify(factory, never()).getRecorder();
+    }
+
+    @Test
+    public void testWarningWithoutActiveRecorderIsRecorded()
+    {
+        when(factory.isRecorderActive()).thenReturn(false);
+
+        logger.warn("item {} looks odd", 1);
+
+        verify(recorder).recordLogEvent(any(CapturedLogEvent.class));
+        verify(recorder).sendReportIfNecessary();
+    }
+
+    @Test
+    public void testInfoWithActiveRecorderIsRecorded()
+    {
+        when(factory.isRecorderActive()).thenReturn(true);
+
+        logger.info("processing item {}", 1);
+
+        verify(recorder).recordLogEvent(any(CapturedLogEvent.class));
+    }
+}
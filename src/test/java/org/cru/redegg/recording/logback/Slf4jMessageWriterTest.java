@@ -0,0 +1,62 @@
+package org.cru.redegg.recording.logback;
+
+import org.cru.redegg.recording.api.MessageBuffer;
+import org.junit.Test;
+import org.slf4j.helpers.MessageFormatter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * @author Matt Drees
+ */
+public class Slf4jMessageWriterTest
+{
+
+    @Test
+    public void testMatchesSlf4jFormatting()
+    {
+        Object[] selfReferencing = new Object[1];
+        selfReferencing[0] = selfReferencing;
+
+        assertSameAsSlf4j("no arguments", null);
+        assertSameAsSlf4j(null, new Object[]{"a"});
+        assertSameAsSlf4j("user {} did {}", new Object[]{"jdoe", 42});
+        assertSameAsSlf4j("too few {} {} {}", new Object[]{"a"});
+        assertSameAsSlf4j("too many {}", new Object[]{"a", "b", new RuntimeException()});
+        assertSameAsSlf4j("escaped \\{} then {}", new Object[]{"a"});
+        assertSameAsSlf4j("double escaped \\\\{}", new Object[]{"a"});
+        assertSameAsSlf4j("nulls {} {}", new Object[]{null, "b"});
+        assertSameAsSlf4j("arrays {} {} {}", new Object[]{new int[]{1, 2}, new String[]{"x", "y"}, selfReferencing});
+        assertSameAsSlf4j("{}{}", new Object[]{"adjacent", "placeholders"});
+    }
+
+    @Test
+    public void testStopsFormattingWhenBufferIsFull()
+    {
+        Object expensive = new Object()
+        {
+            @Override
+            public String toString()
+            {
+                throw new AssertionError("should not be formatted");
+            }
+        };
+        MessageBuffer buffer = new MessageBuffer(10);
+
+        new Slf4jMessageWriter("{} {}", new Object[]{"more than ten characters", expensive}).writeTo(buffer);
+
+        assertThat(buffer.toString(), equalTo("more th..."));
+    }
+
+    private void assertSameAsSlf4j(String pattern, Object[] arguments)
+    {
+        MessageBuffer buffer = new MessageBuffer(Integer.MAX_VALUE);
+        new Slf4jMessageWriter(pattern, arguments).writeTo(buffer);
+
+        String expected = arguments == null ?
+            String.valueOf(pattern) :
+            String.valueOf(MessageFormatter.arrayFormat(pattern, arguments).getMessage());
+        assertThat(buffer.toString(), equalTo(expected));
+    }
+}
@@ -1,18 +1,37 @@
 package org.cru.redegg.reporting;
 
 import org.cru.redegg.reporting.api.ErrorReporter;
+import org.cru.redegg.reporting.ratelimit.ReportRateLimiter;
 import org.cru.redegg.util.ErrorLog;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -55,20 +74,180 @@ public class InMemoryErrorQueueTest
     {
         queue.enqueue(new ErrorReport());
 
-        verify(executorService).submit(any(Runnable.class));
+        verify(executorService).execute(any(Runnable.class));
         verify(errorLog, never()).error(anyString(), any(Throwable.class));
     }
 
     @Test
     public void testEnqueueWhenExecutorServiceRejectsTask() throws Exception
     {
-        when(executorService.submit(any(Runnable.class)))
-            .thenThrow(new RejectedExecutionException());
+        doThrow(new RejectedExecutionException())
+            .when(executorService).execute(any(Runnable.class));
 
         ErrorReport report = new ErrorReport();
         queue.enqueue(report);
 
         verify(fallbackReporter).send(report);
         verify(errorLog).error(anyString(), any(Throwable.class));
+        assertThat(queue.getMetrics().getEnqueuedCount(), equalTo(0L));
+    }
+
+    @Test
+    public void testDropNewestWhenFull() throws Exception
+    {
+        CountDownLatch release = blockPrimaryReporter();
+        InMemoryErrorQueue boundedQueue = buildBoundedQueue(OverflowPolicy.DROP_NEWEST);
+
+        boundedQueue.enqueue(new ErrorReport()); // picked up by the worker, which then blocks
+        verify(primaryErrorReporter, timeout(1000)).send(any(ErrorReport.class));
+        boundedQueue.enqueue(new ErrorReport()); // waits in the queue
+        ErrorReport dropped = spy(new ErrorReport());
+        boundedQueue.enqueue(dropped);
+
+        assertThat(boundedQueue.getMetrics().getQueueDepth(), equalTo(1));
+        assertThat(boundedQueue.getMetrics().getDroppedCount(), equalTo(1L));
+        assertThat(boundedQueue.getMetrics().getEnqueuedCount(), equalTo(2L));
+        verify(fallbackReporter, never()).send(any(ErrorReport.class));
+        verify(dropped).release();
+
+        release.countDown();
+        boundedQueue.shutdown();
+        assertThat(boundedQueue.getMetrics().getDeliveredCount(), equalTo(2L));
+    }
+
+    @Test
+    public void testDropOldestReleasesTheDroppedReport() throws Exception
+    {
+        CountDownLatch release = blockPrimaryReporter();
+        InMemoryErrorQueue boundedQueue = buildBoundedQueue(OverflowPolicy.DROP_OLDEST);
+
+        boundedQueue.enqueue(new ErrorReport());
+        verify(primaryErrorReporter, timeout(1000)).send(any(ErrorReport.class));
+        ErrorReport oldest = spy(new ErrorReport());
+        boundedQueue.enqueue(oldest);
+        ErrorReport newest = new ErrorReport();
+        boundedQueue.enqueue(newest);
+
+        assertThat(boundedQueue.getMetrics().getDroppedCount(), equalTo(1L));
+        verify(oldest).release();
+
+        release.countDown();
+        boundedQueue.shutdown();
+        verify(primaryErrorReporter, never()).send(oldest);
+        verify(primaryErrorReporter).send(newest);
+    }
+
+    @Test
+    public void testCallerRunsFallbackWhenFull() throws Exception
+    {
+        CountDownLatch release = blockPrimaryReporter();
+        InMemoryErrorQueue boundedQueue = buildBoundedQueue(OverflowPolicy.CALLER_RUNS);
+
+        boundedQueue.enqueue(new ErrorReport());
+        verify(primaryErrorReporter, timeout(1000)).send(any(ErrorReport.class));
+        boundedQueue.enqueue(new ErrorReport());
+        ErrorReport overflow = new ErrorReport();
+        boundedQueue.enqueue(overflow);
+
+        verify(fallbackReporter).send(overflow);
+        assertThat(boundedQueue.getMetrics().getFallbackCount(), equalTo(1L));
+        assertThat(boundedQueue.getMetrics().getDroppedCount(), equalTo(0L));
+
+        release.countDown();
+        boundedQueue.shutdown();
+    }
+
+    @Test
+    public void testBlockTimesOutWhenFull() throws Exception
+    {
+        CountDownLatch release = blockPrimaryReporter();
+        InMemoryErrorQueue boundedQueue = buildBoundedQueue(OverflowPolicy.BLOCK);
+
+        boundedQueue.enqueue(new ErrorReport());
+        verify(primaryErrorReporter, timeout(1000)).send(any(ErrorReport.class));
+        boundedQueue.enqueue(new ErrorReport());
+
+        long start = System.nanoTime();
+        ErrorReport dropped = spy(new ErrorReport());
+        boundedQueue.enqueue(dropped);
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(waitedMillis >= 40, equalTo(true));
+        assertThat(boundedQueue.getMetrics().getDroppedCount(), equalTo(1L));
+        verify(dropped).release();
+
+        release.countDown();
+        boundedQueue.shutdown();
+    }
+
+    @Test
+    public void testDropOldestQueuesTheTaskWithoutResubmittingIt() throws Exception
+    {
+        DeliveryCounters counters = new DeliveryCounters();
+        ThreadPoolExecutor executor = mock(ThreadPoolExecutor.class);
+        BlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<>(1);
+        Runnable oldest = () -> {};
+        workQueue.add(oldest);
+        when(executor.getQueue()).thenReturn(workQueue);
+        Runnable task = () -> {};
+
+        overflowHandler(OverflowPolicy.DROP_OLDEST, counters).rejectedExecution(task, executor);
+
+        assertThat(workQueue, contains(task));
+        assertThat(counters.getDroppedCount(), equalTo(1L));
+        verify(executor, never()).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void testBlockedTaskIsTakenBackIfTheQueueShutsDownWhileWaiting() throws Exception
+    {
+        ThreadPoolExecutor executor = mock(ThreadPoolExecutor.class);
+        BlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<>(1);
+        when(executor.getQueue()).thenReturn(workQueue);
+        when(executor.isShutdown()).thenReturn(false, true);
+
+        try
+        {
+            overflowHandler(OverflowPolicy.BLOCK, new DeliveryCounters()).rejectedExecution(() -> {}, executor);
+            fail("expected RejectedExecutionException");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // not dropped, so the report goes to the fallback reporter
+            assertThat(e, not(instanceOf(InMemoryErrorQueue.ReportDroppedException.class)));
+        }
+        assertThat(workQueue, empty());
+    }
+
+    private InMemoryErrorQueue.OverflowHandler overflowHandler(OverflowPolicy policy, DeliveryCounters counters)
+    {
+        ErrorQueueConfig config = new ErrorQueueConfig();
+        config.setOverflowPolicy(policy);
+        config.setBlockTimeout(Duration.ofMillis(50));
+        return new InMemoryErrorQueue.OverflowHandler(config, counters);
+    }
+
+    private CountDownLatch blockPrimaryReporter()
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> release.await(5, TimeUnit.SECONDS))
+            .when(primaryErrorReporter).send(any(ErrorReport.class));
+        return release;
+    }
+
+    private InMemoryErrorQueue buildBoundedQueue(OverflowPolicy policy)
+    {
+        ErrorQueueConfig config = new ErrorQueueConfig();
+        config.setWorkerCount(1);
+        config.setQueueCapacity(1);
+        config.setOverflowPolicy(policy);
+        config.setBlockTimeout(Duration.ofMillis(50));
+        return new InMemoryErrorQueue(
+            primaryErrorReporter,
+            fallbackReporter,
+            errorLog,
+            enricher,
+            config,
+            ReportRateLimiter.UNLIMITED);
     }
 }
@@ -0,0 +1,183 @@
+package org.cru.redegg.reporting.breaker;
+
+import com.google.common.base.Ticker;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.api.CircuitState;
+import org.cru.redegg.reporting.api.ErrorReporter;
+import org.cru.redegg.reporting.dedup.ReportSuppressedException;
+import org.cru.redegg.util.ErrorLog;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Matt Drees
+ */
+public class CircuitBreakingReporterTest
+{
+    @Mock
+    ErrorReporter delegate;
+
+    @Mock
+    ErrorLog errorLog;
+
+    FakeTicker ticker = new FakeTicker();
+
+    CircuitBreaker breaker;
+
+    CircuitBreakingReporter reporter;
+
+    @Before
+    public void setup()
+    {
+        MockitoAnnotations.initMocks(this);
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setFailureThreshold(3);
+        config.setOpenDuration(Duration.ofSeconds(30));
+        breaker = new CircuitBreaker(config, errorLog, ticker);
+        reporter = new CircuitBreakingReporter(delegate, breaker);
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveFailures()
+    {
+        doThrow(new IllegalStateException("down")).when(delegate).send(any(ErrorReport.class));
+
+        for (int i = 0; i < 3; i++)
+        {
+            sendExpecting(IllegalStateException.class);
+        }
+        assertThat(breaker.getMetrics().getState(), equalTo(CircuitState.OPEN));
+
+        sendExpecting(CircuitOpenException.class);
+        verify(delegate, times(3)).send(any(ErrorReport.class));
+        assertThat(breaker.getMetrics().getOpenedCount(), equalTo(1L));
+        assertThat(breaker.getMetrics().getRejectedCount(), equalTo(1L));
+        verify(errorLog).warn(anyString());
+    }
+
+    @Test
+    public void testSuccessResetsFailureCount()
+    {
+        doThrow(new IllegalStateException("down"))
+            .doThrow(new IllegalStateException("down"))
+            .doNothing()
+            .doThrow(new IllegalStateException("down"))
+            .when(delegate).send(any(ErrorReport.class));
+
+        sendExpecting(IllegalStateException.class);
+        sendExpecting(IllegalStateException.class);
+        reporter.send(new ErrorReport());
+        sendExpecting(IllegalStateException.class);
+
+        assertThat(breaker.getMetrics().getState(), equalTo(CircuitState.CLOSED));
+    }
+
+    @Test
+    public void testHalfOpenProbeClosesCircuit()
+    {
+        openCircuit();
+        ticker.advance(30, TimeUnit.SECONDS);
+        doNothing().when(delegate).send(any(ErrorReport.class));
+
+        reporter.send(new ErrorReport());
+
+        assertThat(breaker.getMetrics().getState(), equalTo(CircuitState.CLOSED));
+        reporter.send(new ErrorReport());
+    }
+
+    @Test
+    public void testFailedProbeReopensCircuit()
+    {
+        openCircuit();
+        ticker.advance(30, TimeUnit.SECONDS);
+
+        sendExpecting(IllegalStateException.class);
+
+        assertThat(breaker.getMetrics().getState(), equalTo(CircuitState.OPEN));
+        assertThat(breaker.getMetrics().getOpenedCount(), equalTo(2L));
+        sendExpecting(CircuitOpenException.class);
+    }
+
+    @Test
+    public void testOnlyOneProbeAtATime()
+    {
+        openCircuit();
+        ticker.advance(30, TimeUnit.SECONDS);
+
+        breaker.acquirePermission();
+        assertThat(breaker.getMetrics().getState(), equalTo(CircuitState.HALF_OPEN));
+        sendExpecting(CircuitOpenException.class);
+
+        breaker.recordSuccess();
+        assertThat(breaker.getMetrics().getState(), equalTo(CircuitState.CLOSED));
+    }
+
+    @Test
+    public void testSuppressedReportDoesNotUseUpTheProbe()
+    {
+        openCircuit();
+        ticker.advance(30, TimeUnit.SECONDS);
+        doThrow(new ReportSuppressedException("repeat"))
+            .doNothing()
+            .when(delegate).send(any(ErrorReport.class));
+
+        sendExpecting(ReportSuppressedException.class);
+        assertThat(breaker.getMetrics().getState(), equalTo(CircuitState.HALF_OPEN));
+
+        reporter.send(new ErrorReport());
+        assertThat(breaker.getMetrics().getState(), equalTo(CircuitState.CLOSED));
+    }
+
+    private void openCircuit()
+    {
+        doThrow(new IllegalStateException("down")).when(delegate).send(any(ErrorReport.class));
+        for (int i = 0; i < 3; i++)
+        {
+            sendExpecting(IllegalStateException.class);
+        }
+    }
+
+    private void sendExpecting(Class<? extends RuntimeException> expected)
+    {
+        try
+        {
+            reporter.send(new ErrorReport());
+            fail("expected " + expected.getSimpleName());
+        }
+        catch (RuntimeException e)
+        {
+            assertThat(e.getClass(), equalTo(expected));
+        }
+    }
+
+    static class FakeTicker extends Ticker
+    {
+        private long nanos;
+
+        @Override
+        public long read()
+        {
+            return nanos;
+        }
+
+        void advance(long duration, TimeUnit unit)
+        {
+            nanos += unit.toNanos(duration);
+        }
+    }
+}
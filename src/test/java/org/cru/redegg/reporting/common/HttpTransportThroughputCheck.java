@@ -0,0 +1,175 @@
+package org.cru.redegg.reporting.common;
+
+import org.cru.redegg.reporting.DummyReportBuilder;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.errbit.ErrbitConfig;
+import org.cru.redegg.reporting.errbit.ErrbitXmlPayload;
+import org.cru.redegg.test.Measurements;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+/**
+ * Measures how many Errbit payloads per second {@link HttpPayloadSender} can send
+ * to a local stand-in server, from 8 sending threads.
+ * The payload is rendered once up front, so that only the transport is measured.
+ * See {@link Measurements} for how to run it.
+ *
+ * <p>
+ * The stand-in is a minimal thread-per-connection HTTP/1.1 server,
+ * since the JDK's built-in server is slow to serve kept-alive connections.
+ *
+ * @author Matt Drees
+ */
+public class HttpTransportThroughputCheck
+{
+    private static final int SENDERS = 8;
+    private static final int REPORTS_PER_SENDER = 2_000;
+    private static final int ROUNDS = 5;
+
+    private static final byte[] RESPONSE_BODY = "<notice><id>1</id></notice>".getBytes(StandardCharsets.UTF_8);
+
+    private ServerSocket serverSocket;
+    private URI endpoint;
+    private final AtomicInteger received = new AtomicInteger();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException
+    {
+        serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptConnections, "stand-in-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        endpoint = URI.create("http://127.0.0.1:" + serverSocket.getLocalPort() + "/notifier_api/v2/notices");
+    }
+
+    @After
+    public void stopServer() throws IOException
+    {
+        serverSocket.close();
+    }
+
+    @Test
+    public void measureThroughput() throws Exception
+    {
+        ErrbitConfig config = new ErrbitConfig();
+        config.setKey("abc");
+        config.setEnvironmentName("throughput-check");
+        config.setEndpoint(endpoint);
+        config.getApplicationBasePackages().add("org.cru.redegg");
+        ErrorReport report = new DummyReportBuilder().buildDummyReport();
+        StringWriter rendered = new StringWriter();
+        new ErrbitXmlPayload(report, config).writeTo(rendered);
+        String xml = rendered.toString();
+        Payload payload = writer -> writer.write(xml);
+
+        for (int round = 1; round <= ROUNDS; round++)
+        {
+            received.set(0);
+            connections.set(0);
+            Measurements.measureThroughput(
+                "round " + round,
+                "report",
+                SENDERS,
+                REPORTS_PER_SENDER,
+                i -> new HttpPayloadSender(endpoint, "application/xml").send(payload),
+                () -> {});
+            // HttpURLConnection may silently resend a POST if a kept-alive connection was closed
+            assertThat(received.get(), greaterThanOrEqualTo(SENDERS * REPORTS_PER_SENDER));
+            Measurements.report("%-12s: %,10d connections", "round " + round, connections.get());
+        }
+    }
+
+    private void acceptConnections()
+    {
+        while (!serverSocket.isClosed())
+        {
+            try
+            {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                Thread handler = new Thread(() -> serve(socket), "stand-in-connection");
+                handler.setDaemon(true);
+                handler.start();
+            }
+            catch (IOException e)
+            {
+                // server is closed
+            }
+        }
+    }
+
+    private void serve(Socket socket)
+    {
+        try (Socket s = socket)
+        {
+            s.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            OutputStream out = s.getOutputStream();
+            boolean keepAlive = true;
+            while (keepAlive)
+            {
+                int contentLength = -1;
+                String line = readLine(in);
+                if (line == null)
+                    return;
+                while ((line = readLine(in)) != null && !line.isEmpty())
+                {
+                    String header = line.toLowerCase(Locale.US);
+                    if (header.startsWith("content-length:"))
+                        contentLength = Integer.parseInt(header.substring(15).trim());
+                    else if (header.startsWith("connection:") && header.contains("close"))
+                        keepAlive = false;
+                }
+                for (int i = 0; i < contentLength; i++)
+                {
+                    if (in.read() < 0)
+                        return;
+                }
+                received.incrementAndGet();
+                out.write((
+                    "HTTP/1.1 200 OK\r\n" +
+                    "Content-Type: application/xml\r\n" +
+                    "Content-Length: " + RESPONSE_BODY.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(RESPONSE_BODY);
+                out.flush();
+            }
+        }
+        catch (IOException e)
+        {
+            // client went away
+        }
+    }
+
+    private String readLine(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n')
+        {
+            if (b < 0)
+                return line.size() == 0 ? null : line.toString("US-ASCII");
+            if (b != '\r')
+                line.write(b);
+        }
+        return line.toString("US-ASCII");
+    }
+}
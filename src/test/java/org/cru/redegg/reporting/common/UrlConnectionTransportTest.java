@@ -0,0 +1,368 @@
+package org.cru.redegg.reporting.common;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Matt Drees
+ */
+public class UrlConnectionTransportTest
+{
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private URI endpoint;
+
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+    private final List<String> encodings = new CopyOnWriteArrayList<>();
+    private final List<String> transferEncodings = new CopyOnWriteArrayList<>();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private volatile int status = 201;
+
+    private final Payload payload = writer -> writer.write("<notice>hello</notice>");
+
+    @Before
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverExecutor = Executors.newFixedThreadPool(8);
+        server.setExecutor(serverExecutor);
+        server.createContext("/notices", this::handle);
+        server.start();
+        endpoint = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/notices");
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        encodings.add(String.valueOf(encoding));
+        transferEncodings.add(String.valueOf(exchange.getRequestHeaders().getFirst("Transfer-Encoding")));
+        try (InputStream body = decode(encoding, exchange.getRequestBody()))
+        {
+            bodies.add(new String(ByteStreams.toByteArray(body), "UTF-8"));
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            Thread.sleep(20);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            active.decrementAndGet();
+        }
+        byte[] response = "{\"id\": 1}".getBytes("UTF-8");
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(response);
+        }
+    }
+
+    /**
+     * Decompresses the request body, as a server that accepts compressed requests would.
+     */
+    private InputStream decode(String encoding, InputStream body) throws IOException
+    {
+        if ("gzip".equals(encoding))
+            return new GZIPInputStream(body);
+        else if ("deflate".equals(encoding))
+            return new InflaterInputStream(body);
+        else
+            return body;
+    }
+
+    @Test
+    public void testSequentialRequestsReuseConnection() throws IOException
+    {
+        UrlConnectionTransport transport = new UrlConnectionTransport(4);
+
+        for (int i = 0; i < 5; i++)
+        {
+            assertThat(transport.post(endpoint, "application/xml", payload), equalTo(201));
+        }
+
+        assertThat(bodies, everyItem(equalTo("<notice>hello</notice>")));
+        assertThat(bodies.size(), equalTo(5));
+        assertThat(clientPorts.size(), equalTo(1));
+    }
+
+    @Test
+    public void testErrorStatusIsThrown() throws IOException
+    {
+        status = 422;
+        UrlConnectionTransport transport = new UrlConnectionTransport(4);
+
+        try
+        {
+            transport.post(endpoint, "application/xml", payload);
+            fail("expected HttpStatusException");
+        }
+        catch (HttpStatusException e)
+        {
+            assertThat(e.getStatusCode(), equalTo(422));
+            assertThat(e.getMessage(), containsString("{\"id\": 1}"));
+        }
+
+        status = 201;
+        transport.post(endpoint, "application/xml", payload);
+        assertThat(clientPorts.size(), equalTo(1));
+    }
+
+    @Test
+    public void testConcurrentRequestsAreLimited() throws Exception
+    {
+        UrlConnectionTransport transport = new UrlConnectionTransport(2);
+        ExecutorService senders = Executors.newFixedThreadPool(6);
+        try
+        {
+            List<CompletableFuture<Integer>> futures = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < 12; i++)
+            {
+                futures.add(transport.postAsync(endpoint, "application/xml", payload, senders));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+            assertThat(bodies.size(), equalTo(12));
+            assertThat(maxActive.get(), lessThanOrEqualTo(2));
+            assertThat(clientPorts.size(), lessThanOrEqualTo(2));
+        }
+        finally
+        {
+            senders.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLargePayloadIsCompressed() throws IOException
+    {
+        String xml = buildLargeXml();
+        UrlConnectionTransport transport = new UrlConnectionTransport(compressing(ContentEncoding.GZIP));
+
+        transport.post(endpoint, "application/xml", writer -> writer.write(xml));
+        transport.post(endpoint, "application/xml", payload);
+
+        assertThat(encodings, contains("gzip", "null"));
+        assertThat(bodies, contains(xml, "<notice>hello</notice>"));
+        assertThat(clientPorts.size(), equalTo(1));
+    }
+
+    @Test
+    public void testDeflate() throws IOException
+    {
+        String xml = buildLargeXml();
+        UrlConnectionTransport transport = new UrlConnectionTransport(compressing(ContentEncoding.DEFLATE));
+
+        transport.post(endpoint, "application/xml", writer -> writer.write(xml));
+
+        assertThat(encodings, contains("deflate"));
+        assertThat(bodies, contains(xml));
+    }
+
+    @Test
+    public void testCompressionIsOffByDefault() throws IOException
+    {
+        String xml = buildLargeXml();
+        UrlConnectionTransport transport = new UrlConnectionTransport(new HttpTransportConfig());
+
+        transport.post(endpoint, "application/xml", writer -> writer.write(xml));
+
+        assertThat(encodings, contains("null"));
+        assertThat(bodies, contains(xml));
+    }
+
+    @Test
+    public void testStreamedPayloadIsSentInChunks() throws IOException
+    {
+        String xml = buildLargeXml();
+        UrlConnectionTransport transport = new UrlConnectionTransport(4);
+
+        transport.post(endpoint, "application/xml", Payload.streamed(writer -> writer.write(xml)));
+        transport.post(endpoint, "application/xml", payload);
+
+        assertThat(transferEncodings, contains("chunked", "null"));
+        assertThat(bodies, contains(xml, "<notice>hello</notice>"));
+        assertThat(clientPorts.size(), equalTo(1));
+    }
+
+    @Test
+    public void testStreamedPayloadIsCompressed() throws IOException
+    {
+        String xml = buildLargeXml();
+        UrlConnectionTransport transport = new UrlConnectionTransport(compressing(ContentEncoding.GZIP));
+
+        transport.post(endpoint, "application/xml", Payload.streamed(writer -> writer.write(xml)));
+
+        assertThat(encodings, contains("gzip"));
+        assertThat(transferEncodings, contains("chunked"));
+        assertThat(bodies, contains(xml));
+    }
+
+    @Test
+    public void testRequestIsSentAgainWhenKeptAliveConnectionWasClosed() throws Exception
+    {
+        try (ClosingServer closingServer = new ClosingServer())
+        {
+            UrlConnectionTransport transport = new UrlConnectionTransport(4);
+            URI closingEndpoint = closingServer.getEndpoint();
+
+            assertThat(transport.post(closingEndpoint, "application/xml", payload), equalTo(201));
+            assertThat(transport.post(closingEndpoint, "application/xml", payload), equalTo(201));
+
+            assertThat(closingServer.requests.get(), equalTo(3));
+            assertThat(closingServer.connections.get(), equalTo(2));
+        }
+    }
+
+    private HttpTransportConfig compressing(ContentEncoding encoding)
+    {
+        HttpTransportConfig config = new HttpTransportConfig();
+        config.setContentEncoding(encoding);
+        config.setCompressionThreshold(1024);
+        return config;
+    }
+
+    /**
+     * Answers the first request on its first connection, and keeps that connection alive;
+     * then it closes that connection without answering the second request,
+     * as a server does when it times out an idle connection just as a client reuses it.
+     * Requests on later connections are answered normally.
+     */
+    private static class ClosingServer implements AutoCloseable
+    {
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicInteger requests = new AtomicInteger();
+
+        private final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        private final Thread acceptor = new Thread(this::accept, "closing-server");
+
+        ClosingServer() throws IOException
+        {
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        URI getEndpoint()
+        {
+            return URI.create("http://127.0.0.1:" + serverSocket.getLocalPort() + "/notices");
+        }
+
+        private void accept()
+        {
+            try
+            {
+                while (true)
+                {
+                    try (Socket socket = serverSocket.accept())
+                    {
+                        boolean first = connections.incrementAndGet() == 1;
+                        InputStream in = new BufferedInputStream(socket.getInputStream());
+                        OutputStream out = socket.getOutputStream();
+                        for (int request = 1; readRequest(in); request++)
+                        {
+                            requests.incrementAndGet();
+                            if (first && request == 2)
+                                break;
+                            out.write(("HTTP/1.1 201 Created\r\n" +
+                                "Content-Length: 0\r\n" +
+                                "Connection: keep-alive\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                            out.flush();
+                        }
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                // closed
+            }
+        }
+
+        private boolean readRequest(InputStream in) throws IOException
+        {
+            int contentLength = 0;
+            String line;
+            boolean any = false;
+            while ((line = readLine(in)) != null && !line.isEmpty())
+            {
+                any = true;
+                if (line.toLowerCase().startsWith("content-length:"))
+                    contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+            }
+            if (!any)
+                return false;
+            ByteStreams.skipFully(in, contentLength);
+            return true;
+        }
+
+        private String readLine(InputStream in) throws IOException
+        {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1 && c != '\n')
+            {
+                if (c != '\r')
+                    line.append((char) c);
+            }
+            return c == -1 && line.length() == 0 ? null : line.toString();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            serverSocket.close();
+        }
+    }
+
+    private String buildLargeXml()
+    {
+        StringBuilder builder = new StringBuilder("<notice>");
+        for (int i = 0; i < 1000; i++)
+        {
+            builder.append("<var key=\"line").append(i).append("\">héllo wörld</var>");
+        }
+        return builder.append("</notice>").toString();
+    }
+}
@@ -0,0 +1,319 @@
+package org.cru.redegg.reporting.dedup;
+
+import com.google.common.collect.HashMultimap;
+import org.cru.redegg.recording.api.NotificationLevel;
+import org.cru.redegg.reporting.DatadogEnricher;
+import org.cru.redegg.reporting.DeliveryCounters;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.ReportDelivery;
+import org.cru.redegg.reporting.WebContext;
+import org.cru.redegg.reporting.api.ErrorReporter;
+import org.cru.redegg.util.ErrorLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Matt Drees
+ */
+public class DeduplicatingReporterTest
+{
+    @Mock
+    ErrorReporter delegate;
+
+    @Mock
+    ErrorReporter fallbackReporter;
+
+    @Mock
+    ErrorLog errorLog;
+
+    @Mock
+    DatadogEnricher enricher;
+
+    DeduplicationConfig config;
+
+    DeduplicatingReporter reporter;
+
+    @Before
+    public void setup()
+    {
+        MockitoAnnotations.initMocks(this);
+        config = new DeduplicationConfig();
+        config.setWindow(Duration.ofMillis(100));
+        config.setMaxSampleUrls(2);
+        reporter = buildReporter();
+    }
+
+    @After
+    public void shutdown()
+    {
+        reporter.shutdown();
+    }
+
+    @Test
+    public void testRepeatsAreCombined() throws Exception
+    {
+        for (String path : new String[]{"a", "b", "c", "b"})
+        {
+            send(buildReport(failure("boom"), "https://example.org/" + path));
+        }
+
+        ArgumentCaptor<ErrorReport> captor = ArgumentCaptor.forClass(ErrorReport.class);
+        verify(delegate, timeout(2000).times(2)).send(captor.capture());
+
+        ErrorReport first = captor.getAllValues().get(0);
+        assertThat(first.getContext().get(DeduplicatingReporter.OCCURRENCES), empty());
+
+        ErrorReport combined = captor.getAllValues().get(1);
+        assertThat(combined.getContext().get(DeduplicatingReporter.OCCURRENCES), contains("4"));
+        assertThat(combined.getContext().get(DeduplicatingReporter.FIRST_OCCURRENCE), not(empty()));
+        assertThat(combined.getContext().get(DeduplicatingReporter.LAST_OCCURRENCE), not(empty()));
+        assertThat(
+            combined.getContext().get(DeduplicatingReporter.SAMPLE_URLS),
+            containsInAnyOrder("https://example.org/b", "https://example.org/c"));
+    }
+
+    @Test
+    public void testRepeatsAreSuppressedAndReleasedOnceSuperseded() throws Exception
+    {
+        ErrorReport[] reports = new ErrorReport[3];
+        for (int i = 0; i < 3; i++)
+        {
+            reports[i] = spy(buildReport(failure("boom"), "https://example.org/a"));
+        }
+
+        reporter.send(reports[0]);
+        for (int i = 1; i < 3; i++)
+        {
+            try
+            {
+                reporter.send(reports[i]);
+                fail("expected the repeat to be suppressed");
+            }
+            catch (ReportSuppressedException expected)
+            {
+            }
+        }
+
+        verify(reports[1]).release();
+        verify(reports[2], never()).release();
+
+        reporter.shutdown();
+        verify(delegate).send(reports[2]);
+        verify(reports[2]).release();
+    }
+
+    @Test
+    public void testDeliveryNeitherCountsNorReleasesSuppressedReports() throws Exception
+    {
+        DeliveryCounters counters = new DeliveryCounters();
+        ReportDelivery delivery = new ReportDelivery(reporter, fallbackReporter, errorLog, enricher, counters);
+        ErrorReport[] reports = new ErrorReport[2];
+        for (int i = 0; i < 2; i++)
+        {
+            reports[i] = spy(buildReport(failure("boom"), "https://example.org/a"));
+        }
+
+        delivery.deliver(reports[0]);
+        delivery.deliver(reports[1]);
+
+        assertThat(counters.getDeliveredCount(), equalTo(1L));
+        assertThat(counters.getFailedCount(), equalTo(0L));
+        verify(reports[1], never()).release();
+        verify(fallbackReporter, never()).send(any(ErrorReport.class));
+    }
+
+    @Test
+    public void testRetryOfFailedFirstOccurrenceIsNotSuppressed() throws Exception
+    {
+        reporter.shutdown();
+        config.setWindow(Duration.ofHours(1));
+        reporter = buildReporter();
+        ErrorReport report = buildReport(failure("boom"), "https://example.org/a");
+        doThrow(new IllegalStateException("rollbar is down"))
+            .doNothing()
+            .when(delegate).send(report);
+
+        try
+        {
+            reporter.send(report);
+            fail("expected the send to fail");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+        reporter.send(report);
+        reporter.shutdown();
+
+        verify(delegate, times(2)).send(any(ErrorReport.class));
+        assertThat(report.getContext().get(DeduplicatingReporter.OCCURRENCES), empty());
+    }
+
+    @Test
+    public void testDistinctErrorsAreSentSeparately() throws Exception
+    {
+        reporter.send(buildReport(failure("boom"), "https://example.org/a"));
+        reporter.send(buildReport(new IllegalStateException("boom"), "https://example.org/a"));
+
+        verify(delegate, times(2)).send(any(ErrorReport.class));
+    }
+
+    @Test
+    public void testSingleOccurrenceIsNotResent() throws Exception
+    {
+        reporter.send(buildReport(failure("boom"), "https://example.org/a"));
+        Thread.sleep(300);
+
+        verify(delegate, times(1)).send(any(ErrorReport.class));
+    }
+
+    @Test
+    public void testShutdownFlushesOpenWindows() throws Exception
+    {
+        reporter.shutdown();
+        config.setWindow(Duration.ofHours(1));
+        reporter = buildReporter();
+        for (int i = 0; i < 2; i++)
+        {
+            send(buildReport(failure("boom"), "https://example.org/a"));
+        }
+
+        reporter.shutdown();
+
+        ArgumentCaptor<ErrorReport> captor = ArgumentCaptor.forClass(ErrorReport.class);
+        verify(delegate, times(2)).send(captor.capture());
+        assertThat(
+            captor.getAllValues().get(1).getContext().get(DeduplicatingReporter.OCCURRENCES),
+            contains("2"));
+    }
+
+    @Test
+    public void testCombinedReportFallsBackWhenItCannotBeSent() throws Exception
+    {
+        reporter.shutdown();
+        config.setWindow(Duration.ofHours(1));
+        reporter = buildReporter();
+        for (int i = 0; i < 2; i++)
+        {
+            send(buildReport(failure("boom"), "https://example.org/a"));
+        }
+
+        doThrow(new IllegalStateException("rollbar is down")).when(delegate).send(any(ErrorReport.class));
+        reporter.shutdown();
+
+        ArgumentCaptor<ErrorReport> captor = ArgumentCaptor.forClass(ErrorReport.class);
+        verify(fallbackReporter).send(captor.capture());
+        assertThat(captor.getValue().getContext().get(DeduplicatingReporter.OCCURRENCES), contains("2"));
+    }
+
+    @Test
+    public void testFingerprintUsesFirstErrorRecord() throws Exception
+    {
+        ErrorFingerprint fingerprint = new ErrorFingerprint(Collections.singleton("org.cru.redegg"));
+
+        ErrorReport.LogRecord error = new ErrorReport.LogRecord(NotificationLevel.ERROR, "header", "it broke");
+        ErrorReport withEarlierWarning = buildLogReport(
+            new ErrorReport.LogRecord(NotificationLevel.WARNING, "header", "slow request"),
+            error);
+        ErrorReport withOtherWarning = buildLogReport(
+            new ErrorReport.LogRecord(NotificationLevel.INFO, "header", "starting"),
+            new ErrorReport.LogRecord(NotificationLevel.WARNING, "header", "cache miss"),
+            error);
+
+        assertThat(fingerprint.compute(withEarlierWarning), equalTo(fingerprint.compute(withOtherWarning)));
+        assertThat(fingerprint.compute(withEarlierWarning), equalTo(fingerprint.compute(buildLogReport(error))));
+    }
+
+    @Test
+    public void testFingerprintIgnoresMessage() throws Exception
+    {
+        ErrorFingerprint fingerprint = new ErrorFingerprint(Collections.singleton("org.cru.redegg"));
+
+        long[] fingerprints = new long[2];
+        for (int i = 0; i < 2; i++)
+        {
+            fingerprints[i] = fingerprint.compute(buildReport(failure("user " + i), null));
+        }
+
+        assertThat(fingerprints[0], equalTo(fingerprints[1]));
+        assertThat(
+            fingerprint.compute(buildReport(new IllegalStateException("user 0"), null)),
+            not(equalTo(fingerprints[0])));
+    }
+
+    private void send(ErrorReport report)
+    {
+        try
+        {
+            reporter.send(report);
+        }
+        catch (ReportSuppressedException e)
+        {
+            // a repeat; it will be sent with its window's combined report
+        }
+    }
+
+    private DeduplicatingReporter buildReporter()
+    {
+        return new DeduplicatingReporter(
+            delegate,
+            config,
+            new ErrorFingerprint(Collections.singleton("org.cru.redegg")),
+            new ReportDelivery(delegate, fallbackReporter, errorLog, enricher, new DeliveryCounters()),
+            Clock.systemUTC());
+    }
+
+    private ErrorReport buildLogReport(ErrorReport.LogRecord... logRecords)
+    {
+        ErrorReport report = new ErrorReport();
+        report.setLogRecords(Arrays.asList(logRecords));
+        return report;
+    }
+
+    /**
+     * Callers must call this from the same line (e.g. in a loop)
+     * for the exceptions to have matching stack traces.
+     */
+    private IllegalArgumentException failure(String message)
+    {
+        return new IllegalArgumentException(message);
+    }
+
+    private ErrorReport buildReport(Throwable thrown, String url) throws Exception
+    {
+        ErrorReport report = new ErrorReport();
+        report.setContext(HashMultimap.create());
+        report.setThrown(Collections.singletonList(thrown));
+        if (url != null)
+        {
+            WebContext webContext = new WebContext();
+            webContext.setUrl(new URI(url));
+            report.setWebContext(webContext);
+        }
+        return report;
+    }
+}
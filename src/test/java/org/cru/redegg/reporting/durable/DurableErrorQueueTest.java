@@ -0,0 +1,238 @@
+package org.cru.redegg.reporting.durable;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import org.cru.redegg.recording.api.NotificationLevel;
+import org.cru.redegg.reporting.DatadogEnricher;
+import org.cru.redegg.reporting.DeliveryCounters;
+import org.cru.redegg.reporting.ErrorQueueConfig;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.QueueType;
+import org.cru.redegg.reporting.ReportDelivery;
+import org.cru.redegg.reporting.api.ErrorReporter;
+import org.cru.redegg.reporting.breaker.CircuitOpenException;
+import org.cru.redegg.util.ErrorLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Matt Drees
+ */
+public class DurableErrorQueueTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    ErrorReporter primaryErrorReporter;
+
+    @Mock
+    ErrorReporter fallbackReporter;
+
+    @Mock
+    ErrorLog errorLog;
+
+    @Mock
+    DatadogEnricher enricher;
+
+    ErrorQueueConfig config;
+
+    @Before
+    public void setup() throws IOException
+    {
+        MockitoAnnotations.initMocks(this);
+        config = new ErrorQueueConfig();
+        config.setQueueType(QueueType.DURABLE);
+        config.setDurableDirectory(folder.newFolder("queue").toPath());
+        config.setSegmentSize(64 * 1024);
+    }
+
+    @Test
+    public void testDeliversReportsInOrder() throws Exception
+    {
+        DurableErrorQueue queue = buildQueue();
+
+        queue.enqueue(buildReport("first"));
+        queue.enqueue(buildReport("second"));
+        queue.enqueue(buildReport("third"));
+
+        ArgumentCaptor<ErrorReport> captor = ArgumentCaptor.forClass(ErrorReport.class);
+        verify(primaryErrorReporter, timeout(2000).times(3)).send(captor.capture());
+        queue.shutdown();
+
+        assertThat(names(captor.getAllValues()), contains("first", "second", "third"));
+        assertThat(queue.getMetrics().getQueueDepth(), equalTo(0));
+        assertThat(queue.getMetrics().getEnqueuedCount(), equalTo(3L));
+        verify(fallbackReporter, never()).send(any(ErrorReport.class));
+    }
+
+    @Test
+    public void testReplaysPendingReportsAfterRestart() throws Exception
+    {
+        doThrow(new IllegalStateException("rollbar is down"))
+            .when(primaryErrorReporter).send(any(ErrorReport.class));
+        DurableErrorQueue queue = buildQueue();
+        queue.enqueue(buildReport("first"));
+        queue.enqueue(buildReport("second"));
+        verify(primaryErrorReporter, timeout(2000)).send(any(ErrorReport.class));
+        queue.shutdown();
+        assertThat(queue.getMetrics().getQueueDepth(), equalTo(2));
+
+        ErrorReporter restartedReporter = mock(ErrorReporter.class);
+        DurableErrorQueue restarted = new DurableErrorQueue(
+            new ReportDelivery(restartedReporter, fallbackReporter, errorLog, enricher, new DeliveryCounters()),
+            config);
+
+        ArgumentCaptor<ErrorReport> captor = ArgumentCaptor.forClass(ErrorReport.class);
+        verify(restartedReporter, timeout(2000).times(2)).send(captor.capture());
+        restarted.shutdown();
+
+        assertThat(names(captor.getAllValues()), contains("first", "second"));
+        ErrorReport replayed = captor.getAllValues().get(0);
+        assertThat(replayed.getThrown().get(0).toString(), equalTo("java.lang.IllegalArgumentException: first"));
+        assertThat(replayed.getThrown().get(0).getCause(), notNullValue());
+        verify(fallbackReporter, never()).send(any(ErrorReport.class));
+    }
+
+    @Test
+    public void testAcknowledgedSegmentsAreDeleted() throws Exception
+    {
+        DurableErrorQueue queue = buildQueue();
+
+        // each report takes a bit more than a third of a segment
+        String padding = Strings.repeat("x", 24 * 1024);
+        for (int i = 0; i < 10; i++)
+        {
+            ErrorReport report = buildReport("report " + i);
+            report.setLogRecords(Collections.singletonList(
+                new ErrorReport.LogRecord(NotificationLevel.ERROR, "header", padding)));
+            queue.enqueue(report);
+        }
+
+        verify(primaryErrorReporter, timeout(2000).times(10)).send(any(ErrorReport.class));
+        queue.shutdown();
+
+        assertThat(segmentFiles().length, equalTo(1));
+    }
+
+    @Test
+    public void testReportIsReleasedOnlyAfterTheFallbackSendsIt() throws Exception
+    {
+        DurableErrorQueue queue = buildQueue();
+
+        // too large for a segment, so it can't be written to disk
+        ErrorReport report = spy(buildReport("oversized"));
+        report.setLogRecords(Collections.singletonList(
+            new ErrorReport.LogRecord(NotificationLevel.ERROR, "header", Strings.repeat("x", 80 * 1024))));
+        queue.enqueue(report);
+        queue.shutdown();
+
+        InOrder inOrder = inOrder(fallbackReporter, report);
+        inOrder.verify(fallbackReporter).send(report);
+        inOrder.verify(report).release();
+        verify(report, times(1)).release();
+        assertThat(queue.getMetrics().getEnqueuedCount(), equalTo(0L));
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts() throws Exception
+    {
+        ErrorReport report = buildReport("doomed");
+        doThrow(new IllegalStateException("rejected"))
+            .when(primaryErrorReporter).send(any(ErrorReport.class));
+        DurableErrorQueue queue = new DurableErrorQueue(
+            new ReportDelivery(primaryErrorReporter, fallbackReporter, errorLog, enricher, new DeliveryCounters()),
+            config,
+            0);
+
+        queue.enqueue(report);
+
+        verify(fallbackReporter, timeout(2000)).send(any(ErrorReport.class));
+        verify(primaryErrorReporter, times(DurableErrorQueue.MAX_ATTEMPTS)).send(any(ErrorReport.class));
+        queue.shutdown();
+        assertThat(queue.getMetrics().getQueueDepth(), equalTo(0));
+    }
+
+    @Test
+    public void testOpenCircuitDoesNotCountAsAnAttempt() throws Exception
+    {
+        AtomicInteger calls = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (calls.incrementAndGet() <= DurableErrorQueue.MAX_ATTEMPTS + 5)
+                throw new CircuitOpenException("circuit is open");
+            return null;
+        }).when(primaryErrorReporter).send(any(ErrorReport.class));
+        DurableErrorQueue queue = new DurableErrorQueue(
+            new ReportDelivery(primaryErrorReporter, fallbackReporter, errorLog, enricher, new DeliveryCounters()),
+            config,
+            0);
+
+        queue.enqueue(buildReport("waiting"));
+
+        verify(primaryErrorReporter, timeout(2000).times(DurableErrorQueue.MAX_ATTEMPTS + 6))
+            .send(any(ErrorReport.class));
+        queue.shutdown();
+        verify(fallbackReporter, never()).send(any(ErrorReport.class));
+        assertThat(queue.getMetrics().getDeliveredCount(), equalTo(1L));
+    }
+
+    private File[] segmentFiles()
+    {
+        return config.getDurableDirectory().toFile().listFiles((dir, name) -> name.endsWith(".segment"));
+    }
+
+    private DurableErrorQueue buildQueue()
+    {
+        return new DurableErrorQueue(
+            new ReportDelivery(primaryErrorReporter, fallbackReporter, errorLog, enricher, new DeliveryCounters()),
+            config,
+            60_000);
+    }
+
+    private ErrorReport buildReport(String name)
+    {
+        ErrorReport report = new ErrorReport();
+        Multimap<String, String> context = HashMultimap.create();
+        context.put("name", name);
+        report.setContext(context);
+        report.setThrown(Collections.singletonList(
+            new IllegalArgumentException(name, new IllegalStateException("cause"))));
+        return report;
+    }
+
+    private List<String> names(List<ErrorReport> reports)
+    {
+        return reports.stream()
+            .map(report -> report.getContext().get("name").iterator().next())
+            .collect(Collectors.toList());
+    }
+}
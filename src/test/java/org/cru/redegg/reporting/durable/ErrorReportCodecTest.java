@@ -0,0 +1,92 @@
+package org.cru.redegg.reporting.durable;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import org.cru.redegg.recording.api.NotificationLevel;
+import org.cru.redegg.reporting.DummyReportBuilder;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.ReplayedThrowable;
+import org.cru.redegg.reporting.WebContext;
+import org.cru.redegg.reporting.rollbar.RollbarErrorLink;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * @author Matt Drees
+ */
+public class ErrorReportCodecTest
+{
+    ErrorReportCodec codec = new ErrorReportCodec();
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        ErrorReport report = new DummyReportBuilder().buildDummyReport();
+        UUID id = UUID.randomUUID();
+        report.setErrorLink(new RollbarErrorLink(id));
+
+        ErrorReport decoded = codec.decode(codec.encode(report));
+
+        assertThat(decoded.getContext(), equalTo(HashMultimap.create(report.getContext())));
+        assertThat(decoded.getUser(), equalTo(report.getUser()));
+        assertThat(decoded.getLogRecords().toString(), equalTo(report.getLogRecords().toString()));
+        assertThat(decoded.getLocalHostName(), equalTo(report.getLocalHostName()));
+        assertThat(decoded.getNotificationLevel(), equalTo(report.getNotificationLevel()));
+        assertThat(decoded.isMustNotify(), equalTo(report.isMustNotify()));
+        assertThat(((RollbarErrorLink) decoded.getErrorLink()).getId(), equalTo(id));
+
+        WebContext webContext = report.getWebContext();
+        WebContext decodedWebContext = decoded.getWebContext();
+        assertThat(decodedWebContext.getUrl(), equalTo(webContext.getUrl()));
+        assertThat(decodedWebContext.getHeaders(), equalTo(webContext.getHeaders()));
+        assertThat(decodedWebContext.getQueryParameters(), equalTo(webContext.getQueryParameters()));
+        assertThat(decodedWebContext.getPostParameters(), equalTo(webContext.getPostParameters()));
+        assertThat(decodedWebContext.getStart(), equalTo(webContext.getStart()));
+        assertThat(decodedWebContext.getFinish(), equalTo(webContext.getFinish()));
+        assertThat(decodedWebContext.getResponseStatus(), equalTo(webContext.getResponseStatus()));
+        assertThat(decodedWebContext.getComponent(), equalTo(webContext.getComponent()));
+    }
+
+    @Test
+    public void testThrowablesAreReplayedWithOriginalClassNames() throws Exception
+    {
+        ErrorReport report = new ErrorReport();
+        IllegalStateException original = new IllegalStateException("outer", new NumberFormatException("inner"));
+        report.setThrown(Collections.<Throwable>singletonList(original));
+
+        ErrorReport decoded = codec.decode(codec.encode(report));
+
+        Throwable replayed = decoded.getThrown().get(0);
+        assertThat(replayed, instanceOf(ReplayedThrowable.class));
+        assertThat(ReplayedThrowable.classNameOf(replayed), equalTo("java.lang.IllegalStateException"));
+        assertThat(replayed.toString(), equalTo(original.toString()));
+        assertThat(replayed.getStackTrace(), equalTo(original.getStackTrace()));
+        assertThat(replayed.getCause().toString(), equalTo(original.getCause().toString()));
+        assertThat(replayed.getCause().getCause(), nullValue());
+    }
+
+    @Test
+    public void testNullsAndEmptyValues() throws Exception
+    {
+        ErrorReport report = new ErrorReport();
+        report.setContext(ImmutableMultimap.of("key", "value"));
+        report.setUser(ImmutableMap.<String, String>of());
+        report.setNotificationLevel(NotificationLevel.WARNING);
+
+        ErrorReport decoded = codec.decode(codec.encode(report));
+
+        assertThat(decoded.getWebContext(), nullValue());
+        assertThat(decoded.getEnvironmentVariables(), nullValue());
+        assertThat(decoded.getErrorLink(), nullValue());
+        assertThat(decoded.getContext().get("key").iterator().next(), equalTo("value"));
+        assertThat(decoded.getNotificationLevel(), equalTo(NotificationLevel.WARNING));
+    }
+}
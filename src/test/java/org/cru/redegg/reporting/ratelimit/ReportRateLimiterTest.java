@@ -0,0 +1,180 @@
+package org.cru.redegg.reporting.ratelimit;
+
+import com.google.common.base.Ticker;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.dedup.ErrorFingerprint;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * @author Matt Drees
+ */
+public class ReportRateLimiterTest
+{
+    /** reused, since the fingerprint includes the line numbers of the stack trace */
+    final Throwable boom = new IllegalArgumentException("boom");
+
+    FakeTicker ticker;
+
+    RateLimitConfig config;
+
+    @Before
+    public void setup()
+    {
+        ticker = new FakeTicker();
+        config = new RateLimitConfig();
+        config.setEnabled(true);
+        config.setPerErrorRate(6);
+        config.setPerErrorBurst(2);
+        config.setSampleRate(0);
+    }
+
+    @Test
+    public void testBurstThenRefill()
+    {
+        ReportRateLimiter limiter = buildLimiter();
+
+        assertThat(acquire(limiter, 3), equalTo(2));
+
+        // 6 per minute is one every 10 seconds
+        ticker.advance(10, TimeUnit.SECONDS);
+        assertThat(acquire(limiter, 3), equalTo(1));
+    }
+
+    @Test
+    public void testSuppressedCountIsAttachedToNextAcceptedReport()
+    {
+        ReportRateLimiter limiter = buildLimiter();
+        acquire(limiter, 5);
+        ticker.advance(10, TimeUnit.SECONDS);
+
+        ErrorReport report = buildReport(boom);
+        assertThat(limiter.tryAcquire(report), equalTo(true));
+        assertThat(report.getContext().get(ReportRateLimiter.SUPPRESSED), contains("3"));
+
+        ticker.advance(10, TimeUnit.SECONDS);
+        ErrorReport next = buildReport(boom);
+        assertThat(limiter.tryAcquire(next), equalTo(true));
+        assertThat(next.getContext().get(ReportRateLimiter.SUPPRESSED), empty());
+    }
+
+    @Test
+    public void testErrorsHaveSeparateBuckets()
+    {
+        ReportRateLimiter limiter = buildLimiter();
+        acquire(limiter, 5);
+
+        assertThat(limiter.tryAcquire(buildReport(new IllegalStateException("other"))), equalTo(true));
+    }
+
+    @Test
+    public void testGlobalBucketLimitsAllErrors()
+    {
+        config.setGlobalRate(1);
+        config.setGlobalBurst(3);
+        ReportRateLimiter limiter = buildLimiter();
+
+        assertThat(acquire(limiter, 5), equalTo(2));
+        assertThat(limiter.tryAcquire(buildReport(new IllegalStateException("other"))), equalTo(true));
+        assertThat(limiter.tryAcquire(buildReport(new UnsupportedOperationException("another"))), equalTo(false));
+    }
+
+    @Test
+    public void testSampling()
+    {
+        config.setSampleRate(1);
+        ReportRateLimiter limiter = buildLimiter();
+
+        assertThat(acquire(limiter, 3), equalTo(3));
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        config.setEnabled(false);
+        ReportRateLimiter limiter = buildLimiter();
+
+        assertThat(acquire(limiter, 100), equalTo(100));
+    }
+
+    @Test
+    public void testDisabledByDefault()
+    {
+        assertThat(new RateLimitConfig().isEnabled(), equalTo(false));
+    }
+
+    @Test
+    public void testLogOnlyReportsAreLimitedWithoutBuildingTheirLogRecords()
+    {
+        ReportRateLimiter limiter = buildLimiter();
+
+        int accepted = 0;
+        for (int i = 0; i < 3; i++)
+        {
+            ErrorReport report = new ErrorReport();
+            report.deferLogRecords(() -> {
+                throw new AssertionError("log records should not be built");
+            });
+            report.setLogSignature("org.example.Widget: unable to frob {}");
+            if (limiter.tryAcquire(report))
+                accepted++;
+        }
+
+        assertThat(accepted, equalTo(2));
+    }
+
+    private ReportRateLimiter buildLimiter()
+    {
+        return new ReportRateLimiter(
+            config,
+            new ErrorFingerprint(Collections.singleton("org.cru.redegg")),
+            ticker);
+    }
+
+    /**
+     * Reports the same error several times.
+     *
+     * @return the number of reports accepted
+     */
+    private int acquire(ReportRateLimiter limiter, int count)
+    {
+        int accepted = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (limiter.tryAcquire(buildReport(boom)))
+                accepted++;
+        }
+        return accepted;
+    }
+
+    private ErrorReport buildReport(Throwable thrown)
+    {
+        ErrorReport report = new ErrorReport();
+        report.setThrown(Collections.singletonList(thrown));
+        return report;
+    }
+
+    static class FakeTicker extends Ticker
+    {
+        private long nanos;
+
+        @Override
+        public long read()
+        {
+            return nanos;
+        }
+
+        void advance(long duration, TimeUnit unit)
+        {
+            nanos += unit.toNanos(duration);
+        }
+    }
+}
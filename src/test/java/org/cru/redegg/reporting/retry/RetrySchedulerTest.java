@@ -0,0 +1,148 @@
+package org.cru.redegg.reporting.retry;
+
+import org.cru.redegg.reporting.DatadogEnricher;
+import org.cru.redegg.reporting.DeliveryCounters;
+import org.cru.redegg.reporting.ErrorQueueConfig;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.ReportDelivery;
+import org.cru.redegg.reporting.api.ErrorReporter;
+import org.cru.redegg.reporting.common.HttpStatusException;
+import org.cru.redegg.reporting.ratelimit.ReportRateLimiter;
+import org.cru.redegg.util.ErrorLog;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Matt Drees
+ */
+public class RetrySchedulerTest
+{
+    @Mock
+    ErrorReporter primaryErrorReporter;
+
+    @Mock
+    ErrorReporter fallbackReporter;
+
+    @Mock
+    ErrorLog errorLog;
+
+    @Mock
+    DatadogEnricher enricher;
+
+    ErrorQueueConfig config;
+
+    DeliveryCounters counters;
+
+    @Before
+    public void setup()
+    {
+        MockitoAnnotations.initMocks(this);
+        config = new ErrorQueueConfig();
+        config.setMaxDeliveryAttempts(3);
+        config.setRetryBackoff(Duration.ofMillis(10));
+        config.setMaxRetryBackoff(Duration.ofMillis(20));
+        counters = new DeliveryCounters();
+    }
+
+    @Test
+    public void testTransientFailureIsRetried()
+    {
+        doThrow(new UncheckedIOException(new IOException("read timed out")))
+            .doNothing()
+            .when(primaryErrorReporter).send(any(ErrorReport.class));
+        ReportDelivery delivery = buildDelivery();
+
+        delivery.deliver(new ErrorReport());
+
+        verify(primaryErrorReporter, timeout(2000).times(2)).send(any(ErrorReport.class));
+        verify(fallbackReporter, after(100).never()).send(any(ErrorReport.class));
+        assertThat(counters.getDeliveredCount(), equalTo(1L));
+        assertThat(counters.getFailedCount(), equalTo(1L));
+        delivery.shutdown();
+    }
+
+    @Test
+    public void testClientErrorIsNotRetried()
+    {
+        doThrow(new HttpStatusException(422, "unprocessable"))
+            .when(primaryErrorReporter).send(any(ErrorReport.class));
+        ReportDelivery delivery = buildDelivery();
+
+        delivery.deliver(new ErrorReport());
+
+        verify(fallbackReporter).send(any(ErrorReport.class));
+        verify(primaryErrorReporter, after(100).times(1)).send(any(ErrorReport.class));
+        delivery.shutdown();
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts()
+    {
+        doThrow(new HttpStatusException(503, "unavailable"))
+            .when(primaryErrorReporter).send(any(ErrorReport.class));
+        ReportDelivery delivery = buildDelivery();
+
+        delivery.deliver(new ErrorReport());
+
+        verify(fallbackReporter, timeout(2000)).send(any(ErrorReport.class));
+        verify(primaryErrorReporter, times(3)).send(any(ErrorReport.class));
+        delivery.shutdown();
+    }
+
+    @Test
+    public void testShutdownSendsPendingRetriesToFallback()
+    {
+        config.setRetryBackoff(Duration.ofHours(1));
+        config.setMaxRetryBackoff(Duration.ofHours(1));
+        config.setMaxRetryAge(Duration.ofHours(2));
+        doThrow(new HttpStatusException(500, "oops"))
+            .when(primaryErrorReporter).send(any(ErrorReport.class));
+        ReportDelivery delivery = buildDelivery();
+
+        delivery.deliver(new ErrorReport());
+        verify(fallbackReporter, never()).send(any(ErrorReport.class));
+
+        delivery.shutdown();
+        verify(fallbackReporter).send(any(ErrorReport.class));
+    }
+
+    @Test
+    public void testRetryableClassification()
+    {
+        assertThat(Retries.isRetryable(new HttpStatusException(400, "bad")), equalTo(false));
+        assertThat(Retries.isRetryable(new HttpStatusException(429, "slow down")), equalTo(true));
+        assertThat(Retries.isRetryable(new HttpStatusException(502, "bad gateway")), equalTo(true));
+        assertThat(
+            Retries.isRetryable(new RuntimeException(new HttpStatusException(403, "forbidden"))),
+            equalTo(false));
+        assertThat(Retries.isRetryable(new IllegalStateException("connection refused")), equalTo(true));
+    }
+
+    private ReportDelivery buildDelivery()
+    {
+        return new ReportDelivery(
+            primaryErrorReporter,
+            fallbackReporter,
+            errorLog,
+            enricher,
+            counters,
+            ReportRateLimiter.UNLIMITED,
+            config);
+    }
+}
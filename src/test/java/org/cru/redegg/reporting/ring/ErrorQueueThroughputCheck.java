@@ -0,0 +1,97 @@
+package org.cru.redegg.reporting.ring;
+
+import org.cru.redegg.reporting.DatadogEnricher;
+import org.cru.redegg.reporting.DeliveryCounters;
+import org.cru.redegg.reporting.ErrorQueueConfig;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.InMemoryErrorQueue;
+import org.cru.redegg.reporting.ManagedErrorQueue;
+import org.cru.redegg.reporting.OverflowPolicy;
+import org.cru.redegg.reporting.ReportDelivery;
+import org.cru.redegg.reporting.api.ErrorLink;
+import org.cru.redegg.reporting.api.ErrorReporter;
+import org.cru.redegg.reporting.ratelimit.ReportRateLimiter;
+import org.cru.redegg.test.Measurements;
+import org.cru.redegg.util.ErrorLog;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Compares enqueue throughput of the executor-backed queue and the ring buffer
+ * with 64 producers and a reporter that does nothing.
+ * See {@link Measurements} for how to run it.
+ *
+ * @author Matt Drees
+ */
+public class ErrorQueueThroughputCheck
+{
+    private static final int PRODUCERS = 64;
+    private static final int REPORTS_PER_PRODUCER = 20_000;
+    private static final int ROUNDS = 5;
+
+    private final ErrorReporter noopReporter = new ErrorReporter()
+    {
+        @Override
+        public void send(ErrorReport report)
+        {
+        }
+
+        @Override
+        public Optional<ErrorLink> buildLink()
+        {
+            return Optional.empty();
+        }
+    };
+
+    @Test
+    public void compareThroughput() throws Exception
+    {
+        for (int round = 1; round <= ROUNDS; round++)
+        {
+            measure("executor", buildExecutorQueue());
+            measure("ring/block", buildRingQueue(WaitStrategies.blocking()));
+            measure("ring/yield", buildRingQueue(WaitStrategies.yielding()));
+        }
+    }
+
+    private void measure(String name, ManagedErrorQueue queue) throws InterruptedException
+    {
+        ErrorReport report = new ErrorReport();
+        Measurements.measureThroughput(
+            name, "report", PRODUCERS, REPORTS_PER_PRODUCER, i -> queue.enqueue(report), queue::shutdown);
+
+        long total = (long) PRODUCERS * REPORTS_PER_PRODUCER;
+        assertThat(queue.getMetrics().getDeliveredCount(), equalTo(total));
+    }
+
+    private InMemoryErrorQueue buildExecutorQueue()
+    {
+        return new InMemoryErrorQueue(
+            noopReporter, noopReporter, new ErrorLog(), new DatadogEnricher(), config(), ReportRateLimiter.UNLIMITED);
+    }
+
+    private RingBufferErrorQueue buildRingQueue(WaitStrategy waitStrategy)
+    {
+        ReportDelivery delivery = new ReportDelivery(
+            noopReporter,
+            noopReporter,
+            new ErrorLog(),
+            new DatadogEnricher(),
+            new DeliveryCounters());
+        return new RingBufferErrorQueue(delivery, config(), waitStrategy);
+    }
+
+    private ErrorQueueConfig config()
+    {
+        ErrorQueueConfig config = new ErrorQueueConfig();
+        config.setQueueCapacity(1024);
+        config.setOverflowPolicy(OverflowPolicy.BLOCK);
+        config.setBlockTimeout(Duration.ofMinutes(1));
+        return config;
+    }
+}
@@ -0,0 +1,206 @@
+package org.cru.redegg.reporting.ring;
+
+import org.cru.redegg.reporting.DatadogEnricher;
+import org.cru.redegg.reporting.DeliveryCounters;
+import org.cru.redegg.reporting.ErrorQueueConfig;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.OverflowPolicy;
+import org.cru.redegg.reporting.ReportDelivery;
+import org.cru.redegg.reporting.api.ErrorReporter;
+import org.cru.redegg.util.ErrorLog;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Matt Drees
+ */
+public class RingBufferErrorQueueTest
+{
+    @Mock
+    ErrorReporter primaryErrorReporter;
+
+    @Mock
+    ErrorReporter fallbackReporter;
+
+    @Mock
+    ErrorLog errorLog;
+
+    @Mock
+    DatadogEnricher enricher;
+
+    @Before
+    public void setup()
+    {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void testCapacityIsRoundedUpToPowerOfTwo()
+    {
+        assertThat(RingBufferErrorQueue.ceilingPowerOfTwo(1), equalTo(1));
+        assertThat(RingBufferErrorQueue.ceilingPowerOfTwo(64), equalTo(64));
+        assertThat(RingBufferErrorQueue.ceilingPowerOfTwo(1000), equalTo(1024));
+    }
+
+    @Test
+    public void testDeliversEveryReportFromConcurrentProducers() throws Exception
+    {
+        RingBufferErrorQueue queue = buildQueue(16, OverflowPolicy.BLOCK, WaitStrategies.yielding());
+        int producerCount = 8;
+        int reportsPerProducer = 1000;
+
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < producerCount; i++)
+        {
+            Thread producer = new Thread(() -> {
+                for (int j = 0; j < reportsPerProducer; j++)
+                {
+                    queue.enqueue(new ErrorReport());
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        for (Thread producer : producers)
+        {
+            producer.join();
+        }
+        queue.shutdown();
+
+        long total = producerCount * reportsPerProducer;
+        assertThat(queue.getMetrics().getEnqueuedCount(), equalTo(total));
+        assertThat(queue.getMetrics().getDroppedCount(), equalTo(0L));
+        assertThat(queue.getMetrics().getDeliveredCount(), equalTo(total));
+        assertThat(queue.getMetrics().getQueueDepth(), equalTo(0));
+    }
+
+    @Test
+    public void testDropNewestWhenFull() throws Exception
+    {
+        CountDownLatch release = blockPrimaryReporter();
+        RingBufferErrorQueue queue = buildQueue(1, OverflowPolicy.DROP_NEWEST, WaitStrategies.blocking());
+
+        queue.enqueue(new ErrorReport()); // taken by the consumer, which then blocks
+        verify(primaryErrorReporter, timeout(1000)).send(any(ErrorReport.class));
+        queue.enqueue(new ErrorReport()); // waits in the ring
+        ErrorReport dropped = spy(new ErrorReport());
+        queue.enqueue(dropped);
+
+        assertThat(queue.getMetrics().getQueueDepth(), equalTo(1));
+        assertThat(queue.getMetrics().getDroppedCount(), equalTo(1L));
+        assertThat(queue.getMetrics().getEnqueuedCount(), equalTo(2L));
+        verify(fallbackReporter, never()).send(any(ErrorReport.class));
+        verify(dropped).release();
+
+        release.countDown();
+        queue.shutdown();
+        assertThat(queue.getMetrics().getDeliveredCount(), equalTo(2L));
+    }
+
+    @Test
+    public void testBlockReleasesTheReportWhenInterrupted() throws Exception
+    {
+        CountDownLatch release = blockPrimaryReporter();
+        RingBufferErrorQueue queue = buildQueue(1, OverflowPolicy.BLOCK, WaitStrategies.blocking());
+
+        queue.enqueue(new ErrorReport());
+        verify(primaryErrorReporter, timeout(1000)).send(any(ErrorReport.class));
+        queue.enqueue(new ErrorReport());
+        ErrorReport dropped = spy(new ErrorReport());
+        Thread.currentThread().interrupt();
+        try
+        {
+            queue.enqueue(dropped);
+        }
+        finally
+        {
+            Thread.interrupted();
+        }
+
+        assertThat(queue.getMetrics().getDroppedCount(), equalTo(1L));
+        verify(dropped).release();
+
+        release.countDown();
+        queue.shutdown();
+    }
+
+    @Test
+    public void testCallerRunsFallbackWhenFull() throws Exception
+    {
+        CountDownLatch release = blockPrimaryReporter();
+        RingBufferErrorQueue queue = buildQueue(1, OverflowPolicy.CALLER_RUNS, WaitStrategies.blocking());
+
+        queue.enqueue(new ErrorReport());
+        verify(primaryErrorReporter, timeout(1000)).send(any(ErrorReport.class));
+        queue.enqueue(new ErrorReport());
+        ErrorReport overflow = new ErrorReport();
+        queue.enqueue(overflow);
+
+        verify(fallbackReporter).send(overflow);
+        assertThat(queue.getMetrics().getFallbackCount(), equalTo(1L));
+
+        release.countDown();
+        queue.shutdown();
+    }
+
+    @Test
+    public void testConsumerSurvivesDeliveryFailure() throws Exception
+    {
+        ErrorReport failing = new ErrorReport();
+        ErrorReport succeeding = new ErrorReport();
+        doThrow(new IllegalStateException("boom")).when(primaryErrorReporter).send(failing);
+        doNothing().when(primaryErrorReporter).send(succeeding);
+        RingBufferErrorQueue queue = buildQueue(4, OverflowPolicy.CALLER_RUNS, WaitStrategies.blocking());
+
+        queue.enqueue(failing);
+        queue.enqueue(succeeding);
+        queue.shutdown();
+
+        verify(fallbackReporter).send(failing);
+        verify(primaryErrorReporter).send(succeeding);
+        assertThat(queue.getMetrics().getDeliveredCount(), equalTo(1L));
+        assertThat(queue.getMetrics().getFailedCount(), equalTo(1L));
+    }
+
+    private CountDownLatch blockPrimaryReporter()
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> release.await(5, TimeUnit.SECONDS))
+            .when(primaryErrorReporter).send(any(ErrorReport.class));
+        return release;
+    }
+
+    private RingBufferErrorQueue buildQueue(int capacity, OverflowPolicy policy, WaitStrategy waitStrategy)
+    {
+        ErrorQueueConfig config = new ErrorQueueConfig();
+        config.setQueueCapacity(capacity);
+        config.setOverflowPolicy(policy);
+        config.setBlockTimeout(Duration.ofSeconds(5));
+        ReportDelivery delivery = new ReportDelivery(
+            primaryErrorReporter,
+            fallbackReporter,
+            errorLog,
+            enricher,
+            new DeliveryCounters());
+        return new RingBufferErrorQueue(delivery, config, waitStrategy);
+    }
+}
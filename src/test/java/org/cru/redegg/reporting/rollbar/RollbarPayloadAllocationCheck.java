@@ -0,0 +1,53 @@
+package org.cru.redegg.reporting.rollbar;
+
+import com.rollbar.notifier.sender.json.JsonSerializerImpl;
+import org.cru.redegg.reporting.DummyReportBuilder;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.test.Measurements;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * Compares how many bytes are allocated, and how long it takes, to render a Rollbar item
+ * via rollbar-java's payload objects and via {@link RollbarPayloadBuilder#writeTo}.
+ * See {@link Measurements} for how to run it.
+ *
+ * @author Matt Drees
+ */
+public class RollbarPayloadAllocationCheck
+{
+    private static final int WARMUP = 5_000;
+    private static final int REPORTS = 20_000;
+
+    private final RollbarConfig config = new RollbarConfig();
+    private final ErrorReport report = new DummyReportBuilder().buildDummyReport();
+
+    @Test
+    public void measureAllocation() throws Exception
+    {
+        config.setEnvironmentName("allocation-check");
+        config.setAccessToken("secrets");
+        config.setIdentifyingUserProperty("guid");
+
+        for (int round = 1; round <= 3; round++)
+        {
+            Measurements.measureCost(
+                "object graph", "report", WARMUP, REPORTS, i -> renderObjectGraph(new StringWriter(8192)));
+            Measurements.measureCost(
+                "streaming", "report", WARMUP, REPORTS, i -> renderStreaming(new StringWriter(8192)));
+        }
+    }
+
+    private void renderObjectGraph(Writer writer) throws IOException
+    {
+        writer.write(new JsonSerializerImpl().toJson(new RollbarPayloadBuilder(config, report).build()));
+    }
+
+    private void renderStreaming(Writer writer) throws IOException
+    {
+        new RollbarPayloadBuilder(config, report).writeTo(writer);
+    }
+}
@@ -1,9 +1,14 @@
 package org.cru.redegg.reporting.rollbar;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.rollbar.api.payload.Payload;
 import com.rollbar.notifier.sender.json.JsonSerializerImpl;
+import org.cru.redegg.recording.api.CapturedEntity;
+import org.cru.redegg.recording.api.NoOpEntitySanitizer;
 import org.cru.redegg.reporting.DummyReportBuilder;
 import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.StreamedEntity;
 import org.cru.redegg.reporting.TestExceptions;
 import org.cru.redegg.util.ErrorLog;
 import org.junit.Before;
@@ -12,13 +17,16 @@ import org.mockito.Mockito;
 
 import javax.servlet.ServletContext;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.net.URL;
+import java.util.UUID;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.endsWith;
 import static org.hamcrest.CoreMatchers.startsWith;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Mockito.when;
+import static uk.co.datumedge.hamcrest.json.SameJSONAs.sameJSONAs;
 
 /**
  * @author Matt Drees
@@ -64,6 +72,71 @@ public class RollbarPayloadBuilderTest
         checkJsonContent(json);
     }
 
+    @Test
+    public void testStreamedJsonMatchesBuiltPayload() throws IOException
+    {
+        buildSampleReport();
+
+        checkStreamedJsonMatchesBuiltPayload();
+    }
+
+    @Test
+    public void testStreamedJsonForSingleException() throws IOException
+    {
+        buildSampleReport();
+        report.setThrown(ImmutableList.of(new IllegalStateException("no cause")));
+        report.setErrorLink(new RollbarErrorLink(UUID.randomUUID()));
+
+        String json = checkStreamedJsonMatchesBuiltPayload();
+        assertThat(json, containsString("\"trace\":{"));
+    }
+
+    @Test
+    public void testStreamedJsonWithoutExceptionOrPerson() throws IOException
+    {
+        buildSampleReport();
+        report.setThrown(ImmutableList.of());
+        report.setUser(ImmutableMap.of());
+
+        String json = checkStreamedJsonMatchesBuiltPayload();
+        assertThat(json, containsString("\"message\":{\"body\":"));
+    }
+
+    @Test
+    public void testStreamedEntityIsEscapedLikeOtherStrings() throws IOException
+    {
+        buildSampleReport();
+        String entity = "{\"note\": \"line one\nline two\\ \u2028\u0001\"}";
+        report.getWebContext().setEntityRepresentation(null);
+        report.getWebContext().setStreamedEntity(new StreamedEntity(new CapturedEntity()
+        {
+            @Override
+            public String decode()
+            {
+                return entity;
+            }
+
+            @Override
+            public void release()
+            {
+            }
+        }, new NoOpEntitySanitizer()));
+
+        String json = checkStreamedJsonMatchesBuiltPayload();
+        assertThat(json, containsString("\"body\":\"{\\\"note\\\": \\\"line one\\nline two"));
+    }
+
+    private String checkStreamedJsonMatchesBuiltPayload() throws IOException
+    {
+        StringWriter writer = new StringWriter();
+        new RollbarPayloadBuilder(config, report).writeTo(writer);
+        String streamed = writer.toString();
+
+        String built = new JsonSerializerImpl().toJson(new RollbarPayloadBuilder(config, report).build());
+        assertThat(streamed, sameJSONAs(built));
+        return streamed;
+    }
+
     private void buildSampleReport()
     {
         report = new DummyReportBuilder().buildDummyReport();
@@ -0,0 +1,108 @@
+package org.cru.redegg.servlet;
+
+import com.google.common.collect.ImmutableList;
+import org.cru.redegg.recording.api.ParameterSanitizer;
+import org.cru.redegg.recording.api.RequestMatchers;
+import org.cru.redegg.test.Measurements;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures how long {@link ParameterCategorizer} takes for requests with hundreds of parameters:
+ * a GET with 400 query parameters, and a POST with 100 query parameters and 300 form parameters,
+ * where one in ten parameters is sanitized.
+ * See {@link Measurements} for how to run it.
+ *
+ * @author Matt Drees
+ */
+public class ParameterCategorizerOverheadCheck
+{
+    private static final int WARMUP = 5_000;
+    private static final int REQUESTS = 20_000;
+
+    private final ParameterCategorizer categorizer =
+        new ParameterCategorizer(new SecretRemovingSanitizer(), RequestMatchers.none());
+
+    @Test
+    public void measureOverhead() throws Exception
+    {
+        HttpServletRequest get = stubRequest("GET", 400, 0);
+        HttpServletRequest post = stubRequest("POST", 100, 300);
+        for (int round = 1; round <= 3; round++)
+        {
+            Measurements.measureCost("GET", "request", WARMUP, REQUESTS, i -> categorizer.categorize(get));
+            Measurements.measureCost("POST", "request", WARMUP, REQUESTS, i -> categorizer.categorize(post));
+        }
+    }
+
+    private HttpServletRequest stubRequest(String method, int queryParameters, int formParameters)
+    {
+        Map<String, String[]> parameters = new LinkedHashMap<>();
+        StringBuilder queryString = new StringBuilder();
+        for (int i = 0; i < queryParameters; i++)
+        {
+            String name = parameterName(i);
+            parameters.put(name, new String[] {"value" + i});
+            queryString.append(i == 0 ? "" : "&").append(name).append("=value").append(i);
+        }
+        for (int i = queryParameters; i < queryParameters + formParameters; i++)
+        {
+            parameters.put(parameterName(i), new String[] {"value" + i});
+        }
+
+        return (HttpServletRequest) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {HttpServletRequest.class},
+            (proxy, m, args) -> {
+                switch (m.getName())
+                {
+                    case "getMethod":
+                        return method;
+                    case "getQueryString":
+                        return queryString.toString();
+                    case "getParameterMap":
+                        return parameters;
+                    default:
+                        return null;
+                }
+            });
+    }
+
+    private String parameterName(int i)
+    {
+        return i % 10 == 0 ? "secret" + i : "param" + i;
+    }
+
+    private static class SecretRemovingSanitizer implements ParameterSanitizer
+    {
+        private static final List<String> REMOVED = ImmutableList.of("<removed>");
+
+        @Override
+        public List<String> sanitizeQueryStringParameter(String parameterName, List<String> parameterValues)
+        {
+            return sanitize(parameterName, parameterValues);
+        }
+
+        @Override
+        public List<String> sanitizePostBodyParameter(String parameterName, List<String> parameterValues)
+        {
+            return sanitize(parameterName, parameterValues);
+        }
+
+        @Override
+        public List<String> sanitizeHeader(String headerName, List<String> headerValues)
+        {
+            return headerValues;
+        }
+
+        private List<String> sanitize(String parameterName, List<String> parameterValues)
+        {
+            return parameterName.startsWith("secret") ? REMOVED : parameterValues;
+        }
+    }
+}
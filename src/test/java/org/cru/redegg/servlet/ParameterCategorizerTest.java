@@ -178,6 +178,105 @@ public class ParameterCategorizerTest
         assertThat(actualCategorization, matches(expectedCategorization));
     }
 
+    @Test
+    public void testCategorizeParameterInBothQueryStringAndForm()
+    {
+        whenSanitizingParameter(anyString()).then(this::returnListAsIs);
+        whenSanitizingPostParameter(anyString()).then(this::returnListAsIs);
+
+        when(request.getMethod()).thenReturn("POST");
+        when(request.getQueryString()).thenReturn("id=7&page=2");
+        when(request.getParameterMap()).thenReturn(ImmutableMap.of(
+            "id", new String[]{ "7", "8" },
+            "page", new String[]{ "2" },
+            "name", new String[]{ "bob" }
+        ));
+
+        Categorization expectedCategorization = new Categorization();
+        expectedCategorization.queryString = "id=7&page=2";
+        expectedCategorization.postParameters = ImmutableSetMultimap.of(
+            "id", "8",
+            "name", "bob"
+        );
+        expectedCategorization.queryParameters = ImmutableSetMultimap.of(
+            "id", "7",
+            "page", "2"
+        );
+
+        Categorization actualCategorization = categorizer.categorize(request);
+        assertThat(actualCategorization, matches(expectedCategorization));
+    }
+
+    @Test
+    public void testCategorizeWithEncodedAndValuelessQueryParameters()
+    {
+        whenSanitizingParameter(eq("api key")).thenReturn(ImmutableList.of("<removed>"));
+        whenSanitizingParameter(eq("wsdl")).then(this::returnListAsIs);
+
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getQueryString()).thenReturn("wsdl&&api%20key=abc123");
+        when(request.getParameterMap()).thenReturn(ImmutableMap.of(
+            "wsdl", new String[]{ "" },
+            "api key", new String[]{ "abc123" }
+        ));
+
+        Categorization expectedCategorization = new Categorization();
+        expectedCategorization.queryString = "wsdl&&api%20key=<removed>";
+        expectedCategorization.postParameters = ImmutableMultimap.of();
+        expectedCategorization.queryParameters = ImmutableSetMultimap.of(
+            "wsdl", "",
+            "api key", "<removed>"
+        );
+
+        Categorization actualCategorization = categorizer.categorize(request);
+        assertThat(actualCategorization, matches(expectedCategorization));
+    }
+
+    @Test
+    public void testCategorizeWithValuelessOccurrenceBeforeSensitiveOne()
+    {
+        whenSanitizingParameter(eq("key")).thenReturn(ImmutableList.of("", "<removed>"));
+
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getQueryString()).thenReturn("key&key=secret");
+        when(request.getParameterMap()).thenReturn(ImmutableMap.of(
+            "key", new String[]{ "", "secret" }
+        ));
+
+        Categorization expectedCategorization = new Categorization();
+        expectedCategorization.queryString = "key&key=<removed>";
+        expectedCategorization.postParameters = ImmutableMultimap.of();
+        expectedCategorization.queryParameters = ImmutableSetMultimap.of(
+            "key", "",
+            "key", "<removed>"
+        );
+
+        Categorization actualCategorization = categorizer.categorize(request);
+        assertThat(actualCategorization, matches(expectedCategorization));
+    }
+
+    @Test
+    public void testCategorizeDoesNotMistakeValuesForParameters()
+    {
+        whenSanitizingParameter(anyString()).then(this::returnListAsIs);
+        whenSanitizingPostParameter(anyString()).then(this::returnListAsIs);
+
+        when(request.getMethod()).thenReturn("POST");
+        when(request.getQueryString()).thenReturn("next=token");
+        when(request.getParameterMap()).thenReturn(ImmutableMap.of(
+            "next", new String[]{ "token" },
+            "token", new String[]{ "secret" }
+        ));
+
+        Categorization expectedCategorization = new Categorization();
+        expectedCategorization.queryString = "next=token";
+        expectedCategorization.postParameters = ImmutableSetMultimap.of("token", "secret");
+        expectedCategorization.queryParameters = ImmutableSetMultimap.of("next", "token");
+
+        Categorization actualCategorization = categorizer.categorize(request);
+        assertThat(actualCategorization, matches(expectedCategorization));
+    }
+
     private Object returnListAsIs(InvocationOnMock invocation)
     {
         return invocation.getArguments()[1];
@@ -191,6 +290,14 @@ public class ParameterCategorizerTest
         ));
     }
 
+    private OngoingStubbing<List<String>> whenSanitizingPostParameter(String parameterMatcher)
+    {
+        return when(sanitizer.sanitizePostBodyParameter(
+            parameterMatcher,
+            anyList()
+        ));
+    }
+
     private Matcher<Categorization> matches(Categorization expectedCategorization)
     {
         return compose(
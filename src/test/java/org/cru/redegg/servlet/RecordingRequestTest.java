@@ -0,0 +1,158 @@
+package org.cru.redegg.servlet;
+
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.api.CapturedEntity;
+import org.cru.redegg.recording.api.RequestMatchers;
+import org.cru.redegg.recording.api.WebErrorRecorder;
+import org.cru.redegg.util.ErrorLog;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Matt Drees
+ */
+public class RecordingRequestTest
+{
+    private static final String ENTITY = "{\"name\": \"bob\", \"favoriteColor\": \"blue\"}";
+
+    private final HttpServletRequest request = mock(HttpServletRequest.class);
+    private final WebErrorRecorder recorder = mock(WebErrorRecorder.class);
+    private final ErrorLog errorLog = mock(ErrorLog.class);
+    private ServletInputStream containerStream;
+
+    @Before
+    public void setup() throws IOException
+    {
+        containerStream = new ByteArrayServletInputStream(ENTITY.getBytes(StandardCharsets.UTF_8));
+        when(request.getCharacterEncoding()).thenReturn("UTF-8");
+        when(request.getInputStream()).thenReturn(containerStream);
+    }
+
+    @Test
+    public void passesTheEntityThroughAndCapturesIt() throws IOException
+    {
+        RecordingRequest recordingRequest = new RecordingRequest(request, errorLog, recorder, config(1000));
+
+        assertThat(readFully(recordingRequest.getInputStream()), equalTo(ENTITY));
+        assertThat(capturedEntity().decode(), equalTo(ENTITY));
+    }
+
+    @Test
+    public void capturesOnlyUpToTheLimit() throws IOException
+    {
+        RecordingRequest recordingRequest = new RecordingRequest(request, errorLog, recorder, config(7));
+
+        assertThat(readFully(recordingRequest.getInputStream()), equalTo(ENTITY));
+        assertThat(capturedEntity().decode(), equalTo("{\"name\"..."));
+    }
+
+    @Test
+    public void capturesOnlyWhatTheApplicationReads() throws IOException
+    {
+        RecordingRequest recordingRequest = new RecordingRequest(request, errorLog, recorder, config(1000));
+        recordingRequest.getInputStream().read(new byte[9]);
+
+        assertThat(capturedEntity().decode(), equalTo("{\"name\": "));
+    }
+
+    @Test
+    public void doesNotCaptureAsyncRequests() throws IOException
+    {
+        when(request.isAsyncStarted()).thenReturn(true);
+        RecordingRequest recordingRequest = new RecordingRequest(request, errorLog, recorder, config(1000));
+
+        assertThat(recordingRequest.getInputStream(), sameInstance(containerStream));
+        verify(recorder, never()).recordEntity(any());
+    }
+
+    @Test
+    public void capturesAsyncCapableRequestsBeforeAsyncStarts() throws IOException
+    {
+        when(request.isAsyncSupported()).thenReturn(true);
+        RecordingRequest recordingRequest = new RecordingRequest(request, errorLog, recorder, config(1000));
+
+        assertThat(readFully(recordingRequest.getInputStream()), equalTo(ENTITY));
+        assertThat(capturedEntity().decode(), equalTo(ENTITY));
+    }
+
+    @Test
+    public void doesNotCaptureRequestsThatMayReadWithoutBlocking() throws IOException
+    {
+        // the application may get the stream, then start async processing and set a ReadListener on it
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(request.getServletPath()).thenReturn("/upload");
+        RecordingRequest recordingRequest = new RecordingRequest(
+            request, errorLog, recorder, config(1000), RequestMatchers.matchingPaths("/upload"));
+
+        assertThat(recordingRequest.getInputStream(), sameInstance(containerStream));
+        verify(recorder, never()).recordEntity(any());
+    }
+
+    @Test
+    public void doesNotCaptureWhenDisabled() throws IOException
+    {
+        RecordingRequest recordingRequest = new RecordingRequest(request, errorLog, recorder, config(0));
+
+        assertThat(recordingRequest.getInputStream(), sameInstance(containerStream));
+        verify(recorder, never()).recordEntity(any());
+    }
+
+    private RecordingConfig config(int entityCaptureLimit)
+    {
+        RecordingConfig config = new RecordingConfig();
+        config.setEntityCaptureLimit(entityCaptureLimit);
+        return config;
+    }
+
+    private CapturedEntity capturedEntity()
+    {
+        ArgumentCaptor<CapturedEntity> captor = ArgumentCaptor.forClass(CapturedEntity.class);
+        verify(recorder).recordEntity(captor.capture());
+        return captor.getValue();
+    }
+
+    private String readFully(InputStream stream) throws IOException
+    {
+        StringBuilder builder = new StringBuilder();
+        byte[] buffer = new byte[5];
+        int count;
+        while ((count = stream.read(buffer)) != -1)
+        {
+            builder.append(new String(buffer, 0, count, StandardCharsets.UTF_8));
+        }
+        return builder.toString();
+    }
+
+    private static class ByteArrayServletInputStream extends ServletInputStream
+    {
+        private final InputStream bytes;
+
+        ByteArrayServletInputStream(byte[] bytes)
+        {
+            this.bytes = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            return bytes.read();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.cru.redegg.servlet;
+
+import org.cru.redegg.boot.Lifecycle;
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.api.ParameterSanitizer;
+import org.cru.redegg.recording.api.RecorderFactory;
+import org.cru.redegg.recording.api.WebErrorRecorder;
+import org.cru.redegg.recording.impl.RecorderBinding;
+import org.cru.redegg.servlet.ParameterCategorizer.Categorization;
+import org.cru.redegg.test.AnswerWithSelf;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequestEvent;
+import javax.servlet.http.HttpServletRequest;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Matt Drees
+ */
+public class RedEggServletListenerTest
+{
+    private final RecorderFactory factory = mock(RecorderFactory.class);
+
+    /** stands in for the CDI client proxy; its chained methods return the recorder itself */
+    private final WebErrorRecorder proxy = mock(WebErrorRecorder.class);
+    private final WebErrorRecorder recorder = mock(WebErrorRecorder.class, new AnswerWithSelf(WebErrorRecorder.class));
+
+    private final HttpServletRequest request = mock(HttpServletRequest.class);
+    private final ServletContext servletContext = mock(ServletContext.class);
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final RecordingConfig recordingConfig = new RecordingConfig();
+
+    private RedEggServletListener listener;
+
+    @Before
+    public void setup()
+    {
+        when(factory.getWebRecorder()).thenReturn(proxy);
+        when(proxy.recordRequestStart(any(Instant.class))).thenReturn(recorder);
+
+        when(request.getRequestURL()).thenReturn(new StringBuffer("http://localhost/widgets"));
+        when(request.getAttribute(anyString())).then(invocation -> attributes.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+            .when(request).setAttribute(anyString(), any());
+        when(servletContext.getMajorVersion()).thenReturn(3);
+
+        ParameterCategorizer categorizer = mock(ParameterCategorizer.class);
+        when(categorizer.categorize(request)).thenReturn(new Categorization());
+
+        listener = new RedEggServletListener();
+        listener.setRecorderFactory(factory);
+        listener.setClock(Clock.systemUTC());
+        listener.setCategorizer(categorizer);
+        listener.setLifecycle(new Lifecycle(factory, new RecordingConfig()));
+        listener.setSanitizer(mock(ParameterSanitizer.class));
+        listener.setRecordingConfig(recordingConfig);
+    }
+
+    @After
+    public void cleanup()
+    {
+        RecorderBinding.unbind();
+    }
+
+    @Test
+    public void testRecorderIsBoundForTheRequest()
+    {
+        listener.requestInitialized(event());
+
+        assertThat(RecorderBinding.get(), sameInstance(recorder));
+
+        listener.requestDestroyed(event());
+
+        verify(recorder).recordRequestComplete(any(Instant.class));
+        assertThat(RecorderBinding.get(), nullValue());
+    }
+
+    @Test
+    public void testRecorderIsUnboundWhileSuspendedAndReboundOnResume()
+    {
+        listener.requestInitialized(event());
+        when(request.isAsyncStarted()).thenReturn(true);
+        listener.requestDestroyed(event());
+
+        verify(recorder).suspendRequestProcessing();
+        assertThat(RecorderBinding.get(), nullValue());
+
+        listener.requestInitialized(event());
+
+        assertThat(RecorderBinding.get(), sameInstance(recorder));
+
+        when(request.isAsyncStarted()).thenReturn(false);
+        listener.requestDestroyed(event());
+
+        verify(recorder).recordRequestComplete(any(Instant.class));
+        verify(proxy, never()).recordRequestComplete(any(Instant.class));
+        assertThat(RecorderBinding.get(), nullValue());
+    }
+
+    @Test
+    public void testDeferredSnapshotIsNotTakenUpFront()
+    {
+        recordingConfig.setDeferRequestSnapshot(true);
+
+        listener.requestInitialized(event());
+
+        verify(recorder).recordRequestSnapshot(any());
+        verify(recorder, never()).recordHeaders(any());
+        verify(request, never()).getHeaderNames();
+        listener.requestDestroyed(event());
+    }
+
+    @Test
+    public void testSnapshotIsTakenUpFrontByDefault()
+    {
+        listener.requestInitialized(event());
+
+        verify(recorder, never()).recordRequestSnapshot(any());
+        verify(recorder).recordHeaders(any());
+        listener.requestDestroyed(event());
+    }
+
+    private ServletRequestEvent event()
+    {
+        return new ServletRequestEvent(servletContext, request);
+    }
+}
@@ -0,0 +1,201 @@
+package org.cru.redegg.servlet;
+
+import org.cru.redegg.boot.Lifecycle;
+import org.cru.redegg.recording.RecordingConfig;
+import org.cru.redegg.recording.StuckThreadMonitor;
+import org.cru.redegg.recording.api.EntitySanitizer;
+import org.cru.redegg.recording.api.ErrorRecorder;
+import org.cru.redegg.recording.api.NoOpParameterSanitizer;
+import org.cru.redegg.recording.api.ParameterSanitizer;
+import org.cru.redegg.recording.api.RecorderFactory;
+import org.cru.redegg.recording.api.RequestMatchers;
+import org.cru.redegg.recording.api.WebErrorRecorder;
+import org.cru.redegg.recording.gson.GsonSerializer;
+import org.cru.redegg.recording.impl.DefaultErrorRecorder;
+import org.cru.redegg.recording.impl.DefaultWebErrorRecorder;
+import org.cru.redegg.reporting.ErrorReport;
+import org.cru.redegg.reporting.WebContext;
+import org.cru.redegg.reporting.api.ErrorLink;
+import org.cru.redegg.reporting.api.ErrorQueue;
+import org.cru.redegg.test.Measurements;
+import org.cru.redegg.util.ErrorLog;
+import org.junit.Test;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequestEvent;
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Proxy;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Measures the per-request cost of red-egg's servlet listener for a request that doesn't error,
+ * with the request snapshot taken eagerly (the default) and deferred
+ * (see {@link RecordingConfig#setDeferRequestSnapshot(boolean)}).
+ * Each simulated GET request has 15 headers and 10 query parameters.
+ * See {@link Measurements} for how to run it.
+ *
+ * @author Matt Drees
+ */
+public class RequestSnapshotOverheadCheck
+{
+    private static final int WARMUP = 50_000;
+    private static final int REQUESTS = 200_000;
+
+    private final ErrorQueue queue = new ErrorQueue()
+    {
+        @Override
+        public void enqueue(ErrorReport report)
+        {
+        }
+
+        @Override
+        public Optional<ErrorLink> buildLink()
+        {
+            return Optional.empty();
+        }
+    };
+
+    private final StuckThreadMonitor stuckThreadMonitor = new StuckThreadMonitor()
+    {
+        @Override
+        public void startMonitoringRequest(WebContext webContext)
+        {
+        }
+
+        @Override
+        public void finishMonitoringRequest(WebContext webContext)
+        {
+        }
+
+        @Override
+        public void startMonitoringUnitOfWork(Object unit, String name, Instant start, Duration timeLimit)
+        {
+        }
+
+        @Override
+        public void finishMonitoringUnitOfWork(Object unit)
+        {
+        }
+    };
+
+    @Test
+    public void measureOverhead() throws Exception
+    {
+        for (int round = 1; round <= 3; round++)
+        {
+            measure("eager", false);
+            measure("deferred", true);
+        }
+    }
+
+    private void measure(String name, boolean deferred) throws Exception
+    {
+        RecordingConfig config = new RecordingConfig();
+        config.setDeferRequestSnapshot(deferred);
+        ParameterSanitizer sanitizer = new NoOpParameterSanitizer();
+        RecorderFactory factory = new PerRequestRecorderFactory();
+
+        RedEggServletListener listener = new RedEggServletListener();
+        listener.setRecorderFactory(factory);
+        listener.setClock(Clock.systemUTC());
+        listener.setCategorizer(new ParameterCategorizer(sanitizer, RequestMatchers.none()));
+        listener.setLifecycle(new Lifecycle(factory, config));
+        listener.setSanitizer(sanitizer);
+        listener.setRecordingConfig(config);
+
+        ServletRequestEvent event = new ServletRequestEvent(stubServletContext(), stubRequest());
+
+        Measurements.measureCost(name, "request", WARMUP, REQUESTS, i -> {
+            listener.requestInitialized(event);
+            listener.requestDestroyed(event);
+        });
+    }
+
+    private ServletContext stubServletContext()
+    {
+        return (ServletContext) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {ServletContext.class},
+            (proxy, method, args) -> method.getName().equals("getMajorVersion") ? 3 : null);
+    }
+
+    private HttpServletRequest stubRequest()
+    {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (int i = 0; i < 15; i++)
+            headers.put("X-Header-" + i, "header value " + i);
+
+        Map<String, String[]> parameters = new LinkedHashMap<>();
+        StringBuilder queryString = new StringBuilder();
+        for (int i = 0; i < 10; i++)
+        {
+            parameters.put("param" + i, new String[] {"value" + i});
+            queryString.append(i == 0 ? "" : "&").append("param").append(i).append("=value").append(i);
+        }
+
+        Map<String, Object> attributes = new HashMap<>();
+        return (HttpServletRequest) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {HttpServletRequest.class},
+            (proxy, method, args) -> {
+                switch (method.getName())
+                {
+                    case "getMethod":
+                        return "GET";
+                    case "getRequestURL":
+                        return new StringBuffer("http://localhost/widgets");
+                    case "getQueryString":
+                        return queryString.toString();
+                    case "getRemoteAddr":
+                        return "127.0.0.1";
+                    case "getHeaderNames":
+                        return Collections.enumeration(headers.keySet());
+                    case "getHeaders":
+                        return Collections.enumeration(Collections.singleton(headers.get((String) args[0])));
+                    case "getParameterMap":
+                        return parameters;
+                    case "getAttribute":
+                        return attributes.get((String) args[0]);
+                    case "setAttribute":
+                        attributes.put((String) args[0], args[1]);
+                        return null;
+                    case "isAsyncStarted":
+                        return false;
+                    default:
+                        return null;
+                }
+            });
+    }
+
+    private class PerRequestRecorderFactory implements RecorderFactory
+    {
+        private final GsonSerializer serializer = new GsonSerializer();
+        private final EntitySanitizer entitySanitizer = entity -> entity;
+        private final ErrorLog errorLog = new ErrorLog();
+
+        @Override
+        public ErrorRecorder getRecorder()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /** called once per request, when it starts; the listener finds the recorder by its binding afterwards */
+        @Override
+        public WebErrorRecorder getWebRecorder()
+        {
+            return new DefaultWebErrorRecorder(
+                new DefaultErrorRecorder(queue, serializer),
+                queue,
+                errorLog,
+                entitySanitizer,
+                stuckThreadMonitor);
+        }
+    }
+}
@@ -2,12 +2,15 @@ package org.cru.redegg.test;
 
 import org.cru.redegg.boot.Lifecycle;
 import org.cru.redegg.qualifier.Selected;
+import org.cru.redegg.recording.RecordingConfig;
 import org.cru.redegg.recording.api.RecorderFactory;
 import org.cru.redegg.recording.cdi.ClockProducer;
+import org.cru.redegg.recording.cdi.RecordingConfigProducer;
 import org.cru.redegg.recording.cdi.RequestMatcherProducer;
 import org.cru.redegg.recording.cdi.SanitizerProducer;
 import org.cru.redegg.recording.impl.HyperConservativeEntitySanitizer;
 import org.cru.redegg.recording.impl.HyperConservativeParameterSanitizer;
+import org.cru.redegg.recording.impl.RecorderBinding;
 import org.cru.redegg.recording.interceptor.ActionRecordingInterceptor;
 import org.cru.redegg.recording.jul.RedEggHandler;
 import org.cru.redegg.recording.log4j.RedEggLog4jAppender;
@@ -170,7 +173,11 @@ public class DefaultDeployment {
      */
     public DefaultDeployment addBootPackage()
     {
-        getArchive().addPackage(boot());
+        getArchive()
+            .addPackage(boot())
+            .addClass(RecorderBinding.class)
+            .addClass(RecordingConfig.class)
+            .addClass(RecordingConfigProducer.class);
         addLoggingReporter();
         return this;
     }
@@ -0,0 +1,121 @@
+package org.cru.redegg.test;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The measuring loops shared by the {@code *Check} classes,
+ * which compare the cost of red-egg's hot paths under different configurations.
+ * Checks are not run as part of the build; run one with {@code mvn test -Dtest=<check name>}.
+ * Results are logged, a line per measurement.
+ *
+ * @author Matt Drees
+ */
+public final class Measurements
+{
+    private static final Logger LOG = LoggerFactory.getLogger(Measurements.class);
+
+    private Measurements()
+    {
+    }
+
+    public interface Operation
+    {
+        void run(int iteration) throws Exception;
+    }
+
+    /**
+     * Runs the operation {@code warmup} times, then {@code iterations} times on this thread,
+     * and logs the average time and allocation of the measured runs.
+     *
+     * @param unit what one run of the operation is, e.g. "request"
+     */
+    public static void measureCost(String name, String unit, int warmup, int iterations, Operation operation)
+        throws Exception
+    {
+        for (int i = 0; i < warmup; i++)
+        {
+            operation.run(i);
+        }
+
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long begin = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+        {
+            operation.run(i);
+        }
+        long elapsed = System.nanoTime() - begin;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        report(
+            "%-12s: %,8d ns/%s, %,8d bytes/%s",
+            name,
+            elapsed / iterations,
+            unit,
+            allocated / iterations,
+            unit);
+    }
+
+    /**
+     * Starts {@code threads} threads together, each running the operation {@code iterations} times,
+     * then runs {@code completion} (e.g. to wait for queued work to finish),
+     * and logs how many operations were completed per second.
+     *
+     * @param unit what one run of the operation is, e.g. "report"
+     * @return the operations per second
+     */
+    public static long measureThroughput(
+        String name,
+        String unit,
+        int threads,
+        int iterations,
+        Operation operation,
+        Runnable completion) throws InterruptedException
+    {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++)
+        {
+            workers[t] = new Thread(() -> {
+                try
+                {
+                    start.await();
+                    for (int i = 0; i < iterations; i++)
+                    {
+                        operation.run(i);
+                    }
+                }
+                catch (Exception e)
+                {
+                    LOG.error("measured operation failed", e);
+                }
+            });
+            workers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers)
+        {
+            worker.join(TimeUnit.MINUTES.toMillis(5));
+        }
+        completion.run();
+        long elapsed = System.nanoTime() - begin;
+
+        long rate = (long) threads * iterations * TimeUnit.SECONDS.toNanos(1) / elapsed;
+        report("%-12s: %,10d %ss/s", name, rate, unit);
+        return rate;
+    }
+
+    public static void report(String format, Object... args)
+    {
+        LOG.info(String.format(format, args));
+    }
+}